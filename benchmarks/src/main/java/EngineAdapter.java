@@ -0,0 +1,67 @@
+import java.nio.file.Path;
+import java.util.List;
+
+import bench.Engine;
+
+/**
+ * Gives the benchmarks access to the search engine classes, which are in the
+ * default package.
+ *
+ * @author courtniwong
+ *
+ */
+public class EngineAdapter implements Engine<InvertedIndex> {
+
+	@Override
+	public List<String> split(String text) {
+		return WordParser.split(text);
+	}
+
+	@Override
+	public InvertedIndex newIndex() {
+		return new InvertedIndex();
+	}
+
+	@Override
+	public void add(InvertedIndex index, String word, String path, int position) {
+		index.add(word, path, position);
+	}
+
+	@Override
+	public PostingList newPositions() {
+		return new PostingList();
+	}
+
+	@Override
+	public void addPosition(Object positions, int position) {
+		((PostingList) positions).add(position);
+	}
+
+	@Override
+	public List<SearchResult> partialSearch(InvertedIndex index, List<String> queries) {
+		return index.partialSearch(queries);
+	}
+
+	@Override
+	public List<SearchResult> phraseSearch(InvertedIndex index, List<String> queries) {
+		return index.phraseSearch(queries, 0);
+	}
+
+	/**
+	 * Searches with {@link InvertedIndex#conjunctiveSearch(List, boolean, int)}
+	 * matching words by prefix, the way {@code -and} searches by default.
+	 */
+	@Override
+	public List<SearchResult> conjunctiveSearch(InvertedIndex index, List<String> queries) {
+		return index.conjunctiveSearch(queries, false, 0);
+	}
+
+	/**
+	 * Writes an index with {@link OutputFileWriter#writeInvertedIndex(Path, java.util.NavigableMap)}
+	 * through {@link InvertedIndex#writeJSON(Path)}.
+	 */
+	@Override
+	public void writeInvertedIndex(InvertedIndex index, Path output) {
+		index.writeJSON(output);
+	}
+}
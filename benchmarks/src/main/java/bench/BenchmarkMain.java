@@ -0,0 +1,61 @@
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options, except that
+ * results are written as JSON to {@link #RESULT_DEFAULT} unless another result
+ * format or file is given, so the results of two builds can be compared.
+ *
+ * @author courtniwong
+ *
+ */
+public class BenchmarkMain {
+
+	/** Default file the results are written to. */
+	public static final String RESULT_DEFAULT = "jmh-result.json";
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args
+	 *            JMH command line options
+	 * @throws RunnerException
+	 *             if a benchmark fails
+	 */
+	public static void main(String[] args) throws RunnerException {
+		CommandLineOptions options;
+		try {
+			options = new CommandLineOptions(args);
+		} catch (CommandLineOptionException e) {
+			System.err.println("Unable to parse options, " + e.getMessage());
+			return;
+		}
+
+		if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+				|| options.shouldListProfilers() || options.shouldListResultFormats()) {
+			/* the standard JMH entry point handles everything besides running */
+			try {
+				org.openjdk.jmh.Main.main(args);
+			} catch (Exception e) {
+				System.err.println("Unable to run JMH, " + e.getMessage());
+			}
+			return;
+		}
+
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+		if (!options.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+		}
+		if (!options.getResult().hasValue()) {
+			builder.result(RESULT_DEFAULT);
+		}
+		new Runner(builder.build()).run();
+	}
+}
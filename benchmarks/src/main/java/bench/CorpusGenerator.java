@@ -0,0 +1,329 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a synthetic corpus of text files and search queries. Words are
+ * drawn from a vocabulary of made up words with a Zipf distribution, so the
+ * word at rank r is picked with probability proportional to 1 / r^skew, the
+ * way word frequencies fall off in natural text. The same settings and seed
+ * always generate the same corpus.
+ *
+ * Running this class writes a corpus and query file to disk, so the search
+ * engine can also be timed end to end:
+ *
+ * <pre>
+ * java -cp benchmarks.jar bench.CorpusGenerator -output corpus -vocabulary 10000 -skew 1.0 -files 100
+ * </pre>
+ *
+ * @author courtniwong
+ *
+ */
+public class CorpusGenerator {
+
+	/** Default number of distinct words. */
+	public static final int VOCABULARY_DEFAULT = 10000;
+
+	/** Default Zipf exponent. */
+	public static final double SKEW_DEFAULT = 1.0;
+
+	/** Default number of files. */
+	public static final int FILES_DEFAULT = 100;
+
+	/** Default number of words in each file. */
+	public static final int WORDS_DEFAULT = 2000;
+
+	/** Default number of query lines. */
+	public static final int QUERIES_DEFAULT = 1000;
+
+	/** Default random seed. */
+	public static final long SEED_DEFAULT = 42;
+
+	/** Number of words on each line of a file. */
+	public static final int LINE_WORDS = 12;
+
+	/** Letters used to make up words, with vowels and common letters repeated. */
+	private static final String LETTERS = "aaabcdeeeefghiiijklmnooopqrsstttuuvwxyz";
+
+	/** Punctuation that may follow a word. */
+	private static final String PUNCTUATION = ".,;:!?";
+
+	/** Vocabulary, from the most to the least frequent word. */
+	private final String[] vocabulary;
+
+	/** Cumulative probability of each rank of the vocabulary. */
+	private final double[] cumulative;
+
+	/** Number of files. */
+	private final int files;
+
+	/** Number of words in each file. */
+	private final int fileWords;
+
+	/** Random numbers used to pick words. */
+	private final Random random;
+
+	/**
+	 * Initializes a generator.
+	 *
+	 * @param vocabularySize
+	 *            number of distinct words
+	 * @param skew
+	 *            Zipf exponent, where 0 picks every word equally often and
+	 *            larger values favor the most frequent words
+	 * @param files
+	 *            number of files
+	 * @param fileWords
+	 *            number of words in each file
+	 * @param seed
+	 *            random seed
+	 */
+	public CorpusGenerator(int vocabularySize, double skew, int files, int fileWords, long seed) {
+		this.random = new Random(seed);
+		this.files = files;
+		this.fileWords = fileWords;
+		this.vocabulary = new String[vocabularySize];
+		this.cumulative = new double[vocabularySize];
+
+		Set<String> seen = new HashSet<>();
+		StringBuilder builder = new StringBuilder();
+		for (int rank = 0; rank < vocabularySize; rank++) {
+			/* frequent words tend to be short, like in natural text */
+			int length = 2 + random.nextInt(3) + Math.min(6, (int) Math.log10(rank + 1) * 2);
+			String word;
+			do {
+				builder.setLength(0);
+				for (int i = 0; i < length; i++) {
+					builder.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+				}
+				word = builder.toString();
+				length++;
+			} while (!seen.add(word));
+			vocabulary[rank] = word;
+		}
+
+		double total = 0;
+		for (int rank = 0; rank < vocabularySize; rank++) {
+			total += 1 / Math.pow(rank + 1, skew);
+			cumulative[rank] = total;
+		}
+		for (int rank = 0; rank < vocabularySize; rank++) {
+			cumulative[rank] /= total;
+		}
+	}
+
+	/**
+	 * Initializes a generator with the default file size and seed.
+	 *
+	 * @param vocabularySize
+	 *            number of distinct words
+	 * @param skew
+	 *            Zipf exponent
+	 * @param files
+	 *            number of files
+	 */
+	public CorpusGenerator(int vocabularySize, double skew, int files) {
+		this(vocabularySize, skew, files, WORDS_DEFAULT, SEED_DEFAULT);
+	}
+
+	/**
+	 * Picks a word from the vocabulary.
+	 *
+	 * @return cleaned word
+	 */
+	public String word() {
+		double target = random.nextDouble();
+		int low = 0;
+		int high = cumulative.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulative[middle] < target) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return vocabulary[low];
+	}
+
+	/**
+	 * Generates the text of a file. Some words are capitalized or followed by
+	 * punctuation, so the text has to be cleaned before it is split.
+	 *
+	 * @return text of a file
+	 */
+	public String document() {
+		StringBuilder builder = new StringBuilder(fileWords * 8);
+		for (int i = 0; i < fileWords; i++) {
+			String word = word();
+			if (random.nextInt(10) == 0) {
+				builder.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+			} else {
+				builder.append(word);
+			}
+			if (random.nextInt(8) == 0) {
+				builder.append(PUNCTUATION.charAt(random.nextInt(PUNCTUATION.length())));
+			}
+			builder.append((i + 1) % LINE_WORDS == 0 ? '\n' : ' ');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Generates the text of every file.
+	 *
+	 * @return text of each file
+	 */
+	public List<String> documents() {
+		List<String> documents = new ArrayList<>(files);
+		for (int i = 0; i < files; i++) {
+			documents.add(document());
+		}
+		return documents;
+	}
+
+	/**
+	 * Generates a query of one to three words. About a third of the words are
+	 * cut short, so the query matches every word that starts with them.
+	 *
+	 * @return cleaned query words
+	 */
+	public List<String> query() {
+		int words = 1 + random.nextInt(3);
+		List<String> query = new ArrayList<>(words);
+		for (int i = 0; i < words; i++) {
+			String word = word();
+			if (random.nextInt(3) == 0 && word.length() > 2) {
+				word = word.substring(0, 2 + random.nextInt(word.length() - 2));
+			}
+			query.add(word);
+		}
+		return query;
+	}
+
+	/**
+	 * Generates queries.
+	 *
+	 * @param count
+	 *            number of queries
+	 * @return cleaned words of each query
+	 */
+	public List<List<String>> queries(int count) {
+		List<List<String>> queries = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			queries.add(query());
+		}
+		return queries;
+	}
+
+	/**
+	 * Returns the name of a generated file.
+	 *
+	 * @param file
+	 *            number of the file
+	 * @return file name
+	 */
+	public static String fileName(int file) {
+		return String.format("file%05d.txt", file);
+	}
+
+	/**
+	 * Writes the files of the corpus to a directory, and the queries to a
+	 * file with one query per line.
+	 *
+	 * @param directory
+	 *            directory to write the files to
+	 * @param queryFile
+	 *            file to write the queries to
+	 * @param queryCount
+	 *            number of queries
+	 * @throws IOException
+	 *             if a file cannot be written
+	 */
+	public void write(Path directory, Path queryFile, int queryCount) throws IOException {
+		Files.createDirectories(directory);
+		for (int i = 0; i < files; i++) {
+			Files.write(directory.resolve(fileName(i)), document().getBytes(StandardCharsets.UTF_8));
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(queryFile, StandardCharsets.UTF_8)) {
+			for (List<String> query : queries(queryCount)) {
+				writer.write(String.join(" ", query));
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Writes a corpus and query file. Takes the flags -output (directory,
+	 * required), -queries (query file, defaults to queries.txt next to the
+	 * directory), -vocabulary, -skew, -files, -words, -count (number of
+	 * queries), and -seed.
+	 *
+	 * @param args
+	 *            flag and value pairs
+	 * @throws IOException
+	 *             if a file cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		Path output = null;
+		Path queries = null;
+		int vocabulary = VOCABULARY_DEFAULT;
+		double skew = SKEW_DEFAULT;
+		int files = FILES_DEFAULT;
+		int words = WORDS_DEFAULT;
+		int count = QUERIES_DEFAULT;
+		long seed = SEED_DEFAULT;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-output":
+				output = Paths.get(value);
+				break;
+			case "-queries":
+				queries = Paths.get(value);
+				break;
+			case "-vocabulary":
+				vocabulary = Integer.parseInt(value);
+				break;
+			case "-skew":
+				skew = Double.parseDouble(value);
+				break;
+			case "-files":
+				files = Integer.parseInt(value);
+				break;
+			case "-words":
+				words = Integer.parseInt(value);
+				break;
+			case "-count":
+				count = Integer.parseInt(value);
+				break;
+			case "-seed":
+				seed = Long.parseLong(value);
+				break;
+			default:
+				System.err.println("Unknown flag, " + args[i]);
+			}
+		}
+
+		if (output == null) {
+			System.err.println("Missing output directory, -output");
+			return;
+		}
+		if (queries == null) {
+			Path parent = output.toAbsolutePath().getParent();
+			queries = parent == null ? Paths.get("queries.txt") : parent.resolve("queries.txt");
+		}
+		new CorpusGenerator(vocabulary, skew, files, words, seed).write(output, queries, count);
+	}
+}
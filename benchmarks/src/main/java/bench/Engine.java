@@ -0,0 +1,129 @@
+package bench;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Operations of the search engine that are benchmarked. The search engine
+ * classes are in the default package, which classes in named packages such as
+ * the benchmarks cannot refer to, so they are reached through this interface
+ * instead. The implementation is loaded by name with {@link #load()}.
+ *
+ * @param <I>
+ *            type of inverted index
+ *
+ * @author courtniwong
+ *
+ */
+public interface Engine<I> {
+
+	/** Name of the class in the default package that implements this interface. */
+	public static final String ADAPTER = "EngineAdapter";
+
+	/**
+	 * Cleans text and splits it into words.
+	 *
+	 * @param text
+	 *            text to split
+	 * @return words of the text
+	 */
+	public List<String> split(String text);
+
+	/**
+	 * Creates an empty inverted index.
+	 *
+	 * @return empty inverted index
+	 */
+	public I newIndex();
+
+	/**
+	 * Adds a word found at a position of a path to an index.
+	 *
+	 * @param index
+	 *            inverted index to add to
+	 * @param word
+	 *            cleaned word
+	 * @param path
+	 *            path the word was found in
+	 * @param position
+	 *            position of the word in the path
+	 */
+	public void add(I index, String word, String path, int position);
+
+	/**
+	 * Creates an empty compressed list of positions, the kind the inverted
+	 * index stores the positions of a word in a path in.
+	 *
+	 * @return empty list of positions
+	 */
+	public Object newPositions();
+
+	/**
+	 * Adds a position to a list created by {@link #newPositions()}.
+	 *
+	 * @param positions
+	 *            list of positions to add to
+	 * @param position
+	 *            position to add
+	 */
+	public void addPosition(Object positions, int position);
+
+	/**
+	 * Searches an index for every word that starts with one of the queries.
+	 *
+	 * @param index
+	 *            inverted index to search
+	 * @param queries
+	 *            cleaned query words
+	 * @return sorted search results
+	 */
+	public List<?> partialSearch(I index, List<String> queries);
+
+	/**
+	 * Searches an index for every path where the queries appear next to each
+	 * other, in order.
+	 *
+	 * @param index
+	 *            inverted index to search
+	 * @param queries
+	 *            cleaned words of the phrase
+	 * @return sorted search results
+	 */
+	public List<?> phraseSearch(I index, List<String> queries);
+
+	/**
+	 * Searches an index for every path that has a word starting with each of
+	 * the queries.
+	 *
+	 * @param index
+	 *            inverted index to search
+	 * @param queries
+	 *            cleaned query words
+	 * @return sorted search results
+	 */
+	public List<?> conjunctiveSearch(I index, List<String> queries);
+
+	/**
+	 * Writes an index to a file as JSON.
+	 *
+	 * @param index
+	 *            inverted index to write
+	 * @param output
+	 *            file to write to
+	 */
+	public void writeInvertedIndex(I index, Path output);
+
+	/**
+	 * Loads the implementation of this interface from the default package.
+	 *
+	 * @return search engine operations
+	 */
+	@SuppressWarnings("unchecked")
+	public static Engine<Object> load() {
+		try {
+			return (Engine<Object>) Class.forName(ADAPTER).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Unable to load " + ADAPTER, e);
+		}
+	}
+}
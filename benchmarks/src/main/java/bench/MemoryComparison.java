@@ -0,0 +1,278 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Compares the heap retained by positions stored in compressed posting lists
+ * with the same positions stored in {@link TreeSet TreeSets} of boxed
+ * integers, the way positions were stored before posting lists. Both layouts
+ * keep their lists in the same nested {@link TreeMap TreeMaps} of words and
+ * paths, so only the lists differ. The heap retained by the whole inverted
+ * index, which also keeps a hash table of its words, is reported as well. Every
+ * layout is built from the same corpus from {@link CorpusGenerator}, so the
+ * same settings and seed always compare the same positions.
+ *
+ * <p>
+ * The retained heap of a layout is the heap in use after garbage collection
+ * while the layout is reachable, minus the heap in use after garbage
+ * collection before it was built. Every layout is measured several times and
+ * the smallest difference is reported, since a collection may leave some
+ * garbage behind. Run with a fixed heap so the collector does not resize it in
+ * between, for example:
+ * </p>
+ *
+ * <pre>
+ * java -Xms2g -Xmx2g -cp benchmarks.jar bench.MemoryComparison -vocabulary 10000 -skew 1.0 -files 100
+ * </pre>
+ *
+ * @author courtniwong
+ *
+ */
+public class MemoryComparison {
+
+	/** Default number of times each layout is measured. */
+	public static final int ROUNDS_DEFAULT = 3;
+
+	/** Name of the layout that stores positions in tree sets. */
+	public static final String TREE_SET = "TreeSet";
+
+	/** Name of the layout that stores positions in posting lists. */
+	public static final String POSTING_LIST = "PostingList";
+
+	/** Name of the layout that is the whole inverted index. */
+	public static final String INDEX = "InvertedIndex";
+
+	/** Number of collections run before the heap is measured. */
+	private static final int COLLECTIONS = 4;
+
+	/** Search engine operations. */
+	private final Engine<Object> engine;
+
+	/** Words of each file. */
+	private final List<List<String>> documentWords;
+
+	/** Number of positions in the corpus. */
+	private final long positions;
+
+	/** Reference that keeps the measured index reachable. */
+	private Object retained;
+
+	/**
+	 * Generates a corpus and splits it into words.
+	 *
+	 * @param generator
+	 *            generator of the corpus
+	 */
+	public MemoryComparison(CorpusGenerator generator) {
+		this.engine = Engine.load();
+		this.documentWords = new ArrayList<>();
+		long count = 0;
+		for (String document : generator.documents()) {
+			List<String> words = engine.split(document);
+			documentWords.add(words);
+			count += words.size();
+		}
+		this.positions = count;
+	}
+
+	/**
+	 * Builds the inverted index of every file, with positions starting at 1.
+	 *
+	 * @return index of every file
+	 */
+	public Object buildIndex() {
+		Object index = engine.newIndex();
+		for (int i = 0; i < documentWords.size(); i++) {
+			String path = CorpusGenerator.fileName(i);
+			int position = 1;
+			for (String word : documentWords.get(i)) {
+				engine.add(index, word, path, position++);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Builds nested maps of words and paths to lists of positions, with
+	 * positions starting at 1.
+	 *
+	 * @param posting
+	 *            true to store positions in posting lists, false to store
+	 *            them in tree sets
+	 * @return words of every file, their paths, and their positions
+	 */
+	public TreeMap<String, TreeMap<String, Object>> buildLists(boolean posting) {
+		TreeMap<String, TreeMap<String, Object>> index = new TreeMap<>();
+		for (int i = 0; i < documentWords.size(); i++) {
+			String path = CorpusGenerator.fileName(i);
+			int position = 1;
+			for (String word : documentWords.get(i)) {
+				TreeMap<String, Object> paths = index.get(word);
+				if (paths == null) {
+					paths = new TreeMap<>();
+					index.put(word, paths);
+				}
+				Object positions = paths.get(path);
+				if (positions == null) {
+					positions = posting ? engine.newPositions() : new TreeSet<Integer>();
+					paths.put(path, positions);
+				}
+				if (posting) {
+					engine.addPosition(positions, position++);
+				} else {
+					addBoxed(positions, position++);
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Adds a position to a tree set of boxed positions.
+	 *
+	 * @param positions
+	 *            tree set to add to
+	 * @param position
+	 *            position to add
+	 */
+	@SuppressWarnings("unchecked")
+	private static void addBoxed(Object positions, int position) {
+		((TreeSet<Integer>) positions).add(position);
+	}
+
+	/**
+	 * Returns the number of positions in the corpus.
+	 *
+	 * @return number of positions
+	 */
+	public long positions() {
+		return positions;
+	}
+
+	/**
+	 * Measures the heap retained by a layout.
+	 *
+	 * @param layout
+	 *            {@link #TREE_SET}, {@link #POSTING_LIST}, or {@link #INDEX}
+	 * @param rounds
+	 *            number of times to measure
+	 * @return smallest number of bytes retained
+	 */
+	public long measure(String layout, int rounds) {
+		long smallest = Long.MAX_VALUE;
+		for (int i = 0; i < rounds; i++) {
+			retained = null;
+			long before = usedHeap();
+			retained = layout.equals(INDEX) ? buildIndex() : buildLists(layout.equals(POSTING_LIST));
+			long after = usedHeap();
+			smallest = Math.min(smallest, after - before);
+		}
+		retained = null;
+		return smallest;
+	}
+
+	/**
+	 * Builds every layout once without measuring it, so the classes they use
+	 * are loaded and the heap has settled before anything is measured.
+	 * Otherwise the first layout measured appears smaller than it is.
+	 */
+	public void warmUp() {
+		retained = buildLists(false);
+		retained = buildLists(true);
+		retained = buildIndex();
+		retained = null;
+		usedHeap();
+	}
+
+	/**
+	 * Returns the heap in use after collecting garbage.
+	 *
+	 * @return bytes of heap in use
+	 */
+	private static long usedHeap() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < COLLECTIONS; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Prints the retained heap of one layout.
+	 *
+	 * @param layout
+	 *            name of the layout
+	 * @param bytes
+	 *            bytes retained
+	 * @param positions
+	 *            number of positions stored
+	 */
+	private static void report(String layout, long bytes, long positions) {
+		System.out.printf("%-14s %,15d bytes %8.2f bytes/position%n", layout, bytes,
+				positions == 0 ? 0.0 : (double) bytes / positions);
+	}
+
+	/**
+	 * Measures and prints the retained heap of every layout. Takes the flags
+	 * -vocabulary, -skew, -files, -words, -seed, and -rounds.
+	 *
+	 * @param args
+	 *            flag and value pairs
+	 */
+	public static void main(String[] args) {
+		int vocabulary = CorpusGenerator.VOCABULARY_DEFAULT;
+		double skew = CorpusGenerator.SKEW_DEFAULT;
+		int files = CorpusGenerator.FILES_DEFAULT;
+		int words = CorpusGenerator.WORDS_DEFAULT;
+		long seed = CorpusGenerator.SEED_DEFAULT;
+		int rounds = ROUNDS_DEFAULT;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-vocabulary":
+				vocabulary = Integer.parseInt(value);
+				break;
+			case "-skew":
+				skew = Double.parseDouble(value);
+				break;
+			case "-files":
+				files = Integer.parseInt(value);
+				break;
+			case "-words":
+				words = Integer.parseInt(value);
+				break;
+			case "-seed":
+				seed = Long.parseLong(value);
+				break;
+			case "-rounds":
+				rounds = Math.max(1, Integer.parseInt(value));
+				break;
+			default:
+				System.err.println("Unknown flag, " + args[i]);
+			}
+		}
+
+		MemoryComparison comparison = new MemoryComparison(
+				new CorpusGenerator(vocabulary, skew, files, words, seed));
+		long positions = comparison.positions();
+		comparison.warmUp();
+		long trees = comparison.measure(TREE_SET, rounds);
+		long postings = comparison.measure(POSTING_LIST, rounds);
+		long index = comparison.measure(INDEX, rounds);
+
+		System.out.printf("%,d positions in %,d files, vocabulary %,d, skew %s%n", positions, files, vocabulary,
+				skew);
+		report(TREE_SET, trees, positions);
+		report(POSTING_LIST, postings, positions);
+		report(INDEX, index, positions);
+		if (postings > 0) {
+			System.out.printf("Posting lists retain %.2fx less heap than tree sets%n", (double) trees / postings);
+		}
+	}
+}
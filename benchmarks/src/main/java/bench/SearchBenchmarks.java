@@ -0,0 +1,249 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of splitting text into words, adding words to the inverted
+ * index, partial, phrase, and AND search, and writing the index as JSON, on a
+ * synthetic corpus from {@link CorpusGenerator}. Phrase and AND searches look
+ * for bigrams and trigrams taken from random positions of the corpus, so
+ * common word sequences are searched most often, the way they are in real
+ * queries. The vocabulary size, Zipf skew, and number of
+ * files can be changed with JMH parameters, for example
+ * {@code -p vocabulary=100000 -p skew=1.2 -p files=500}.
+ *
+ * @author courtniwong
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmarks {
+
+	/** Number of generated queries. */
+	private static final int QUERIES = 1000;
+
+	/** Random seed of the bigrams and trigrams. */
+	private static final long PHRASE_SEED = 7;
+
+	/** Number of distinct words. */
+	@Param({ "10000" })
+	public int vocabulary;
+
+	/** Zipf exponent of the word frequencies. */
+	@Param({ "1.0" })
+	public double skew;
+
+	/** Number of files. */
+	@Param({ "100" })
+	public int files;
+
+	/** Search engine operations. */
+	private Engine<Object> engine;
+
+	/** Text of each file. */
+	private List<String> documents;
+
+	/** Words of each file. */
+	private List<List<String>> documentWords;
+
+	/** Generated queries. */
+	private List<List<String>> queries;
+
+	/** Bigrams and trigrams taken from the corpus. */
+	private List<List<String>> phrases;
+
+	/** Index of every file. */
+	private Object index;
+
+	/** File the index is written to. */
+	private Path output;
+
+	/** Next file to split. */
+	private int nextDocument;
+
+	/** Next query to search. */
+	private int nextQuery;
+
+	/** Next bigram or trigram to search as a phrase. */
+	private int nextPhrase;
+
+	/** Next bigram or trigram to search for all of its words. */
+	private int nextConjunction;
+
+	/**
+	 * Generates the corpus and queries, and builds the index that is searched
+	 * and written.
+	 *
+	 * @throws IOException
+	 *             if the output file cannot be created
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		engine = Engine.load();
+		CorpusGenerator generator = new CorpusGenerator(vocabulary, skew, files);
+		documents = generator.documents();
+		queries = generator.queries(QUERIES);
+
+		documentWords = new ArrayList<>(documents.size());
+		for (String document : documents) {
+			documentWords.add(engine.split(document));
+		}
+		phrases = phrases(new Random(PHRASE_SEED), QUERIES);
+		index = buildIndex();
+		output = Files.createTempFile("index", ".json");
+	}
+
+	/**
+	 * Deletes the output file.
+	 *
+	 * @throws IOException
+	 *             if the output file cannot be deleted
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(output);
+	}
+
+	/**
+	 * Takes bigrams and trigrams from random positions of the corpus. Word
+	 * sequences are picked as often as they appear, so common ones are picked
+	 * most.
+	 *
+	 * @param random
+	 *            random numbers used to pick positions
+	 * @param count
+	 *            number of bigrams and trigrams
+	 * @return words of each bigram or trigram
+	 */
+	private List<List<String>> phrases(Random random, int count) {
+		List<List<String>> phrases = new ArrayList<>(count);
+		while (phrases.size() < count) {
+			List<String> words = documentWords.get(random.nextInt(documentWords.size()));
+			int length = 2 + random.nextInt(2);
+			if (words.size() < length) {
+				continue;
+			}
+			int start = random.nextInt(words.size() - length + 1);
+			phrases.add(new ArrayList<>(words.subList(start, start + length)));
+		}
+		return phrases;
+	}
+
+	/**
+	 * Builds an index of every file, with positions starting at 1.
+	 *
+	 * @return index of every file
+	 */
+	private Object buildIndex() {
+		Object index = engine.newIndex();
+		for (int i = 0; i < documentWords.size(); i++) {
+			String path = CorpusGenerator.fileName(i);
+			int position = 1;
+			for (String word : documentWords.get(i)) {
+				engine.add(index, word, path, position++);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Cleans and splits the text of one file.
+	 *
+	 * @return words of the file
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<String> split() {
+		String document = documents.get(nextDocument);
+		nextDocument = (nextDocument + 1) % documents.size();
+		return engine.split(document);
+	}
+
+	/**
+	 * Adds every word of every file to an empty index.
+	 *
+	 * @return index of every file
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Object add() {
+		return buildIndex();
+	}
+
+	/**
+	 * Searches the index for one query.
+	 *
+	 * @return sorted search results
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<?> partialSearch() {
+		List<String> query = queries.get(nextQuery);
+		nextQuery = (nextQuery + 1) % queries.size();
+		return engine.partialSearch(index, query);
+	}
+
+	/**
+	 * Searches the index for one bigram or trigram as a phrase.
+	 *
+	 * @return sorted search results
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<?> phraseSearch() {
+		List<String> phrase = phrases.get(nextPhrase);
+		nextPhrase = (nextPhrase + 1) % phrases.size();
+		return engine.phraseSearch(index, phrase);
+	}
+
+	/**
+	 * Searches the index for the paths that have every word of one bigram or
+	 * trigram.
+	 *
+	 * @return sorted search results
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<?> conjunctiveSearch() {
+		List<String> words = phrases.get(nextConjunction);
+		nextConjunction = (nextConjunction + 1) % phrases.size();
+		return engine.conjunctiveSearch(index, words);
+	}
+
+	/**
+	 * Writes the index to a file as JSON.
+	 *
+	 * @param blackhole
+	 *            keeps the index from being optimized away
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void writeInvertedIndex(Blackhole blackhole) {
+		engine.writeInvertedIndex(index, output);
+		blackhole.consume(output);
+	}
+}
@@ -0,0 +1,184 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the results files written by {@link BatchSearchBuilder} with the
+ * results files written by {@link PartialSearchBuilder}, for several batch
+ * sizes and numbers of threads, with and without a cache, and compares
+ * {@link InvertedIndex#batchPartialSearch(List, int)} of each class of index
+ * with searching for the queries one at a time.
+ *
+ * @author courtniwong
+ *
+ */
+public class BatchSearchBuilderTest {
+
+	/** Number of text files in the corpus. */
+	private static final int FILES = 40;
+
+	/** Number of distinct words in the corpus. */
+	private static final int WORDS = 300;
+
+	/** Number of query lines. */
+	private static final int QUERIES = 300;
+
+	/** Random seed, so a failure can be reproduced. */
+	private static final long SEED = 23;
+
+	/** Numbers of queries searched at once. */
+	private static final int[] BATCH_SIZES = { 1, 7, 1000 };
+
+	/** Numbers of worker threads, where 0 searches on the reading thread. */
+	private static final int[] THREADS = { 0, 3 };
+
+	/** Limits on the number of results for each query. */
+	private static final int[] LIMITS = { 0, 3 };
+
+	/** Directory the corpus, queries, and results are written into. */
+	@TempDir
+	public Path directory;
+
+	/** Query lines. */
+	private List<String> queries;
+
+	/** Index of the corpus. */
+	private InvertedIndex index;
+
+	/**
+	 * Writes the corpus and queries, and builds the index.
+	 *
+	 * @throws IOException
+	 *             if the corpus cannot be written
+	 */
+	@BeforeEach
+	public void setUp() throws IOException {
+		TestCorpus corpus = new TestCorpus(SEED, WORDS);
+		corpus.write(directory.resolve("input"), FILES);
+		queries = corpus.queries(QUERIES);
+		Files.write(directory.resolve("queries.txt"), queries, StandardCharsets.UTF_8);
+		index = new InvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), index);
+	}
+
+	/**
+	 * Searches for the queries one at a time and in batches of each size, with
+	 * each number of threads and limit, and compares the results files.
+	 *
+	 * @param searched
+	 *            index to search
+	 * @param mode
+	 *            how queries are matched to words
+	 * @param cache
+	 *            cache to search batches through, or null
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	private void compare(InvertedIndex searched, SearchMode mode, QueryCache cache) throws IOException {
+		for (int limit : LIMITS) {
+			PartialSearchBuilder single = new PartialSearchBuilder(null, limit, mode);
+			single.buildSearchResults(directory.resolve("queries.txt"), index);
+			single.writeQueryFile(directory.resolve("expected.json"));
+			String expected = Files.readString(directory.resolve("expected.json"), StandardCharsets.UTF_8);
+			for (int batchSize : BATCH_SIZES) {
+				for (int threads : THREADS) {
+					BatchSearchBuilder builder = new BatchSearchBuilder(batchSize, threads, cache, limit, mode);
+					try {
+						builder.buildSearchResults(directory.resolve("queries.txt"), searched);
+						builder.writeQueryFile(directory.resolve("actual.json"));
+					} finally {
+						builder.shutdown();
+					}
+					assertEquals(expected,
+							Files.readString(directory.resolve("actual.json"), StandardCharsets.UTF_8), mode
+									+ ", limit " + limit + ", batches of " + batchSize + ", " + threads + " threads");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches for prefixes of words, which are searched in batches.
+	 *
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	@Test
+	public void testPrefix() throws IOException {
+		compare(index, SearchMode.PREFIX, null);
+	}
+
+	/**
+	 * Searches for whole words, which are searched one at a time.
+	 *
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	@Test
+	public void testExact() throws IOException {
+		compare(index, SearchMode.EXACT, null);
+	}
+
+	/**
+	 * Searches through a cache that is shared by every search, so that later
+	 * batches are made of the queries the cache does not have.
+	 *
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	@Test
+	public void testCache() throws IOException {
+		compare(index, SearchMode.PREFIX, new QueryCache(QUERIES, Long.MAX_VALUE));
+		compare(index, SearchMode.PREFIX, new QueryCache(10, Long.MAX_VALUE));
+	}
+
+	/**
+	 * Searches the other classes of index in batches.
+	 *
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	@Test
+	public void testOtherIndexes() throws IOException {
+		compare(index.compact(), SearchMode.PREFIX, null);
+		compare(index.offHeap(), SearchMode.PREFIX, null);
+	}
+
+	/**
+	 * Searches for every query as one batch with each class of index, and
+	 * compares the results with searching for each query on its own.
+	 *
+	 * @throws IOException
+	 *             if the index cannot be written for memory-mapping
+	 */
+	@Test
+	public void testBatchPartialSearch() throws IOException {
+		List<List<String>> batch = new ArrayList<>();
+		for (String line : queries) {
+			batch.add(WordParser.split(line));
+		}
+		index.writeBinary(directory.resolve("index.bin"));
+		InvertedIndex[] indexes = { index, index.compact(), index.offHeap(),
+				new MappedInvertedIndex(directory.resolve("index.bin")) };
+		for (InvertedIndex searched : indexes) {
+			for (int limit : LIMITS) {
+				List<List<SearchResult>> results = searched.batchPartialSearch(batch, limit);
+				assertEquals(batch.size(), results.size());
+				for (int i = 0; i < batch.size(); i++) {
+					assertEquals(TestCorpus.describe(index.partialSearch(batch.get(i), limit)),
+							TestCorpus.describe(results.get(i)), searched.getClass().getName() + ", limit "
+									+ limit + ", " + queries.get(i));
+				}
+			}
+		}
+	}
+}
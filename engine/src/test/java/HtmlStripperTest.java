@@ -0,0 +1,144 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the words and links {@link HtmlStripper} finds in small pages. Every
+ * page is fed whole and one character at a time, since markup may be split
+ * across any two pieces of text.
+ *
+ * @author courtniwong
+ *
+ */
+public class HtmlStripperTest {
+
+	/**
+	 * Checks that the contents of script and style elements are removed,
+	 * whatever the case of their tags and whatever markup they contain.
+	 */
+	@Test
+	public void testScriptAndStyle() {
+		assertWords("<p>before</p><script>var hidden = 1;</script><p>after</p>", "before", "after");
+		assertWords("one<SCRIPT type=\"text/javascript\">if (a < b) { hidden(); }</Script >two", "one", "two");
+		assertWords("<style>p { color: red; }</style>shown", "shown");
+		assertWords("<script>document.write('</p>hidden');</script>shown", "shown");
+		assertWords("<script>unfinished", new String[0]);
+	}
+
+	/**
+	 * Checks that comments are removed, including comments with dashes and
+	 * angle brackets inside.
+	 */
+	@Test
+	public void testComments() {
+		assertWords("one<!-- hidden -->two", "one", "two");
+		assertWords("one<!-- a > b - c -- d -->two", "one", "two");
+		assertWords("<!---->shown<!-- <p>hidden</p> -->", "shown");
+		assertWords("shown<!-- unfinished", "shown");
+	}
+
+	/**
+	 * Checks that numeric and common named entities are decoded, unknown
+	 * named entities are removed, and ampersands that do not start an entity
+	 * are kept as text. Decoded punctuation is removed with the rest of the
+	 * special characters, so only a non-breaking space separates words.
+	 */
+	@Test
+	public void testEntities() {
+		assertWords("&#x48;&#105; there", "hi", "there");
+		assertWords("fish&amp;chips", "fishchips");
+		assertWords("one&nbsp;two&lt;three&gt;four", "one", "twothreefour");
+		assertWords("caf&eacute;s", "cafs");
+		assertWords("AT&T rocks", "att", "rocks");
+		assertWords("&#1114112;word", "word");
+		assertWords("end&amp", "endamp");
+	}
+
+	/**
+	 * Checks that inline tags do not separate words and other tags do.
+	 */
+	@Test
+	public void testTags() {
+		assertWords("bo<b>ld</b> and <em>it</em>alic", "bold", "and", "italic");
+		assertWords("one<br>two<p class=\"x\">three</p>four", "one", "two", "three", "four");
+		assertWords("<title>Title</title><h1>Heading</h1>", "title", "heading");
+	}
+
+	/**
+	 * Checks that the links of anchor tags are found in order, whatever their
+	 * quotes and case, with their entities decoded, and that links of other
+	 * tags are not.
+	 */
+	@Test
+	public void testLinks() {
+		String html = "<head><link href=\"style.css\"></head>"
+				+ "<a href=\"double.html\">one</a>"
+				+ "<a class='x' href='single.html'>two</a>"
+				+ "<A HREF=unquoted.html>three</A>"
+				+ "<a\nhref = \" spaced.html \">four</a>"
+				+ "<a href=\"search?x=1&amp;y=2\">five</a>"
+				+ "<a name=\"anchor\">six</a>"
+				+ "<abbr href=\"abbr.html\">seven</abbr>"
+				+ "<!-- <a href=\"comment.html\"> --><script><a href=\"script.html\"></script>";
+		List<String> expected = List.of("double.html", "single.html", "unquoted.html", "spaced.html",
+				"search?x=1&y=2");
+		assertEquals(expected, strip(html, html.length()).links);
+		assertEquals(expected, strip(html, 1).links);
+		assertWords(html, "onetwothreefourfivesixseven");
+	}
+
+	/**
+	 * Asserts that a page has the expected words, both when fed whole and one
+	 * character at a time.
+	 *
+	 * @param html
+	 *            page to strip
+	 * @param expected
+	 *            words expected, in order
+	 */
+	private static void assertWords(String html, String... expected) {
+		assertEquals(List.of(expected), strip(html, html.length()).words, html);
+		assertEquals(List.of(expected), strip(html, 1).words, html);
+	}
+
+	/**
+	 * Strips a page fed in pieces of the given size.
+	 *
+	 * @param html
+	 *            page to strip
+	 * @param size
+	 *            number of characters fed at a time
+	 * @return words and links found
+	 */
+	private static Stripped strip(String html, int size) {
+		final Stripped stripped = new Stripped();
+		HtmlStripper stripper = new HtmlStripper(new WordTokenizer(new WordTokenizer.WordHandler() {
+			@Override
+			public void word(char[] buffer, int length) {
+				stripped.words.add(new String(buffer, 0, length));
+			}
+		}));
+		char[] chars = html.toCharArray();
+		for (int start = 0; start < chars.length; start += Math.max(1, size)) {
+			stripper.feed(chars, start, Math.min(chars.length, start + Math.max(1, size)));
+		}
+		stripper.end();
+		stripped.links.addAll(stripper.getLinks());
+		return stripped;
+	}
+
+	/**
+	 * Words and links found in a page.
+	 */
+	private static class Stripped {
+
+		/** Words found, in order. */
+		private final List<String> words = new ArrayList<>();
+
+		/** Links found, in order. */
+		private final List<String> links = new ArrayList<>();
+	}
+}
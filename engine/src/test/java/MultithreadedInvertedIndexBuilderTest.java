@@ -0,0 +1,120 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares indexes built by {@link MultithreadedInvertedIndexBuilder} with an
+ * index built on one thread by {@link InvertedIndexBuilder}, for several
+ * numbers of threads, index classes, and ways of reading the files.
+ *
+ * @author courtniwong
+ *
+ */
+public class MultithreadedInvertedIndexBuilderTest {
+
+	/** Number of text files in the corpus. */
+	private static final int FILES = 60;
+
+	/** Number of distinct words in the corpus. */
+	private static final int WORDS = 400;
+
+	/** Random seed, so a failure can be reproduced. */
+	private static final long SEED = 1;
+
+	/** Numbers of worker threads each index is built with. */
+	private static final int[] THREADS = { 1, 2, 4 };
+
+	/** Directory the corpus is written into. */
+	@TempDir
+	public Path directory;
+
+	/** Index of the corpus built on one thread. */
+	private InvertedIndex expected;
+
+	/**
+	 * Writes the corpus and builds the index to compare with.
+	 *
+	 * @throws IOException
+	 *             if the corpus cannot be written
+	 */
+	@BeforeEach
+	public void setUp() throws IOException {
+		new TestCorpus(SEED, WORDS).write(directory.resolve("input"), FILES);
+		expected = new InvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), expected);
+	}
+
+	/**
+	 * Builds a thread-safe index with each number of threads.
+	 */
+	@Test
+	public void testThreadSafe() {
+		for (int threads : THREADS) {
+			ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+			MultithreadedInvertedIndexBuilder.addMap(directory.resolve("input"), index, threads);
+			assertEquals(TestCorpus.describe(expected), TestCorpus.describe(index), threads + " threads");
+		}
+	}
+
+	/**
+	 * Builds indexes from memory-mapped files, on one thread and with each
+	 * number of threads.
+	 */
+	@Test
+	public void testMapped() {
+		InvertedIndex single = new InvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), single, true);
+		assertEquals(TestCorpus.describe(expected), TestCorpus.describe(single), "one thread");
+		for (int threads : THREADS) {
+			ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+			MultithreadedInvertedIndexBuilder.addMap(directory.resolve("input"), index, threads, true);
+			assertEquals(TestCorpus.describe(expected), TestCorpus.describe(index), threads + " threads");
+		}
+	}
+
+	/**
+	 * Builds the other classes of index with several threads.
+	 */
+	@Test
+	public void testOtherIndexes() {
+		InvertedIndex plain = new InvertedIndex();
+		MultithreadedInvertedIndexBuilder.addMap(directory.resolve("input"), plain, 3);
+		assertEquals(TestCorpus.describe(expected), TestCorpus.describe(plain), "plain");
+
+		OffHeapInvertedIndex offHeap = new OffHeapInvertedIndex();
+		MultithreadedInvertedIndexBuilder.addMap(directory.resolve("input"), offHeap, 3);
+		assertEquals(TestCorpus.describe(expected), TestCorpus.describe(offHeap), "off-heap");
+
+		ShardedInvertedIndex sharded = new ShardedInvertedIndex(3);
+		try {
+			MultithreadedInvertedIndexBuilder.addMap(directory.resolve("input"), sharded, 3);
+			assertEquals(TestCorpus.describe(expected), TestCorpus.describe(sharded), "sharded");
+		} finally {
+			sharded.shutdown();
+		}
+	}
+
+	/**
+	 * Writes the index built with several threads, which must be the same file
+	 * as the index built on one thread.
+	 *
+	 * @throws IOException
+	 *             if a written index cannot be read
+	 */
+	@Test
+	public void testJSON() throws IOException {
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+		MultithreadedInvertedIndexBuilder.addMap(directory.resolve("input"), index, 4);
+		expected.writeJSON(directory.resolve("expected.json"));
+		index.writeJSON(directory.resolve("actual.json"));
+		assertEquals(Files.readString(directory.resolve("expected.json"), StandardCharsets.UTF_8),
+				Files.readString(directory.resolve("actual.json"), StandardCharsets.UTF_8));
+	}
+}
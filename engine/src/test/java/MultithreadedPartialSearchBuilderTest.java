@@ -0,0 +1,144 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the results files written by
+ * {@link MultithreadedPartialSearchBuilder} with the results files written by
+ * {@link PartialSearchBuilder} on one thread, for several numbers of threads,
+ * search modes, and limits, with and without a cache.
+ *
+ * @author courtniwong
+ *
+ */
+public class MultithreadedPartialSearchBuilderTest {
+
+	/** Number of text files in the corpus. */
+	private static final int FILES = 40;
+
+	/** Number of distinct words in the corpus. */
+	private static final int WORDS = 300;
+
+	/** Number of query lines. */
+	private static final int QUERIES = 400;
+
+	/** Random seed, so a failure can be reproduced. */
+	private static final long SEED = 2;
+
+	/** Numbers of worker threads the queries are searched with. */
+	private static final int[] THREADS = { 1, 3 };
+
+	/** Limits on the number of results for each query. */
+	private static final int[] LIMITS = { 0, 3 };
+
+	/** Directory the corpus, queries, and results are written into. */
+	@TempDir
+	public Path directory;
+
+	/** Index of the corpus. */
+	private ThreadSafeInvertedIndex index;
+
+	/**
+	 * Writes the corpus and queries, and builds the index.
+	 *
+	 * @throws IOException
+	 *             if the corpus cannot be written
+	 */
+	@BeforeEach
+	public void setUp() throws IOException {
+		TestCorpus corpus = new TestCorpus(SEED, WORDS);
+		corpus.write(directory.resolve("input"), FILES);
+		corpus.writeQueries(directory.resolve("queries.txt"), QUERIES);
+		index = new ThreadSafeInvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), index);
+	}
+
+	/**
+	 * Searches for the queries on one thread, and with each number of threads
+	 * and limit, and compares the results files.
+	 *
+	 * @param mode
+	 *            how queries are matched to words
+	 * @param cache
+	 *            cache to search through, or null
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	private void compare(SearchMode mode, QueryCache cache) throws IOException {
+		for (int limit : LIMITS) {
+			PartialSearchBuilder single = new PartialSearchBuilder(null, limit, mode);
+			single.buildSearchResults(directory.resolve("queries.txt"), index);
+			single.writeQueryFile(directory.resolve("expected.json"));
+			String expected = Files.readString(directory.resolve("expected.json"), StandardCharsets.UTF_8);
+			for (int threads : THREADS) {
+				MultithreadedPartialSearchBuilder multi = new MultithreadedPartialSearchBuilder(threads, cache, limit,
+						mode);
+				try {
+					multi.buildSearchResults(directory.resolve("queries.txt"), index);
+					multi.writeQueryFile(directory.resolve("actual.json"));
+				} finally {
+					multi.shutdown();
+				}
+				assertEquals(expected, Files.readString(directory.resolve("actual.json"), StandardCharsets.UTF_8),
+						mode + ", limit " + limit + ", " + threads + " threads");
+			}
+		}
+	}
+
+	/**
+	 * Searches for prefixes of words.
+	 *
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	@Test
+	public void testPrefix() throws IOException {
+		compare(SearchMode.PREFIX, null);
+	}
+
+	/**
+	 * Searches for whole words.
+	 *
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	@Test
+	public void testExact() throws IOException {
+		compare(SearchMode.EXACT, null);
+	}
+
+	/**
+	 * Searches for paths that have every query word.
+	 *
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	@Test
+	public void testConjunctive() throws IOException {
+		compare(SearchMode.ALL, null);
+		compare(SearchMode.ALL_EXACT, null);
+	}
+
+	/**
+	 * Searches through a cache that is shared by every search, so that later
+	 * searches find their results in the cache.
+	 *
+	 * @throws IOException
+	 *             if a results file cannot be read
+	 */
+	@Test
+	public void testCache() throws IOException {
+		QueryCache cache = new QueryCache(QUERIES, Long.MAX_VALUE);
+		compare(SearchMode.PREFIX, cache);
+		compare(SearchMode.EXACT, cache);
+		QueryCache small = new QueryCache(10, Long.MAX_VALUE);
+		compare(SearchMode.PREFIX, small);
+	}
+}
@@ -0,0 +1,141 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares {@link OffHeapInvertedIndex} and {@link CompactInvertedIndex} with
+ * the plain {@link InvertedIndex}: the words of the index, the written index,
+ * the results of every search mode, and the off-heap index after paths are
+ * removed and added again, which frees blocks and term ids and gives the
+ * paths new document ids.
+ *
+ * @author courtniwong
+ *
+ */
+public class OffHeapInvertedIndexTest {
+
+	/** Number of text files in the corpus. */
+	private static final int FILES = 40;
+
+	/** Number of distinct words in the corpus. */
+	private static final int WORDS = 300;
+
+	/** Number of query lines. */
+	private static final int QUERIES = 200;
+
+	/** Number of times paths are removed and added again. */
+	private static final int ROUNDS = 3;
+
+	/** Random seed, so a failure can be reproduced. */
+	private static final long SEED = 24;
+
+	/** Directory the corpus is written into. */
+	@TempDir
+	public Path directory;
+
+	/** Paths of the text files of the corpus. */
+	private List<String> paths;
+
+	/** Query lines. */
+	private List<String> queries;
+
+	/** Index of the corpus to compare with. */
+	private InvertedIndex expected;
+
+	/**
+	 * Writes the corpus and builds the index to compare with.
+	 *
+	 * @throws IOException
+	 *             if the corpus cannot be written
+	 */
+	@BeforeEach
+	public void setUp() throws IOException {
+		TestCorpus corpus = new TestCorpus(SEED, WORDS);
+		paths = corpus.write(directory.resolve("input"), FILES);
+		queries = corpus.queries(QUERIES);
+		expected = new InvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), expected);
+	}
+
+	/**
+	 * Builds an off-heap index on one thread and with several threads, and
+	 * copies the plain index off the heap.
+	 */
+	@Test
+	public void testBuild() {
+		OffHeapInvertedIndex single = new OffHeapInvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), single);
+		assertEquals(TestCorpus.describe(expected), TestCorpus.describe(single), "one thread");
+
+		OffHeapInvertedIndex multi = new OffHeapInvertedIndex();
+		MultithreadedInvertedIndexBuilder.addMap(directory.resolve("input"), multi, 3);
+		assertEquals(TestCorpus.describe(expected), TestCorpus.describe(multi), "3 threads");
+
+		assertEquals(TestCorpus.describe(expected), TestCorpus.describe(expected.offHeap()), "copy");
+	}
+
+	/**
+	 * Writes the off-heap and compact indexes, which must be the same files as
+	 * the plain index.
+	 *
+	 * @throws IOException
+	 *             if a written index cannot be read
+	 */
+	@Test
+	public void testJSON() throws IOException {
+		OffHeapInvertedIndex offHeap = new OffHeapInvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), offHeap);
+		expected.writeJSON(directory.resolve("expected.json"));
+		String json = Files.readString(directory.resolve("expected.json"), StandardCharsets.UTF_8);
+		offHeap.writeJSON(directory.resolve("offheap.json"));
+		assertEquals(json, Files.readString(directory.resolve("offheap.json"), StandardCharsets.UTF_8), "off-heap");
+		expected.compact().writeJSON(directory.resolve("compact.json"));
+		assertEquals(json, Files.readString(directory.resolve("compact.json"), StandardCharsets.UTF_8), "compact");
+	}
+
+	/**
+	 * Searches the off-heap and compact indexes for each query with every
+	 * search mode.
+	 */
+	@Test
+	public void testSearch() {
+		OffHeapInvertedIndex offHeap = new OffHeapInvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), offHeap);
+		TestCorpus.assertSameSearches(expected, offHeap, queries, "off-heap");
+		TestCorpus.assertSameSearches(expected, expected.compact(), queries, "compact");
+		TestCorpus.assertSameSearches(expected, offHeap.compact(), queries, "compact off-heap");
+	}
+
+	/**
+	 * Removes a different part of the paths from the off-heap index in each
+	 * round, compares it with a plain index without those paths, and then adds
+	 * the files again.
+	 */
+	@Test
+	public void testRemoveAndAddAgain() {
+		OffHeapInvertedIndex offHeap = new OffHeapInvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), offHeap);
+		for (int round = 0; round < ROUNDS; round++) {
+			InvertedIndex plain = new InvertedIndex();
+			InvertedIndexBuilder.addMap(directory.resolve("input"), plain);
+			for (int i = round; i < paths.size(); i += ROUNDS) {
+				assertEquals(plain.remove(paths.get(i)), offHeap.remove(paths.get(i)), paths.get(i));
+			}
+			assertEquals(TestCorpus.describe(plain), TestCorpus.describe(offHeap), "round " + round + ", removed");
+			TestCorpus.assertSameSearches(plain, offHeap, queries.subList(0, 20), "round " + round + ", removed");
+			for (int i = round; i < paths.size(); i += ROUNDS) {
+				InvertedIndexBuilder.parseFile(paths.get(i), offHeap);
+			}
+			assertEquals(TestCorpus.describe(expected), TestCorpus.describe(offHeap), "round " + round + ", added");
+		}
+		TestCorpus.assertSameSearches(expected, offHeap, queries, "added again");
+	}
+}
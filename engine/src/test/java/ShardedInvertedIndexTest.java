@@ -0,0 +1,193 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares {@link ShardedInvertedIndex} with the plain {@link InvertedIndex}
+ * for several numbers of shards: the words of the index, the written index,
+ * the results of every search mode, and the index after paths are removed and
+ * replaced.
+ *
+ * @author courtniwong
+ *
+ */
+public class ShardedInvertedIndexTest {
+
+	/** Number of text files in the corpus. */
+	private static final int FILES = 40;
+
+	/** Number of distinct words in the corpus. */
+	private static final int WORDS = 300;
+
+	/** Number of query lines. */
+	private static final int QUERIES = 200;
+
+	/** Random seed, so a failure can be reproduced. */
+	private static final long SEED = 20;
+
+	/** Numbers of shards each index is built with. */
+	private static final int[] SHARDS = { 1, 2, 5 };
+
+	/** Directory the corpus is written into. */
+	@TempDir
+	public Path directory;
+
+	/** Paths of the text files of the corpus. */
+	private List<String> paths;
+
+	/** Query lines. */
+	private List<String> queries;
+
+	/** Index of the corpus to compare with. */
+	private InvertedIndex expected;
+
+	/** Sharded indexes built by the test, which are shut down after it. */
+	private List<ShardedInvertedIndex> sharded;
+
+	/**
+	 * Writes the corpus and builds the index to compare with.
+	 *
+	 * @throws IOException
+	 *             if the corpus cannot be written
+	 */
+	@BeforeEach
+	public void setUp() throws IOException {
+		TestCorpus corpus = new TestCorpus(SEED, WORDS);
+		paths = corpus.write(directory.resolve("input"), FILES);
+		queries = corpus.queries(QUERIES);
+		expected = new InvertedIndex();
+		InvertedIndexBuilder.addMap(directory.resolve("input"), expected);
+		sharded = new ArrayList<>();
+	}
+
+	/**
+	 * Shuts down the sharded indexes.
+	 */
+	@AfterEach
+	public void tearDown() {
+		for (ShardedInvertedIndex index : sharded) {
+			index.shutdown();
+		}
+	}
+
+	/**
+	 * Builds a sharded index of the corpus on one thread, or with several
+	 * threads.
+	 *
+	 * @param shards
+	 *            number of shards
+	 * @param threads
+	 *            number of threads, or 1 to build on this thread
+	 * @return sharded index of the corpus
+	 */
+	private ShardedInvertedIndex build(int shards, int threads) {
+		ShardedInvertedIndex index = new ShardedInvertedIndex(shards);
+		sharded.add(index);
+		if (threads > 1) {
+			MultithreadedInvertedIndexBuilder.addMap(directory.resolve("input"), index, threads);
+		} else {
+			InvertedIndexBuilder.addMap(directory.resolve("input"), index);
+		}
+		return index;
+	}
+
+	/**
+	 * Compares the words of the index, and of its compact copy, with each
+	 * number of shards.
+	 */
+	@Test
+	public void testEntries() {
+		for (int shards : SHARDS) {
+			assertEquals(TestCorpus.describe(expected), TestCorpus.describe(build(shards, 1)), shards + " shards");
+			ShardedInvertedIndex index = build(shards, 3);
+			assertEquals(TestCorpus.describe(expected), TestCorpus.describe(index), shards + " shards, 3 threads");
+			assertEquals(TestCorpus.describe(expected.compact()), TestCorpus.describe(index.compact()),
+					shards + " shards, compact");
+		}
+	}
+
+	/**
+	 * Writes the index with each number of shards, which must be the same file
+	 * as the plain index.
+	 *
+	 * @throws IOException
+	 *             if a written index cannot be read
+	 */
+	@Test
+	public void testJSON() throws IOException {
+		expected.writeJSON(directory.resolve("expected.json"));
+		for (int shards : SHARDS) {
+			build(shards, 1).writeJSON(directory.resolve("actual.json"));
+			assertEquals(Files.readString(directory.resolve("expected.json"), StandardCharsets.UTF_8),
+					Files.readString(directory.resolve("actual.json"), StandardCharsets.UTF_8), shards + " shards");
+		}
+	}
+
+	/**
+	 * Searches for each query with every search mode.
+	 */
+	@Test
+	public void testSearch() {
+		for (int shards : SHARDS) {
+			TestCorpus.assertSameSearches(expected, build(shards, 1), queries, shards + " shards");
+		}
+	}
+
+	/**
+	 * Searches for every query as one batch.
+	 */
+	@Test
+	public void testBatch() {
+		List<List<String>> batch = new ArrayList<>();
+		for (String line : queries) {
+			batch.add(WordParser.split(line));
+		}
+		for (int shards : SHARDS) {
+			ShardedInvertedIndex index = build(shards, 1);
+			for (int limit : new int[] { 0, 3 }) {
+				List<List<SearchResult>> results = index.batchPartialSearch(batch, limit);
+				assertEquals(batch.size(), results.size());
+				for (int i = 0; i < batch.size(); i++) {
+					assertEquals(TestCorpus.describe(expected.partialSearch(batch.get(i), limit)),
+							TestCorpus.describe(results.get(i)),
+							shards + " shards, limit " + limit + ", " + queries.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes every other path, then adds them back by replacing them with an
+	 * index of the file.
+	 */
+	@Test
+	public void testRemoveAndReplace() {
+		for (int shards : SHARDS) {
+			InvertedIndex plain = new InvertedIndex();
+			InvertedIndexBuilder.addMap(directory.resolve("input"), plain);
+			ShardedInvertedIndex index = build(shards, 1);
+			for (int i = 0; i < paths.size(); i += 2) {
+				assertEquals(plain.remove(paths.get(i)), index.remove(paths.get(i)), paths.get(i));
+			}
+			assertEquals(TestCorpus.describe(plain), TestCorpus.describe(index), shards + " shards, removed");
+			TestCorpus.assertSameSearches(plain, index, queries.subList(0, 20), shards + " shards, removed");
+			for (int i = 0; i < paths.size(); i += 2) {
+				InvertedIndex file = new InvertedIndex();
+				InvertedIndexBuilder.parseFile(paths.get(i), file);
+				plain.replace(paths.get(i), file);
+				index.replace(paths.get(i), file);
+			}
+			assertEquals(TestCorpus.describe(expected), TestCorpus.describe(index), shards + " shards, replaced");
+		}
+	}
+}
@@ -0,0 +1,278 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Random;
+
+/**
+ * Generates a directory of text files, and query lines to search it with, for
+ * tests that compare another way of building or searching an index with the
+ * plain {@link InvertedIndex}. Words are made of a few letters, so that many
+ * words share a prefix, and are chosen so that some words are found in most
+ * files and others in only one.
+ *
+ * @author courtniwong
+ *
+ */
+public class TestCorpus {
+
+	/** Letters the words are made of. */
+	private static final String LETTERS = "abcde";
+
+	/** Longest word, in letters. */
+	private static final int MAX_WORD = 6;
+
+	/** Characters written between words. */
+	private static final String[] SEPARATORS = { " ", " ", " ", "  ", "\n", "\t", ", ", ". ", " - ", "\r\n" };
+
+	/** Subdirectories the files are spread over, some of them nested. */
+	private static final String[] DIRECTORIES = { "", "one", "one/two", "one/two/three", "four" };
+
+	/** Random numbers the corpus is generated from. */
+	private final Random random;
+
+	/** Words of the corpus, from the most to the least common. */
+	private final List<String> vocabulary;
+
+	/** Lines of text written so far, used to choose phrases. */
+	private final List<String> lines;
+
+	/**
+	 * Initializes a corpus of the given number of distinct words.
+	 *
+	 * @param seed
+	 *            random seed, so a failure can be reproduced
+	 * @param words
+	 *            number of distinct words
+	 */
+	public TestCorpus(long seed, int words) {
+		random = new Random(seed);
+		vocabulary = new ArrayList<>();
+		lines = new ArrayList<>();
+		while (vocabulary.size() < words) {
+			StringBuilder word = new StringBuilder();
+			int length = 1 + random.nextInt(MAX_WORD);
+			for (int i = 0; i < length; i++) {
+				word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+			}
+			if (!vocabulary.contains(word.toString())) {
+				vocabulary.add(word.toString());
+			}
+		}
+	}
+
+	/**
+	 * Writes the given number of text files into a directory. Some of the
+	 * files are empty, some have an upper case extension, and some files that
+	 * are not text files are written as well, which must not be indexed.
+	 *
+	 * @param directory
+	 *            directory to write the files into
+	 * @param files
+	 *            number of text files
+	 * @return paths of the text files, as the index stores them
+	 * @throws IOException
+	 *             if a file cannot be written
+	 */
+	public List<String> write(Path directory, int files) throws IOException {
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < files; i++) {
+			Path parent = directory.resolve(DIRECTORIES[random.nextInt(DIRECTORIES.length)]);
+			Files.createDirectories(parent);
+			Path file = parent.resolve("file" + i + (i % 7 == 0 ? ".TXT" : ".txt"));
+			Files.writeString(file, i % 11 == 0 ? "" : text(random.nextInt(300)), StandardCharsets.UTF_8);
+			paths.add(file.toString());
+			if (i % 5 == 0) {
+				Files.writeString(parent.resolve("other" + i + ".md"), text(20), StandardCharsets.UTF_8);
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Returns generated text of the given number of words. Some words are
+	 * capitalized, or have punctuation or digits in them.
+	 *
+	 * @param words
+	 *            number of words
+	 * @return generated text
+	 */
+	public String text(int words) {
+		StringBuilder text = new StringBuilder();
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			String word = word();
+			int change = random.nextInt(40);
+			if (change == 0) {
+				word = word.toUpperCase(Locale.ROOT);
+			} else if (change == 1) {
+				word = word.substring(0, 1).toUpperCase(Locale.ROOT) + word.substring(1);
+			} else if (change == 2) {
+				word = word + "'s";
+			} else if (change == 3) {
+				word = word + random.nextInt(10);
+			}
+			text.append(word);
+			line.append(word).append(' ');
+			String separator = SEPARATORS[random.nextInt(SEPARATORS.length)];
+			text.append(separator);
+			if (separator.contains("\n")) {
+				lines.add(line.toString());
+				line.setLength(0);
+			}
+		}
+		lines.add(line.toString());
+		return text.toString();
+	}
+
+	/**
+	 * Returns the given number of query lines. Most lines are one to three
+	 * words or prefixes of words, and some are phrases taken from the text
+	 * written so far, words that are not in the corpus, blank lines, or
+	 * repeats of an earlier line.
+	 *
+	 * @param count
+	 *            number of lines
+	 * @return query lines
+	 */
+	public List<String> queries(int count) {
+		List<String> queries = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			int kind = random.nextInt(20);
+			if (kind == 0 && !queries.isEmpty()) {
+				queries.add(queries.get(random.nextInt(queries.size())));
+			} else if (kind == 1) {
+				queries.add(random.nextBoolean() ? "" : "zzz " + word());
+			} else if (kind < 5 && !lines.isEmpty()) {
+				queries.add(phrase());
+			} else {
+				StringBuilder line = new StringBuilder();
+				int words = 1 + random.nextInt(3);
+				for (int j = 0; j < words; j++) {
+					String word = word();
+					if (random.nextBoolean()) {
+						word = word.substring(0, 1 + random.nextInt(word.length()));
+					}
+					if (random.nextInt(10) == 0) {
+						word = word.toUpperCase(Locale.ROOT);
+					}
+					line.append(j == 0 ? "" : " ").append(word);
+				}
+				queries.add(line.toString());
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * Writes the given number of query lines into a file.
+	 *
+	 * @param file
+	 *            file to write the queries into
+	 * @param count
+	 *            number of lines
+	 * @throws IOException
+	 *             if the file cannot be written
+	 * @see #queries(int)
+	 */
+	public void writeQueries(Path file, int count) throws IOException {
+		Files.write(file, queries(count), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns a word of the corpus, more often one of the first words of the
+	 * vocabulary.
+	 *
+	 * @return word of the corpus
+	 */
+	private String word() {
+		double skew = random.nextDouble();
+		return vocabulary.get((int) (vocabulary.size() * skew * skew * skew));
+	}
+
+	/**
+	 * Returns two to four words in a row from a line written so far, in
+	 * quotation marks.
+	 *
+	 * @return phrase query
+	 */
+	private String phrase() {
+		List<String> words = WordParser.split(lines.get(random.nextInt(lines.size())));
+		if (words.size() < 2) {
+			return "\"" + word() + " " + word() + "\"";
+		}
+		int length = Math.min(words.size(), 2 + random.nextInt(3));
+		int start = random.nextInt(words.size() - length + 1);
+		return "\"" + String.join(" ", words.subList(start, start + length)) + "\"";
+	}
+
+	/**
+	 * Returns every word, path, and position of an index as text, so indexes
+	 * of different classes can be compared.
+	 *
+	 * @param index
+	 *            index to describe
+	 * @return words, paths, and positions of the index
+	 */
+	public static String describe(InvertedIndex index) {
+		StringBuilder text = new StringBuilder();
+		for (Entry<String, NavigableMap<String, PostingList>> word : index.entries()) {
+			for (Entry<String, PostingList> path : word.getValue().entrySet()) {
+				text.append(word.getKey()).append(' ').append(path.getKey()).append(' ').append(path.getValue())
+						.append('\n');
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Returns the paths, frequencies, and positions of search results as text,
+	 * so results of different classes of index can be compared.
+	 *
+	 * @param results
+	 *            search results to describe
+	 * @return paths, frequencies, and positions of the results
+	 */
+	public static String describe(List<SearchResult> results) {
+		StringBuilder text = new StringBuilder();
+		for (SearchResult result : results) {
+			text.append(result.getPath()).append(' ').append(result.getFrequency()).append(' ')
+					.append(result.getPosition()).append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Searches two indexes for each query line with every search mode and with
+	 * and without a limit, and checks that the results are the same.
+	 *
+	 * @param expected
+	 *            index with the expected results
+	 * @param actual
+	 *            index to compare with
+	 * @param queries
+	 *            query lines
+	 * @param name
+	 *            name of the compared index, used in failure messages
+	 */
+	public static void assertSameSearches(InvertedIndex expected, InvertedIndex actual, List<String> queries,
+			String name) {
+		for (String line : queries) {
+			List<String> cleanQueries = WordParser.split(line);
+			for (SearchMode mode : SearchMode.values()) {
+				for (int limit : new int[] { 0, 3 }) {
+					assertEquals(describe(expected.search(cleanQueries, mode, limit)),
+							describe(actual.search(cleanQueries, mode, limit)),
+							name + ", " + mode + ", limit " + limit + ", " + line);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,349 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Crawls a generated graph of pages served by a local web server. Page
+ * {@code n} links to pages {@code 2n + 1} and {@code 2n + 2}, so the pages form
+ * a binary tree, and also back to the first page, to itself with a fragment,
+ * to a plain text file, and to a missing page, none of which may be added to
+ * the index or fetched twice. The last page also links to two URLs that both
+ * redirect to the same page, which must be added once, under the URL it was
+ * redirected to.
+ *
+ * @author courtniwong
+ *
+ */
+public class WebCrawlerTest {
+
+	/** Number of pages in the graph. */
+	private static final int PAGES = 31;
+
+	/** Milliseconds each page takes to serve, so fetches overlap. */
+	private static final int DELAY = 20;
+
+	/** Server of the pages. */
+	private HttpServer server;
+
+	/** Threads of the server. */
+	private ExecutorService threads;
+
+	/** Number of times each path was requested. */
+	private Map<String, AtomicInteger> requests;
+
+	/** Number of requests being served. */
+	private AtomicInteger active;
+
+	/** Most requests served at the same time. */
+	private AtomicInteger busiest;
+
+	/** Crawler used by the last crawl. */
+	private WebCrawler crawler;
+
+	/**
+	 * Starts a server of the generated pages on a free port.
+	 *
+	 * @throws IOException
+	 *             if unable to start the server
+	 */
+	@BeforeEach
+	public void startServer() throws IOException {
+		requests = new ConcurrentHashMap<>();
+		active = new AtomicInteger();
+		busiest = new AtomicInteger();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		threads = Executors.newCachedThreadPool();
+		server.setExecutor(threads);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@AfterEach
+	public void stopServer() {
+		server.stop(0);
+		threads.shutdownNow();
+	}
+
+	/**
+	 * Checks that every page is crawled exactly once when the page limit is
+	 * larger than the graph, and that files that are not HTML pages are not
+	 * added to the index.
+	 */
+	@Test
+	public void testWholeGraph() {
+		ThreadSafeInvertedIndex index = crawl(100, 4);
+		assertEquals(PAGES + 1, crawler.getPages());
+		for (int n = 0; n < PAGES; n++) {
+			assertEquals(1, requests.get(pagePath(n)).get(), pagePath(n));
+		}
+		assertEquals(1, requests.get("/notes.txt").get());
+		assertEquals(1, requests.get("/missing").get());
+		assertEquals(PAGES + 5, requests.size());
+		assertFalse(index.hasWord("plain"));
+		assertFalse(index.hasWord("missing"));
+	}
+
+	/**
+	 * Checks that no more pages than the limit are crawled, even though many
+	 * more links are found.
+	 */
+	@Test
+	public void testPageLimit() {
+		ThreadSafeInvertedIndex index = crawl(10, 4);
+		int fetched = 0;
+		for (AtomicInteger count : requests.values()) {
+			assertEquals(1, count.get());
+			fetched++;
+		}
+		assertEquals(10, fetched);
+		assertTrue(crawler.getPages() <= 10);
+		assertTrue(index.hasPath("page", url(0)));
+	}
+
+	/**
+	 * Checks that every crawled page adds its own words at their positions,
+	 * and that the title counts while scripts, styles, comments, and tags do
+	 * not.
+	 */
+	@Test
+	public void testWords() {
+		ThreadSafeInvertedIndex index = crawl(100, 4);
+		for (int n = 0; n < PAGES; n++) {
+			String url = url(n);
+			assertTrue(index.hasPosition("page", url, 1), url);
+			assertTrue(index.hasPosition("node" + n, url, 2), url);
+			assertTrue(index.hasPosition("shared", url, 3), url);
+			assertTrue(index.hasPosition("text", url, 4), url);
+			assertTrue(index.hasPosition("first", url, 5), url);
+			assertFalse(index.hasPosition("first", url, 6), url);
+			assertFalse(index.hasPath("node" + n, url(n == 0 ? 1 : 0)), url);
+		}
+		assertFalse(index.hasWord("hidden"));
+		assertFalse(index.hasWord("href"));
+		assertFalse(index.hasWord("color"));
+	}
+
+	/**
+	 * Checks that a redirected page is added once, under the URL it was
+	 * redirected to, even though two URLs redirect to it.
+	 */
+	@Test
+	public void testRedirect() {
+		ThreadSafeInvertedIndex index = crawl(100, 4);
+		assertEquals(1, requests.get("/old").get());
+		assertEquals(1, requests.get("/also-old").get());
+		assertEquals(2, requests.get("/new").get());
+		assertTrue(index.hasPosition("moved", url("/new"), 1));
+		assertTrue(index.hasPosition("here", url("/new"), 2));
+		assertFalse(index.hasPosition("here", url("/new"), 3));
+		assertFalse(index.hasPath("moved", url("/old")));
+		assertFalse(index.hasPath("moved", url("/also-old")));
+	}
+
+	/**
+	 * Checks that no more pages are fetched from the same host at a time than
+	 * the per-host limit.
+	 */
+	@Test
+	public void testHostLimit() {
+		crawl(100, 2);
+		assertEquals(PAGES + 1, crawler.getPages());
+		assertTrue(busiest.get() <= 2, "busiest: " + busiest.get());
+
+		requests.clear();
+		busiest.set(0);
+		crawl(100, 1);
+		assertEquals(PAGES + 1, crawler.getPages());
+		assertEquals(1, busiest.get());
+	}
+
+	/**
+	 * Crawls the graph from its first page.
+	 *
+	 * @param limit
+	 *            maximum number of URLs to crawl
+	 * @param hostLimit
+	 *            maximum number of pages fetched from the same host at a time
+	 * @return index of the crawled pages
+	 */
+	private ThreadSafeInvertedIndex crawl(int limit, int hostLimit) {
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+		crawler = new WebCrawler(index, limit, hostLimit);
+		try {
+			crawler.crawl(url(0));
+		} finally {
+			crawler.shutdown();
+		}
+		return index;
+	}
+
+	/**
+	 * Serves a page of the graph, a plain text file, a redirect, or a missing
+	 * page.
+	 *
+	 * @param exchange
+	 *            request and response
+	 * @throws IOException
+	 *             if unable to respond
+	 */
+	private void serve(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		requests.computeIfAbsent(path, new Function<String, AtomicInteger>() {
+			@Override
+			public AtomicInteger apply(String key) {
+				return new AtomicInteger();
+			}
+		}).incrementAndGet();
+
+		int now = active.incrementAndGet();
+		busiest.accumulateAndGet(now, new IntBinaryOperator() {
+			@Override
+			public int applyAsInt(int left, int right) {
+				return Math.max(left, right);
+			}
+		});
+		try {
+			Thread.sleep(DELAY);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			/* the crawler may fetch the next page as soon as this one is sent */
+			active.decrementAndGet();
+		}
+
+		try {
+			if (path.equals("/notes.txt")) {
+				respond(exchange, 200, "text/plain", "plain text");
+			} else if (path.equals("/old") || path.equals("/also-old")) {
+				exchange.getResponseHeaders().set("Location", "/new");
+				respond(exchange, 302, "text/html", "<p>old</p>");
+			} else if (path.equals("/new")) {
+				respond(exchange, 200, "text/html", "<p>moved here</p>");
+			} else if (path.startsWith("/page/")) {
+				respond(exchange, 200, "text/html; charset=UTF-8",
+						page(Integer.parseInt(path.substring("/page/".length()))));
+			} else {
+				respond(exchange, 404, "text/html", "<p>missing</p>");
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Sends a response.
+	 *
+	 * @param exchange
+	 *            request and response
+	 * @param status
+	 *            status code
+	 * @param contentType
+	 *            content type of the body
+	 * @param body
+	 *            body of the response
+	 * @throws IOException
+	 *             if unable to respond
+	 */
+	private static void respond(HttpExchange exchange, int status, String contentType, String body)
+			throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Generates page {@code n} of the graph. Its words are "page", "node"
+	 * followed by {@code n}, "shared", "text", and the text of its first link.
+	 *
+	 * @param n
+	 *            number of the page
+	 * @return HTML of the page
+	 */
+	private static String page(int n) {
+		StringBuilder html = new StringBuilder();
+		html.append("<html><head><title>Page</title>");
+		html.append("<style>body { color: red; }</style>");
+		html.append("<script>var hidden = '<a href=\"/page/999\">';</script></head><body>");
+		html.append("<h1>node").append(n).append("</h1><!-- hidden <a href=\"/page/998\"> -->");
+		html.append("<p>shared <b>text</b></p>");
+		html.append("<a href=\"/page/0\">first</a>");
+		for (int child = 2 * n + 1; child <= 2 * n + 2 && child < PAGES; child++) {
+			html.append("<a href=\"").append(pagePath(child)).append("\"></a>");
+		}
+		html.append("<a href=\"#top\"></a><a href=\"").append(pagePath(n)).append("#bottom\"></a>");
+		html.append("<a href=\"/notes.txt\"></a><a href=\"/missing\"></a>");
+		html.append("<a href=\"mailto:someone@example.com\"></a>");
+		if (n == PAGES - 1) {
+			html.append("<a href=\"/old\"></a><a href=\"/also-old\"></a>");
+		}
+		html.append("</body></html>");
+		return html.toString();
+	}
+
+	/**
+	 * Returns the path of a page of the graph.
+	 *
+	 * @param n
+	 *            number of the page
+	 * @return path of the page
+	 */
+	private static String pagePath(int n) {
+		return "/page/" + n;
+	}
+
+	/**
+	 * Returns the URL of a page of the graph, the way the crawler adds it to
+	 * the index.
+	 *
+	 * @param n
+	 *            number of the page
+	 * @return URL of the page
+	 */
+	private String url(int n) {
+		return url(pagePath(n));
+	}
+
+	/**
+	 * Returns the URL of a path on the server, the way the crawler adds it to
+	 * the index.
+	 *
+	 * @param path
+	 *            path on the server
+	 * @return URL of the path
+	 */
+	private String url(String path) {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+	}
+}
@@ -0,0 +1,265 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the words found by {@link WordTokenizer} with the words found by
+ * the regular expressions of {@link WordParser#splitRegex(String)}, on
+ * generated text that mixes ASCII with other scripts, supplementary
+ * characters, unusual whitespace, and capital sigmas, whose lowercase form
+ * depends on the word boundaries around them.
+ *
+ * @author courtniwong
+ *
+ */
+public class WordTokenizerTest {
+
+	/** Number of generated texts compared by each test. */
+	private static final int TEXTS = 20000;
+
+	/** Longest generated text, in code points. */
+	private static final int MAX_LENGTH = 40;
+
+	/** Random seed, so a failure can be reproduced. */
+	private static final long SEED = 5;
+
+	/**
+	 * Code points the text is generated from. Most are letters, digits, or
+	 * whitespace with a special case in the tokenizer, or that
+	 * {@code \p{Alnum}} and {@code \p{Space}} treat differently than the
+	 * methods of {@link Character} with similar names.
+	 */
+	private static final int[] ALPHABET = {
+			/* ASCII letters, digits, punctuation, and whitespace */
+			'a', 'z', 'A', 'Z', 'i', 'I', '0', '9', '_', '-', '.', '"', '\'', ' ', '\t', '\n', '\r', 0x0B, 0x0C,
+			/* control characters that are whitespace to Character but not to \p{Space} */
+			0x1C, 0x1F,
+			/* non-ASCII whitespace */
+			0x85, 0xA0, 0x1680, 0x2007, 0x2028, 0x2029, 0x202F, 0x3000, 0x200B, 0xFEFF,
+			/* Latin letters with special lowercase forms */
+			0xC0, 0xC9, 0xDF, 0x130, 0x131, 0x1E9E, 0x212A, 0x212B,
+			/* capital, small, and final sigma, and other Greek letters */
+			0x3A3, 0x3A3, 0x3A3, 0x3C3, 0x3C2, 0x391, 0x3B1, 0x390,
+			/* combining marks, one of which is alphabetic */
+			0x301, 0x345,
+			/* Cyrillic, Armenian, Hebrew, and Arabic letters and digits */
+			0x416, 0x436, 0x531, 0x5D0, 0x661,
+			/* letter-like numbers and symbols */
+			0xB2, 0x2160, 0x2170, 0x24B6, 0x24D0,
+			/* CJK and Hangul */
+			0x4E2D, 0xAC00, 0xFF21, 0xFF10,
+			/* supplementary letters, digits, and symbols */
+			0x10400, 0x10428, 0x1D400, 0x1D7CE, 0x1F600, 0x20000,
+			/* unpaired surrogates */
+			0xD800, 0xDC00 };
+
+	/** Default locale before the test. */
+	private Locale original;
+
+	/**
+	 * Remembers the default locale.
+	 */
+	@BeforeEach
+	public void saveLocale() {
+		original = Locale.getDefault();
+	}
+
+	/**
+	 * Restores the default locale.
+	 */
+	@AfterEach
+	public void restoreLocale() {
+		Locale.setDefault(original);
+	}
+
+	/**
+	 * Compares single lines in an English locale.
+	 */
+	@Test
+	public void testLinesEnglish() {
+		compareLines(Locale.ENGLISH);
+	}
+
+	/**
+	 * Compares single lines in a Turkish locale, which lowercases "I" to a
+	 * dotless "i".
+	 */
+	@Test
+	public void testLinesTurkish() {
+		compareLines(Locale.forLanguageTag("tr-TR"));
+	}
+
+	/**
+	 * Compares single lines in an Azerbaijani locale, which lowercases "I" the
+	 * same way as Turkish.
+	 */
+	@Test
+	public void testLinesAzerbaijani() {
+		compareLines(Locale.forLanguageTag("az"));
+	}
+
+	/**
+	 * Compares single lines in a Lithuanian locale, which keeps the dot of
+	 * some lowercased letters.
+	 */
+	@Test
+	public void testLinesLithuanian() {
+		compareLines(Locale.forLanguageTag("lt"));
+	}
+
+	/**
+	 * Compares text with several lines fed in random pieces in an English
+	 * locale.
+	 */
+	@Test
+	public void testPiecesEnglish() {
+		comparePieces(Locale.ENGLISH);
+	}
+
+	/**
+	 * Compares text with several lines fed in random pieces in a Turkish
+	 * locale.
+	 */
+	@Test
+	public void testPiecesTurkish() {
+		comparePieces(Locale.forLanguageTag("tr-TR"));
+	}
+
+	/**
+	 * Compares capital sigmas in every position of a word, next to
+	 * supplementary letters, at the start of a line and after other words.
+	 */
+	@Test
+	public void testSigma() {
+		Locale.setDefault(Locale.ENGLISH);
+		String[] words = { "\u03A3", "\u03A3\u03A3", "\u0391\u03A3", "\u03A3\u0391", "\u0391\u03A3\u0391",
+				"\u0391\u03A3\uD801\uDC00", "\uD801\uDC00\u03A3", "\uD801\uDC00\u03A3\u0391",
+				"\u0391\uD801\uDC00\u03A3", "\u03A3\uD835\uDC00", "\u03A3.", ".\u03A3", "\u0391.\u03A3",
+				"\u03A3\u0301", "\u1FBC\u03A3", "\u0391\u03A3\u0345" };
+		String[] separators = { "", " ", "  ", "\u00A0", "\u3000", "-", "\uD83D\uDE00 " };
+		for (String first : words) {
+			for (String separator : separators) {
+				for (String second : words) {
+					assertLine(first + separator + second);
+					assertLine(separator + first + separator + second + separator);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares every generated line in the given locale.
+	 *
+	 * @param locale
+	 *            default locale to use
+	 */
+	private static void compareLines(Locale locale) {
+		Locale.setDefault(locale);
+		Random random = new Random(SEED);
+		for (int i = 0; i < TEXTS; i++) {
+			assertLine(generate(random, false));
+		}
+	}
+
+	/**
+	 * Compares generated text with several lines, fed to the tokenizer in
+	 * random pieces, with the words of each line the way
+	 * {@link BufferedReader#readLine()} splits the text.
+	 *
+	 * @param locale
+	 *            default locale to use
+	 */
+	private static void comparePieces(Locale locale) {
+		Locale.setDefault(locale);
+		Random random = new Random(SEED);
+		for (int i = 0; i < TEXTS; i++) {
+			String text = generate(random, true);
+
+			List<String> expected = new ArrayList<>();
+			try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					expected.addAll(WordParser.splitRegex(line));
+				}
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+
+			final List<String> actual = new ArrayList<>();
+			WordTokenizer tokenizer = new WordTokenizer(new WordTokenizer.WordHandler() {
+				@Override
+				public void word(char[] buffer, int length) {
+					actual.add(new String(buffer, 0, length));
+				}
+			});
+			int start = 0;
+			while (start < text.length()) {
+				int end = Math.min(text.length(), start + 1 + random.nextInt(8));
+				tokenizer.feed(text, start, end);
+				start = end;
+			}
+			tokenizer.end();
+
+			assertEquals(expected, actual, describe(text));
+		}
+	}
+
+	/**
+	 * Asserts that the tokenizer and the regular expressions find the same
+	 * words in a line.
+	 *
+	 * @param line
+	 *            line of text
+	 */
+	private static void assertLine(String line) {
+		assertEquals(WordParser.splitRegex(line), WordParser.split(line), describe(line));
+	}
+
+	/**
+	 * Generates text from the code points of {@link #ALPHABET}.
+	 *
+	 * @param random
+	 *            random numbers to use
+	 * @param lines
+	 *            true if the text may have more than one line
+	 * @return generated text
+	 */
+	private static String generate(Random random, boolean lines) {
+		StringBuilder builder = new StringBuilder();
+		int length = random.nextInt(MAX_LENGTH + 1);
+		for (int i = 0; i < length; i++) {
+			int codePoint = ALPHABET[random.nextInt(ALPHABET.length)];
+			if (!lines && (codePoint == '\n' || codePoint == '\r')) {
+				codePoint = ' ';
+			}
+			builder.appendCodePoint(codePoint);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Describes text by its code points, so failures can be read and
+	 * reproduced.
+	 *
+	 * @param text
+	 *            text to describe
+	 * @return code points of the text
+	 */
+	private static String describe(String text) {
+		StringBuilder builder = new StringBuilder("text:");
+		for (int i = 0; i < text.length(); i++) {
+			builder.append(String.format(" %04X", (int) text.charAt(i)));
+		}
+		return builder.toString();
+	}
+}
@@ -129,6 +129,25 @@ public class ArgumentParser {
 		return argumentMap.get(flag);
 	}
 
+	/**
+	 * Returns the value of a flag as a positive integer if it exists and is
+	 * valid, and the default value otherwise.
+	 *
+	 * @param flag
+	 *            flag to check
+	 * @param defaultValue
+	 *            value to return if the flag value is missing or invalid
+	 * @return positive integer value of flag or the default value
+	 */
+	public int getValue(String flag, int defaultValue) {
+		try {
+			int value = Integer.parseInt(argumentMap.get(flag));
+			return value > 0 ? value : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return argumentMap.toString();
@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a gzip file, compressing on a thread of its own. Bytes written to the
+ * stream are collected in chunks of {@link #CHUNK_SIZE} bytes, and each full
+ * chunk is handed to the compressing thread, so the thread writing to the
+ * stream can go on serializing while earlier chunks are compressed. At most
+ * {@link #CHUNKS} chunks exist at once; writing waits for the compressing
+ * thread to give one back when they are all in use.
+ *
+ * <p>
+ * Only one thread may write to the stream. If compressing or writing the file
+ * fails, the error is thrown by the next write, flush, or close.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class AsyncGzipOutputStream extends OutputStream {
+
+	/** Number of bytes handed to the compressing thread at a time. */
+	public static final int CHUNK_SIZE = 1 << 16;
+
+	/** Number of chunks shared by the two threads. */
+	public static final int CHUNKS = 4;
+
+	/** Chunk that tells the compressing thread the stream is closed. */
+	private static final Chunk END = new Chunk(0);
+
+	/** Chunks waiting to be compressed, in order. */
+	private final BlockingQueue<Chunk> full;
+
+	/** Chunks that may be filled. */
+	private final BlockingQueue<Chunk> empty;
+
+	/** Thread compressing the chunks. */
+	private final Thread compressor;
+
+	/** Chunk being filled, or null if none was taken yet. */
+	private Chunk chunk;
+
+	/** Error from the compressing thread, or null. */
+	private volatile IOException failure;
+
+	/** True once the stream is closed. */
+	private boolean closed;
+
+	/**
+	 * Opens a gzip file for writing and starts the thread compressing to it.
+	 * The file is created, or truncated if it already exists.
+	 *
+	 * @param output
+	 *            file to write to
+	 * @throws IOException
+	 *             if unable to open the file
+	 */
+	public AsyncGzipOutputStream(Path output) throws IOException {
+		this.full = new ArrayBlockingQueue<>(CHUNKS + 1);
+		this.empty = new ArrayBlockingQueue<>(CHUNKS);
+		for (int i = 0; i < CHUNKS; i++) {
+			empty.add(new Chunk(CHUNK_SIZE));
+		}
+		this.chunk = null;
+		this.failure = null;
+		this.closed = false;
+
+		final OutputStream file = Files.newOutputStream(output);
+		final GZIPOutputStream gzip;
+		try {
+			gzip = new GZIPOutputStream(file, CHUNK_SIZE);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+
+		this.compressor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				compress(gzip);
+			}
+		}, "Compressor");
+		compressor.setDaemon(true);
+		compressor.start();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		Chunk current = current();
+		current.bytes[current.length++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			Chunk current = current();
+			int count = Math.min(length, current.bytes.length - current.length);
+			System.arraycopy(bytes, offset, current.bytes, current.length, count);
+			current.length += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Hands the bytes written so far to the compressing thread. The bytes are
+	 * not forced out of the compressor, since that would make the file
+	 * larger.
+	 */
+	@Override
+	public void flush() throws IOException {
+		check();
+		if (chunk != null && chunk.length > 0) {
+			handOff(chunk);
+			chunk = null;
+		}
+	}
+
+	/**
+	 * Hands the last bytes to the compressing thread and waits for it to
+	 * finish and close the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (chunk != null && chunk.length > 0) {
+				handOff(chunk);
+			}
+			chunk = null;
+			handOff(END);
+			compressor.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing.");
+		}
+		check();
+	}
+
+	/**
+	 * Returns a chunk with room for at least one byte, handing the current
+	 * chunk to the compressing thread once it is full.
+	 *
+	 * @return chunk to write to
+	 * @throws IOException
+	 *             if the stream is closed, compressing failed, or the thread
+	 *             was interrupted
+	 */
+	private Chunk current() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed.");
+		}
+		if (chunk != null && chunk.length == chunk.bytes.length) {
+			check();
+			handOff(chunk);
+			chunk = null;
+		}
+		if (chunk == null) {
+			try {
+				chunk = empty.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while compressing.");
+			}
+			chunk.length = 0;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Hands a chunk to the compressing thread.
+	 *
+	 * @param handed
+	 *            chunk to compress
+	 * @throws InterruptedIOException
+	 *             if the thread was interrupted
+	 */
+	private void handOff(Chunk handed) throws InterruptedIOException {
+		try {
+			full.put(handed);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing.");
+		}
+	}
+
+	/**
+	 * Throws the error of the compressing thread, if any.
+	 *
+	 * @throws IOException
+	 *             if compressing failed
+	 */
+	private void check() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Compresses chunks until the stream is closed, then closes the file.
+	 * Once an error occurs, chunks are still taken and given back, so the
+	 * writing thread never waits forever, but nothing more is written.
+	 *
+	 * @param gzip
+	 *            compressed file
+	 */
+	private void compress(GZIPOutputStream gzip) {
+		try {
+			while (true) {
+				Chunk next = full.take();
+				if (next == END) {
+					break;
+				}
+				if (failure == null) {
+					try {
+						gzip.write(next.bytes, 0, next.length);
+					} catch (IOException e) {
+						failure = e;
+					}
+				}
+				empty.add(next);
+			}
+		} catch (InterruptedException e) {
+			failure = new InterruptedIOException("Interrupted while compressing.");
+		} finally {
+			try {
+				gzip.close();
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bytes handed from the writing thread to the compressing thread.
+	 */
+	private static class Chunk {
+
+		/** Bytes of the chunk. */
+		private final byte[] bytes;
+
+		/** Number of bytes in use. */
+		private int length;
+
+		/**
+		 * Initializes an empty chunk.
+		 *
+		 * @param size
+		 *            number of bytes the chunk can hold
+		 */
+		public Chunk(int size) {
+			this.bytes = new byte[size];
+			this.length = 0;
+		}
+	}
+}
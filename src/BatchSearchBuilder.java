@@ -0,0 +1,307 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Create a LinkedHashMap of queries by searching for many queries at once.
+ * Queries are read in batches, and the partial search queries of each batch
+ * are found with a single pass over the words of the index using
+ * {@link InvertedIndex#batchPartialSearch(List, int)}, so query words shared
+ * by many queries are only looked up once. Phrases, and every query if the
+ * mode is not {@link SearchMode#PREFIX}, are searched one at a time. The
+ * results are the same as those of a {@link PartialSearchBuilder}.
+ *
+ * <p>
+ * If there is a cache, each query to be searched at once is looked up in it as
+ * it is read, and only queries it does not have are added to the batch; the
+ * results of the batch are cached once it is searched. If worker threads are
+ * used, each full batch is searched on a work queue while the next one is
+ * read, so several batches may be searched at once. The time taken by each
+ * batch is recorded in {@link Metrics} as a whole, apart from the queries
+ * searched one at a time.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class BatchSearchBuilder extends PartialSearchBuilder {
+
+	/** Default number of queries searched at once. */
+	public static final int BATCH_DEFAULT = 10000;
+
+	/** Maximum number of queries searched at once. */
+	private final int batchSize;
+
+	/**
+	 * Work queue used to search batches, or null to search on the reading
+	 * thread.
+	 */
+	private final WorkQueue queue;
+
+	/** Queries of the current batch that are searched at once. */
+	private List<String> lines;
+
+	/** Cleaned query words of the queries in {@link #lines}. */
+	private List<List<String>> batch;
+
+	/** Queries of the current batch that are searched one at a time. */
+	private List<String> others;
+
+	/**
+	 * Initializes an empty map of query results that searches for the given
+	 * number of queries at once on the reading thread, only keeps the given
+	 * number of best results for each query, and matches queries to words
+	 * with the given mode.
+	 *
+	 * @param batchSize
+	 *            maximum number of queries searched at once
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 * @param limit
+	 *            maximum number of results for each query, or 0 for every
+	 *            result
+	 * @param mode
+	 *            how queries are matched to words in the index
+	 */
+	public BatchSearchBuilder(int batchSize, QueryCache cache, int limit, SearchMode mode) {
+		this(batchSize, 0, cache, limit, mode);
+	}
+
+	/**
+	 * Initializes an empty map of query results that searches for the given
+	 * number of queries at once on the given number of worker threads, only
+	 * keeps the given number of best results for each query, and matches
+	 * queries to words with the given mode. Queries in quotation marks are
+	 * always searched as phrases.
+	 *
+	 * @param batchSize
+	 *            maximum number of queries searched at once
+	 * @param threads
+	 *            number of worker threads, or 0 to search on the reading
+	 *            thread
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 * @param limit
+	 *            maximum number of results for each query, or 0 for every
+	 *            result
+	 * @param mode
+	 *            how queries are matched to words in the index
+	 */
+	public BatchSearchBuilder(int batchSize, int threads, QueryCache cache, int limit, SearchMode mode) {
+		super(cache, limit, mode);
+		this.batchSize = Math.max(1, batchSize);
+		this.queue = threads > 0 ? new WorkQueue(threads) : null;
+		this.lines = new ArrayList<>();
+		this.batch = new ArrayList<>();
+		this.others = new ArrayList<>();
+	}
+
+	/**
+	 * Read in queries and create results for queries, searching for a batch
+	 * of queries at a time. Returns once every query has been searched. The
+	 * index must not be modified while searching.
+	 *
+	 * @param queryFile:
+	 *            input queries
+	 * @param index
+	 * @throws IllegalStateException
+	 *             if a batch failed to be searched on a worker thread
+	 *
+	 * @see #parseLine(String, InvertedIndex)
+	 */
+	@Override
+	public void buildSearchResults(Path queryFile, InvertedIndex index) {
+		try (BufferedReader reader = Files.newBufferedReader(queryFile, Charset.forName("UTF-8"))) {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				parseLine(line, index);
+			}
+		} catch (IOException e) {
+			System.err.println("Error with file, " + queryFile);
+		}
+		flush(index);
+		if (queue != null) {
+			queue.finish();
+		}
+	}
+
+	/**
+	 * Reserves the position of the query in the LinkedHashMap, and stores its
+	 * results right away if they are cached. Otherwise adds it to the current
+	 * batch, which is searched once it is full, or once all queries have been
+	 * read.
+	 *
+	 * @param line:
+	 *            query
+	 * @param index:
+	 *            Inverted Index
+	 */
+	@Override
+	public void parseLine(String line, InvertedIndex index) {
+		synchronized (queryResults) {
+			if (queryResults.containsKey(line)) {
+				return;
+			}
+			queryResults.put(line, null);
+		}
+
+		if (mode == SearchMode.PREFIX && !WordParser.isPhrase(line)) {
+			long start = System.nanoTime();
+			List<String> cleanQueries = WordParser.split(line);
+			List<SearchResult> cached = cache == null ? null : cache.get(cleanQueries, index, mode, limit);
+			if (cached != null) {
+				synchronized (queryResults) {
+					queryResults.put(line, cached);
+				}
+				Metrics.recordQuery(System.nanoTime() - start);
+				return;
+			}
+			lines.add(line);
+			batch.add(cleanQueries);
+		} else {
+			/* queries searched one at a time go through the cache when they are searched */
+			others.add(line);
+		}
+
+		if (lines.size() + others.size() >= batchSize) {
+			flush(index);
+		}
+	}
+
+	/**
+	 * Calls writeQueries method in OutputFileWriter to write queries in the
+	 * given format. Waits for any pending batches to finish first. Nothing is
+	 * written if a batch failed to be searched, since its results are
+	 * missing.
+	 *
+	 * @param queryFile:
+	 *            input queries
+	 * @param format:
+	 *            format of the file
+	 * @param compressed:
+	 *            true to compress the file with gzip
+	 * @throws IllegalStateException
+	 *             if a batch still pending failed to be searched
+	 */
+	@Override
+	public void writeQueryFile(Path queryFile, OutputFormat format, boolean compressed) {
+		if (queue != null) {
+			queue.finish();
+		}
+		synchronized (queryResults) {
+			if (queryResults.containsValue(null)) {
+				System.err.println("Unable to write results of failed queries, " + queryFile);
+				return;
+			}
+			OutputFileWriter.writeQuery(queryFile, queryResults, format, compressed);
+		}
+	}
+
+	/**
+	 * Shuts down the work queue, if any. Should be called once all queries
+	 * are done.
+	 */
+	@Override
+	public void shutdown() {
+		if (queue != null) {
+			try {
+				queue.finish();
+			} finally {
+				queue.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Searches for the queries of the current batch, on the work queue if
+	 * there is one, and starts a new batch.
+	 *
+	 * @param index
+	 *            index to search
+	 */
+	private void flush(InvertedIndex index) {
+		if (lines.isEmpty() && others.isEmpty()) {
+			return;
+		}
+
+		BatchTask task = new BatchTask(lines, batch, others, index);
+		lines = new ArrayList<>();
+		batch = new ArrayList<>();
+		others = new ArrayList<>();
+		if (queue == null) {
+			task.run();
+		} else {
+			queue.execute(task);
+		}
+	}
+
+	/**
+	 * Searches for the queries of a batch and stores their results.
+	 */
+	private class BatchTask implements Runnable {
+
+		/** Queries searched at once. */
+		private final List<String> lines;
+
+		/** Cleaned query words of the queries searched at once. */
+		private final List<List<String>> batch;
+
+		/** Queries searched one at a time. */
+		private final List<String> others;
+
+		/** Index to search. */
+		private final InvertedIndex index;
+
+		/**
+		 * Initializes a task to search for the queries of a batch.
+		 *
+		 * @param lines
+		 *            queries searched at once
+		 * @param batch
+		 *            cleaned query words of the queries searched at once
+		 * @param others
+		 *            queries searched one at a time
+		 * @param index
+		 *            index to search
+		 */
+		public BatchTask(List<String> lines, List<List<String>> batch, List<String> others, InvertedIndex index) {
+			this.lines = lines;
+			this.batch = batch;
+			this.others = others;
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			if (!batch.isEmpty()) {
+				long version = index.getVersion();
+				long start = System.nanoTime();
+				List<List<SearchResult>> results = index.batchPartialSearch(batch, limit);
+				Metrics.recordBatch(System.nanoTime() - start, batch.size());
+
+				for (int i = 0; i < lines.size(); i++) {
+					List<SearchResult> searchResults = results.get(i);
+					if (cache != null) {
+						searchResults = cache.put(batch.get(i), index, mode, limit, version, searchResults);
+					}
+					synchronized (queryResults) {
+						queryResults.put(lines.get(i), searchResults);
+					}
+				}
+			}
+
+			for (String line : others) {
+				long start = System.nanoTime();
+				List<SearchResult> searchResults = search(line, index);
+				synchronized (queryResults) {
+					queryResults.put(line, searchResults);
+				}
+				Metrics.recordQuery(System.nanoTime() - start);
+			}
+		}
+	}
+}
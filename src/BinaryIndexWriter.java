@@ -0,0 +1,151 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Writes the inverted index to a compact binary file that can be loaded again
+ * by {@link MappedInvertedIndex}. The file has the following layout:
+ *
+ * <pre>
+ * header:     magic, version
+ * documents:  for each path in sorted order, the path as UTF-8
+ * terms:      for each word in sorted order, the word as UTF-8 followed by
+ *             its number of paths and, for each path, the document id delta
+ *             and the compressed positions
+ * doc index:  offset of each document
+ * term index: offset of each term
+ * trailer:    document count, doc index offset, term count,
+ *             term index offset, magic
+ * </pre>
+ *
+ * Counts, lengths, and document id deltas are variable-byte encoded, while
+ * offsets in the index and trailer sections are fixed-size integers so they
+ * can be read directly from a memory-mapped file.
+ *
+ * @author courtniwong
+ *
+ */
+public class BinaryIndexWriter {
+
+	/** Value at the start and end of every binary index file. */
+	public static final int MAGIC = 0x53494458;
+
+	/** Version of the binary index file layout. */
+	public static final int VERSION = 1;
+
+	/** Number of bytes in the header. */
+	public static final int HEADER_SIZE = 8;
+
+	/** Number of bytes in the trailer. */
+	public static final int TRAILER_SIZE = 20;
+
+	/**
+	 * Writes the index to a binary file.
+	 *
+	 * @param output
+	 *            binary index output file
+	 * @param elements
+	 *            words stored in the index
+	 */
+	public static void writeIndex(Path output, NavigableMap<String, NavigableMap<String, PostingList>> elements) {
+		writeIndex(output, elements.entrySet());
+	}
+
+	/**
+	 * Writes the words of an index to a binary file. The words must be in
+	 * sorted order, such as the entries of a sorted map or of a
+	 * {@link CompactInvertedIndex}.
+	 *
+	 * @param output
+	 *            binary index output file
+	 * @param elements
+	 *            sorted words in the index and their paths
+	 */
+	public static void writeIndex(Path output, Iterable<Entry<String, NavigableMap<String, PostingList>>> elements) {
+		TreeMap<String, Integer> documents = new TreeMap<>();
+		for (Entry<String, NavigableMap<String, PostingList>> entry : elements) {
+			for (String path : entry.getValue().keySet()) {
+				documents.put(path, 0);
+			}
+		}
+		int id = 0;
+		for (Entry<String, Integer> document : documents.entrySet()) {
+			document.setValue(id++);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(output), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			List<Integer> documentOffsets = new ArrayList<>(documents.size());
+			for (String path : documents.keySet()) {
+				documentOffsets.add(out.size());
+				writeString(out, path);
+			}
+
+			List<Integer> termOffsets = new ArrayList<>();
+			for (Entry<String, NavigableMap<String, PostingList>> entry : elements) {
+				termOffsets.add(out.size());
+				writeString(out, entry.getKey());
+
+				NavigableMap<String, PostingList> paths = entry.getValue();
+				PostingList.writeVarint(out, paths.size());
+				int previous = 0;
+				for (Entry<String, PostingList> path : paths.entrySet()) {
+					int document = documents.get(path.getKey());
+					PostingList.writeVarint(out, document - previous);
+					path.getValue().write(out);
+					previous = document;
+				}
+			}
+
+			/* the byte count stops at the largest int instead of overflowing */
+			if (out.size() == Integer.MAX_VALUE) {
+				throw new IOException("Index is too large for a binary index file.");
+			}
+
+			int documentIndex = out.size();
+			for (int offset : documentOffsets) {
+				out.writeInt(offset);
+			}
+
+			int termIndex = out.size();
+			for (int offset : termOffsets) {
+				out.writeInt(offset);
+			}
+
+			out.writeInt(documentOffsets.size());
+			out.writeInt(documentIndex);
+			out.writeInt(termOffsets.size());
+			out.writeInt(termIndex);
+			out.writeInt(MAGIC);
+		} catch (IOException e) {
+			System.err.println("Error when writing to binary output file, " + output);
+		}
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length followed by its UTF-8 bytes.
+	 *
+	 * @param out
+	 *            output to write to
+	 * @param text
+	 *            string to write
+	 * @throws IOException
+	 *             if unable to write
+	 */
+	public static void writeString(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		PostingList.writeVarint(out, bytes.length);
+		out.write(bytes);
+	}
+}
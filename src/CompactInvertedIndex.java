@@ -0,0 +1,717 @@
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable copy of an inverted index that stores its words in a front-coded
+ * {@link TermDictionary} instead of a sorted map. Each word is given a term id
+ * in sorted order, and the paths of a word are found by its id, so a prefix
+ * search only has to find the range of ids that start with the prefix. Paths
+ * are also given document ids in sorted order, and the paths of each word are
+ * stored as a sorted array of document ids with a matching array of
+ * positions, so searches can add up results in a {@link SearchAccumulator}.
+ * The index cannot be modified once it is built.
+ *
+ * @author courtniwong
+ *
+ */
+public class CompactInvertedIndex extends InvertedIndex {
+
+	/** Words in the index. */
+	private final TermDictionary terms;
+
+	/** Path of each document, by document id. */
+	private final String[] documents;
+
+	/** Sorted document ids of each word, by term id. */
+	private final int[][] termDocuments;
+
+	/** Positions of each word in each of its documents, by term id. */
+	private final PostingList[][] termPositions;
+
+	/** Hash table of term ids plus one, or 0 for an empty slot. */
+	private final int[] table;
+
+	/** Hash code of each term, by term id. */
+	private final int[] hashes;
+
+	/** Accumulator for each thread searching the index. */
+	private final ThreadLocal<SearchAccumulator> accumulators;
+
+	/**
+	 * Initializes a compact index with the words of a sorted map. The
+	 * positions are shared with the map, so the map should not be modified
+	 * afterwards.
+	 *
+	 * @param elements
+	 *            words stored in an index
+	 *
+	 * @see InvertedIndex#compact()
+	 */
+	public CompactInvertedIndex(NavigableMap<String, NavigableMap<String, PostingList>> elements) {
+		super(Collections.<String, NavigableMap<String, PostingList>>emptyNavigableMap());
+		this.terms = new TermDictionary(elements.keySet(), elements.size());
+
+		TreeSet<String> paths = new TreeSet<>();
+		for (NavigableMap<String, PostingList> word : elements.values()) {
+			paths.addAll(word.keySet());
+		}
+		this.documents = paths.toArray(new String[paths.size()]);
+
+		HashMap<String, Integer> ids = new HashMap<>();
+		for (int id = 0; id < documents.length; id++) {
+			ids.put(documents[id], id);
+		}
+
+		this.termDocuments = new int[elements.size()][];
+		this.termPositions = new PostingList[elements.size()][];
+		int term = 0;
+		for (NavigableMap<String, PostingList> word : elements.values()) {
+			int[] wordDocuments = new int[word.size()];
+			PostingList[] wordPositions = new PostingList[word.size()];
+			int i = 0;
+			/* paths are sorted, so the document ids are sorted too */
+			for (Entry<String, PostingList> path : word.entrySet()) {
+				wordDocuments[i] = ids.get(path.getKey());
+				wordPositions[i] = path.getValue();
+				i++;
+			}
+			termDocuments[term] = wordDocuments;
+			termPositions[term] = wordPositions;
+			term++;
+		}
+
+		this.table = new int[Integer.highestOneBit(Math.max(1, elements.size())) << 2];
+		this.hashes = new int[elements.size()];
+		term = 0;
+		for (String word : elements.keySet()) {
+			hashes[term] = word.hashCode();
+			int slot = slot(hashes[term]);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (table.length - 1);
+			}
+			table[slot] = term + 1;
+			term++;
+		}
+
+		final int count = documents.length;
+		this.accumulators = new ThreadLocal<SearchAccumulator>() {
+			@Override
+			protected SearchAccumulator initialValue() {
+				return new SearchAccumulator(count);
+			}
+		};
+	}
+
+	/**
+	 * Returns the dictionary of words in the index.
+	 *
+	 * @return dictionary of words
+	 */
+	public TermDictionary terms() {
+		return terms;
+	}
+
+	/**
+	 * Returns the number of documents in the index.
+	 *
+	 * @return number of documents
+	 */
+	public int documents() {
+		return documents.length;
+	}
+
+	/**
+	 * Returns the path of a document.
+	 *
+	 * @param id
+	 *            document id
+	 * @return path of the document
+	 */
+	public String document(int id) {
+		return documents[id];
+	}
+
+	/**
+	 * Returns the document id of a path, or -1 if the path is not in the
+	 * index.
+	 *
+	 * @param path
+	 *            path to find
+	 * @return document id, or -1 if not found
+	 */
+	public int document(String path) {
+		int id = Arrays.binarySearch(documents, path);
+		return id >= 0 ? id : -1;
+	}
+
+	/**
+	 * Returns the words in the index in sorted order, along with their paths.
+	 * The paths of each word are put in a new sorted map as they are needed.
+	 *
+	 * @return sorted words and their paths
+	 */
+	@Override
+	public Iterable<Entry<String, NavigableMap<String, PostingList>>> entries() {
+		return new Iterable<Entry<String, NavigableMap<String, PostingList>>>() {
+			@Override
+			public Iterator<Entry<String, NavigableMap<String, PostingList>>> iterator() {
+				final Iterator<String> words = terms.iterator();
+
+				return new Iterator<Entry<String, NavigableMap<String, PostingList>>>() {
+					private int term = 0;
+
+					@Override
+					public boolean hasNext() {
+						return words.hasNext();
+					}
+
+					@Override
+					public Entry<String, NavigableMap<String, PostingList>> next() {
+						String word = words.next();
+						NavigableMap<String, PostingList> paths = new TreeMap<>();
+						for (int i = 0; i < termDocuments[term].length; i++) {
+							paths.put(documents[termDocuments[term][i]], termPositions[term][i]);
+						}
+						term++;
+						return new SimpleImmutableEntry<>(word, paths);
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Not supported, since a compact index cannot be modified.
+	 */
+	@Override
+	public void add(String word, String path, Integer position) {
+		throw new UnsupportedOperationException("Compact index cannot be modified.");
+	}
+
+	/**
+	 * Not supported, since a compact index cannot be modified.
+	 */
+	@Override
+	public void addAll(InvertedIndex other) {
+		throw new UnsupportedOperationException("Compact index cannot be modified.");
+	}
+
+	/**
+	 * Not supported, since a compact index cannot be modified.
+	 */
+	@Override
+	public boolean remove(String path) {
+		throw new UnsupportedOperationException("Compact index cannot be modified.");
+	}
+
+	/**
+	 * Returns this index, since it is already compact.
+	 */
+	@Override
+	public CompactInvertedIndex compact() {
+		return this;
+	}
+
+	@Override
+	public OffHeapInvertedIndex offHeap() {
+		return new OffHeapInvertedIndex(entries());
+	}
+
+	@Override
+	public void writeJSON(Path file, int threads, OutputFormat format, boolean compressed) {
+		OutputFileWriter.writeInvertedIndex(file, entries(), threads, format, compressed);
+	}
+
+	@Override
+	public void writeBinary(Path file) {
+		BinaryIndexWriter.writeIndex(file, entries());
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		return lookup(word) >= 0;
+	}
+
+	/**
+	 * Returns the term id of a word using the hash table, or -1 if the word is
+	 * not in the index.
+	 *
+	 * @param word
+	 *            word to find
+	 * @return term id, or -1 if not found
+	 */
+	public int lookup(String word) {
+		int hash = word.hashCode();
+		for (int slot = slot(hash); table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+			int term = table[slot] - 1;
+			if (hashes[term] == hash && terms.matches(term, word)) {
+				return term;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the first slot of a hash code in the hash table.
+	 *
+	 * @param hash
+	 *            hash code of a word
+	 * @return slot in the hash table
+	 */
+	private int slot(int hash) {
+		return (hash ^ (hash >>> 16)) & (table.length - 1);
+	}
+
+	@Override
+	public boolean hasPath(String word, String path) {
+		return find(word, path) >= 0;
+	}
+
+	@Override
+	public boolean hasPosition(String word, String path, int position) {
+		int term = lookup(word);
+		int i = find(word, path);
+		return i >= 0 && termPositions[term][i].contains(position);
+	}
+
+	/**
+	 * Returns where the document of a path is in the documents of a word, or
+	 * -1 if the word is not found in the path.
+	 *
+	 * @param word
+	 *            word in index
+	 * @param path
+	 *            path the word might be found in
+	 * @return index in the documents of the word, or -1 if not found
+	 */
+	private int find(String word, String path) {
+		int term = lookup(word);
+		int document = document(path);
+		if (term < 0 || document < 0) {
+			return -1;
+		}
+		int i = Arrays.binarySearch(termDocuments[term], document);
+		return i >= 0 ? i : -1;
+	}
+
+	/**
+	 * Create SearchResult objects for each query. Every word that starts with
+	 * a query is found as a range of term ids in the dictionary, and the
+	 * results are added up by document id in this thread's accumulator.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	@Override
+	public List<SearchResult> partialSearch(List<String> cleanQueries, int limit) {
+		SearchAccumulator accumulator = accumulators.get();
+
+		for (String query : cleanQueries) {
+			int start = terms.prefixStart(query);
+			int end = terms.prefixEnd(query, start);
+			for (int term = start; term < end; term++) {
+				addResults(term, accumulator);
+			}
+		}
+		return accumulator.results(documents, limit);
+	}
+
+	/**
+	 * Create SearchResult objects for each of many queries at once. Every
+	 * distinct query word is found as a range of term ids in a single pass
+	 * over the dictionary, and the results of each query are put together in
+	 * this thread's accumulator from the totals of its words.
+	 *
+	 * @param batch:
+	 *            list of normalized queries for each query
+	 * @param limit:
+	 *            maximum number of results of each query, or 0 for every
+	 *            result
+	 * @return List of SearchResult objects for each query, in the same order
+	 */
+	@Override
+	public List<List<SearchResult>> batchPartialSearch(List<List<String>> batch, int limit) {
+		PrefixSweep sweep = new PrefixSweep(batch);
+		String prefix;
+		while ((prefix = sweep.seek()) != null) {
+			int term = terms.prefixStart(prefix);
+			Iterator<String> words = terms.iterator(term);
+			boolean more = false;
+			while (words.hasNext()) {
+				if (!sweep.enter(words.next())) {
+					more = true;
+					break;
+				}
+				int[] wordDocuments = termDocuments[term];
+				PostingList[] wordPositions = termPositions[term];
+				for (int i = 0; i < wordDocuments.length; i++) {
+					sweep.add(wordDocuments[i], wordPositions[i].size(), wordPositions[i].first());
+				}
+				term++;
+			}
+			if (!more) {
+				sweep.end();
+			}
+		}
+		return sweep.results(documents, accumulators.get(), limit);
+	}
+
+	/**
+	 * Create SearchResult objects for each query, only matching whole words.
+	 * Each query is found with a single lookup in the hash table of term ids.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	@Override
+	public List<SearchResult> exactSearch(List<String> cleanQueries, int limit) {
+		SearchAccumulator accumulator = accumulators.get();
+
+		for (String query : cleanQueries) {
+			int term = lookup(query);
+			if (term >= 0) {
+				addResults(term, accumulator);
+			}
+		}
+		return accumulator.results(documents, limit);
+	}
+
+	/**
+	 * Create SearchResult objects for the documents where the query words are
+	 * found at consecutive positions, in order. The documents of the word
+	 * found in the fewest documents are the candidates, and the sorted
+	 * document ids of the other words are searched from rarest to most common
+	 * with {@link PostingList#gallop(int[], int, int, int)}.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized query words, in phrase order
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	@Override
+	public List<SearchResult> phraseSearch(List<String> cleanQueries, int limit) {
+		SearchAccumulator accumulator = accumulators.get();
+		int words = cleanQueries.size();
+		if (words == 0) {
+			return accumulator.results(documents, limit);
+		}
+
+		final int[] wordTerms = new int[words];
+		Integer[] order = new Integer[words];
+		for (int i = 0; i < words; i++) {
+			wordTerms[i] = lookup(cleanQueries.get(i));
+			if (wordTerms[i] < 0) {
+				return accumulator.results(documents, limit);
+			}
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(termDocuments[wordTerms[a]].length, termDocuments[wordTerms[b]].length);
+			}
+		});
+
+		PhraseMatcher matcher = new PhraseMatcher(words);
+		PostingList[] positions = new PostingList[words];
+		int[] cursors = new int[words];
+		int[] rarest = termDocuments[wordTerms[order[0]]];
+
+		candidates:
+		for (int j = 0; j < rarest.length; j++) {
+			int document = rarest[j];
+			positions[order[0]] = termPositions[wordTerms[order[0]]][j];
+
+			for (int i = 1; i < words; i++) {
+				int term = wordTerms[order[i]];
+				int[] wordDocuments = termDocuments[term];
+				int cursor = PostingList.gallop(wordDocuments, cursors[i], wordDocuments.length, document);
+				cursors[i] = cursor;
+				if (cursor == wordDocuments.length) {
+					break candidates;
+				}
+				if (wordDocuments[cursor] != document) {
+					continue candidates;
+				}
+				positions[order[i]] = termPositions[term][cursor];
+			}
+
+			if (matcher.match(positions)) {
+				accumulator.add(document, matcher.count(), matcher.first());
+			}
+		}
+		return accumulator.results(documents, limit);
+	}
+
+	/**
+	 * Create SearchResult objects for the documents where every query matches
+	 * at least one word, keeping only the given number of best results.
+	 * Documents are visited one at a time in id order. Queries are checked
+	 * from the one with the fewest documents to the one with the most, and
+	 * the sorted document ids of the others are searched with
+	 * {@link PostingList#gallop(int[], int, int, int)}, so the search stops as
+	 * soon as any query runs out of documents.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param exact:
+	 *            true if queries only match whole words, false if they match
+	 *            words they are a prefix of
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	@Override
+	public List<SearchResult> conjunctiveSearch(List<String> cleanQueries, boolean exact, int limit) {
+		SearchAccumulator accumulator = accumulators.get();
+		int queries = cleanQueries.size();
+		if (queries == 0) {
+			return accumulator.results(documents, limit);
+		}
+
+		DocumentCursor[] cursors = new DocumentCursor[queries];
+		for (int i = 0; i < queries; i++) {
+			String query = cleanQueries.get(i);
+			int start;
+			int end;
+			if (exact) {
+				start = lookup(query);
+				end = start + 1;
+			} else {
+				start = terms.prefixStart(query);
+				end = terms.prefixEnd(query, start);
+			}
+			if (start < 0 || start >= end) {
+				return accumulator.results(documents, limit);
+			}
+			cursors[i] = new DocumentCursor(start, end);
+		}
+		Arrays.sort(cursors, new Comparator<DocumentCursor>() {
+			@Override
+			public int compare(DocumentCursor a, DocumentCursor b) {
+				return Long.compare(a.cost, b.cost);
+			}
+		});
+
+		int document = cursors[0].advance(0);
+		candidates:
+		while (document >= 0) {
+			for (int i = 1; i < queries; i++) {
+				int next = cursors[i].advance(document);
+				if (next < 0) {
+					break candidates;
+				}
+				if (next != document) {
+					document = cursors[0].advance(next);
+					continue candidates;
+				}
+			}
+
+			for (DocumentCursor cursor : cursors) {
+				cursor.addResults(document, accumulator);
+			}
+			document = cursors[0].advance(document + 1);
+		}
+		return accumulator.results(documents, limit);
+	}
+
+	/**
+	 * Adds the frequency and first position of a word in each of its documents
+	 * to the accumulator.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @param accumulator
+	 *            accumulator of search results
+	 */
+	private void addResults(int term, SearchAccumulator accumulator) {
+		int[] wordDocuments = termDocuments[term];
+		PostingList[] wordPositions = termPositions[term];
+		for (int i = 0; i < wordDocuments.length; i++) {
+			accumulator.add(wordDocuments[i], wordPositions[i].size(), wordPositions[i].first());
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("CompactInvertedIndex [index={");
+		boolean first = true;
+		for (Entry<String, NavigableMap<String, PostingList>> entry : entries()) {
+			if (!first) {
+				builder.append(", ");
+			}
+			first = false;
+			builder.append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return builder.append("}]").toString();
+	}
+
+	/**
+	 * Moves forward through the sorted document ids of a range of terms, as
+	 * if they were a single sorted list of documents. The terms are kept in a
+	 * heap ordered by their current document, so only the terms behind the
+	 * target have to move, and terms that run out of documents are dropped.
+	 */
+	private class DocumentCursor {
+
+		/** First term id of the range. */
+		private final int start;
+
+		/** Heap of the term ids that have not run out of documents. */
+		private final int[] heap;
+
+		/** Index of the current document of each term, by term id - start. */
+		private final int[] offsets;
+
+		/** Number of terms in the heap. */
+		private int count;
+
+		/** Total number of documents of every term. */
+		private final long cost;
+
+		/**
+		 * Initializes a cursor before the first document.
+		 *
+		 * @param start
+		 *            first term id
+		 * @param end
+		 *            last term id, exclusive
+		 */
+		public DocumentCursor(int start, int end) {
+			this.start = start;
+			this.heap = new int[end - start];
+			this.offsets = new int[end - start];
+			long cost = 0;
+			for (int term = start; term < end; term++) {
+				heap[term - start] = term;
+				cost += termDocuments[term].length;
+			}
+			this.count = end - start;
+			this.cost = cost;
+			for (int i = count / 2 - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+		}
+
+		/**
+		 * Moves every term to its first document that is not less than the
+		 * target.
+		 *
+		 * @param target
+		 *            document id to find
+		 * @return first document of any term that is not less than the target,
+		 *         or -1 if every term has run out
+		 */
+		public int advance(int target) {
+			while (count > 0) {
+				int term = heap[0];
+				int[] wordDocuments = termDocuments[term];
+				int offset = offsets[term - start];
+				if (wordDocuments[offset] >= target) {
+					return wordDocuments[offset];
+				}
+
+				offset = PostingList.gallop(wordDocuments, offset, wordDocuments.length, target);
+				if (offset == wordDocuments.length) {
+					heap[0] = heap[--count];
+				} else {
+					offsets[term - start] = offset;
+				}
+				siftDown(0);
+			}
+			return -1;
+		}
+
+		/**
+		 * Adds the frequency and first position of every term found in the
+		 * current document to the accumulator.
+		 *
+		 * @param document
+		 *            current document id
+		 * @param accumulator
+		 *            accumulator of search results
+		 */
+		public void addResults(int document, SearchAccumulator accumulator) {
+			addResults(0, document, accumulator);
+		}
+
+		/**
+		 * Adds the results of the terms found in the current document, in the
+		 * part of the heap starting from the given node. Terms below a node are
+		 * never at an earlier document, so the search stops at the first term
+		 * that is past the document.
+		 *
+		 * @param node
+		 *            index in the heap
+		 * @param document
+		 *            current document id
+		 * @param accumulator
+		 *            accumulator of search results
+		 */
+		private void addResults(int node, int document, SearchAccumulator accumulator) {
+			if (node >= count || current(heap[node]) != document) {
+				return;
+			}
+			int term = heap[node];
+			PostingList positions = termPositions[term][offsets[term - start]];
+			accumulator.add(document, positions.size(), positions.first());
+			addResults(2 * node + 1, document, accumulator);
+			addResults(2 * node + 2, document, accumulator);
+		}
+
+		/**
+		 * Returns the current document of a term.
+		 *
+		 * @param term
+		 *            term id
+		 * @return current document id
+		 */
+		private int current(int term) {
+			return termDocuments[term][offsets[term - start]];
+		}
+
+		/**
+		 * Moves a term down the heap until it is not after its children.
+		 *
+		 * @param parent
+		 *            index in the heap
+		 */
+		private void siftDown(int parent) {
+			while (true) {
+				int smallest = parent;
+				int left = 2 * parent + 1;
+				int right = left + 1;
+				if (left < count && current(heap[left]) < current(heap[smallest])) {
+					smallest = left;
+				}
+				if (right < count && current(heap[right]) < current(heap[smallest])) {
+					smallest = right;
+				}
+				if (smallest == parent) {
+					return;
+				}
+				int term = heap[parent];
+				heap[parent] = heap[smallest];
+				heap[smallest] = term;
+				parent = smallest;
+			}
+		}
+	}
+}
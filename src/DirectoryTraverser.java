@@ -13,15 +13,19 @@ import java.util.List;
  */
 public class DirectoryTraverser {
 	/**
-	 * Returns a arraylist of textfiles.
+	 * Returns a arraylist of textfiles. The time taken is recorded as
+	 * {@link Metrics.Phase#TRAVERSAL}.
 	 *
 	 * @param directory
 	 *            input file
 	 * @return List of text files
 	 */
 	public static ArrayList<String> traverse(Path directory) {
+		long start = System.nanoTime();
+		long cpu = Metrics.cpuTime();
 		ArrayList<String> files = new ArrayList<>();
 		traverse(directory, files);
+		Metrics.addTime(Metrics.Phase.TRAVERSAL, System.nanoTime() - start, Metrics.cpuTime() - cpu);
 		return files;
 	}
 
@@ -40,7 +44,7 @@ public class DirectoryTraverser {
 				if (Files.isDirectory(file)) {
 					traverse(file, files);
 				} else {
-					if (file.toString().toLowerCase().endsWith("txt")) {
+					if (isTextFile(file)) {
 						files.add(file.toString());
 					}
 				}
@@ -49,4 +53,16 @@ public class DirectoryTraverser {
 			System.err.println("Directory is not valid.");
 		}
 	}
+
+	/**
+	 * Tests if a file should be indexed, which is true for files whose name
+	 * ends in "txt" (ignoring case).
+	 *
+	 * @param file
+	 *            file to check
+	 * @return true if the file is a text file
+	 */
+	public static boolean isTextFile(Path file) {
+		return file.toString().toLowerCase().endsWith("txt");
+	}
 }
@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Watches an input directory and keeps the inverted index up to date as text
+ * files are created, changed, or deleted. Only the changed file is parsed
+ * again, and its old positions are replaced with the new ones. The index is
+ * thread-safe, so it can still be searched while changes are applied.
+ *
+ * @author courtniwong
+ *
+ */
+public class DirectoryWatcher implements Runnable {
+
+	/** Directory being watched. */
+	private final Path root;
+
+	/** Index to keep up to date. */
+	private final ThreadSafeInvertedIndex index;
+
+	/** True if files should be memory-mapped when parsed. */
+	private final boolean mapped;
+
+	/** Service used to watch for changes. */
+	private final WatchService watcher;
+
+	/** Directory watched by each watch key. */
+	private final Map<WatchKey, Path> directories;
+
+	/** Text files currently stored in the index. */
+	private final TreeSet<String> files;
+
+	/**
+	 * Starts watching a directory and all of its subdirectories. Changes are
+	 * queued from now on and applied once {@link #run()} is called, so the
+	 * watcher should be created before the index is built from the directory,
+	 * and run once the build is done, to not miss changes made during the
+	 * build.
+	 *
+	 * @param root
+	 *            directory to watch
+	 * @param index
+	 *            index to keep up to date
+	 * @param mapped
+	 *            true if files should be memory-mapped when parsed
+	 * @throws IOException
+	 *             if the directory cannot be watched
+	 */
+	public DirectoryWatcher(Path root, ThreadSafeInvertedIndex index, boolean mapped) throws IOException {
+		this.root = root;
+		this.index = index;
+		this.mapped = mapped;
+		this.watcher = root.getFileSystem().newWatchService();
+		this.directories = new HashMap<>();
+		register(root);
+		this.files = new TreeSet<>(DirectoryTraverser.traverse(root));
+	}
+
+	/**
+	 * Waits for changes and applies them to the index until {@link #close()}
+	 * is called.
+	 */
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				WatchKey key = watcher.take();
+				Path directory = directories.get(key);
+
+				/* each file is only updated once per batch of events */
+				Set<Path> changed = new LinkedHashSet<>();
+				Set<Path> created = new HashSet<>();
+				boolean overflow = false;
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						overflow = true;
+					} else if (directory != null) {
+						Path file = directory.resolve((Path) event.context());
+						changed.add(file);
+						if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+							created.add(file);
+						}
+					}
+				}
+
+				if (!key.reset()) {
+					directories.remove(key);
+				}
+
+				if (overflow) {
+					rescan();
+				} else {
+					for (Path file : changed) {
+						update(file, created.contains(file));
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			return;
+		}
+	}
+
+	/**
+	 * Stops watching for changes.
+	 */
+	public void close() {
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			System.err.println("Unable to stop watching directory, " + root);
+		}
+	}
+
+	/**
+	 * Applies a change to a single path. Directories that are created are
+	 * watched and their text files are added, text files that exist are parsed
+	 * again, and files or directories that no longer exist are removed.
+	 *
+	 * @param file
+	 *            path that changed
+	 * @param created
+	 *            true if the path was created
+	 */
+	private void update(Path file, boolean created) {
+		if (Files.isDirectory(file)) {
+			if (created) {
+				register(file);
+				for (String text : DirectoryTraverser.traverse(file)) {
+					parse(text);
+				}
+			}
+		} else if (Files.isRegularFile(file)) {
+			if (DirectoryTraverser.isTextFile(file)) {
+				parse(file.toString());
+			}
+		} else {
+			String path = file.toString();
+			String prefix = path + file.getFileSystem().getSeparator();
+
+			if (files.remove(path)) {
+				index.remove(path);
+			}
+
+			Iterator<String> iterator = files.tailSet(prefix).iterator();
+			while (iterator.hasNext()) {
+				String child = iterator.next();
+				if (!child.startsWith(prefix)) {
+					break;
+				}
+				index.remove(child);
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Parses a text file into its own index and replaces the old positions of
+	 * the file with the new ones.
+	 *
+	 * @param file
+	 *            text file to parse
+	 */
+	private void parse(String file) {
+		InvertedIndex local = new InvertedIndex();
+		InvertedIndexBuilder.parseFile(file, local, mapped);
+		index.replace(file, local);
+		files.add(file);
+	}
+
+	/**
+	 * Parses every text file again and removes files that no longer exist.
+	 * Used when too many changes happen at once to be reported one by one.
+	 */
+	private void rescan() {
+		register(root);
+		TreeSet<String> current = new TreeSet<>(DirectoryTraverser.traverse(root));
+		for (String file : new ArrayList<>(files)) {
+			if (!current.contains(file)) {
+				index.remove(file);
+				files.remove(file);
+			}
+		}
+		for (String file : current) {
+			parse(file);
+		}
+	}
+
+	/**
+	 * Watches a directory and all of its subdirectories.
+	 *
+	 * @param directory
+	 *            directory to watch
+	 */
+	private void register(Path directory) {
+		try {
+			WatchKey key = directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			directories.put(key, directory);
+
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+				for (Path child : children) {
+					if (Files.isDirectory(child)) {
+						register(child);
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to watch directory, " + directory);
+		}
+	}
+}
@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
@@ -69,10 +70,170 @@ public class Driver {
 	 * Flag used to indicate the following value is the port number to use when
 	 * starting a web server. If no value is provided, then
 	 * {@link #PORT_DEFAULT} should be used. If this flag is not provided, then
-	 * a web server should not be started.
+	 * a web server should not be started. Requests are handled on a virtual
+	 * thread each on Java 21 and later, and on a bounded pool of platform
+	 * threads on older runtimes.
 	 */
 	public static final String PORT_FLAG = "-port";
 
+	/**
+	 * Flag used to indicate the following value is the maximum number of URLs
+	 * to crawl from the {@link #SEED_FLAG}. If no value is provided or this
+	 * flag is not provided, then {@link #MAX_DEFAULT} should be used.
+	 */
+	public static final String MAX_FLAG = "-max";
+
+	/**
+	 * Flag used to indicate the following value is the maximum number of pages
+	 * to fetch from the same host at a time while crawling. If no value is
+	 * provided or this flag is not provided, then {@link #PER_HOST_DEFAULT}
+	 * should be used.
+	 */
+	public static final String PER_HOST_FLAG = "-perhost";
+
+	/**
+	 * Flag used to indicate the following value is the number of shards to
+	 * split the inverted index into by path. If no value is provided, then
+	 * {@link ShardedInvertedIndex#SHARDS_DEFAULT} should be used. If this flag
+	 * is not provided, then the index is not sharded. Ignored if the
+	 * {@link #LOAD_FLAG} is provided.
+	 */
+	public static final String SHARDS_FLAG = "-shards";
+
+	/**
+	 * Flag used to indicate that input files should be read by memory-mapping
+	 * them and decoding them in large chunks, instead of line by line. If this
+	 * flag is not provided, then files are read line by line.
+	 */
+	public static final String MMAP_FLAG = "-mmap";
+
+	/**
+	 * Flag used to indicate the following value is a binary index file to load
+	 * instead of (or before) building the inverted index from text files.
+	 */
+	public static final String LOAD_FLAG = "-load";
+
+	/**
+	 * Flag used to indicate the following value is the path to use when saving
+	 * the inverted index to a binary file. If no value is provided, then
+	 * {@link #SAVE_DEFAULT} should be used. If this flag is not provided, then
+	 * the inverted index should not be saved.
+	 */
+	public static final String SAVE_FLAG = "-save";
+
+	/**
+	 * Flag used to indicate that the input directory should be watched after
+	 * the inverted index is built, and the index updated whenever text files
+	 * are created, changed, or deleted. If this flag is not provided, then the
+	 * index is only built once.
+	 */
+	public static final String WATCH_FLAG = "-watch";
+
+	/**
+	 * Flag used to indicate that the inverted index should be converted to a
+	 * compact, immutable index once it is built, storing its words in a
+	 * front-coded dictionary. Ignored if the {@link #WATCH_FLAG} is provided,
+	 * since the index must then remain modifiable.
+	 */
+	public static final String COMPACT_FLAG = "-compact";
+
+	/**
+	 * Flag used to indicate that the positions of the inverted index should be
+	 * kept outside the Java heap. A build from a directory, with or without the
+	 * {@link #THREAD_FLAG}, adds words to the off-heap index directly. With
+	 * the {@link #LOAD_FLAG}, {@link #SHARDS_FLAG}, or {@link #SEED_FLAG}, the
+	 * index is built on the heap and copied once it is built, so the heap must
+	 * still hold the whole index for a while. Ignored, with a warning, if the
+	 * {@link #WATCH_FLAG} or {@link #COMPACT_FLAG} is provided.
+	 */
+	public static final String OFF_HEAP_FLAG = "-offheap";
+
+	/**
+	 * Flag used to indicate that queries should only match whole words in the
+	 * inverted index. If this flag is not provided, then queries match every
+	 * word that starts with them.
+	 */
+	public static final String EXACT_FLAG = "-exact";
+
+	/**
+	 * Flag used to indicate that only paths matched by every query word should
+	 * be returned. If this flag is not provided, then paths matched by any
+	 * query word are returned.
+	 */
+	public static final String AND_FLAG = "-and";
+
+	/**
+	 * Flag used to indicate the following value is the maximum number of
+	 * search results to keep for each query. If no value is provided, then
+	 * {@link #LIMIT_DEFAULT} should be used. If this flag is not provided, then
+	 * every search result should be kept.
+	 */
+	public static final String LIMIT_FLAG = "-limit";
+
+	/**
+	 * Flag used to indicate that the results of each query should be written
+	 * to the {@link #RESULTS_FLAG} file as soon as they are found, instead of
+	 * keeping every result in memory until all queries are done. The file is
+	 * the same either way. Ignored if the {@link #RESULTS_FLAG} is not
+	 * provided.
+	 *
+	 * @see StreamingSearchBuilder
+	 */
+	public static final String STREAM_FLAG = "-stream";
+
+	/**
+	 * Flag used to indicate the following value is the number of queries to
+	 * search at once, looking up the words of every query in a batch with a
+	 * single pass over the inverted index. If no value is provided, then
+	 * {@link BatchSearchBuilder#BATCH_DEFAULT} should be used. If this flag is
+	 * not provided, then queries are searched one at a time. Batches are
+	 * searched on the worker threads of the {@link #THREAD_FLAG}, if provided.
+	 * Ignored if the {@link #STREAM_FLAG} is provided.
+	 *
+	 * @see BatchSearchBuilder
+	 */
+	public static final String BATCH_FLAG = "-batch";
+
+	/**
+	 * Flag used to indicate the format of the {@link #INDEX_FLAG} and
+	 * {@link #RESULTS_FLAG} files: "pretty" for indented JSON, "compact" for
+	 * JSON without whitespace, or "ndjson" for one JSON object per line. If
+	 * this flag is not provided, then {@link #FORMAT_DEFAULT} should be used.
+	 *
+	 * @see OutputFormat
+	 */
+	public static final String FORMAT_FLAG = "-format";
+
+	/**
+	 * Flag used to indicate that the {@link #INDEX_FLAG} and
+	 * {@link #RESULTS_FLAG} files should be compressed with gzip, on a
+	 * separate thread from the one writing them. The file names are used as
+	 * given.
+	 *
+	 * @see AsyncGzipOutputStream
+	 */
+	public static final String GZIP_FLAG = "-gzip";
+
+	/**
+	 * Flag used to indicate the following value is the maximum number of
+	 * search queries to cache. If no value is provided, then
+	 * {@link #CACHE_DEFAULT} should be used. If this flag is not provided, then
+	 * search results should not be cached.
+	 */
+	public static final String CACHE_FLAG = "-cache";
+
+	/**
+	 * Flag used to indicate that timings and counts of building the inverted
+	 * index and searching it should be recorded and reported as JSON once the
+	 * queries are done. If a value is provided, then the report is written to
+	 * that file; otherwise it is printed. If this flag is not provided, then
+	 * nothing about the build or the queries is recorded; the web server still
+	 * records its own requests.
+	 *
+	 * @see Metrics
+	 */
+	public static final String STATS_FLAG = "-stats";
+
 	/**
 	 * Default to use when the value for the {@link #INDEX_FLAG} is missing.
 	 */
@@ -83,16 +244,52 @@ public class Driver {
 	 */
 	public static final String RESULTS_DEFAULT = "results.json";
 
+	/**
+	 * Default to use when the value for the {@link #FORMAT_FLAG} is missing or
+	 * unknown.
+	 */
+	public static final OutputFormat FORMAT_DEFAULT = OutputFormat.PRETTY;
+
+	/**
+	 * Default to use when the value for the {@link #SAVE_FLAG} is missing.
+	 */
+	public static final String SAVE_DEFAULT = "index.bin";
+
 	/**
 	 * Default to use when the value for the {@link #THREAD_FLAG} is missing.
 	 */
 	public static final int THREAD_DEFAULT = 5;
 
+	/**
+	 * Default to use when the value for the {@link #LIMIT_FLAG} is missing.
+	 */
+	public static final int LIMIT_DEFAULT = 10;
+
+	/**
+	 * Default to use when the value for the {@link #CACHE_FLAG} is missing.
+	 */
+	public static final int CACHE_DEFAULT = 10000;
+
+	/**
+	 * Maximum estimated bytes used by cached search results.
+	 */
+	public static final long CACHE_BYTES = 64L << 20;
+
 	/**
 	 * Default to use when the value for the {@link #PORT_FLAG} is missing.
 	 */
 	public static final int PORT_DEFAULT = 8080;
 
+	/**
+	 * Default to use when the value for the {@link #MAX_FLAG} is missing.
+	 */
+	public static final int MAX_DEFAULT = 50;
+
+	/**
+	 * Default to use when the value for the {@link #PER_HOST_FLAG} is missing.
+	 */
+	public static final int PER_HOST_DEFAULT = 4;
+
 	/**
 	 * Parses the provided arguments and, if appropriate, will build an inverted
 	 * index from a directory or seed URL, process search queries, configure
@@ -104,44 +301,52 @@ public class Driver {
 	public static void main(String[] args) {
 		System.out.println(Arrays.toString(args));
 		ArgumentParser ap = new ArgumentParser(args);
-		InvertedIndex index = new InvertedIndex();
-		PartialSearchBuilder psb = new PartialSearchBuilder();
+		InvertedIndex index = null;
+		ThreadSafeInvertedIndex safeIndex = null;
+		PartialSearchBuilder psb = null;
 
 		String input = null;
 		Path output = null;
 		Path queryInputFile = null;
 		Path queryOutputFile = null;
-
-		if (ap.hasFlag(INPUT_FLAG)) {
-			if (ap.hasValue(Driver.INPUT_FLAG)) {
-				input = ap.getValue(Driver.INPUT_FLAG);
-				Path inputFile = Paths.get(input);
-				InvertedIndexBuilder.addMap(inputFile, index);
-			}
+		int threads = 0;
+		int limit = 0;
+		SearchMode mode;
+		if (ap.hasFlag(AND_FLAG)) {
+			mode = ap.hasFlag(EXACT_FLAG) ? SearchMode.ALL_EXACT : SearchMode.ALL;
 		} else {
-			System.err.println("No directory input.");
+			mode = ap.hasFlag(EXACT_FLAG) ? SearchMode.EXACT : SearchMode.PREFIX;
+		}
+		QueryCache cache = null;
+		OutputFormat format = FORMAT_DEFAULT;
+		boolean compressed = ap.hasFlag(GZIP_FLAG);
+		boolean offHeap = ap.hasFlag(OFF_HEAP_FLAG) && !ap.hasFlag(WATCH_FLAG) && !ap.hasFlag(COMPACT_FLAG);
+		if (ap.hasFlag(OFF_HEAP_FLAG) && !offHeap) {
+			System.err.println("Ignoring " + OFF_HEAP_FLAG + ", which cannot be used with "
+					+ (ap.hasFlag(WATCH_FLAG) ? WATCH_FLAG : COMPACT_FLAG));
+		} else if (offHeap && (ap.hasValue(LOAD_FLAG) || ap.hasFlag(SHARDS_FLAG) || ap.hasFlag(SEED_FLAG))) {
+			System.err.println("Building the index on the heap before copying it off the heap, "
+					+ (ap.hasValue(LOAD_FLAG) ? LOAD_FLAG : ap.hasFlag(SHARDS_FLAG) ? SHARDS_FLAG : SEED_FLAG));
 		}
 
-		if (ap.hasFlag(INDEX_FLAG)) {
-			if (ap.getValue(Driver.INDEX_FLAG) != null) {
-				output = Paths.get(ap.getValue(Driver.INDEX_FLAG));
-			} else {
-				output = Paths.get(INDEX_DEFAULT);
-			}
+		if (ap.hasFlag(STATS_FLAG)) {
+			Metrics.enable();
+		}
 
-			index.writeJSON(output);
+		if (ap.hasValue(FORMAT_FLAG)) {
+			format = OutputFormat.forName(ap.getValue(Driver.FORMAT_FLAG));
+			if (format == null) {
+				System.err.println("Unknown output format, " + ap.getValue(Driver.FORMAT_FLAG));
+				format = FORMAT_DEFAULT;
+			}
+		}
 
-		} else {
-			System.err.println("No file output.");
+		if (ap.hasFlag(LIMIT_FLAG)) {
+			limit = ap.getValue(Driver.LIMIT_FLAG, LIMIT_DEFAULT);
 		}
 
-		if (ap.hasFlag(QUERIES_FLAG)) {
-			if (ap.hasValue(Driver.QUERIES_FLAG)) {
-				queryInputFile = Paths.get(ap.getValue(Driver.QUERIES_FLAG));
-				psb.buildSearchResults(queryInputFile, index);
-			}
-		} else {
-			System.err.println("No query input.");
+		if (ap.hasFlag(CACHE_FLAG)) {
+			cache = new QueryCache(ap.getValue(Driver.CACHE_FLAG, CACHE_DEFAULT), CACHE_BYTES);
 		}
 
 		if (ap.hasFlag(RESULTS_FLAG)) {
@@ -150,10 +355,162 @@ public class Driver {
 			} else {
 				queryOutputFile = Paths.get(RESULTS_DEFAULT);
 			}
-			psb.writeQueryFile(queryOutputFile);
+		}
+
+		if (ap.hasFlag(THREAD_FLAG)) {
+			threads = ap.getValue(Driver.THREAD_FLAG, THREAD_DEFAULT);
+		}
+
+		if (ap.hasFlag(STREAM_FLAG) && queryOutputFile != null) {
+			psb = new StreamingSearchBuilder(queryOutputFile, format, compressed, threads, cache, limit, mode);
+		} else if (ap.hasFlag(BATCH_FLAG)) {
+			psb = new BatchSearchBuilder(ap.getValue(Driver.BATCH_FLAG, BatchSearchBuilder.BATCH_DEFAULT), threads,
+					cache, limit, mode);
+		} else if (threads > 0) {
+			psb = new MultithreadedPartialSearchBuilder(threads, cache, limit, mode);
 		} else {
-			System.err.println("No query output file.");
+			psb = new PartialSearchBuilder(cache, limit, mode);
 		}
 
+		try {
+			if (ap.hasValue(LOAD_FLAG)) {
+				Path loadFile = Paths.get(ap.getValue(Driver.LOAD_FLAG));
+				try {
+					safeIndex = new MappedInvertedIndex(loadFile);
+					index = safeIndex;
+				} catch (IOException e) {
+					System.err.println("Unable to load binary index file, " + loadFile);
+				}
+			}
+
+			if (index == null) {
+				if (ap.hasFlag(SHARDS_FLAG)) {
+					safeIndex = new ShardedInvertedIndex(
+							ap.getValue(Driver.SHARDS_FLAG, ShardedInvertedIndex.SHARDS_DEFAULT));
+					index = safeIndex;
+				} else if ((threads > 0 && !offHeap) || ap.hasFlag(WATCH_FLAG) || ap.hasFlag(SEED_FLAG)) {
+					safeIndex = new ThreadSafeInvertedIndex();
+					index = safeIndex;
+				} else if (offHeap) {
+					index = new OffHeapInvertedIndex();
+				} else {
+					index = new InvertedIndex();
+				}
+			}
+
+			if (ap.hasFlag(INPUT_FLAG)) {
+				if (ap.hasValue(Driver.INPUT_FLAG)) {
+					input = ap.getValue(Driver.INPUT_FLAG);
+					Path inputFile = Paths.get(input);
+					boolean mapped = ap.hasFlag(MMAP_FLAG);
+
+					/* changes made while the index is built are applied afterwards */
+					DirectoryWatcher watcher = null;
+					if (ap.hasFlag(WATCH_FLAG)) {
+						try {
+							watcher = new DirectoryWatcher(inputFile, safeIndex, mapped);
+						} catch (IOException e) {
+							System.err.println("Unable to watch directory, " + inputFile);
+						}
+					}
+
+					long start = System.nanoTime();
+					if (threads > 0) {
+						MultithreadedInvertedIndexBuilder.addMap(inputFile, index, threads, mapped);
+					} else {
+						InvertedIndexBuilder.addMap(inputFile, index, mapped);
+					}
+					Metrics.addBuildTime(System.nanoTime() - start);
+
+					if (watcher != null) {
+						new Thread(watcher, "DirectoryWatcher").start();
+					}
+				}
+			} else {
+				System.err.println("No directory input.");
+			}
+
+			if (ap.hasValue(SEED_FLAG)) {
+				WebCrawler crawler = new WebCrawler(safeIndex, ap.getValue(Driver.MAX_FLAG, MAX_DEFAULT),
+						ap.getValue(Driver.PER_HOST_FLAG, PER_HOST_DEFAULT));
+				crawler.crawl(ap.getValue(Driver.SEED_FLAG));
+				crawler.shutdown();
+			}
+
+			if (ap.hasFlag(COMPACT_FLAG) && !ap.hasFlag(WATCH_FLAG)) {
+				index = index.compact();
+			} else if (offHeap) {
+				index = index.offHeap();
+			}
+
+			if (ap.hasFlag(INDEX_FLAG)) {
+				if (ap.getValue(Driver.INDEX_FLAG) != null) {
+					output = Paths.get(ap.getValue(Driver.INDEX_FLAG));
+				} else {
+					output = Paths.get(INDEX_DEFAULT);
+				}
+
+				/* the index may be serialized on several threads */
+				long start = System.nanoTime();
+				long cpu = Metrics.processCpuTime();
+				index.writeJSON(output, Math.max(1, threads), format, compressed);
+				Metrics.addTime(Metrics.Phase.JSON_WRITE, System.nanoTime() - start,
+						Metrics.processCpuTime() - cpu);
+
+			} else {
+				System.err.println("No file output.");
+			}
+
+			if (ap.hasFlag(SAVE_FLAG)) {
+				if (ap.getValue(Driver.SAVE_FLAG) != null) {
+					index.writeBinary(Paths.get(ap.getValue(Driver.SAVE_FLAG)));
+				} else {
+					index.writeBinary(Paths.get(SAVE_DEFAULT));
+				}
+			}
+
+			if (ap.hasFlag(QUERIES_FLAG)) {
+				if (ap.hasValue(Driver.QUERIES_FLAG)) {
+					queryInputFile = Paths.get(ap.getValue(Driver.QUERIES_FLAG));
+					psb.buildSearchResults(queryInputFile, index);
+				}
+			} else {
+				System.err.println("No query input.");
+			}
+
+			if (queryOutputFile != null) {
+				psb.writeQueryFile(queryOutputFile, format, compressed);
+			} else {
+				System.err.println("No query output file.");
+			}
+		} finally {
+			psb.shutdown();
+		}
+
+		if (ap.hasFlag(STATS_FLAG)) {
+			if (ap.getValue(Driver.STATS_FLAG) != null) {
+				Metrics.writeJSON(Paths.get(ap.getValue(Driver.STATS_FLAG)));
+			} else {
+				System.out.println(Metrics.toJSON());
+			}
+		}
+
+		boolean serving = false;
+		if (ap.hasFlag(PORT_FLAG)) {
+			int port = ap.getValue(Driver.PORT_FLAG, PORT_DEFAULT);
+			try {
+				SearchServer server = new SearchServer(port, index, cache, limit, mode);
+				server.start();
+				serving = true;
+				System.out.println("Listening on port " + server.getPort());
+			} catch (IOException e) {
+				System.err.println("Unable to start web server on port, " + port);
+			}
+		}
+
+		/* nothing searches the shards once the queries are done, unless the server does */
+		if (!serving && safeIndex instanceof ShardedInvertedIndex) {
+			((ShardedInvertedIndex) safeIndex).shutdown();
+		}
 	}
 }
@@ -0,0 +1,352 @@
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Removes the markup from HTML as it is read, passing the remaining text to a
+ * {@link WordTokenizer} and keeping the links found in anchor tags. Comments
+ * and the contents of script and style elements are removed, tags other than
+ * common inline tags are replaced by a space, and numeric and common named
+ * character entities are decoded. Text may be given in several pieces using
+ * {@link #feed(char[], int, int)}, so a page never has to be held in memory.
+ * Call {@link #end()} once all text has been given.
+ *
+ * @author courtniwong
+ *
+ */
+public class HtmlStripper {
+
+	/** Longest tag kept, in characters. Longer tags are cut short. */
+	public static final int TAG_LIMIT = 4096;
+
+	/** Longest character entity, in characters. */
+	private static final int ENTITY_LIMIT = 10;
+
+	/** Finds the link of an anchor tag. */
+	private static final Pattern HREF_REGEX = Pattern
+			.compile("(?is)\\shref\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))");
+
+	/** Tags that do not separate words. */
+	private static final List<String> INLINE_TAGS = List.of("a", "abbr", "b", "cite", "code", "em", "font", "i",
+			"mark", "q", "s", "small", "span", "strong", "sub", "sup", "tt", "u");
+
+	/** Where the stripper is in the markup. */
+	private enum State {
+		/** Text between tags. */
+		TEXT,
+		/** Inside a tag. */
+		TAG,
+		/** Inside a character entity. */
+		ENTITY,
+		/** Inside a comment. */
+		COMMENT,
+		/** Inside a script or style element. */
+		ELEMENT,
+		/** Inside the closing tag of a script or style element. */
+		CLOSING
+	}
+
+	/** Tokenizer to pass text to. */
+	private final WordTokenizer tokenizer;
+
+	/** Links found in anchor tags, in the order they were found. */
+	private final List<String> links;
+
+	/** Text waiting to be passed to the tokenizer. */
+	private final char[] text;
+
+	/** View of the waiting text that can be passed to the tokenizer. */
+	private final CharBuffer view;
+
+	/** Number of characters of text waiting. */
+	private int length;
+
+	/** Characters of the current tag or entity. */
+	private final StringBuilder markup;
+
+	/** Where the stripper is in the markup. */
+	private State state;
+
+	/** Closing tag that ends the current script or style element. */
+	private String closing;
+
+	/** Number of characters of the closing tag or comment end matched. */
+	private int matched;
+
+	/**
+	 * Initializes a stripper that passes text to the given tokenizer.
+	 *
+	 * @param tokenizer
+	 *            tokenizer to pass text to
+	 */
+	public HtmlStripper(WordTokenizer tokenizer) {
+		this.tokenizer = tokenizer;
+		this.links = new ArrayList<>();
+		this.text = new char[1024];
+		this.view = CharBuffer.wrap(text);
+		this.length = 0;
+		this.markup = new StringBuilder();
+		this.state = State.TEXT;
+	}
+
+	/**
+	 * Removes the markup from part of a page.
+	 *
+	 * @param html
+	 *            characters of the page
+	 * @param start
+	 *            index of first character to use
+	 * @param end
+	 *            index after last character to use
+	 */
+	public void feed(char[] html, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = html[i];
+			switch (state) {
+			case TEXT:
+				if (c == '<') {
+					markup.setLength(0);
+					state = State.TAG;
+				} else if (c == '&') {
+					markup.setLength(0);
+					state = State.ENTITY;
+				} else {
+					append(c);
+				}
+				break;
+			case TAG:
+				if (c == '>') {
+					endTag();
+				} else {
+					if (markup.length() < TAG_LIMIT) {
+						markup.append(c);
+					}
+					if (markup.length() == 3 && markup.charAt(0) == '!' && markup.charAt(1) == '-'
+							&& markup.charAt(2) == '-') {
+						matched = 0;
+						state = State.COMMENT;
+					}
+				}
+				break;
+			case ENTITY:
+				if (c == ';') {
+					appendEntity(markup.toString());
+					state = State.TEXT;
+				} else if (Character.isLetterOrDigit(c) || (c == '#' && markup.length() == 0)) {
+					markup.append(c);
+					if (markup.length() > ENTITY_LIMIT) {
+						appendRaw();
+						state = State.TEXT;
+					}
+				} else {
+					/* not an entity after all, so the text is kept as it is */
+					appendRaw();
+					state = State.TEXT;
+					i--;
+				}
+				break;
+			case COMMENT:
+				if (c == '>' && matched >= 2) {
+					append(' ');
+					state = State.TEXT;
+				} else {
+					matched = c == '-' ? matched + 1 : 0;
+				}
+				break;
+			case ELEMENT:
+				if (Character.toLowerCase(c) == closing.charAt(matched)) {
+					matched++;
+					if (matched == closing.length()) {
+						state = State.CLOSING;
+					}
+				} else {
+					matched = c == '<' ? 1 : 0;
+				}
+				break;
+			case CLOSING:
+				if (c == '>') {
+					append(' ');
+					state = State.TEXT;
+				}
+				break;
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Ends the text of the page. Anything left in an unfinished tag or
+	 * element is dropped.
+	 */
+	public void end() {
+		if (state == State.ENTITY) {
+			appendRaw();
+		}
+		state = State.TEXT;
+		flush();
+		tokenizer.end();
+	}
+
+	/**
+	 * Returns the links found in anchor tags so far, as written in the page.
+	 *
+	 * @return links found
+	 */
+	public List<String> getLinks() {
+		return links;
+	}
+
+	/**
+	 * Handles the end of a tag: keeps the link of an anchor tag, starts
+	 * skipping script and style elements, and separates words unless the tag
+	 * is an inline tag.
+	 */
+	private void endTag() {
+		state = State.TEXT;
+		int start = markup.length() > 0 && markup.charAt(0) == '/' ? 1 : 0;
+		int end = start;
+		while (end < markup.length() && Character.isLetterOrDigit(markup.charAt(end))) {
+			end++;
+		}
+		String name = markup.substring(start, end).toLowerCase(Locale.ROOT);
+
+		if (start == 0 && (name.equals("script") || name.equals("style"))) {
+			closing = "</" + name;
+			matched = 0;
+			state = State.ELEMENT;
+		} else if (start == 0 && name.equals("a")) {
+			Matcher matcher = HREF_REGEX.matcher(markup);
+			if (matcher.find()) {
+				String link = matcher.group(1) != null ? matcher.group(1)
+						: matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+				links.add(decode(link.trim()));
+			}
+		}
+
+		if (!INLINE_TAGS.contains(name)) {
+			append(' ');
+		}
+	}
+
+	/**
+	 * Appends the character of an entity. Named entities that are not known
+	 * are removed.
+	 *
+	 * @param entity
+	 *            name of the entity, without the ampersand and semicolon
+	 */
+	private void appendEntity(String entity) {
+		int codePoint = codePoint(entity);
+		if (codePoint < 0) {
+			return;
+		} else if (Character.isBmpCodePoint(codePoint)) {
+			append((char) codePoint);
+		} else {
+			append(Character.highSurrogate(codePoint));
+			append(Character.lowSurrogate(codePoint));
+		}
+	}
+
+	/**
+	 * Appends the ampersand and characters of an entity that turned out not
+	 * to be one.
+	 */
+	private void appendRaw() {
+		append('&');
+		for (int i = 0; i < markup.length(); i++) {
+			append(markup.charAt(i));
+		}
+	}
+
+	/**
+	 * Returns the code point of a numeric or common named entity.
+	 *
+	 * @param entity
+	 *            name of the entity, without the ampersand and semicolon
+	 * @return code point, or -1 if the entity is not known
+	 */
+	private static int codePoint(String entity) {
+		if (entity.startsWith("#")) {
+			try {
+				int codePoint = entity.length() > 1 && (entity.charAt(1) == 'x' || entity.charAt(1) == 'X')
+						? Integer.parseInt(entity.substring(2), 16)
+						: Integer.parseInt(entity.substring(1));
+				return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		switch (entity) {
+		case "amp":
+			return '&';
+		case "lt":
+			return '<';
+		case "gt":
+			return '>';
+		case "quot":
+			return '"';
+		case "apos":
+			return '\'';
+		case "nbsp":
+			return ' ';
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Decodes the character entities of a link.
+	 *
+	 * @param link
+	 *            link as written in the page
+	 * @return decoded link
+	 */
+	private static String decode(String link) {
+		if (link.indexOf('&') < 0) {
+			return link;
+		}
+		StringBuilder builder = new StringBuilder(link.length());
+		int i = 0;
+		while (i < link.length()) {
+			char c = link.charAt(i);
+			int semicolon = c == '&' ? link.indexOf(';', i) : -1;
+			int codePoint = semicolon > i && semicolon - i <= ENTITY_LIMIT + 1
+					? codePoint(link.substring(i + 1, semicolon))
+					: -1;
+			if (codePoint >= 0) {
+				builder.appendCodePoint(codePoint);
+				i = semicolon + 1;
+			} else {
+				builder.append(c);
+				i++;
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Adds a character to the text waiting to be passed to the tokenizer.
+	 *
+	 * @param c
+	 *            character to add
+	 */
+	private void append(char c) {
+		if (length == text.length) {
+			flush();
+		}
+		text[length++] = c;
+	}
+
+	/**
+	 * Passes the waiting text to the tokenizer.
+	 */
+	private void flush() {
+		if (length > 0) {
+			tokenizer.feed(view, 0, length);
+			length = 0;
+		}
+	}
+}
@@ -1,10 +1,16 @@
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * InvertedIndex stores words and it's attributes into an index from input
@@ -17,16 +23,186 @@ import java.util.TreeSet;
 public class InvertedIndex {
 
 	/**
-	 * Stores a word to a map of paths to a set of locations.
+	 * Stores a word to a map of paths to a compressed list of locations.
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	protected final NavigableMap<String, NavigableMap<String, PostingList>> index;
+
+	/**
+	 * Hash table of the same words and paths as the sorted index, used to find
+	 * whole words with a single lookup. It is only built the first time whole
+	 * words are looked up, so indexes that are only built or searched by
+	 * prefix never pay for it.
+	 */
+	protected volatile Map<String, NavigableMap<String, PostingList>> lookup;
+
+	/**
+	 * Words found in each path, so a path can be removed without visiting
+	 * every word of the index. It is only built the first time a path is
+	 * removed, so indexes that never remove paths never pay for it.
+	 */
+	protected volatile Map<String, List<String>> pathWords;
+
+	/** Number of times the index has been modified. */
+	private final AtomicLong version = new AtomicLong();
 
 	public InvertedIndex() {
-		index = new TreeMap<>();
+		this(new TreeMap<String, NavigableMap<String, PostingList>>());
+	}
+
+	/**
+	 * Initializes the index with the given (empty) map. Used by subclasses that
+	 * need a different kind of map to store words.
+	 *
+	 * @param index
+	 *            empty map to store words in
+	 */
+	protected InvertedIndex(NavigableMap<String, NavigableMap<String, PostingList>> index) {
+		this.index = index;
+	}
+
+	/**
+	 * Puts a new word and its paths in both the sorted index and the hash
+	 * table, if it has been built.
+	 *
+	 * @param word
+	 *            word to put
+	 * @param paths
+	 *            paths of the word
+	 */
+	protected void putWord(String word, NavigableMap<String, PostingList> paths) {
+		index.put(word, paths);
+		Map<String, NavigableMap<String, PostingList>> lookup = this.lookup;
+		if (lookup != null) {
+			lookup.put(word, paths);
+		}
+	}
+
+	/**
+	 * Removes a word from both the sorted index and the hash table, if it has
+	 * been built.
+	 *
+	 * @param word
+	 *            word to remove
+	 */
+	protected void removeWord(String word) {
+		index.remove(word);
+		Map<String, NavigableMap<String, PostingList>> lookup = this.lookup;
+		if (lookup != null) {
+			lookup.remove(word);
+		}
+	}
+
+	/**
+	 * Returns the paths of a whole word with a single lookup in the hash
+	 * table, building the table first if needed.
+	 *
+	 * @param word
+	 *            word to look up
+	 * @return paths of the word, or null if the word is not in the index
+	 */
+	protected NavigableMap<String, PostingList> wordPaths(String word) {
+		Map<String, NavigableMap<String, PostingList>> lookup = this.lookup;
+		if (lookup == null) {
+			lookup = buildLookup();
+		}
+		return lookup.get(word);
+	}
+
+	/**
+	 * Builds the hash table of words from the sorted index, unless it has
+	 * already been built.
+	 *
+	 * @return hash table of words
+	 */
+	protected synchronized Map<String, NavigableMap<String, PostingList>> buildLookup() {
+		if (lookup == null) {
+			lookup = new HashMap<String, NavigableMap<String, PostingList>>(index);
+		}
+		return lookup;
 	}
 
 	/**
-	 * Adds words into index.
+	 * Records that a word is now found in a path it was not found in before.
+	 * Nothing is recorded until the words of each path are tracked.
+	 *
+	 * @param path
+	 *            path the word is found in
+	 * @param word
+	 *            word found in the path
+	 */
+	protected void addPathWord(String path, String word) {
+		Map<String, List<String>> pathWords = this.pathWords;
+		if (pathWords == null) {
+			return;
+		}
+		List<String> words = pathWords.get(path);
+		if (words == null) {
+			words = new ArrayList<>();
+			pathWords.put(path, words);
+		}
+		words.add(word);
+	}
+
+	/**
+	 * Starts tracking the words found in each path, finding the words of the
+	 * paths already in the index, unless they are already tracked. Called
+	 * before the first path is removed.
+	 *
+	 * @return words found in each path
+	 */
+	protected synchronized Map<String, List<String>> trackPaths() {
+		if (pathWords == null) {
+			pathWords = findPathWords(entries(), new HashMap<String, List<String>>());
+		}
+		return pathWords;
+	}
+
+	/**
+	 * Adds the words found in each path to a map of paths to words.
+	 *
+	 * @param elements
+	 *            words and their paths
+	 * @param pathWords
+	 *            map to add the words of each path to
+	 * @return the map of paths to words
+	 */
+	protected static Map<String, List<String>> findPathWords(
+			Iterable<Entry<String, NavigableMap<String, PostingList>>> elements, Map<String, List<String>> pathWords) {
+		for (Entry<String, NavigableMap<String, PostingList>> word : elements) {
+			for (String path : word.getValue().keySet()) {
+				List<String> words = pathWords.get(path);
+				if (words == null) {
+					words = new ArrayList<>();
+					pathWords.put(path, words);
+				}
+				words.add(word.getKey());
+			}
+		}
+		return pathWords;
+	}
+
+	/**
+	 * Creates the map used to store the paths of a new word.
+	 *
+	 * @return empty map of paths to positions
+	 */
+	protected NavigableMap<String, PostingList> newPaths() {
+		return new TreeMap<String, PostingList>();
+	}
+
+	/**
+	 * Creates the list used to store the positions of a word in a new path.
+	 *
+	 * @return empty list of positions
+	 */
+	protected PostingList newPositions() {
+		return new PostingList();
+	}
+
+	/**
+	 * Adds words into index. The version of the index is not changed for
+	 * every word; whoever adds words one at a time calls {@link #modified()}
+	 * once done, as {@link InvertedIndexBuilder} does after each file.
 	 *
 	 * @param word
 	 *            word in file
@@ -36,25 +212,197 @@ public class InvertedIndex {
 	 *            index of word
 	 */
 	public void add(String word, String path, Integer position) {
-		if (!hasWord(word)) {
-			index.put(word, new TreeMap<String, TreeSet<Integer>>());
+		NavigableMap<String, PostingList> paths = index.get(word);
+		PostingList positions = paths == null ? null : paths.get(path);
+
+		if (positions != null) {
+			positions.add(position);
+			return;
+		}
+
+		/* new maps and lists are filled before they are put in the index */
+		positions = newPositions();
+		positions.add(position);
+		if (paths == null) {
+			paths = newPaths();
+			paths.put(path, positions);
+			putWord(word, paths);
+		} else {
+			paths.put(path, positions);
+		}
+		addPathWord(path, word);
+	}
+
+	/**
+	 * Adds all words, paths, and positions from another index into this index.
+	 * The other index is read through {@link #entries()}, so it may be any
+	 * kind of index. Paths missing from this index reuse the other index's
+	 * position lists, so the other index should not be modified afterwards.
+	 *
+	 * @param other
+	 *            index to merge into this index
+	 */
+	public void addAll(InvertedIndex other) {
+		for (Entry<String, NavigableMap<String, PostingList>> entry : other.entries()) {
+			String word = entry.getKey();
+			NavigableMap<String, PostingList> otherPaths = entry.getValue();
+			NavigableMap<String, PostingList> paths = index.get(word);
+
+			if (paths == null) {
+				paths = newPaths();
+				paths.putAll(otherPaths);
+				putWord(word, paths);
+				for (String path : otherPaths.keySet()) {
+					addPathWord(path, word);
+				}
+			} else {
+				for (Entry<String, PostingList> path : otherPaths.entrySet()) {
+					PostingList positions = paths.get(path.getKey());
+					if (positions == null) {
+						paths.put(path.getKey(), path.getValue());
+						addPathWord(path.getKey(), word);
+					} else {
+						positions.addAll(path.getValue());
+					}
+				}
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Removes all positions found in a path from the index. Words that are no
+	 * longer found in any path are removed as well. Only the words found in
+	 * the path are visited, once the words of each path are tracked.
+	 *
+	 * @param path
+	 *            path to remove
+	 * @return true if the index contained the path
+	 */
+	public boolean remove(String path) {
+		List<String> words = trackPaths().remove(path);
+		if (words == null) {
+			return false;
 		}
-		if (!hasPath(word, path)) {
-			index.get(word).put(path, new TreeSet<Integer>());
+		for (String word : words) {
+			NavigableMap<String, PostingList> paths = index.get(word);
+			if (paths != null && paths.remove(path) != null && paths.isEmpty()) {
+				removeWord(word);
+			}
 		}
-		index.get(word).get(path).add(position);
+		modified();
+		return true;
+	}
+
+	/**
+	 * Replaces all positions found in a path with the positions found in that
+	 * path in another index. Used to update the index after a file changes.
+	 *
+	 * @param path
+	 *            path to replace
+	 * @param other
+	 *            index containing only the new positions of the path
+	 */
+	public void replace(String path, InvertedIndex other) {
+		remove(path);
+		addAll(other);
+	}
 
+	/**
+	 * Returns a number that changes every time the index is modified. Results
+	 * computed from the index are out of date once this number changes.
+	 *
+	 * @return version of the index
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Marks the index as modified. Must be called after a change to the index
+	 * has been made, so a reader that sees the new version also sees the
+	 * change. Called once per {@link #addAll(InvertedIndex)},
+	 * {@link #remove(String)}, or {@link #replace(String, InvertedIndex)},
+	 * and once per file built with {@link #add(String, String, Integer)},
+	 * rather than once per word.
+	 */
+	protected void modified() {
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Returns the words in the index in sorted order, along with their paths.
+	 * Other indexes read this index through this method, so subclasses that
+	 * do not keep their words in {@link #index} override it.
+	 *
+	 * @return sorted words and their paths
+	 */
+	public Iterable<Entry<String, NavigableMap<String, PostingList>>> entries() {
+		return index.entrySet();
+	}
+
+	/**
+	 * Returns an immutable copy of the index that stores its words in a
+	 * front-coded dictionary. The copy shares the paths and positions of this
+	 * index, so this index should not be modified afterwards.
+	 *
+	 * @return compact copy of the index
+	 */
+	public CompactInvertedIndex compact() {
+		return new CompactInvertedIndex(index);
+	}
+
+	/**
+	 * Returns a copy of the index that keeps its positions outside the Java
+	 * heap. The copy does not share anything with this index.
+	 *
+	 * @return off-heap copy of the index
+	 */
+	public OffHeapInvertedIndex offHeap() {
+		return new OffHeapInvertedIndex(index.entrySet());
 	}
 
 	/**
 	 * Calls writeNestedObject method in OutputFileWriter class that writes the
-	 * inverted index in proper format.
+	 * inverted index in proper format, as pretty-printed JSON that is not
+	 * compressed.
 	 *
 	 * @param file
 	 *            output file
 	 */
 	public void writeJSON(Path file) {
-		OutputFileWriter.writeInvertedIndex(file, index);
+		writeJSON(file, 1, OutputFormat.PRETTY, false);
+	}
+
+	/**
+	 * Calls writeInvertedIndex method in OutputFileWriter class that writes the
+	 * inverted index in the given format, serializing chunks of words on the
+	 * given number of threads.
+	 *
+	 * @param file
+	 *            output file
+	 * @param threads
+	 *            number of threads to serialize with
+	 * @param format
+	 *            format of the file
+	 * @param compressed
+	 *            true to compress the file with gzip
+	 */
+	public void writeJSON(Path file, int threads, OutputFormat format, boolean compressed) {
+		OutputFileWriter.writeInvertedIndex(file, index.entrySet(), threads, format, compressed);
+	}
+
+	/**
+	 * Calls writeIndex method in BinaryIndexWriter class that writes the
+	 * inverted index to a compact binary file.
+	 *
+	 * @param file
+	 *            binary output file
+	 *
+	 * @see MappedInvertedIndex
+	 */
+	public void writeBinary(Path file) {
+		BinaryIndexWriter.writeIndex(file, index);
 	}
 
 	/**
@@ -114,37 +462,481 @@ public class InvertedIndex {
 	 * @param cleanQueries:
 	 *            list of normalized queries
 	 * @return List of SearchResult objects
+	 *
+	 * @see #partialSearch(List, int)
 	 */
 	public List<SearchResult> partialSearch(List<String> cleanQueries) {
+		return partialSearch(cleanQueries, 0);
+	}
+
+	/**
+	 * Create SearchResult objects for each query, keeping only the given
+	 * number of best results.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	public List<SearchResult> partialSearch(List<String> cleanQueries, int limit) {
 		HashMap<String, SearchResult> searchResultMap = new HashMap<>();
 		List<SearchResult> searchResults = new ArrayList<>();
 
 		for (String query : cleanQueries) {
-			for (String word : index.tailMap(query).keySet()) {
-				if (word.startsWith(query)) {
-					for (String path : index.get(word).keySet()) {
-						int frequency = index.get(word).get(path).size();
-						int position = index.get(word).get(path).first();
-
-						if (searchResultMap.containsKey(path)) {
-							searchResultMap.get(path).update(frequency, position);
-						} else {
-							SearchResult newSearchResult = new SearchResult(frequency, position, path);
-							searchResultMap.put(path, newSearchResult);
-							searchResults.add(newSearchResult);
-						}
-					}
+			for (Entry<String, NavigableMap<String, PostingList>> word : index.tailMap(query).entrySet()) {
+				if (word.getKey().startsWith(query)) {
+					addResults(word.getValue(), searchResultMap, searchResults);
 				} else {
 					break;
 				}
 			}
 		}
-		Collections.sort(searchResults);
-		return searchResults;
+		return top(searchResults, limit);
+	}
+
+	/**
+	 * Create SearchResult objects for each of many queries at once, the same
+	 * as calling {@link #partialSearch(List, int)} for each of them. Every
+	 * distinct query word is looked up once, in a single pass over the words
+	 * of the index, and the results of each query are put together from the
+	 * totals of its words.
+	 *
+	 * @param batch:
+	 *            list of normalized queries for each query
+	 * @param limit:
+	 *            maximum number of results of each query, or 0 for every
+	 *            result
+	 * @return List of SearchResult objects for each query, in the same order
+	 *
+	 * @see PrefixSweep
+	 */
+	public List<List<SearchResult>> batchPartialSearch(List<List<String>> batch, int limit) {
+		PrefixSweep sweep = new PrefixSweep(batch);
+		String prefix;
+		while ((prefix = sweep.seek()) != null) {
+			boolean more = false;
+			for (Entry<String, NavigableMap<String, PostingList>> word : index.tailMap(prefix).entrySet()) {
+				if (!sweep.enter(word.getKey())) {
+					more = true;
+					break;
+				}
+				for (Entry<String, PostingList> path : word.getValue().entrySet()) {
+					sweep.add(sweep.document(path.getKey()), path.getValue().size(), path.getValue().first());
+				}
+			}
+			if (!more) {
+				sweep.end();
+			}
+		}
+		return sweep.results(limit);
+	}
+
+	/**
+	 * Create SearchResult objects for each query, only matching whole words.
+	 * Each query is found with a single lookup in the hash table.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @return List of SearchResult objects
+	 *
+	 * @see #exactSearch(List, int)
+	 */
+	public List<SearchResult> exactSearch(List<String> cleanQueries) {
+		return exactSearch(cleanQueries, 0);
+	}
+
+	/**
+	 * Create SearchResult objects for each query, only matching whole words
+	 * and keeping only the given number of best results. Results are added up
+	 * and sorted the same way as {@link #partialSearch(List, int)}.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	public List<SearchResult> exactSearch(List<String> cleanQueries, int limit) {
+		HashMap<String, SearchResult> searchResultMap = new HashMap<>();
+		List<SearchResult> searchResults = new ArrayList<>();
+
+		for (String query : cleanQueries) {
+			NavigableMap<String, PostingList> paths = wordPaths(query);
+			if (paths != null) {
+				addResults(paths, searchResultMap, searchResults);
+			}
+		}
+		return top(searchResults, limit);
+	}
+
+	/**
+	 * Create SearchResult objects for the paths where the query words are
+	 * found at consecutive positions, in order. The frequency of a result is
+	 * the number of times the whole phrase is found, and its position is where
+	 * the phrase is first found. The words are checked from the one found in
+	 * the fewest paths to the one found in the most, so most paths are ruled
+	 * out after looking at a single word.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized query words, in phrase order
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	public List<SearchResult> phraseSearch(List<String> cleanQueries, int limit) {
+		List<SearchResult> searchResults = new ArrayList<>();
+		int words = cleanQueries.size();
+		if (words == 0) {
+			return searchResults;
+		}
+
+		List<NavigableMap<String, PostingList>> wordPaths = new ArrayList<>(words);
+		Integer[] order = new Integer[words];
+		for (int i = 0; i < words; i++) {
+			NavigableMap<String, PostingList> paths = wordPaths(cleanQueries.get(i));
+			if (paths == null) {
+				return searchResults;
+			}
+			wordPaths.add(paths);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(wordPaths.get(a).size(), wordPaths.get(b).size());
+			}
+		});
+
+		PhraseMatcher matcher = new PhraseMatcher(words);
+		PostingList[] positions = new PostingList[words];
+		for (Entry<String, PostingList> path : wordPaths.get(order[0]).entrySet()) {
+			positions[order[0]] = path.getValue();
+			boolean found = true;
+			for (int i = 1; i < words && found; i++) {
+				positions[order[i]] = wordPaths.get(order[i]).get(path.getKey());
+				found = positions[order[i]] != null;
+			}
+
+			if (found && matcher.match(positions)) {
+				searchResults.add(new SearchResult(matcher.count(), matcher.first(), path.getKey()));
+			}
+		}
+		return top(searchResults, limit);
+	}
+
+	/**
+	 * Create SearchResult objects for the paths where every query matches at
+	 * least one word, keeping only the given number of best results. Results
+	 * are added up the same way as {@link #partialSearch(List, int)}, but only
+	 * for paths matched by every query.
+	 *
+	 * The paths are visited one at a time in sorted order instead of
+	 * gathering the paths of each query. Queries are checked from the one with
+	 * the fewest paths to the one with the most, and the others skip ahead to
+	 * the current path with {@link NavigableMap#ceilingKey(Object)}, so the
+	 * search stops as soon as any query runs out of paths.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param exact:
+	 *            true if queries only match whole words, false if they match
+	 *            words they are a prefix of
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	public List<SearchResult> conjunctiveSearch(List<String> cleanQueries, boolean exact, int limit) {
+		List<SearchResult> searchResults = new ArrayList<>();
+		int queries = cleanQueries.size();
+		if (queries == 0) {
+			return searchResults;
+		}
+
+		PathCursor[] cursors = new PathCursor[queries];
+		for (int i = 0; i < queries; i++) {
+			String query = cleanQueries.get(i);
+			List<NavigableMap<String, PostingList>> words = new ArrayList<>();
+			if (exact) {
+				NavigableMap<String, PostingList> paths = wordPaths(query);
+				if (paths != null) {
+					words.add(paths);
+				}
+			} else {
+				for (Entry<String, NavigableMap<String, PostingList>> word : index.tailMap(query).entrySet()) {
+					if (!word.getKey().startsWith(query)) {
+						break;
+					}
+					words.add(word.getValue());
+				}
+			}
+			cursors[i] = new PathCursor(words);
+		}
+		Arrays.sort(cursors, new Comparator<PathCursor>() {
+			@Override
+			public int compare(PathCursor a, PathCursor b) {
+				return Long.compare(a.cost, b.cost);
+			}
+		});
+
+		String path = cursors[0].advance("");
+		candidates:
+		while (path != null) {
+			for (int i = 1; i < queries; i++) {
+				String next = cursors[i].advance(path);
+				if (next == null) {
+					break candidates;
+				}
+				if (!next.equals(path)) {
+					path = cursors[0].advance(next);
+					continue candidates;
+				}
+			}
+
+			SearchResult searchResult = null;
+			for (PathCursor cursor : cursors) {
+				searchResult = cursor.addResults(path, searchResult);
+			}
+			searchResults.add(searchResult);
+
+			/* the smallest path that comes after this one */
+			path = cursors[0].advance(path + '\0');
+		}
+		return top(searchResults, limit);
+	}
+
+	/**
+	 * Searches the index for each query using the given search mode.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param mode:
+	 *            how queries are matched to words in the index
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	public List<SearchResult> search(List<String> cleanQueries, SearchMode mode, int limit) {
+		switch (mode) {
+		case EXACT:
+			return exactSearch(cleanQueries, limit);
+		case PHRASE:
+			return phraseSearch(cleanQueries, limit);
+		case ALL:
+			return conjunctiveSearch(cleanQueries, false, limit);
+		case ALL_EXACT:
+			return conjunctiveSearch(cleanQueries, true, limit);
+		default:
+			return partialSearch(cleanQueries, limit);
+		}
+	}
+
+	/**
+	 * Adds the frequency and first position of a word in each of its paths to
+	 * the search results.
+	 *
+	 * @param paths
+	 *            paths and positions of a word
+	 * @param searchResultMap
+	 *            search results by path
+	 * @param searchResults
+	 *            search results in the order they were found
+	 */
+	private static void addResults(NavigableMap<String, PostingList> paths,
+			HashMap<String, SearchResult> searchResultMap, List<SearchResult> searchResults) {
+		for (Entry<String, PostingList> path : paths.entrySet()) {
+			int frequency = path.getValue().size();
+			int position = path.getValue().first();
+
+			SearchResult searchResult = searchResultMap.get(path.getKey());
+			if (searchResult != null) {
+				searchResult.update(frequency, position);
+			} else {
+				searchResult = new SearchResult(frequency, position, path.getKey());
+				searchResultMap.put(path.getKey(), searchResult);
+				searchResults.add(searchResult);
+			}
+		}
+	}
+
+	/**
+	 * Returns the given number of best search results in sorted order. Only
+	 * the best results are kept in a bounded heap, so the rest of the results
+	 * never have to be sorted.
+	 *
+	 * @param searchResults
+	 *            unsorted search results
+	 * @param limit
+	 *            maximum number of results, or 0 for every result
+	 * @return sorted search results
+	 */
+	public static List<SearchResult> top(List<SearchResult> searchResults, int limit) {
+		if (limit <= 0 || searchResults.size() <= limit) {
+			Collections.sort(searchResults);
+			return searchResults;
+		}
+
+		/* the head of the heap is the worst result kept so far */
+		PriorityQueue<SearchResult> heap = new PriorityQueue<>(limit + 1, Collections.reverseOrder());
+		for (SearchResult searchResult : searchResults) {
+			if (heap.size() < limit) {
+				heap.add(searchResult);
+			} else if (searchResult.compareTo(heap.peek()) < 0) {
+				heap.poll();
+				heap.add(searchResult);
+			}
+		}
+
+		List<SearchResult> best = new ArrayList<>(heap);
+		Collections.sort(best);
+		return best;
 	}
 
 	@Override
 	public String toString() {
 		return "InvertedIndex [index=" + index + "]";
 	}
+
+	/**
+	 * Moves forward through the sorted paths of every word matched by a
+	 * query, as if they were a single sorted list of paths. The words are
+	 * kept in a heap ordered by their current path, so only the words behind
+	 * the target have to move, and words that run out of paths are dropped.
+	 */
+	private static class PathCursor {
+
+		/** Paths and positions of each word matched by the query. */
+		private final List<NavigableMap<String, PostingList>> words;
+
+		/** Heap of the words that have not run out of paths. */
+		private final int[] heap;
+
+		/** Current path of each word. */
+		private final String[] current;
+
+		/** Number of words in the heap. */
+		private int count;
+
+		/** Total number of paths of every word. */
+		private final long cost;
+
+		/**
+		 * Initializes a cursor before the first path.
+		 *
+		 * @param words
+		 *            paths and positions of each word matched by the query
+		 */
+		public PathCursor(List<NavigableMap<String, PostingList>> words) {
+			this.words = words;
+			this.heap = new int[words.size()];
+			this.current = new String[words.size()];
+			long cost = 0;
+			for (int i = 0; i < current.length; i++) {
+				NavigableMap<String, PostingList> paths = words.get(i);
+				if (!paths.isEmpty()) {
+					current[i] = paths.firstKey();
+					heap[count++] = i;
+				}
+				cost += paths.size();
+			}
+			this.cost = cost;
+			for (int i = count / 2 - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+		}
+
+		/**
+		 * Moves every word to its first path that is not less than the
+		 * target.
+		 *
+		 * @param target
+		 *            path to find
+		 * @return first path of any word that is not less than the target, or
+		 *         null if every word has run out
+		 */
+		public String advance(String target) {
+			while (count > 0) {
+				int word = heap[0];
+				if (current[word].compareTo(target) >= 0) {
+					return current[word];
+				}
+
+				current[word] = words.get(word).ceilingKey(target);
+				if (current[word] == null) {
+					heap[0] = heap[--count];
+				}
+				siftDown(0);
+			}
+			return null;
+		}
+
+		/**
+		 * Adds the frequency and first position of every word found in the
+		 * current path to a search result.
+		 *
+		 * @param path
+		 *            current path
+		 * @param searchResult
+		 *            search result to update, or null to create one
+		 * @return updated search result
+		 */
+		public SearchResult addResults(String path, SearchResult searchResult) {
+			return addResults(0, path, searchResult);
+		}
+
+		/**
+		 * Adds the results of the words found in the current path, in the part
+		 * of the heap starting from the given node. Words below a node are
+		 * never at an earlier path, so the search stops at the first word that
+		 * is past the path.
+		 *
+		 * @param node
+		 *            index in the heap
+		 * @param path
+		 *            current path
+		 * @param searchResult
+		 *            search result to update, or null to create one
+		 * @return updated search result
+		 */
+		private SearchResult addResults(int node, String path, SearchResult searchResult) {
+			if (node >= count || !current[heap[node]].equals(path)) {
+				return searchResult;
+			}
+			PostingList positions = words.get(heap[node]).get(path);
+			if (searchResult == null) {
+				searchResult = new SearchResult(positions.size(), positions.first(), path);
+			} else {
+				searchResult.update(positions.size(), positions.first());
+			}
+			searchResult = addResults(2 * node + 1, path, searchResult);
+			return addResults(2 * node + 2, path, searchResult);
+		}
+
+		/**
+		 * Moves a word down the heap until it is not after its children.
+		 *
+		 * @param parent
+		 *            index in the heap
+		 */
+		private void siftDown(int parent) {
+			while (true) {
+				int smallest = parent;
+				int left = 2 * parent + 1;
+				int right = left + 1;
+				if (left < count && current[heap[left]].compareTo(current[heap[smallest]]) < 0) {
+					smallest = left;
+				}
+				if (right < count && current[heap[right]].compareTo(current[heap[smallest]]) < 0) {
+					smallest = right;
+				}
+				if (smallest == parent) {
+					return;
+				}
+				int word = heap[parent];
+				heap[parent] = heap[smallest];
+				heap[smallest] = word;
+				parent = smallest;
+			}
+		}
+	}
 }
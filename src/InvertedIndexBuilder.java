@@ -1,11 +1,16 @@
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Build index with words found in given files and their attributes.
@@ -14,6 +19,13 @@ import java.util.List;
  *
  */
 public class InvertedIndexBuilder {
+
+	/** Largest number of bytes to map from a file at once. */
+	public static final int MAP_SIZE = 1 << 30;
+
+	/** Number of characters to decode from a mapped file at once. */
+	public static final int DECODE_SIZE = 1 << 16;
+
 	/**
 	 * Stores all text files from a directory and adds all words from text files
 	 * into the index.
@@ -24,7 +36,24 @@ public class InvertedIndexBuilder {
 	 *            Inverted Index
 	 */
 	public static void addMap(Path input, InvertedIndex index) {
-		parseDirectory(input, index);
+		parseDirectory(input, index, false);
+	}
+
+	/**
+	 * Stores all text files from a directory and adds all words from text files
+	 * into the index, optionally reading files through memory-mapping.
+	 *
+	 * @param input:
+	 *            input directory
+	 * @param index:
+	 *            Inverted Index
+	 * @param mapped:
+	 *            true if files should be memory-mapped
+	 *
+	 * @see #parseMappedFile(String, InvertedIndex)
+	 */
+	public static void addMap(Path input, InvertedIndex index, boolean mapped) {
+		parseDirectory(input, index, mapped);
 	}
 
 	/**
@@ -38,16 +67,56 @@ public class InvertedIndexBuilder {
 	 * @see #parseFile(String, InvertedIndex)
 	 */
 	public static void parseDirectory(Path input, InvertedIndex index) {
+		parseDirectory(input, index, false);
+	}
+
+	/**
+	 * Create arraylist of textfiles from directory and parse files, optionally
+	 * reading files through memory-mapping.
+	 *
+	 * @param input
+	 *            Input directory to search for text files
+	 * @param index
+	 *            Inverted index to store parsed words
+	 *
+	 * @param mapped
+	 *            true if files should be memory-mapped
+	 *
+	 * @see #parseFile(String, InvertedIndex, boolean)
+	 */
+	public static void parseDirectory(Path input, InvertedIndex index, boolean mapped) {
 		if (Files.isDirectory(input)) {
 			ArrayList<String> textFiles = DirectoryTraverser.traverse(input);
 			for (String file : textFiles) {
-				parseFile(file, index);
+				parseFile(file, index, mapped);
 			}
 		}
 	}
 
+	/**
+	 * Parse file into words using either a reader or memory-mapping.
+	 *
+	 * @param input
+	 *            Input file
+	 * @param index
+	 *            Inverted Index
+	 * @param mapped
+	 *            true if the file should be memory-mapped
+	 *
+	 * @see #parseFile(String, InvertedIndex)
+	 * @see #parseMappedFile(String, InvertedIndex)
+	 */
+	public static void parseFile(String input, InvertedIndex index, boolean mapped) {
+		if (mapped) {
+			parseMappedFile(input, index);
+		} else {
+			parseFile(input, index);
+		}
+	}
+
 	/**
 	 * Parse file into words and add words, file name, and position to index.
+	 * The index is marked as modified once, after the whole file is added.
 	 *
 	 * @param input:
 	 *            Input directory
@@ -55,18 +124,163 @@ public class InvertedIndexBuilder {
 	 *            Inverted Index
 	 */
 	public static void parseFile(String input, InvertedIndex index) {
+		long start = System.nanoTime();
+		long cpu = Metrics.cpuTime();
 		try (BufferedReader reader = Files.newBufferedReader(Paths.get(input.toString()), Charset.forName("UTF-8"))) {
 			String line = null;
-			Integer position = 0;
+			IndexHandler handler = new IndexHandler(input.toString(), index);
+			WordTokenizer tokenizer = new WordTokenizer(handler);
 			while ((line = reader.readLine()) != null) {
-				List<String> newLine = WordParser.split(line);
-				for (String word : newLine) {
-					position++;
-					index.add(word, input.toString(), position);
-				}
+				tokenizer.tokenize(line);
 			}
+			record(handler, start, cpu, Metrics.isEnabled() ? Files.size(Paths.get(input)) : 0);
+		} catch (IOException e) {
+			System.err.println("There is an error with file, " + input);
+		}
+		index.modified();
+	}
+
+	/**
+	 * Parse file into words by memory-mapping the file and decoding it in large
+	 * chunks into a reusable buffer, instead of creating a String per line.
+	 * Words are numbered the same way as {@link #parseFile(String,
+	 * InvertedIndex)}, including words that cross the end of a chunk. The
+	 * index is marked as modified once, after the whole file is added.
+	 *
+	 * @param input:
+	 *            Input file
+	 * @param index:
+	 *            Inverted Index
+	 */
+	public static void parseMappedFile(String input, InvertedIndex index) {
+		long begin = System.nanoTime();
+		long cpu = Metrics.cpuTime();
+		try (FileChannel channel = FileChannel.open(Paths.get(input), StandardOpenOption.READ)) {
+			CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder();
+			CharBuffer chars = CharBuffer.allocate(DECODE_SIZE);
+			IndexHandler handler = new IndexHandler(input, index);
+			WordTokenizer tokenizer = new WordTokenizer(handler);
+
+			long size = channel.size();
+			long start = 0;
+			do {
+				long length = Math.min(MAP_SIZE, size - start);
+				MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+				boolean last = start + length == size;
+
+				CoderResult result;
+				do {
+					result = decoder.decode(bytes, chars, last);
+					if (result.isError()) {
+						result.throwException();
+					}
+					feed(chars, tokenizer);
+				} while (result.isOverflow());
+
+				/* bytes of a character split across mappings are mapped again */
+				start += bytes.position();
+			} while (start < size);
+
+			CoderResult result;
+			do {
+				result = decoder.flush(chars);
+				feed(chars, tokenizer);
+			} while (result.isOverflow());
+			tokenizer.end();
+			record(handler, begin, cpu, size);
 		} catch (IOException e) {
 			System.err.println("There is an error with file, " + input);
 		}
+		index.modified();
+	}
+
+	/**
+	 * Passes decoded characters to the tokenizer and clears the buffer.
+	 *
+	 * @param chars
+	 *            buffer of decoded characters
+	 * @param tokenizer
+	 *            tokenizer to pass characters to
+	 */
+	private static void feed(CharBuffer chars, WordTokenizer tokenizer) {
+		chars.flip();
+		tokenizer.feed(chars, 0, chars.length());
+		chars.clear();
+	}
+
+	/**
+	 * Records the metrics of a parsed file. Time spent adding words to the
+	 * index counts as inserting, and the rest as tokenizing. Only the CPU time
+	 * of the whole file is measured; the part spent inserting is taken to be
+	 * its wall time, as {@link Metrics} explains.
+	 *
+	 * @param handler
+	 *            handler that added the words of the file
+	 * @param start
+	 *            {@link System#nanoTime()} when parsing started
+	 * @param cpu
+	 *            {@link Metrics#cpuTime()} when parsing started
+	 * @param bytes
+	 *            size of the file in bytes
+	 */
+	private static void record(IndexHandler handler, long start, long cpu, long bytes) {
+		if (Metrics.isEnabled()) {
+			long elapsed = System.nanoTime() - start;
+			long elapsedCpu = Metrics.cpuTime() - cpu;
+			long insertingCpu = Math.min(handler.inserting, elapsedCpu);
+			Metrics.addTime(Metrics.Phase.INSERT, handler.inserting, insertingCpu);
+			Metrics.addTime(Metrics.Phase.TOKENIZE, elapsed - handler.inserting, elapsedCpu - insertingCpu);
+			Metrics.addFile(bytes);
+		}
+	}
+
+	/**
+	 * Adds each word found by a tokenizer to the index, numbering words from 1
+	 * in the order they are found.
+	 */
+	public static class IndexHandler implements WordTokenizer.WordHandler {
+
+		/** File the words are found in. */
+		private final String path;
+
+		/** Index to add words to. */
+		private final InvertedIndex index;
+
+		/** Position of the last word found. */
+		private int position;
+
+		/** True if time spent adding words is measured. */
+		private final boolean timed;
+
+		/** Nanoseconds spent adding words to the index. */
+		private long inserting;
+
+		/**
+		 * Initializes a handler for words found in a file.
+		 *
+		 * @param path
+		 *            file the words are found in
+		 * @param index
+		 *            index to add words to
+		 */
+		public IndexHandler(String path, InvertedIndex index) {
+			this.path = path;
+			this.index = index;
+			this.position = 0;
+			this.timed = Metrics.isEnabled();
+			this.inserting = 0;
+		}
+
+		@Override
+		public void word(char[] buffer, int length) {
+			position++;
+			if (timed) {
+				long start = System.nanoTime();
+				index.add(new String(buffer, 0, length), path, position);
+				inserting += System.nanoTime() - start;
+			} else {
+				index.add(new String(buffer, 0, length), path, position);
+			}
+		}
 	}
 }
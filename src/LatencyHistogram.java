@@ -0,0 +1,179 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of latencies in nanoseconds. Each power of two is
+ * split into {@link #SUB_BUCKETS} equal buckets, so percentiles are reported
+ * within about 12% of the true value while using a fixed, small amount of
+ * memory no matter how many latencies are recorded.
+ *
+ * @author courtniwong
+ *
+ */
+public class LatencyHistogram {
+
+	/** Number of buckets for each power of two. Must be a power of two. */
+	public static final int SUB_BUCKETS = 8;
+
+	/** Bits needed to number the buckets of a power of two. */
+	private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+	/** Number of recorded latencies in each bucket. */
+	private final AtomicLongArray buckets;
+
+	/** Number of recorded latencies. */
+	private final LongAdder count;
+
+	/** Sum of recorded latencies. */
+	private final LongAdder total;
+
+	/** Largest recorded latency. */
+	private volatile long max;
+
+	/**
+	 * Initializes an empty histogram.
+	 */
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+		this.count = new LongAdder();
+		this.total = new LongAdder();
+		this.max = 0;
+	}
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos
+	 *            latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		buckets.incrementAndGet(bucket(nanos));
+		count.increment();
+		total.add(nanos);
+		if (nanos > max) {
+			synchronized (this) {
+				if (nanos > max) {
+					max = nanos;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the bucket of a latency. Latencies below {@link #SUB_BUCKETS}
+	 * have a bucket each; above that, the bucket is found from the position of
+	 * the highest bit and the bits right after it.
+	 *
+	 * @param nanos
+	 *            latency in nanoseconds
+	 * @return bucket number
+	 */
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * Returns the largest latency that falls in a bucket.
+	 *
+	 * @param bucket
+	 *            bucket number
+	 * @return largest latency of the bucket in nanoseconds
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long start = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return start + (1L << shift) - 1;
+	}
+
+	/**
+	 * Returns the number of recorded latencies.
+	 *
+	 * @return number of latencies
+	 */
+	public long count() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean of the recorded latencies.
+	 *
+	 * @return mean latency in nanoseconds, or 0 if none were recorded
+	 */
+	public double mean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) total.sum() / n;
+	}
+
+	/**
+	 * Returns the largest recorded latency.
+	 *
+	 * @return largest latency in nanoseconds
+	 */
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * Returns the latency that the given fraction of recorded latencies are
+	 * not above, rounded up to the end of its bucket and never above the
+	 * largest latency.
+	 *
+	 * @param fraction
+	 *            fraction between 0 and 1, such as 0.99
+	 * @return latency in nanoseconds, or 0 if none were recorded
+	 */
+	public long percentile(double fraction) {
+		long n = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			n += buckets.get(i);
+		}
+		if (n == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(fraction * n));
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Appends the count, mean, p50, p95, p99, and max latencies in
+	 * microseconds as a JSON object.
+	 *
+	 * @param builder
+	 *            builder to append to
+	 */
+	public void appendJSON(StringBuilder builder) {
+		builder.append("{\"count\":").append(count());
+		builder.append(",\"mean_us\":").append(micros(mean()));
+		builder.append(",\"p50_us\":").append(micros(percentile(0.50)));
+		builder.append(",\"p95_us\":").append(micros(percentile(0.95)));
+		builder.append(",\"p99_us\":").append(micros(percentile(0.99)));
+		builder.append(",\"max_us\":").append(micros(max())).append('}');
+	}
+
+	/**
+	 * Converts nanoseconds to microseconds, rounded to a tenth.
+	 *
+	 * @param nanos
+	 *            time in nanoseconds
+	 * @return time in microseconds
+	 */
+	private static double micros(double nanos) {
+		return Math.round(nanos / 100) / 10.0;
+	}
+}
@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Inverted index loaded from a binary file written by
+ * {@link BinaryIndexWriter}. The file is memory-mapped when the index is
+ * created, but words are only read from it the first time they are used, so
+ * loading an index takes the same time no matter how large it is. Words read
+ * from the file are kept in the index just like words that are added, and new
+ * words may still be added.
+ *
+ * <p>
+ * Terms that have been read are marked in a bit set that is read without
+ * locking, so looking up words that were already read never waits on other
+ * threads. Only reading new terms from the file is synchronized.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class MappedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/** Memory-mapped contents of the binary index file. */
+	private final MappedByteBuffer buffer;
+
+	/** Number of documents in the file. */
+	private final int documentCount;
+
+	/** Offset of the document index in the file. */
+	private final int documentIndex;
+
+	/** Number of terms in the file. */
+	private final int termCount;
+
+	/** Offset of the term index in the file. */
+	private final int termIndex;
+
+	/** Paths of documents that have already been read. */
+	private final String[] documents;
+
+	/**
+	 * Terms that have already been read into the index, 64 to an element. A
+	 * bit is only set once its term is in the index.
+	 */
+	private final AtomicLongArray loaded;
+
+	/**
+	 * Paths removed or replaced since the file was mapped. Their positions in
+	 * the file are out of date, so they are skipped when terms are read.
+	 */
+	private final Set<String> removed;
+
+	/** Number of terms that have been read into the index. */
+	private volatile int loadedCount;
+
+	/** True once every term has been read into the index. */
+	private volatile boolean complete;
+
+	/**
+	 * Memory-maps a binary index file. Only the trailer of the file is read.
+	 *
+	 * @param file
+	 *            binary index file
+	 * @throws IOException
+	 *             if the file cannot be mapped or is not a binary index file
+	 */
+	public MappedInvertedIndex(Path file) throws IOException {
+		super();
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Binary index file is too large to map, " + file);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		int trailer = buffer.limit() - BinaryIndexWriter.TRAILER_SIZE;
+		if (trailer < BinaryIndexWriter.HEADER_SIZE || buffer.getInt(0) != BinaryIndexWriter.MAGIC
+				|| buffer.getInt(4) != BinaryIndexWriter.VERSION
+				|| buffer.getInt(trailer + 16) != BinaryIndexWriter.MAGIC) {
+			throw new IOException("Not a binary index file, " + file);
+		}
+
+		documentCount = buffer.getInt(trailer);
+		documentIndex = buffer.getInt(trailer + 4);
+		termCount = buffer.getInt(trailer + 8);
+		termIndex = buffer.getInt(trailer + 12);
+		documents = new String[documentCount];
+		loaded = new AtomicLongArray((termCount + 63) >>> 6);
+		removed = ConcurrentHashMap.newKeySet();
+		loadedCount = 0;
+		complete = termCount == 0;
+	}
+
+	/**
+	 * Returns the number of terms stored in the binary file.
+	 *
+	 * @return number of terms in the file
+	 */
+	public int fileTerms() {
+		return termCount;
+	}
+
+	/**
+	 * Returns the number of terms read from the binary file so far.
+	 *
+	 * @return number of terms read
+	 */
+	public int loadedTerms() {
+		return loadedCount;
+	}
+
+	@Override
+	public void add(String word, String path, Integer position) {
+		load(word);
+		super.add(word, path, position);
+	}
+
+	@Override
+	public void addAll(InvertedIndex other) {
+		for (Entry<String, NavigableMap<String, PostingList>> word : other.entries()) {
+			load(word.getKey());
+		}
+		super.addAll(other);
+	}
+
+	/**
+	 * Removes all positions found in a path from the index. Terms that have not
+	 * been read from the file yet are not read; the path is skipped when they
+	 * are read instead.
+	 *
+	 * @param path
+	 *            path to remove
+	 * @return true if the index or the file contained the path
+	 */
+	@Override
+	public boolean remove(String path) {
+		boolean inFile = removed.add(path) && hasDocument(path);
+		return super.remove(path) || inFile;
+	}
+
+	/**
+	 * Replaces all positions found in a path with the positions found in that
+	 * path in another index. Only the words of the other index are read from
+	 * the file first; the old positions of the path are skipped when other
+	 * terms are read.
+	 *
+	 * @param path
+	 *            path to replace
+	 * @param other
+	 *            index containing only the new positions of the path
+	 */
+	@Override
+	public void replace(String path, InvertedIndex other) {
+		removed.add(path);
+		for (Entry<String, NavigableMap<String, PostingList>> word : other.entries()) {
+			load(word.getKey());
+		}
+		super.replace(path, other);
+	}
+
+	@Override
+	public void writeJSON(Path file, int threads, OutputFormat format, boolean compressed) {
+		loadAll();
+		super.writeJSON(file, threads, format, compressed);
+	}
+
+	@Override
+	public Iterable<Entry<String, NavigableMap<String, PostingList>>> entries() {
+		loadAll();
+		return super.entries();
+	}
+
+	@Override
+	public CompactInvertedIndex compact() {
+		loadAll();
+		return super.compact();
+	}
+
+	@Override
+	public OffHeapInvertedIndex offHeap() {
+		loadAll();
+		return super.offHeap();
+	}
+
+	@Override
+	public void writeBinary(Path file) {
+		loadAll();
+		super.writeBinary(file);
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		load(word);
+		return super.hasWord(word);
+	}
+
+	@Override
+	public boolean hasPath(String word, String path) {
+		load(word);
+		return super.hasPath(word, path);
+	}
+
+	@Override
+	public boolean hasPosition(String word, String path, int position) {
+		load(word);
+		return super.hasPosition(word, path, position);
+	}
+
+	@Override
+	public List<SearchResult> partialSearch(List<String> cleanQueries, int limit) {
+		for (String query : cleanQueries) {
+			loadPrefix(query);
+		}
+		return super.partialSearch(cleanQueries, limit);
+	}
+
+	@Override
+	public List<List<SearchResult>> batchPartialSearch(List<List<String>> batch, int limit) {
+		HashSet<String> queries = new HashSet<>();
+		for (List<String> cleanQueries : batch) {
+			queries.addAll(cleanQueries);
+		}
+		for (String query : queries) {
+			loadPrefix(query);
+		}
+		return super.batchPartialSearch(batch, limit);
+	}
+
+	@Override
+	public List<SearchResult> exactSearch(List<String> cleanQueries, int limit) {
+		for (String query : cleanQueries) {
+			load(query);
+		}
+		return super.exactSearch(cleanQueries, limit);
+	}
+
+	@Override
+	public List<SearchResult> conjunctiveSearch(List<String> cleanQueries, boolean exact, int limit) {
+		for (String query : cleanQueries) {
+			if (exact) {
+				load(query);
+			} else {
+				loadPrefix(query);
+			}
+		}
+		return super.conjunctiveSearch(cleanQueries, exact, limit);
+	}
+
+	@Override
+	public List<SearchResult> phraseSearch(List<String> cleanQueries, int limit) {
+		for (String query : cleanQueries) {
+			load(query);
+		}
+		return super.phraseSearch(cleanQueries, limit);
+	}
+
+	@Override
+	public String toString() {
+		loadAll();
+		return super.toString();
+	}
+
+	/**
+	 * Reads a word from the file into the index, if it is in the file and has
+	 * not been read yet. Words already in the index were either read already or
+	 * are not in the file, so the file is not searched for them.
+	 *
+	 * @param word
+	 *            word to read
+	 */
+	private void load(String word) {
+		if (complete || index.containsKey(word)) {
+			return;
+		}
+		int term = find(word);
+		if (term < termCount && term(term).equals(word)) {
+			load(term, term + 1);
+		}
+	}
+
+	/**
+	 * Reads all words starting with the prefix from the file into the index.
+	 *
+	 * @param prefix
+	 *            prefix of words to read
+	 */
+	private void loadPrefix(String prefix) {
+		int start = find(prefix);
+		int low = start;
+		int high = termCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (term(middle).startsWith(prefix)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		load(start, low);
+	}
+
+	/**
+	 * Reads all words in the file into the index.
+	 */
+	private void loadAll() {
+		load(0, termCount);
+	}
+
+	/**
+	 * Reads a range of terms from the file into the index, skipping any that
+	 * have already been read. Returns without locking if every term in the
+	 * range has been read.
+	 *
+	 * @param start
+	 *            first term to read
+	 * @param end
+	 *            term after the last term to read
+	 */
+	private void load(int start, int end) {
+		if (!complete && !isLoaded(start, end)) {
+			read(start, end);
+		}
+	}
+
+	/**
+	 * Tests if every term in a range has been read into the index.
+	 *
+	 * @param start
+	 *            first term to test
+	 * @param end
+	 *            term after the last term to test
+	 * @return true if every term in the range has been read
+	 */
+	private boolean isLoaded(int start, int end) {
+		for (int term = start; term < end;) {
+			int element = term >>> 6;
+			int last = Math.min(end, (element + 1) << 6);
+			long mask = (-1L >>> (64 - (last - term))) << term;
+			if ((loaded.get(element) & mask) != mask) {
+				return false;
+			}
+			term = last;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the terms of a range that have not been read yet from the file
+	 * into the index.
+	 *
+	 * @param start
+	 *            first term to read
+	 * @param end
+	 *            term after the last term to read
+	 */
+	private synchronized void read(int start, int end) {
+		int count = loadedCount;
+		for (int term = start; term < end; term++) {
+			int element = term >>> 6;
+			long bit = 1L << term;
+			if ((loaded.get(element) & bit) != 0) {
+				continue;
+			}
+
+			ByteBuffer in = buffer.duplicate();
+			in.position(buffer.getInt(termIndex + 4 * term));
+			String word = readString(in);
+
+			/* the word is filled before it is put in the index */
+			NavigableMap<String, PostingList> paths = newPaths();
+			int documents = PostingList.readVarint(in);
+			int document = 0;
+			for (int i = 0; i < documents; i++) {
+				document += PostingList.readVarint(in);
+				String path = document(document);
+				PostingList positions = PostingList.read(in);
+				if (!removed.contains(path)) {
+					paths.put(path, positions);
+				}
+			}
+
+			if (!paths.isEmpty()) {
+				putWord(word, paths);
+				for (String path : paths.keySet()) {
+					addPathWord(path, word);
+				}
+			}
+			/* bits are only set while holding the lock, so no update is lost */
+			loaded.set(element, loaded.get(element) | bit);
+			count++;
+		}
+
+		loadedCount = count;
+		if (loadedCount == termCount) {
+			complete = true;
+		}
+	}
+
+	/**
+	 * Finds the first term in the file that is not less than the text.
+	 *
+	 * @param text
+	 *            text to search for
+	 * @return index of the first term not less than the text, or the number of
+	 *         terms if there is none
+	 */
+	private int find(String text) {
+		int low = 0;
+		int high = termCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (term(middle).compareTo(text) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Reads a term from the file.
+	 *
+	 * @param term
+	 *            index of the term
+	 * @return term read from the file
+	 */
+	private String term(int term) {
+		ByteBuffer in = buffer.duplicate();
+		in.position(buffer.getInt(termIndex + 4 * term));
+		return readString(in);
+	}
+
+	/**
+	 * Returns the path of a document, reading it from the file the first time.
+	 * The same String is returned for every word found in the document.
+	 *
+	 * @param document
+	 *            document id
+	 * @return path of the document
+	 */
+	private String document(int document) {
+		if (documents[document] == null) {
+			ByteBuffer in = buffer.duplicate();
+			in.position(buffer.getInt(documentIndex + 4 * document));
+			documents[document] = readString(in);
+		}
+		return documents[document];
+	}
+
+	/**
+	 * Tests if a path is one of the documents of the file.
+	 *
+	 * @param path
+	 *            path to look for
+	 * @return true if the file has positions in the path
+	 */
+	private synchronized boolean hasDocument(String path) {
+		for (int document = 0; document < documentCount; document++) {
+			if (document(document).equals(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a string written by {@link BinaryIndexWriter#writeString} from the
+	 * current position of the buffer.
+	 *
+	 * @param in
+	 *            buffer to read from
+	 * @return string read
+	 */
+	private static String readString(ByteBuffer in) {
+		int length = PostingList.readVarint(in);
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
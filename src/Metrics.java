@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.management.OperatingSystemMXBean;
+
+/**
+ * Timings and counts of building the inverted index and answering queries,
+ * shared by the whole program. Nothing about the build or the query file is
+ * recorded until {@link #enable()} is called, so the builders pay no cost for
+ * timing words when no report is wanted. Search requests answered by the web
+ * server are always recorded, since the server reports them either way.
+ *
+ * <p>
+ * Each phase reports its wall time and its CPU time separately. Both are
+ * added up over all threads that ran the phase, so they can be larger than
+ * the time the build took; the wall time of the whole build is reported on
+ * its own. The CPU time of adding words is estimated from its wall time,
+ * since timing the CPU of every word would cost more than adding it; adding
+ * words never waits for input, so the two only differ when the thread is
+ * descheduled. The report also shows the memory in use on the heap and in
+ * {@link OffHeapArena}s when it is made.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class Metrics {
+
+	/** Parts of building and writing the index that are timed. */
+	public enum Phase {
+		/** Finding the text files in the input directory. */
+		TRAVERSAL,
+		/** Reading files and splitting them into words. */
+		TOKENIZE,
+		/** Adding words to the index, or to the partial index of a file. */
+		INSERT,
+		/** Merging the partial index of a file into the shared index. */
+		MERGE,
+		/**
+		 * Writing the index as JSON. It may be serialized on several threads,
+		 * so its CPU time is that of the whole program while it is written.
+		 */
+		JSON_WRITE
+	}
+
+	/** True if metrics are recorded. */
+	private static volatile boolean enabled = false;
+
+	/** Nanoseconds of wall time spent in each phase. */
+	private static final LongAdder[] PHASES = new LongAdder[Phase.values().length];
+
+	/** Nanoseconds of CPU time spent in each phase. */
+	private static final LongAdder[] PHASES_CPU = new LongAdder[Phase.values().length];
+
+	static {
+		for (int i = 0; i < PHASES.length; i++) {
+			PHASES[i] = new LongAdder();
+			PHASES_CPU[i] = new LongAdder();
+		}
+	}
+
+	/** Measures the CPU time of threads, if the runtime supports it. */
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	/** Number of files added to the index. */
+	private static final LongAdder FILES = new LongAdder();
+
+	/** Number of bytes of the files added to the index. */
+	private static final LongAdder BYTES = new LongAdder();
+
+	/** Nanoseconds taken to build the index, from start to finish. */
+	private static final LongAdder BUILD = new LongAdder();
+
+	/** Latencies of query lines, measured around parsing each line. */
+	private static final LatencyHistogram QUERIES = new LatencyHistogram();
+
+	/** Latencies of batches of queries searched at once. */
+	private static final LatencyHistogram BATCHES = new LatencyHistogram();
+
+	/** Number of queries searched in batches. */
+	private static final LongAdder BATCHED = new LongAdder();
+
+	/** Latencies of search requests answered by the web server. */
+	private static final LatencyHistogram REQUESTS = new LatencyHistogram();
+
+	/**
+	 * Starts recording metrics.
+	 */
+	public static void enable() {
+		enabled = true;
+	}
+
+	/**
+	 * Returns true if metrics are recorded.
+	 *
+	 * @return true if enabled
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns the CPU time used by the current thread so far, to be passed to
+	 * {@link #addTime(Phase, long, long)} once a phase is done.
+	 *
+	 * @return nanoseconds of CPU time, or 0 if metrics are not recorded or
+	 *         the runtime cannot measure it
+	 */
+	public static long cpuTime() {
+		if (enabled && THREADS.isCurrentThreadCpuTimeSupported()) {
+			return THREADS.getCurrentThreadCpuTime();
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the CPU time used by every thread of the program so far, for
+	 * phases that hand their work to other threads.
+	 *
+	 * @return nanoseconds of CPU time, or 0 if metrics are not recorded or
+	 *         the runtime cannot measure it
+	 */
+	public static long processCpuTime() {
+		if (enabled && ManagementFactory.getOperatingSystemMXBean() instanceof OperatingSystemMXBean) {
+			return ((OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+		}
+		return 0;
+	}
+
+	/**
+	 * Adds time spent in a phase.
+	 *
+	 * @param phase
+	 *            phase of the build
+	 * @param wallNanos
+	 *            nanoseconds of wall time spent
+	 * @param cpuNanos
+	 *            nanoseconds of CPU time spent
+	 */
+	public static void addTime(Phase phase, long wallNanos, long cpuNanos) {
+		if (enabled) {
+			PHASES[phase.ordinal()].add(wallNanos);
+			PHASES_CPU[phase.ordinal()].add(Math.max(0, cpuNanos));
+		}
+	}
+
+	/**
+	 * Adds a file to the number of files and bytes indexed.
+	 *
+	 * @param bytes
+	 *            size of the file in bytes
+	 */
+	public static void addFile(long bytes) {
+		if (enabled) {
+			FILES.increment();
+			BYTES.add(bytes);
+		}
+	}
+
+	/**
+	 * Adds time spent building the index, from start to finish.
+	 *
+	 * @param nanos
+	 *            nanoseconds spent
+	 */
+	public static void addBuildTime(long nanos) {
+		if (enabled) {
+			BUILD.add(nanos);
+		}
+	}
+
+	/**
+	 * Records the latency of a query line.
+	 *
+	 * @param nanos
+	 *            nanoseconds taken
+	 */
+	public static void recordQuery(long nanos) {
+		if (enabled) {
+			QUERIES.record(nanos);
+		}
+	}
+
+	/**
+	 * Records the latency of a batch of queries searched at once. The queries
+	 * of the batch are not recorded as query lines.
+	 *
+	 * @param nanos
+	 *            nanoseconds taken by the whole batch
+	 * @param queries
+	 *            number of queries in the batch
+	 */
+	public static void recordBatch(long nanos, int queries) {
+		if (enabled) {
+			BATCHES.record(nanos);
+			BATCHED.add(queries);
+		}
+	}
+
+	/**
+	 * Records the latency of a search request, whether or not metrics are
+	 * enabled.
+	 *
+	 * @param nanos
+	 *            nanoseconds taken
+	 */
+	public static void recordRequest(long nanos) {
+		REQUESTS.record(nanos);
+	}
+
+	/**
+	 * Returns the metrics as a JSON object. The build, its phases, and the
+	 * searched queries are only included if metrics are enabled, since they are
+	 * not measured otherwise. Search requests and memory use always are.
+	 *
+	 * @return JSON report
+	 */
+	public static String toJSON() {
+		StringBuilder builder = new StringBuilder(512);
+		builder.append('{');
+		if (enabled) {
+			double seconds = BUILD.sum() / 1e9;
+			long files = FILES.sum();
+			long bytes = BYTES.sum();
+
+			builder.append("\"build\":{\"seconds\":").append(format(seconds));
+			builder.append(",\"files\":").append(files);
+			builder.append(",\"bytes\":").append(bytes);
+			builder.append(",\"files_per_second\":").append(format(seconds > 0 ? files / seconds : 0));
+			builder.append(",\"bytes_per_second\":").append(format(seconds > 0 ? bytes / seconds : 0)).append('}');
+
+			builder.append(",\"phases\":{");
+			for (Phase phase : Phase.values()) {
+				if (phase.ordinal() > 0) {
+					builder.append(',');
+				}
+				builder.append('"').append(phase.name().toLowerCase(Locale.ROOT)).append("\":{");
+				builder.append("\"wall_seconds\":").append(format(PHASES[phase.ordinal()].sum() / 1e9));
+				builder.append(",\"cpu_seconds\":").append(format(PHASES_CPU[phase.ordinal()].sum() / 1e9))
+						.append('}');
+			}
+			builder.append('}');
+
+			builder.append(",\"queries\":");
+			QUERIES.appendJSON(builder);
+			builder.append(",\"batches\":");
+			BATCHES.appendJSON(builder);
+			builder.append(",\"batched_queries\":").append(BATCHED.sum()).append(',');
+		}
+
+		builder.append("\"requests\":");
+		REQUESTS.appendJSON(builder);
+
+		Runtime runtime = Runtime.getRuntime();
+		builder.append(",\"memory\":{\"heap_used_bytes\":").append(runtime.totalMemory() - runtime.freeMemory());
+		builder.append(",\"off_heap_bytes\":").append(OffHeapArena.totalBytes()).append('}');
+		return builder.append('}').toString();
+	}
+
+	/**
+	 * Writes the metrics as JSON to a file.
+	 *
+	 * @param file
+	 *            file to write to
+	 */
+	public static void writeJSON(Path file) {
+		try {
+			Files.write(file, (toJSON() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			System.err.println("Unable to write stats file, " + file);
+		}
+	}
+
+	/**
+	 * Formats a number with at most six decimal places.
+	 *
+	 * @param value
+	 *            number to format
+	 * @return formatted number
+	 */
+	private static String format(double value) {
+		return String.valueOf(Math.round(value * 1e6) / 1e6);
+	}
+}
@@ -0,0 +1,128 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * Build index with words found in given files using a work queue. Each file
+ * is parsed into its own partial index by a worker thread, and the partial
+ * index is then merged into the shared index. A {@link ThreadSafeInvertedIndex}
+ * is merged into by several threads at once; any other index is merged into by
+ * one thread at a time, while the other files are still parsed in parallel.
+ *
+ * @author courtniwong
+ *
+ */
+public class MultithreadedInvertedIndexBuilder {
+
+	/**
+	 * Stores all text files from a directory and adds all words from text files
+	 * into the index using the given number of worker threads.
+	 *
+	 * @param input
+	 *            input directory
+	 * @param index
+	 *            Inverted Index
+	 * @param threads
+	 *            number of worker threads
+	 */
+	public static void addMap(Path input, InvertedIndex index, int threads) {
+		addMap(input, index, threads, false);
+	}
+
+	/**
+	 * Stores all text files from a directory and adds all words from text files
+	 * into the index using the given number of worker threads, optionally
+	 * reading files through memory-mapping.
+	 *
+	 * @param input
+	 *            input directory
+	 * @param index
+	 *            Inverted Index
+	 * @param threads
+	 *            number of worker threads
+	 * @param mapped
+	 *            true if files should be memory-mapped
+	 */
+	public static void addMap(Path input, InvertedIndex index, int threads, boolean mapped) {
+		WorkQueue queue = new WorkQueue(threads);
+		try {
+			parseDirectory(input, index, queue, mapped);
+		} finally {
+			queue.shutdown();
+		}
+	}
+
+	/**
+	 * Create arraylist of textfiles from directory and parse each file on the
+	 * work queue. Returns once every file has been merged into the index.
+	 *
+	 * @param input
+	 *            Input directory to search for text files
+	 * @param index
+	 *            Inverted index to store parsed words
+	 * @param queue
+	 *            work queue used to parse files
+	 * @param mapped
+	 *            true if files should be memory-mapped
+	 *
+	 * @see FileTask
+	 */
+	public static void parseDirectory(Path input, InvertedIndex index, WorkQueue queue,
+			boolean mapped) {
+		if (Files.isDirectory(input)) {
+			ArrayList<String> textFiles = DirectoryTraverser.traverse(input);
+			for (String file : textFiles) {
+				queue.execute(new FileTask(file, index, mapped));
+			}
+			queue.finish();
+		}
+	}
+
+	/**
+	 * Parses a single file into a partial index, then merges the partial index
+	 * into the shared index.
+	 */
+	private static class FileTask implements Runnable {
+
+		/** File to parse. */
+		private final String file;
+
+		/** Shared index to merge into. */
+		private final InvertedIndex index;
+
+		/** True if the file should be memory-mapped. */
+		private final boolean mapped;
+
+		/**
+		 * Initializes a task to parse a file.
+		 *
+		 * @param file
+		 *            file to parse
+		 * @param index
+		 *            shared index to merge into
+		 * @param mapped
+		 *            true if the file should be memory-mapped
+		 */
+		public FileTask(String file, InvertedIndex index, boolean mapped) {
+			this.file = file;
+			this.index = index;
+			this.mapped = mapped;
+		}
+
+		@Override
+		public void run() {
+			InvertedIndex local = new InvertedIndex();
+			InvertedIndexBuilder.parseFile(file, local, mapped);
+			long start = System.nanoTime();
+			long cpu = Metrics.cpuTime();
+			if (index instanceof ThreadSafeInvertedIndex) {
+				index.addAll(local);
+			} else {
+				synchronized (index) {
+					index.addAll(local);
+				}
+			}
+			Metrics.addTime(Metrics.Phase.MERGE, System.nanoTime() - start, Metrics.cpuTime() - cpu);
+		}
+	}
+}
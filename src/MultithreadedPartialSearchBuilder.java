@@ -0,0 +1,201 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Create a LinkedHashMap of queries using a work queue and writes them into an
+ * output file. Queries are stored in the order they are read, regardless of
+ * the order in which the worker threads finish them.
+ *
+ * @author courtniwong
+ *
+ */
+public class MultithreadedPartialSearchBuilder extends PartialSearchBuilder {
+
+	private final WorkQueue queue;
+
+	/**
+	 * Initializes an empty map of query results and a work queue with the
+	 * given number of threads.
+	 *
+	 * @param threads
+	 *            number of worker threads
+	 */
+	public MultithreadedPartialSearchBuilder(int threads) {
+		this(threads, null);
+	}
+
+	/**
+	 * Initializes an empty map of query results that searches through the
+	 * given cache, and a work queue with the given number of threads.
+	 *
+	 * @param threads
+	 *            number of worker threads
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 */
+	public MultithreadedPartialSearchBuilder(int threads, QueryCache cache) {
+		this(threads, cache, 0);
+	}
+
+	/**
+	 * Initializes an empty map of query results that searches through the
+	 * given cache and only keeps the given number of best results for each
+	 * query, and a work queue with the given number of threads.
+	 *
+	 * @param threads
+	 *            number of worker threads
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 * @param limit
+	 *            maximum number of results for each query, or 0 for every
+	 *            result
+	 */
+	public MultithreadedPartialSearchBuilder(int threads, QueryCache cache, int limit) {
+		this(threads, cache, limit, SearchMode.PREFIX);
+	}
+
+	/**
+	 * Initializes an empty map of query results that searches through the
+	 * given cache, only keeps the given number of best results for each
+	 * query, and matches queries to words with the given mode, and a work
+	 * queue with the given number of threads.
+	 *
+	 * @param threads
+	 *            number of worker threads
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 * @param limit
+	 *            maximum number of results for each query, or 0 for every
+	 *            result
+	 * @param mode
+	 *            how queries are matched to words in the index
+	 */
+	public MultithreadedPartialSearchBuilder(int threads, QueryCache cache, int limit, SearchMode mode) {
+		super(cache, limit, mode);
+		queue = new WorkQueue(threads);
+	}
+
+	/**
+	 * Read in queries and create results for queries. Returns once every query
+	 * has been searched. The index must not be modified while searching.
+	 *
+	 * @param queryFile:
+	 *            input queries
+	 * @param index
+	 * @throws IllegalStateException
+	 *             if a query failed to be searched
+	 *
+	 * @see #parseLine(String, InvertedIndex)
+	 */
+	@Override
+	public void buildSearchResults(Path queryFile, InvertedIndex index) {
+		try (BufferedReader reader = Files.newBufferedReader(queryFile, Charset.forName("UTF-8"))) {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				parseLine(line, index);
+			}
+		} catch (IOException e) {
+			System.err.println("Error with file, " + queryFile);
+		}
+		queue.finish();
+	}
+
+	/**
+	 * Reserves the position of the query in the LinkedHashMap, then searches
+	 * the index for the query on the work queue.
+	 *
+	 * @param line:
+	 *            query
+	 * @param index:
+	 *            Inverted Index
+	 */
+	@Override
+	public void parseLine(String line, InvertedIndex index) {
+		synchronized (queryResults) {
+			if (queryResults.containsKey(line)) {
+				return;
+			}
+			queryResults.put(line, null);
+		}
+		queue.execute(new QueryTask(line, index));
+	}
+
+	/**
+	 * Calls writeQueries method in OutputFileWriter to write queries in the
+	 * given format. Waits for any pending queries to finish first. Nothing is
+	 * written if a query failed to be searched, since its results are
+	 * missing.
+	 *
+	 * @param queryFile:
+	 *            input queries
+	 * @param format:
+	 *            format of the file
+	 * @param compressed:
+	 *            true to compress the file with gzip
+	 * @throws IllegalStateException
+	 *             if a query still pending failed to be searched
+	 */
+	@Override
+	public void writeQueryFile(Path queryFile, OutputFormat format, boolean compressed) {
+		queue.finish();
+		synchronized (queryResults) {
+			if (queryResults.containsValue(null)) {
+				System.err.println("Unable to write results of failed queries, " + queryFile);
+				return;
+			}
+			OutputFileWriter.writeQuery(queryFile, queryResults, format, compressed);
+		}
+	}
+
+	/**
+	 * Shuts down the work queue. Should be called once all queries are done.
+	 */
+	@Override
+	public void shutdown() {
+		try {
+			queue.finish();
+		} finally {
+			queue.shutdown();
+		}
+	}
+
+	/**
+	 * Searches the index for a single query and stores the results.
+	 */
+	private class QueryTask implements Runnable {
+
+		/** Query line to search for. */
+		private final String line;
+
+		/** Index to search. */
+		private final InvertedIndex index;
+
+		/**
+		 * Initializes a task to search for a query.
+		 *
+		 * @param line
+		 *            query
+		 * @param index
+		 *            index to search
+		 */
+		public QueryTask(String line, InvertedIndex index) {
+			this.line = line;
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			List<SearchResult> searchResults = search(line, index);
+
+			synchronized (queryResults) {
+				queryResults.put(line, searchResults);
+			}
+			Metrics.recordQuery(System.nanoTime() - start);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory outside the Java heap, handed out in blocks. Memory is taken from
+ * the operating system in slabs of direct byte buffers, and every block is a
+ * power of two bytes long, so freed blocks can be kept in a free list for
+ * their size and reused. Blocks larger than a slab get a slab of their own.
+ * Since the garbage collector only sees the slabs, the number of objects does
+ * not grow with the amount of data stored.
+ *
+ * <p>
+ * A block is named by its address, which holds the slab number in the high
+ * 32 bits and the offset within the slab in the low 32 bits. Slabs are freed
+ * by the garbage collector once the arena is no longer used, and are then no
+ * longer counted by {@link #totalBytes()}. Blocks may be
+ * read by several threads at once, but only one thread may allocate or free
+ * blocks at a time.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class OffHeapArena {
+
+	/** Bytes taken from the operating system at a time. */
+	public static final int SLAB_SIZE = 1 << 20;
+
+	/** Smallest block handed out, in bytes. */
+	public static final int MIN_BLOCK = 32;
+
+	/** Bytes of direct memory taken by every arena still in use. */
+	private static final AtomicLong TOTAL = new AtomicLong();
+
+	/** Stops counting the memory of arenas that are no longer used. */
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	/** Slabs of direct memory. */
+	private final ArrayList<ByteBuffer> slabs;
+
+	/** Offset of the free space at the end of the last shared slab. */
+	private int offset;
+
+	/** Number of the last slab that is shared by several blocks, or -1. */
+	private int current;
+
+	/** Free blocks of each power of two size. */
+	private final long[][] free;
+
+	/** Number of free blocks of each power of two size. */
+	private final int[] freeCount;
+
+	/** Bytes of direct memory taken by this arena. */
+	private final AtomicLong allocated;
+
+	/** Bytes of blocks in use. */
+	private long used;
+
+	/**
+	 * Initializes an empty arena. No memory is taken until a block is first
+	 * allocated.
+	 */
+	public OffHeapArena() {
+		this.slabs = new ArrayList<>();
+		this.offset = 0;
+		this.current = -1;
+		this.free = new long[32][];
+		this.freeCount = new int[32];
+		this.allocated = new AtomicLong();
+		this.used = 0;
+
+		final AtomicLong taken = allocated;
+		CLEANER.register(this, new Runnable() {
+			@Override
+			public void run() {
+				TOTAL.addAndGet(-taken.get());
+			}
+		});
+	}
+
+	/**
+	 * Returns the size of the block that would be handed out for the given
+	 * number of bytes.
+	 *
+	 * @param bytes
+	 *            number of bytes needed
+	 * @return size of the block in bytes
+	 */
+	public static int blockSize(int bytes) {
+		if (bytes <= MIN_BLOCK) {
+			return MIN_BLOCK;
+		}
+		return Integer.highestOneBit(bytes - 1) << 1;
+	}
+
+	/**
+	 * Allocates a block of at least the given number of bytes. The contents
+	 * of the block are undefined.
+	 *
+	 * @param bytes
+	 *            number of bytes needed
+	 * @return address of the block
+	 * @see #blockSize(int)
+	 */
+	public long allocate(int bytes) {
+		int size = blockSize(bytes);
+		int sizeClass = Integer.numberOfTrailingZeros(size);
+		used += size;
+
+		if (freeCount[sizeClass] > 0) {
+			return free[sizeClass][--freeCount[sizeClass]];
+		}
+		if (size > SLAB_SIZE) {
+			slabs.add(ByteBuffer.allocateDirect(size));
+			taken(size);
+			return address(slabs.size() - 1, 0);
+		}
+		if (current < 0 || offset + size > SLAB_SIZE) {
+			/* the rest of the last slab is kept as free blocks */
+			while (current >= 0 && SLAB_SIZE - offset >= MIN_BLOCK) {
+				int rest = Integer.highestOneBit(SLAB_SIZE - offset);
+				push(address(current, offset), rest);
+				offset += rest;
+			}
+			slabs.add(ByteBuffer.allocateDirect(SLAB_SIZE));
+			taken(SLAB_SIZE);
+			current = slabs.size() - 1;
+			offset = 0;
+		}
+
+		long address = address(current, offset);
+		offset += size;
+		return address;
+	}
+
+	/**
+	 * Frees a block so it can be handed out again.
+	 *
+	 * @param address
+	 *            address of the block
+	 * @param bytes
+	 *            number of bytes the block was allocated for
+	 */
+	public void free(long address, int bytes) {
+		int size = blockSize(bytes);
+		used -= size;
+		push(address, size);
+	}
+
+	/**
+	 * Returns the slab that holds a block. Bytes of the block start at
+	 * {@link #offset(long)} and must be read and written with absolute gets
+	 * and puts, so the slab can be shared.
+	 *
+	 * @param address
+	 *            address of the block
+	 * @return slab holding the block
+	 */
+	public ByteBuffer slab(long address) {
+		return slabs.get((int) (address >>> 32));
+	}
+
+	/**
+	 * Returns the offset of a block within its slab.
+	 *
+	 * @param address
+	 *            address of the block
+	 * @return offset of the block
+	 */
+	public static int offset(long address) {
+		return (int) address;
+	}
+
+	/**
+	 * Returns the bytes of direct memory taken by this arena.
+	 *
+	 * @return bytes of direct memory
+	 */
+	public long allocatedBytes() {
+		return allocated.get();
+	}
+
+	/**
+	 * Returns the bytes of blocks in use in this arena.
+	 *
+	 * @return bytes in use
+	 */
+	public long usedBytes() {
+		return used;
+	}
+
+	/**
+	 * Returns the bytes of direct memory taken by every arena still in use.
+	 *
+	 * @return bytes of direct memory
+	 */
+	public static long totalBytes() {
+		return TOTAL.get();
+	}
+
+	/**
+	 * Returns the address of an offset within a slab.
+	 *
+	 * @param slab
+	 *            number of the slab
+	 * @param offset
+	 *            offset within the slab
+	 * @return address
+	 */
+	private static long address(int slab, int offset) {
+		return ((long) slab << 32) | offset;
+	}
+
+	/**
+	 * Adds a block to the free list for its size.
+	 *
+	 * @param address
+	 *            address of the block
+	 * @param size
+	 *            size of the block, a power of two
+	 */
+	private void push(long address, int size) {
+		int sizeClass = Integer.numberOfTrailingZeros(size);
+		if (free[sizeClass] == null) {
+			free[sizeClass] = new long[16];
+		} else if (freeCount[sizeClass] == free[sizeClass].length) {
+			free[sizeClass] = Arrays.copyOf(free[sizeClass], freeCount[sizeClass] * 2);
+		}
+		free[sizeClass][freeCount[sizeClass]++] = address;
+	}
+
+	/**
+	 * Counts a new slab of direct memory.
+	 *
+	 * @param bytes
+	 *            size of the slab
+	 */
+	private void taken(long bytes) {
+		allocated.addAndGet(bytes);
+		TOTAL.addAndGet(bytes);
+	}
+}
@@ -0,0 +1,947 @@
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Inverted index that keeps its positions outside the Java heap, in blocks of
+ * an {@link OffHeapArena}. Only a small directory stays on the heap: a sorted
+ * map from each word to its term id, the block of each term id, and the path
+ * of each document id. The garbage collector therefore only has to trace a
+ * few objects per word, no matter how many positions are stored.
+ *
+ * <p>
+ * The block of a word holds one entry for each of its documents, sorted by
+ * document id. An entry is a header of five ints (document id, number of
+ * positions, first position, last position, and number of encoded bytes)
+ * followed by the positions encoded as variable-byte deltas, the same way as
+ * in a {@link PostingList}. Documents are numbered in the order they are
+ * first added, so while files are added one at a time every new position is
+ * appended to the last entry of its word, or starts a new entry at the end.
+ * Anything else rewrites the block. A block that runs out of room is moved to
+ * a block twice as large. The words of each path are found the first time a
+ * path is removed and kept from then on, so later paths are removed by
+ * visiting only their own words. A removed path gives up its document id,
+ * and gets a new one if it is added again, so it is appended rather than
+ * inserted in the middle of every block.
+ * </p>
+ *
+ * <p>
+ * The index may be searched by several threads at once, but only while it is
+ * not being modified, and only one thread may modify it at a time.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class OffHeapInvertedIndex extends InvertedIndex {
+
+	/** Bytes in the header of each entry. */
+	private static final int HEADER = 20;
+
+	/** Offset of the document id in the header of an entry. */
+	private static final int DOCUMENT = 0;
+
+	/** Offset of the number of positions in the header of an entry. */
+	private static final int COUNT = 4;
+
+	/** Offset of the first position in the header of an entry. */
+	private static final int FIRST = 8;
+
+	/** Offset of the last position in the header of an entry. */
+	private static final int LAST = 12;
+
+	/** Offset of the number of encoded bytes in the header of an entry. */
+	private static final int BYTES = 16;
+
+	/** Memory holding the blocks of every word. */
+	private final OffHeapArena arena;
+
+	/** Term id of each word in the index. */
+	private final TreeMap<String, Integer> terms;
+
+	/** Address of the block of each term id. */
+	private long[] addresses;
+
+	/** Size the block of each term id was allocated for, or 0 if none. */
+	private int[] capacities;
+
+	/** Bytes in use in the block of each term id. */
+	private int[] lengths;
+
+	/** Offset of the last entry in the block of each term id. */
+	private int[] lastEntries;
+
+	/** Document id of the last entry in the block of each term id. */
+	private int[] lastDocuments;
+
+	/** Number of term ids handed out. */
+	private int termCount;
+
+	/** Term ids of removed words, which are handed out again first. */
+	private int[] freeTerms;
+
+	/** Number of free term ids. */
+	private int freeTermCount;
+
+	/** Document id of each path in the index. */
+	private final HashMap<String, Integer> documentIds;
+
+	/** Path of each document id, or null if the path was removed. */
+	private final ArrayList<String> documents;
+
+	/**
+	 * Initializes an empty index. No memory outside the heap is taken until a
+	 * word is added.
+	 */
+	public OffHeapInvertedIndex() {
+		super(Collections.<String, NavigableMap<String, PostingList>>emptyNavigableMap());
+		this.arena = new OffHeapArena();
+		this.terms = new TreeMap<>();
+		this.addresses = new long[16];
+		this.capacities = new int[16];
+		this.lengths = new int[16];
+		this.lastEntries = new int[16];
+		this.lastDocuments = new int[16];
+		this.termCount = 0;
+		this.freeTerms = new int[16];
+		this.freeTermCount = 0;
+		this.documentIds = new HashMap<>();
+		this.documents = new ArrayList<>();
+	}
+
+	/**
+	 * Initializes an index with a copy of the words of another index, given
+	 * in any order. The paths are numbered in sorted order first, so every
+	 * path of a word is appended to its block.
+	 *
+	 * @param elements
+	 *            words stored in an index, along with their paths
+	 *
+	 * @see InvertedIndex#offHeap()
+	 */
+	public OffHeapInvertedIndex(Iterable<Entry<String, NavigableMap<String, PostingList>>> elements) {
+		this();
+		TreeSet<String> paths = new TreeSet<>();
+		for (Entry<String, NavigableMap<String, PostingList>> word : elements) {
+			paths.addAll(word.getValue().keySet());
+		}
+		for (String path : paths) {
+			document(path);
+		}
+
+		for (Entry<String, NavigableMap<String, PostingList>> word : elements) {
+			for (Entry<String, PostingList> path : word.getValue().entrySet()) {
+				addPositions(word.getKey(), path.getKey(), path.getValue());
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Returns the bytes of memory outside the heap taken by this index.
+	 *
+	 * @return bytes of direct memory
+	 */
+	public long offHeapBytes() {
+		return arena.allocatedBytes();
+	}
+
+	/**
+	 * Returns the bytes of blocks in use by this index, which is never more
+	 * than {@link #offHeapBytes()}.
+	 *
+	 * @return bytes of blocks in use
+	 */
+	public long usedBytes() {
+		return arena.usedBytes();
+	}
+
+	/**
+	 * Adds words into index. Positions added in increasing order to the
+	 * newest document of a word are appended to its block in place.
+	 *
+	 * @param word
+	 *            word in file
+	 * @param path
+	 *            file word is found in
+	 * @param position
+	 *            index of word
+	 */
+	@Override
+	public void add(String word, String path, Integer position) {
+		int document = document(path);
+		Integer id = terms.get(word);
+		if (id == null) {
+			int term = newTerm();
+			terms.put(word, term);
+			appendEntry(term, document, position);
+			addPathWord(path, word);
+		} else if (document == lastDocuments[id]) {
+			int last = slab(id).getInt(base(id) + lastEntries[id] + LAST);
+			if (position > last) {
+				appendPosition(id, position, last);
+			} else if (position < last) {
+				insert(id, document, position);
+			}
+		} else if (document > lastDocuments[id]) {
+			appendEntry(id, document, position);
+			addPathWord(path, word);
+		} else if (insert(id, document, position)) {
+			addPathWord(path, word);
+		}
+	}
+
+	/**
+	 * Adds all words, paths, and positions from another index into this index.
+	 * The positions are copied, so the other index may be modified afterwards.
+	 *
+	 * @param other
+	 *            index to merge into this index
+	 */
+	@Override
+	public void addAll(InvertedIndex other) {
+		for (Entry<String, NavigableMap<String, PostingList>> word : other.entries()) {
+			for (Entry<String, PostingList> path : word.getValue().entrySet()) {
+				addPositions(word.getKey(), path.getKey(), path.getValue());
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Removes all positions found in a path from the index. Only the words
+	 * found in the path are visited. Words that are no longer found in any
+	 * path are removed as well, and their blocks freed. The document id of the
+	 * path is not handed out again.
+	 *
+	 * @param path
+	 *            path to remove
+	 * @return true if the index contained the path
+	 */
+	@Override
+	public boolean remove(String path) {
+		/* the words of each path are found before the path loses its id */
+		Map<String, List<String>> pathWords = trackPaths();
+		Integer document = documentIds.remove(path);
+		if (document == null) {
+			return false;
+		}
+		documents.set(document, null);
+
+		List<String> words = pathWords.remove(path);
+		if (words == null) {
+			return false;
+		}
+		for (String word : words) {
+			int term = terms.get(word);
+			int at = find(term, document);
+			if (at < 0) {
+				continue;
+			}
+			ByteBuffer slab = slab(term);
+			splice(term, at, at + HEADER + slab.getInt(base(term) + at + BYTES), null, 0);
+			if (lengths[term] == 0) {
+				arena.free(addresses[term], capacities[term]);
+				capacities[term] = 0;
+				freeTerm(term);
+				terms.remove(word);
+			}
+		}
+		modified();
+		return true;
+	}
+
+	/**
+	 * Returns a compact copy of the index. The positions are copied onto the
+	 * heap.
+	 */
+	@Override
+	public CompactInvertedIndex compact() {
+		TreeMap<String, NavigableMap<String, PostingList>> elements = new TreeMap<>();
+		for (Entry<String, NavigableMap<String, PostingList>> word : entries()) {
+			elements.put(word.getKey(), word.getValue());
+		}
+		return new CompactInvertedIndex(elements);
+	}
+
+	/**
+	 * Returns this index, since its positions are already outside the heap.
+	 */
+	@Override
+	public OffHeapInvertedIndex offHeap() {
+		return this;
+	}
+
+	/**
+	 * Returns the words in the index in sorted order, along with their paths.
+	 * The positions of each word are copied into a new sorted map as they are
+	 * needed.
+	 *
+	 * @return sorted words and their paths
+	 */
+	@Override
+	public Iterable<Entry<String, NavigableMap<String, PostingList>>> entries() {
+		return new Iterable<Entry<String, NavigableMap<String, PostingList>>>() {
+			@Override
+			public Iterator<Entry<String, NavigableMap<String, PostingList>>> iterator() {
+				final Iterator<Entry<String, Integer>> words = terms.entrySet().iterator();
+
+				return new Iterator<Entry<String, NavigableMap<String, PostingList>>>() {
+					@Override
+					public boolean hasNext() {
+						return words.hasNext();
+					}
+
+					@Override
+					public Entry<String, NavigableMap<String, PostingList>> next() {
+						Entry<String, Integer> word = words.next();
+						return new SimpleImmutableEntry<>(word.getKey(), paths(word.getValue()));
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public void writeJSON(Path file, int threads, OutputFormat format, boolean compressed) {
+		OutputFileWriter.writeInvertedIndex(file, entries(), threads, format, compressed);
+	}
+
+	@Override
+	public void writeBinary(Path file) {
+		BinaryIndexWriter.writeIndex(file, entries());
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		return terms.containsKey(word);
+	}
+
+	@Override
+	public boolean hasPath(String word, String path) {
+		Integer term = terms.get(word);
+		Integer document = documentIds.get(path);
+		return term != null && document != null && find(term, document) >= 0;
+	}
+
+	@Override
+	public boolean hasPosition(String word, String path, int position) {
+		Integer term = terms.get(word);
+		Integer document = documentIds.get(path);
+		if (term == null || document == null) {
+			return false;
+		}
+		int at = find(term, document);
+		if (at < 0) {
+			return false;
+		}
+
+		ByteBuffer slab = slab(term);
+		int offset = base(term) + at;
+		if (position < slab.getInt(offset + FIRST) || position > slab.getInt(offset + LAST)) {
+			return false;
+		}
+		int end = offset + HEADER + slab.getInt(offset + BYTES);
+		int value = 0;
+		offset += HEADER;
+		while (offset < end && value < position) {
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = slab.get(offset++);
+				delta |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			value += delta;
+		}
+		return value == position;
+	}
+
+	/**
+	 * Create SearchResult objects for each query, keeping only the given
+	 * number of best results. The frequency and first position of each
+	 * document are read from the entry headers, without decoding positions.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	@Override
+	public List<SearchResult> partialSearch(List<String> cleanQueries, int limit) {
+		HashMap<String, SearchResult> searchResultMap = new HashMap<>();
+		List<SearchResult> searchResults = new ArrayList<>();
+
+		for (String query : cleanQueries) {
+			for (Entry<String, Integer> word : terms.tailMap(query).entrySet()) {
+				if (word.getKey().startsWith(query)) {
+					addResults(word.getValue(), searchResultMap, searchResults);
+				} else {
+					break;
+				}
+			}
+		}
+		return top(searchResults, limit);
+	}
+
+	@Override
+	public List<List<SearchResult>> batchPartialSearch(List<List<String>> batch, int limit) {
+		PrefixSweep sweep = new PrefixSweep(batch);
+		String prefix;
+		while ((prefix = sweep.seek()) != null) {
+			boolean more = false;
+			for (Entry<String, Integer> word : terms.tailMap(prefix).entrySet()) {
+				if (!sweep.enter(word.getKey())) {
+					more = true;
+					break;
+				}
+				int term = word.getValue();
+				ByteBuffer slab = slab(term);
+				int end = base(term) + lengths[term];
+				for (int at = base(term); at < end; at += HEADER + slab.getInt(at + BYTES)) {
+					sweep.add(sweep.document(documents.get(slab.getInt(at + DOCUMENT))), slab.getInt(at + COUNT),
+							slab.getInt(at + FIRST));
+				}
+			}
+			if (!more) {
+				sweep.end();
+			}
+		}
+		return sweep.results(limit);
+	}
+
+	@Override
+	public List<SearchResult> exactSearch(List<String> cleanQueries, int limit) {
+		HashMap<String, SearchResult> searchResultMap = new HashMap<>();
+		List<SearchResult> searchResults = new ArrayList<>();
+
+		for (String query : cleanQueries) {
+			Integer term = terms.get(query);
+			if (term != null) {
+				addResults(term, searchResultMap, searchResults);
+			}
+		}
+		return top(searchResults, limit);
+	}
+
+	/**
+	 * Create SearchResult objects for the documents where the query words are
+	 * found at consecutive positions, in order. The positions of the query
+	 * words are copied onto the heap for the search.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized query words, in phrase order
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	@Override
+	public List<SearchResult> phraseSearch(List<String> cleanQueries, int limit) {
+		return view(cleanQueries, true).phraseSearch(cleanQueries, limit);
+	}
+
+	/**
+	 * Create SearchResult objects for the documents where every query matches
+	 * at least one word. The positions of the words matched by the queries are
+	 * copied onto the heap for the search.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param exact:
+	 *            true if queries only match whole words, false if they match
+	 *            words they are a prefix of
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 */
+	@Override
+	public List<SearchResult> conjunctiveSearch(List<String> cleanQueries, boolean exact, int limit) {
+		return view(cleanQueries, exact).conjunctiveSearch(cleanQueries, exact, limit);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("OffHeapInvertedIndex [index={");
+		boolean first = true;
+		for (Entry<String, NavigableMap<String, PostingList>> entry : entries()) {
+			if (!first) {
+				builder.append(", ");
+			}
+			first = false;
+			builder.append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return builder.append("}]").toString();
+	}
+
+	/**
+	 * Returns an index on the heap holding only the words matched by the
+	 * queries.
+	 *
+	 * @param cleanQueries
+	 *            list of normalized queries
+	 * @param exact
+	 *            true if queries only match whole words, false if they match
+	 *            words they are a prefix of
+	 * @return index of the matched words
+	 */
+	private InvertedIndex view(List<String> cleanQueries, boolean exact) {
+		InvertedIndex view = new InvertedIndex();
+		for (String query : cleanQueries) {
+			NavigableMap<String, Integer> words = exact
+					? terms.subMap(query, true, query, true)
+					: terms.tailMap(query, true);
+			for (Entry<String, Integer> word : words.entrySet()) {
+				if (!word.getKey().startsWith(query)) {
+					break;
+				}
+				if (!view.index.containsKey(word.getKey())) {
+					view.putWord(word.getKey(), paths(word.getValue()));
+				}
+			}
+		}
+		return view;
+	}
+
+	/**
+	 * Adds the frequency and first position of a word in each of its documents
+	 * to the search results.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @param searchResultMap
+	 *            search results by path
+	 * @param searchResults
+	 *            search results in the order they were found
+	 */
+	private void addResults(int term, HashMap<String, SearchResult> searchResultMap,
+			List<SearchResult> searchResults) {
+		ByteBuffer slab = slab(term);
+		int end = base(term) + lengths[term];
+		for (int at = base(term); at < end; at += HEADER + slab.getInt(at + BYTES)) {
+			String path = documents.get(slab.getInt(at + DOCUMENT));
+			int frequency = slab.getInt(at + COUNT);
+			int position = slab.getInt(at + FIRST);
+
+			SearchResult searchResult = searchResultMap.get(path);
+			if (searchResult != null) {
+				searchResult.update(frequency, position);
+			} else {
+				searchResult = new SearchResult(frequency, position, path);
+				searchResultMap.put(path, searchResult);
+				searchResults.add(searchResult);
+			}
+		}
+	}
+
+	/**
+	 * Returns the paths of a word along with a copy of their positions.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @return sorted paths and positions
+	 */
+	private NavigableMap<String, PostingList> paths(int term) {
+		NavigableMap<String, PostingList> paths = new TreeMap<>();
+		ByteBuffer slab = slab(term);
+		int end = base(term) + lengths[term];
+		for (int at = base(term); at < end; at += HEADER + slab.getInt(at + BYTES)) {
+			PostingList positions = new PostingList();
+			for (int position : positions(slab, at)) {
+				positions.add(position);
+			}
+			paths.put(documents.get(slab.getInt(at + DOCUMENT)), positions);
+		}
+		return paths;
+	}
+
+	/**
+	 * Decodes the positions of an entry.
+	 *
+	 * @param slab
+	 *            slab holding the entry
+	 * @param at
+	 *            offset of the entry within the slab
+	 * @return sorted positions
+	 */
+	private static int[] positions(ByteBuffer slab, int at) {
+		int[] positions = new int[slab.getInt(at + COUNT)];
+		int offset = at + HEADER;
+		int value = 0;
+		for (int i = 0; i < positions.length; i++) {
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = slab.get(offset++);
+				delta |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			value += delta;
+			positions[i] = value;
+		}
+		return positions;
+	}
+
+	/**
+	 * Adds every position of a word in a path. The positions are appended as
+	 * a single new entry if the path is newer than every other path of the
+	 * word, and added one at a time otherwise.
+	 *
+	 * @param word
+	 *            word in file
+	 * @param path
+	 *            file word is found in
+	 * @param positions
+	 *            positions of the word in the file
+	 */
+	private void addPositions(String word, String path, PostingList positions) {
+		if (positions.isEmpty()) {
+			return;
+		}
+		int document = document(path);
+		Integer id = terms.get(word);
+		if (id != null && document <= lastDocuments[id]) {
+			for (int position : positions.toArray()) {
+				add(word, path, position);
+			}
+			return;
+		}
+
+		int term;
+		if (id == null) {
+			term = newTerm();
+			terms.put(word, term);
+		} else {
+			term = id;
+		}
+		byte[] entry = encode(document, positions.toArray(), positions.size());
+		reserve(term, lengths[term] + entry.length);
+		slab(term).put(base(term) + lengths[term], entry);
+		lastEntries[term] = lengths[term];
+		lastDocuments[term] = document;
+		lengths[term] += entry.length;
+		addPathWord(path, word);
+	}
+
+	/**
+	 * Starts a new entry with a single position at the end of a block.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @param document
+	 *            document id, greater than that of every other entry
+	 * @param position
+	 *            position of the word
+	 */
+	private void appendEntry(int term, int document, int position) {
+		int at = lengths[term];
+		reserve(term, at + HEADER + 5);
+		ByteBuffer slab = slab(term);
+		int offset = base(term) + at;
+		int end = write(slab, offset + HEADER, position);
+		slab.putInt(offset + DOCUMENT, document);
+		slab.putInt(offset + COUNT, 1);
+		slab.putInt(offset + FIRST, position);
+		slab.putInt(offset + LAST, position);
+		slab.putInt(offset + BYTES, end - offset - HEADER);
+		lastEntries[term] = at;
+		lastDocuments[term] = document;
+		lengths[term] = end - base(term);
+	}
+
+	/**
+	 * Appends a position to the last entry of a block.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @param position
+	 *            position of the word, greater than the last one
+	 * @param last
+	 *            last position of the entry
+	 */
+	private void appendPosition(int term, int position, int last) {
+		reserve(term, lengths[term] + 5);
+		ByteBuffer slab = slab(term);
+		int offset = base(term) + lastEntries[term];
+		int start = base(term) + lengths[term];
+		int end = write(slab, start, position - last);
+		slab.putInt(offset + COUNT, slab.getInt(offset + COUNT) + 1);
+		slab.putInt(offset + LAST, position);
+		slab.putInt(offset + BYTES, slab.getInt(offset + BYTES) + end - start);
+		lengths[term] = end - base(term);
+	}
+
+	/**
+	 * Adds a position anywhere in a block by rewriting the entry of its
+	 * document, or adding a new one in document order.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @param document
+	 *            document id
+	 * @param position
+	 *            position of the word
+	 * @return true if a new entry was added for the document
+	 */
+	private boolean insert(int term, int document, int position) {
+		ByteBuffer slab = slab(term);
+		int base = base(term);
+		int at = 0;
+		while (at < lengths[term] && slab.getInt(base + at + DOCUMENT) < document) {
+			at += HEADER + slab.getInt(base + at + BYTES);
+		}
+
+		if (at < lengths[term] && slab.getInt(base + at + DOCUMENT) == document) {
+			int[] positions = positions(slab, base + at);
+			int i = Arrays.binarySearch(positions, position);
+			if (i >= 0) {
+				return false;
+			}
+			i = -i - 1;
+			int[] merged = new int[positions.length + 1];
+			System.arraycopy(positions, 0, merged, 0, i);
+			merged[i] = position;
+			System.arraycopy(positions, i, merged, i + 1, positions.length - i);
+			byte[] entry = encode(document, merged, merged.length);
+			splice(term, at, at + HEADER + slab.getInt(base + at + BYTES), entry, entry.length);
+			return false;
+		}
+
+		byte[] entry = encode(document, new int[] { position }, 1);
+		splice(term, at, at, entry, entry.length);
+		return true;
+	}
+
+	/**
+	 * Replaces a range of bytes in a block, moving the rest of the block, and
+	 * finds the last entry again.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @param from
+	 *            offset of the first byte replaced
+	 * @param to
+	 *            offset after the last byte replaced
+	 * @param bytes
+	 *            bytes to put in their place, or null if none
+	 * @param count
+	 *            number of bytes to put in their place
+	 */
+	private void splice(int term, int from, int to, byte[] bytes, int count) {
+		int length = lengths[term];
+		byte[] rest = new byte[length - to];
+		slab(term).get(base(term) + to, rest);
+		reserve(term, from + count + rest.length);
+
+		ByteBuffer slab = slab(term);
+		int base = base(term);
+		if (count > 0) {
+			slab.put(base + from, bytes, 0, count);
+		}
+		slab.put(base + from + count, rest);
+		lengths[term] = from + count + rest.length;
+
+		lastEntries[term] = 0;
+		lastDocuments[term] = -1;
+		for (int at = 0; at < lengths[term]; at += HEADER + slab.getInt(base + at + BYTES)) {
+			lastEntries[term] = at;
+			lastDocuments[term] = slab.getInt(base + at + DOCUMENT);
+		}
+	}
+
+	/**
+	 * Encodes an entry with its header.
+	 *
+	 * @param document
+	 *            document id
+	 * @param positions
+	 *            sorted positions without duplicates
+	 * @param count
+	 *            number of positions to use from the array
+	 * @return encoded entry
+	 */
+	private static byte[] encode(int document, int[] positions, int count) {
+		ByteBuffer entry = ByteBuffer.allocate(HEADER + count * 5);
+		int offset = HEADER;
+		int previous = 0;
+		for (int i = 0; i < count; i++) {
+			offset = write(entry, offset, positions[i] - previous);
+			previous = positions[i];
+		}
+		entry.putInt(DOCUMENT, document);
+		entry.putInt(COUNT, count);
+		entry.putInt(FIRST, positions[0]);
+		entry.putInt(LAST, positions[count - 1]);
+		entry.putInt(BYTES, offset - HEADER);
+		return Arrays.copyOf(entry.array(), offset);
+	}
+
+	/**
+	 * Writes an unsigned variable-byte value to a buffer. Every byte except
+	 * the last has its high bit set.
+	 *
+	 * @param buffer
+	 *            buffer to write to
+	 * @param offset
+	 *            offset to start writing at
+	 * @param value
+	 *            value to write, treated as unsigned
+	 * @return offset after the written value
+	 */
+	private static int write(ByteBuffer buffer, int offset, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put(offset++, (byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put(offset++, (byte) value);
+		return offset;
+	}
+
+	/**
+	 * Makes sure the block of a term can hold the given number of bytes,
+	 * moving it to a new block at least twice as large if needed.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @param bytes
+	 *            number of bytes needed
+	 */
+	private void reserve(int term, int bytes) {
+		int capacity = capacities[term];
+		if (bytes <= capacity) {
+			return;
+		}
+
+		int size = OffHeapArena.blockSize(Math.max(bytes, capacity * 2));
+		long address = arena.allocate(size);
+		if (capacity > 0) {
+			arena.slab(address).put(OffHeapArena.offset(address), slab(term), base(term), lengths[term]);
+			arena.free(addresses[term], capacity);
+		}
+		addresses[term] = address;
+		capacities[term] = size;
+	}
+
+	/**
+	 * Returns the offset of the entry of a document in the block of a word, or
+	 * -1 if the word is not found in the document.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @param document
+	 *            document id
+	 * @return offset within the block, or -1 if not found
+	 */
+	private int find(int term, int document) {
+		if (document > lastDocuments[term]) {
+			return -1;
+		}
+		ByteBuffer slab = slab(term);
+		int base = base(term);
+		for (int at = 0; at < lengths[term]; at += HEADER + slab.getInt(base + at + BYTES)) {
+			int id = slab.getInt(base + at + DOCUMENT);
+			if (id == document) {
+				return at;
+			}
+			if (id > document) {
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the slab holding the block of a word.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @return slab of the block
+	 */
+	private ByteBuffer slab(int term) {
+		return arena.slab(addresses[term]);
+	}
+
+	/**
+	 * Returns the offset of the block of a word within its slab.
+	 *
+	 * @param term
+	 *            term id of the word
+	 * @return offset of the block
+	 */
+	private int base(int term) {
+		return OffHeapArena.offset(addresses[term]);
+	}
+
+	/**
+	 * Returns the document id of a path, numbering new paths in the order they
+	 * are added. A path added again after it was removed gets a new id, larger
+	 * than every other.
+	 *
+	 * @param path
+	 *            path of the document
+	 * @return document id
+	 */
+	private int document(String path) {
+		Integer id = documentIds.get(path);
+		if (id == null) {
+			id = documents.size();
+			documentIds.put(path, id);
+			documents.add(path);
+		}
+		return id;
+	}
+
+	/**
+	 * Hands out a term id with an empty block, growing the directory if
+	 * needed.
+	 *
+	 * @return term id
+	 */
+	private int newTerm() {
+		int term;
+		if (freeTermCount > 0) {
+			term = freeTerms[--freeTermCount];
+		} else {
+			if (termCount == addresses.length) {
+				int size = termCount * 2;
+				addresses = Arrays.copyOf(addresses, size);
+				capacities = Arrays.copyOf(capacities, size);
+				lengths = Arrays.copyOf(lengths, size);
+				lastEntries = Arrays.copyOf(lastEntries, size);
+				lastDocuments = Arrays.copyOf(lastDocuments, size);
+			}
+			term = termCount++;
+		}
+		capacities[term] = 0;
+		lengths[term] = 0;
+		lastEntries[term] = 0;
+		lastDocuments[term] = -1;
+		return term;
+	}
+
+	/**
+	 * Keeps the term id of a removed word so it can be handed out again.
+	 *
+	 * @param term
+	 *            term id of the removed word
+	 */
+	private void freeTerm(int term) {
+		if (freeTermCount == freeTerms.length) {
+			freeTerms = Arrays.copyOf(freeTerms, freeTermCount * 2);
+		}
+		freeTerms[freeTermCount++] = term;
+	}
+}
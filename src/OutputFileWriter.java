@@ -1,38 +1,79 @@
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.NavigableMap;
+import java.util.PrimitiveIterator;
 
 /**
- * All methods that writes to files.
+ * All methods that writes to files. The index and results files are written
+ * in the {@link OutputFormat} they are given, pretty-printed JSON unless told
+ * otherwise, and may be compressed with gzip on a separate thread.
  *
  * @author courtniwong
  *
  */
 public class OutputFileWriter {
 
+	/** Line separator written by {@link BufferedWriter#newLine()}. */
+	private static final String NEWLINE = System.lineSeparator();
+
+	/** Indentation strings for the most common levels. */
+	private static final String[] INDENTS = { "", "  ", "    ", "      ", "        ", "          " };
+
+	/** Number of words serialized together by a single task. */
+	public static final int CHUNK_WORDS = 1024;
+
+	/** Number of characters to buffer before writing to the file. */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Opens a file for writing text, compressing it with an
+	 * {@link AsyncGzipOutputStream} if asked to. The file is written to the
+	 * given path either way.
+	 *
+	 * @param output
+	 *            file to write to
+	 * @param compressed
+	 *            true to compress the file with gzip
+	 * @return writer of the file
+	 * @throws IOException
+	 *             if unable to open the file
+	 */
+	public static BufferedWriter newWriter(Path output, boolean compressed) throws IOException {
+		if (compressed) {
+			return new BufferedWriter(new OutputStreamWriter(new AsyncGzipOutputStream(output), StandardCharsets.UTF_8),
+					BUFFER_SIZE);
+		}
+		return Files.newBufferedWriter(output, Charset.forName("UTF-8"));
+	}
+
 	/**
 	 * Helper method to indent several times by 2 spaces each time. For example,
 	 * indent(0) will return an empty string, indent(1) will return 2 spaces,
 	 * and indent(2) will return 4 spaces.
 	 *
-	 * <p>
-	 * <em>Using this method is optional!</em>
-	 * </p>
-	 *
 	 * @param times
-	 * @return
-	 * @throws IOException
+	 *            number of times to indent
+	 * @return indentation string
 	 */
 	public static String indent(int times) {
-		return times > 0 ? String.format("%" + times * 2 + "s", " ") : "";
+		if (times < INDENTS.length) {
+			return INDENTS[Math.max(0, times)];
+		}
+		StringBuilder builder = new StringBuilder(times * 2);
+		for (int i = 0; i < times; i++) {
+			builder.append(INDENTS[1]);
+		}
+		return builder.toString();
 	}
 
 	/**
@@ -48,160 +89,536 @@ public class OutputFileWriter {
 	 * @param text
 	 *            input to surround with quotation marks
 	 * @return quoted text
+	 *
+	 * @see #appendQuoted(StringBuilder, String)
 	 */
 	public static String quote(String text) {
-		return "\"" + text + "\"";
+		StringBuilder builder = new StringBuilder(text.length() + 2);
+		appendQuoted(builder, text);
+		return builder.toString();
 	}
 
 	/**
-	 * Writes index to output file in proper format.
+	 * Appends text surrounded by quotation marks, escaping quotation marks,
+	 * backslashes, and control characters as required by JSON.
+	 *
+	 * @param builder
+	 *            builder to append to
+	 * @param text
+	 *            text to quote
+	 */
+	public static void appendQuoted(StringBuilder builder, String text) {
+		builder.append('"');
+		int start = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\' || c < 0x20) {
+				builder.append(text, start, i);
+				start = i + 1;
+				switch (c) {
+				case '"':
+					builder.append("\\\"");
+					break;
+				case '\\':
+					builder.append("\\\\");
+					break;
+				case '\n':
+					builder.append("\\n");
+					break;
+				case '\r':
+					builder.append("\\r");
+					break;
+				case '\t':
+					builder.append("\\t");
+					break;
+				default:
+					builder.append(String.format("\\u%04x", (int) c));
+				}
+			}
+		}
+		builder.append(text, start, text.length());
+		builder.append('"');
+	}
+
+	/**
+	 * Writes index to output file in proper format, as pretty-printed JSON
+	 * that is not compressed.
 	 *
 	 * @param output:
 	 *            inverted index output file
 	 * @param elements:
 	 *            words stored index
-	 * @throws IOException:
-	 *             prints error statement
 	 *
-	 * @see #writeIndexWords(Entry, BufferedWriter, Indentation Level)
+	 * @see #writeInvertedIndex(Path, Iterable, int, OutputFormat, boolean)
 	 */
-	public static void writeInvertedIndex(Path output, TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements) {
-		try (BufferedWriter writer = Files.newBufferedWriter(output, Charset.forName("UTF-8"))) {
-			writer.write("{");
-			if (!elements.isEmpty()) {
-				Entry<String, TreeMap<String, TreeSet<Integer>>> first = elements.firstEntry();
-				writeIndexWords(first, writer, 1);
-				for (Entry<String, TreeMap<String, TreeSet<Integer>>> entry : elements.tailMap(first.getKey(), false)
-						.entrySet()) {
-					writer.write(",");
-					writeIndexWords(entry, writer, 1);
-				}
+	public static void writeInvertedIndex(Path output, NavigableMap<String, NavigableMap<String, PostingList>> elements) {
+		writeInvertedIndex(output, elements.entrySet(), 1, OutputFormat.PRETTY, false);
+	}
+
+	/**
+	 * Writes the words of an index to output file in the given format. The
+	 * words must be in sorted order, such as the entries of a sorted map or of
+	 * a {@link CompactInvertedIndex}. Words are appended to a buffer that is
+	 * written to the file whenever it fills. If more than one thread is used,
+	 * chunks of {@link #CHUNK_WORDS} words are serialized in parallel and
+	 * written to the file in order. If the file cannot be written completely,
+	 * it is deleted rather than left truncated.
+	 *
+	 * @param output:
+	 *            inverted index output file
+	 * @param elements:
+	 *            sorted words in index and their paths
+	 * @param threads:
+	 *            number of threads to serialize with
+	 * @param format:
+	 *            format of the file
+	 * @param compressed:
+	 *            true to compress the file with gzip
+	 *
+	 * @see #appendWord(StringBuilder, Entry)
+	 */
+	public static void writeInvertedIndex(Path output,
+			Iterable<Entry<String, NavigableMap<String, PostingList>>> elements, int threads, OutputFormat format,
+			boolean compressed) {
+		try (BufferedWriter writer = newWriter(output, compressed)) {
+			if (format != OutputFormat.NDJSON) {
+				writer.write("{");
+			}
+			if (threads > 1) {
+				writeWordsParallel(writer, elements, threads, format);
+			} else {
+				writeWords(writer, elements, format);
+			}
+			if (format == OutputFormat.PRETTY) {
+				writer.write(NEWLINE);
+			}
+			if (format != OutputFormat.NDJSON) {
+				writer.write("}");
+				writer.write(NEWLINE);
 			}
-			writer.newLine();
-			writer.write("}");
-			writer.newLine();
 		} catch (IOException e) {
 			System.err.println("Error when writing to output file, " + output);
+			deletePartial(output);
 		}
 	}
 
 	/**
-	 * Helper method to write the words in the index.
+	 * Deletes a file that could not be written completely, so no truncated
+	 * file is left behind.
+	 *
+	 * @param output
+	 *            file to delete
+	 */
+	public static void deletePartial(Path output) {
+		try {
+			Files.deleteIfExists(output);
+		} catch (IOException e) {
+			System.err.println("Unable to delete incomplete output file, " + output);
+		}
+	}
+
+	/**
+	 * Helper method to write the words in the index on the current thread.
 	 *
-	 * @param entry:
-	 *            word in index and its nested attributes
 	 * @param writer:
-	 *            writer use to write to file
-	 * @param level:
-	 *            indentation level
+	 *            writer used to write to file
+	 * @param elements:
+	 *            words stored index
+	 * @param format:
+	 *            format of the file
 	 * @throws IOException
-	 *
-	 * @see #writeIndexPaths(Entry, BufferedWriter, Indentation Level)
 	 */
-	public static void writeIndexWords(Entry<String, TreeMap<String, TreeSet<Integer>>> entry, BufferedWriter writer,
-			int level) throws IOException {
-		TreeMap<String, TreeSet<Integer>> files = entry.getValue();
-		writer.newLine();
-		writer.write(indent(level));
-		writer.write(quote(entry.getKey()));
-		writer.write(": {");
-		if (!files.isEmpty()) {
-			Entry<String, TreeSet<Integer>> first = files.firstEntry();
-			writeIndexPaths(first, writer, level + 1);
-			for (Entry<String, TreeSet<Integer>> file : files.tailMap(first.getKey(), false).entrySet()) {
-				writer.write(",");
-				writeIndexPaths(file, writer, level + 1);
+	private static void writeWords(BufferedWriter writer,
+			Iterable<Entry<String, NavigableMap<String, PostingList>>> elements, OutputFormat format)
+			throws IOException {
+		StringBuilder buffer = new StringBuilder(BUFFER_SIZE + BUFFER_SIZE / 4);
+		boolean first = true;
+		for (Entry<String, NavigableMap<String, PostingList>> entry : elements) {
+			appendWord(buffer, entry, format, first);
+			first = false;
+			if (buffer.length() >= BUFFER_SIZE) {
+				writer.append(buffer);
+				buffer.setLength(0);
 			}
 		}
-		writer.newLine();
-		writer.write(indent(level) + "}");
+		writer.append(buffer);
 	}
 
 	/**
-	 * Helper method to write file name of the word.
+	 * Helper method to write the words in the index using a work queue. Words
+	 * are split into chunks, and a batch of chunks is serialized in parallel
+	 * before the chunks are written in order.
 	 *
-	 * @param textfiles:
-	 *            paths of word in index
 	 * @param writer:
 	 *            writer used to write to file
-	 * @param level:
-	 *            indentation level
+	 * @param elements:
+	 *            words stored index
+	 * @param threads:
+	 *            number of worker threads
+	 * @param format:
+	 *            format of the file
 	 * @throws IOException
-	 *
-	 * @see #writeIndexPositions(TreeSet, BufferedWriter, Indentation Level)
+	 *             if unable to write to the file, or a chunk could not be
+	 *             serialized
 	 */
-	public static void writeIndexPaths(Entry<String, TreeSet<Integer>> textfiles, BufferedWriter writer, int level)
+	private static void writeWordsParallel(BufferedWriter writer,
+			Iterable<Entry<String, NavigableMap<String, PostingList>>> elements, int threads, OutputFormat format)
 			throws IOException {
-		if (!textfiles.getValue().isEmpty()) {
-			TreeSet<Integer> locations = textfiles.getValue();
-			writer.newLine();
-			writer.write(indent(level));
-			writer.write(quote(textfiles.getKey()));
-			writer.write(": [");
-			writeIndexPositions(locations, writer, level + 1);
+		WorkQueue queue = new WorkQueue(threads);
+		try {
+			Iterator<Entry<String, NavigableMap<String, PostingList>>> iterator = elements.iterator();
+			boolean first = true;
+
+			while (iterator.hasNext()) {
+				List<StringBuilder> batch = new ArrayList<>();
+				for (int i = 0; i < threads * 4 && iterator.hasNext(); i++) {
+					List<Entry<String, NavigableMap<String, PostingList>>> words = new ArrayList<>(CHUNK_WORDS);
+					for (int j = 0; j < CHUNK_WORDS && iterator.hasNext(); j++) {
+						words.add(iterator.next());
+					}
+
+					StringBuilder chunk = new StringBuilder();
+					queue.execute(new ChunkTask(chunk, words, first, format));
+					batch.add(chunk);
+					first = false;
+				}
+
+				try {
+					queue.finish();
+				} catch (IllegalStateException e) {
+					throw new IOException("Unable to serialize the index.", e.getCause());
+				}
+				for (StringBuilder chunk : batch) {
+					writer.append(chunk);
+				}
+			}
+		} finally {
+			queue.shutdown();
 		}
-		writer.newLine();
-		writer.write(indent(level - 1) + "]");
 	}
 
 	/**
-	 * Helper method to write positions of the word.
+	 * Helper method to append a word in the index and its paths in the given
+	 * format, along with the separator from the word before it.
 	 *
+	 * @param buffer:
+	 *            buffer to append to
+	 * @param entry:
+	 *            word in index and its nested attributes
+	 * @param format:
+	 *            format of the file
+	 * @param first:
+	 *            true if this is the first word of the file
+	 */
+	private static void appendWord(StringBuilder buffer, Entry<String, NavigableMap<String, PostingList>> entry,
+			OutputFormat format, boolean first) {
+		switch (format) {
+		case COMPACT:
+			if (!first) {
+				buffer.append(',');
+			}
+			appendCompactWord(buffer, entry);
+			break;
+		case NDJSON:
+			buffer.append('{');
+			appendCompactWord(buffer, entry);
+			buffer.append('}').append(NEWLINE);
+			break;
+		default:
+			if (!first) {
+				buffer.append(',');
+			}
+			appendWord(buffer, entry);
+		}
+	}
+
+	/**
+	 * Helper method to append a word in the index and its paths without any
+	 * whitespace.
+	 *
+	 * @param buffer:
+	 *            buffer to append to
+	 * @param entry:
+	 *            word in index and its nested attributes
+	 */
+	public static void appendCompactWord(StringBuilder buffer, Entry<String, NavigableMap<String, PostingList>> entry) {
+		appendQuoted(buffer, entry.getKey());
+		buffer.append(":{");
+
+		boolean first = true;
+		for (Entry<String, PostingList> path : entry.getValue().entrySet()) {
+			if (!first) {
+				buffer.append(',');
+			}
+			first = false;
+
+			appendQuoted(buffer, path.getKey());
+			buffer.append(":[");
+			PrimitiveIterator.OfInt iterator = path.getValue().iterator();
+			if (iterator.hasNext()) {
+				buffer.append(iterator.nextInt());
+				while (iterator.hasNext()) {
+					buffer.append(',').append(iterator.nextInt());
+				}
+			}
+			buffer.append(']');
+		}
+		buffer.append('}');
+	}
+
+	/**
+	 * Helper method to append a word in the index and its paths.
+	 *
+	 * @param buffer:
+	 *            buffer to append to
+	 * @param entry:
+	 *            word in index and its nested attributes
+	 *
+	 * @see #appendPositions(StringBuilder, PostingList)
+	 */
+	public static void appendWord(StringBuilder buffer, Entry<String, NavigableMap<String, PostingList>> entry) {
+		buffer.append(NEWLINE).append(INDENTS[1]);
+		appendQuoted(buffer, entry.getKey());
+		buffer.append(": {");
+
+		boolean first = true;
+		for (Entry<String, PostingList> path : entry.getValue().entrySet()) {
+			if (!first) {
+				buffer.append(',');
+			}
+			first = false;
+
+			if (!path.getValue().isEmpty()) {
+				buffer.append(NEWLINE).append(INDENTS[2]);
+				appendQuoted(buffer, path.getKey());
+				buffer.append(": [");
+				appendPositions(buffer, path.getValue());
+			}
+			buffer.append(NEWLINE).append(INDENTS[1]).append(']');
+		}
+
+		buffer.append(NEWLINE).append(INDENTS[1]).append('}');
+	}
+
+	/**
+	 * Helper method to append positions of the word.
+	 *
+	 * @param buffer
+	 *            buffer to append to
 	 * @param positions
-	 *            set of indexes where word was found in file
-	 * @param writer
-	 *            writer used to write to file
-	 * @param level
-	 *            indentation level
-	 * @throws IOException
+	 *            sorted list of indexes where word was found in file
 	 */
-	public static void writeIndexPositions(TreeSet<Integer> positions, BufferedWriter writer, int level)
-			throws IOException {
-		if (!positions.isEmpty()) {
-			writer.newLine();
-			writer.write(indent(level) + positions.first());
-			for (Integer item : positions.tailSet(positions.first(), false)) {
-				writer.write(",");
-				writer.newLine();
-				writer.write(indent(level) + item);
+	public static void appendPositions(StringBuilder buffer, PostingList positions) {
+		PrimitiveIterator.OfInt iterator = positions.iterator();
+		if (iterator.hasNext()) {
+			buffer.append(NEWLINE).append(INDENTS[3]).append(iterator.nextInt());
+			while (iterator.hasNext()) {
+				buffer.append(',').append(NEWLINE).append(INDENTS[3]).append(iterator.nextInt());
 			}
 		}
 	}
 
 	/**
-	 * Write queries in proper format.
+	 * Serializes a chunk of words from the index.
+	 */
+	private static class ChunkTask implements Runnable {
+
+		/** Buffer to append the words to. */
+		private final StringBuilder chunk;
+
+		/** Words to serialize. */
+		private final List<Entry<String, NavigableMap<String, PostingList>>> words;
+
+		/** True if the chunk starts with the first word of the index. */
+		private final boolean first;
+
+		/** Format of the file. */
+		private final OutputFormat format;
+
+		/**
+		 * Initializes a task to serialize a chunk of words.
+		 *
+		 * @param chunk
+		 *            buffer to append the words to
+		 * @param words
+		 *            words to serialize
+		 * @param first
+		 *            true if the chunk starts with the first word of the index
+		 * @param format
+		 *            format of the file
+		 */
+		public ChunkTask(StringBuilder chunk, List<Entry<String, NavigableMap<String, PostingList>>> words,
+				boolean first, OutputFormat format) {
+			this.chunk = chunk;
+			this.words = words;
+			this.first = first;
+			this.format = format;
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < words.size(); i++) {
+				appendWord(chunk, words.get(i), format, i == 0 && first);
+			}
+		}
+	}
+
+	/**
+	 * Write queries in proper format, as pretty-printed JSON that is not
+	 * compressed.
 	 *
 	 * @param queryOutput:
 	 *            query output file
 	 * @param queryResults:
 	 *            LinkedHashMap of query and it's results
 	 *
-	 * @see #writeQueryWord(LinkedHashMap, String, BufferedWriter, Indentation
-	 *      Level)
+	 * @see #writeQuery(Path, LinkedHashMap, OutputFormat, boolean)
 	 */
 	public static void writeQuery(Path queryOutput, LinkedHashMap<String, List<SearchResult>> queryResults) {
-		try (BufferedWriter writer = Files.newBufferedWriter(queryOutput, Charset.forName("UTF-8"))) {
+		writeQuery(queryOutput, queryResults, OutputFormat.PRETTY, false);
+	}
+
+	/**
+	 * Write queries in the given format.
+	 *
+	 * @param queryOutput:
+	 *            query output file
+	 * @param queryResults:
+	 *            LinkedHashMap of query and it's results
+	 * @param format:
+	 *            format of the file
+	 * @param compressed:
+	 *            true to compress the file with gzip
+	 *
+	 * @see #writeQueryEntry(String, List, BufferedWriter, OutputFormat,
+	 *      boolean)
+	 */
+	public static void writeQuery(Path queryOutput, LinkedHashMap<String, List<SearchResult>> queryResults,
+			OutputFormat format, boolean compressed) {
+		try (BufferedWriter writer = newWriter(queryOutput, compressed)) {
+			startQueries(writer, format);
+			boolean first = true;
+			for (Entry<String, List<SearchResult>> query : queryResults.entrySet()) {
+				writeQueryEntry(query.getKey(), query.getValue(), writer, format, first);
+				first = false;
+			}
+			endQueries(writer, format);
+		} catch (IOException e) {
+			System.err.println("Error writing to output file, " + queryOutput);
+		}
+	}
+
+	/**
+	 * Writes what comes before the first query of a results file.
+	 *
+	 * @param writer:
+	 *            writer used to write to file
+	 * @param format:
+	 *            format of the file
+	 * @throws IOException
+	 *
+	 * @see #writeQueryEntry(String, List, BufferedWriter, OutputFormat,
+	 *      boolean)
+	 */
+	public static void startQueries(BufferedWriter writer, OutputFormat format) throws IOException {
+		if (format == OutputFormat.PRETTY) {
 			writer.write("{");
 			writer.newLine();
-			if (!queryResults.keySet().isEmpty()) {
-				Iterator<String> key = queryResults.keySet().iterator();
-				String firstKey = key.next();
-				writeQueryWord(queryResults, firstKey, writer, 1);
-
-				while (key.hasNext()) {
-					String nextKey = key.next();
-					writer.write(",");
-					writer.newLine();
-					writeQueryWord(queryResults, nextKey, writer, 1);
-				}
+		} else if (format == OutputFormat.COMPACT) {
+			writer.write("{");
+		}
+	}
+
+	/**
+	 * Writes a query and its results to a results file, along with the
+	 * separator from the query before it. Newline-delimited files have a line
+	 * for each query, holding the same object as a search of the
+	 * {@link SearchServer}.
+	 *
+	 * @param key:
+	 *            query
+	 * @param searchResults:
+	 *            list of query results
+	 * @param writer:
+	 *            writer used to write to file
+	 * @param format:
+	 *            format of the file
+	 * @param first:
+	 *            true if this is the first query of the file
+	 * @throws IOException
+	 */
+	public static void writeQueryEntry(String key, List<SearchResult> searchResults, BufferedWriter writer,
+			OutputFormat format, boolean first) throws IOException {
+		if (format == OutputFormat.PRETTY) {
+			if (!first) {
+				writer.write(",");
+				writer.newLine();
+			}
+			writeQueryWord(key, searchResults, writer, 1);
+			return;
+		}
+
+		StringBuilder buffer = new StringBuilder(64 + 96 * searchResults.size());
+		if (format == OutputFormat.NDJSON) {
+			buffer.append("{\"query\":");
+			appendQuoted(buffer, key);
+			buffer.append(",\"results\":");
+			appendResults(buffer, searchResults);
+			buffer.append('}').append(NEWLINE);
+		} else {
+			if (!first) {
+				buffer.append(',');
 			}
+			appendQuoted(buffer, key);
+			buffer.append(':');
+			appendResults(buffer, searchResults);
+		}
+		writer.append(buffer);
+	}
+
+	/**
+	 * Writes what comes after the last query of a results file.
+	 *
+	 * @param writer:
+	 *            writer used to write to file
+	 * @param format:
+	 *            format of the file
+	 * @throws IOException
+	 */
+	public static void endQueries(BufferedWriter writer, OutputFormat format) throws IOException {
+		if (format == OutputFormat.PRETTY) {
 			writer.newLine();
 			writer.write("}");
-		} catch (IOException e) {
-			System.err.println("Error writing to output file, " + queryOutput);
+		} else if (format == OutputFormat.COMPACT) {
+			writer.write("}");
+			writer.write(NEWLINE);
 		}
 	}
 
+	/**
+	 * Appends search results as a compact JSON array, using the same field
+	 * names as the pretty-printed results file.
+	 *
+	 * @param buffer
+	 *            buffer to append to
+	 * @param searchResults
+	 *            sorted search results
+	 */
+	public static void appendResults(StringBuilder buffer, List<SearchResult> searchResults) {
+		buffer.append('[');
+		for (int i = 0; i < searchResults.size(); i++) {
+			SearchResult result = searchResults.get(i);
+			if (i > 0) {
+				buffer.append(',');
+			}
+			buffer.append("{\"where\":");
+			appendQuoted(buffer, result.getPath());
+			buffer.append(",\"count\":").append(result.getFrequency());
+			buffer.append(",\"index\":").append(result.getPosition()).append('}');
+		}
+		buffer.append(']');
+	}
+
 	/**
 	 * Helper method to write query key in proper format.
 	 *
@@ -219,11 +636,31 @@ public class OutputFileWriter {
 	 */
 	public static void writeQueryWord(LinkedHashMap<String, List<SearchResult>> queryResults, String key,
 			BufferedWriter writer, int level) throws IOException {
-		writer.write(indent(1) + quote(key) + ": [");
-		List<SearchResult> nextSearchResults = queryResults.get(key);
-		writeQueryResults(nextSearchResults, writer, 1);
+		writeQueryWord(key, queryResults.get(key), writer, level);
+	}
+
+	/**
+	 * Helper method to write a query and its results in proper format, so
+	 * results can be written as soon as they are found.
+	 *
+	 * @param key:
+	 *            query
+	 * @param searchResults:
+	 *            list of query results
+	 * @param writer:
+	 *            writer used to write to file
+	 * @param level:
+	 *            indentation level
+	 * @throws IOException
+	 *
+	 * @see #writeQueryResults(List, BufferedWriter, int)
+	 */
+	public static void writeQueryWord(String key, List<SearchResult> searchResults, BufferedWriter writer, int level)
+			throws IOException {
+		writer.append(indent(level)).append(quote(key)).append(": [");
+		writeQueryResults(searchResults, writer, level);
 		writer.newLine();
-		writer.write(indent(1) + "]");
+		writer.append(indent(level)).append(']');
 	}
 
 	/**
@@ -268,11 +705,16 @@ public class OutputFileWriter {
 	 */
 	public static void writeQueryResultsWriter(SearchResult result, BufferedWriter writer, int level)
 			throws IOException {
+		String outer = indent(level + 1);
+		String inner = indent(level + 2);
 		writer.newLine();
-		writer.write(indent(level + 1) + "{\n");
-		writer.write(indent(level + 2) + quote("where") + ": " + quote(result.getPath()) + ",\n");
-		writer.write(indent(level + 2) + quote("count") + ": " + result.getFrequency() + ",\n");
-		writer.write(indent(level + 2) + quote("index") + ": " + result.getPosition() + "\n");
-		writer.write(indent(level + 1) + "}");
+		writer.append(outer).append('{').append(NEWLINE);
+		writer.append(inner).append(quote("where")).append(": ").append(quote(result.getPath())).append(',')
+				.append(NEWLINE);
+		writer.append(inner).append(quote("count")).append(": ").append(String.valueOf(result.getFrequency()))
+				.append(',').append(NEWLINE);
+		writer.append(inner).append(quote("index")).append(": ").append(String.valueOf(result.getPosition()))
+				.append(NEWLINE);
+		writer.append(outer).append('}');
 	}
 }
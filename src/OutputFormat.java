@@ -0,0 +1,37 @@
+/**
+ * Ways the index and results files can be written.
+ *
+ * @author courtniwong
+ *
+ */
+public enum OutputFormat {
+
+	/** JSON with every value on its own line, indented by level. */
+	PRETTY,
+
+	/** JSON without any whitespace, ending with a single newline. */
+	COMPACT,
+
+	/**
+	 * Newline-delimited JSON: one compact JSON object on each line, for each
+	 * word of the index or each query of the results.
+	 */
+	NDJSON;
+
+	/**
+	 * Returns the format with the given name, ignoring case, or null if there
+	 * is none.
+	 *
+	 * @param name
+	 *            name of the format
+	 * @return format, or null if not found
+	 */
+	public static OutputFormat forName(String name) {
+		for (OutputFormat format : values()) {
+			if (format.name().equalsIgnoreCase(name)) {
+				return format;
+			}
+		}
+		return null;
+	}
+}
@@ -14,10 +14,66 @@ import java.util.List;
  */
 public class PartialSearchBuilder {
 
-	private final LinkedHashMap<String, List<SearchResult>> queryResults;
+	protected final LinkedHashMap<String, List<SearchResult>> queryResults;
+
+	/** Cache of search results, or null if results are not cached. */
+	protected final QueryCache cache;
+
+	/** Maximum number of results for each query, or 0 for every result. */
+	protected final int limit;
+
+	/** How queries are matched to words, unless they are phrases. */
+	protected final SearchMode mode;
 
 	public PartialSearchBuilder() {
+		this(null);
+	}
+
+	/**
+	 * Initializes an empty map of query results that searches through the
+	 * given cache.
+	 *
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 */
+	public PartialSearchBuilder(QueryCache cache) {
+		this(cache, 0);
+	}
+
+	/**
+	 * Initializes an empty map of query results that searches through the
+	 * given cache, and only keeps the given number of best results for each
+	 * query.
+	 *
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 * @param limit
+	 *            maximum number of results for each query, or 0 for every
+	 *            result
+	 */
+	public PartialSearchBuilder(QueryCache cache, int limit) {
+		this(cache, limit, SearchMode.PREFIX);
+	}
+
+	/**
+	 * Initializes an empty map of query results that searches through the
+	 * given cache, only keeps the given number of best results for each
+	 * query, and matches queries to words with the given mode. Queries in
+	 * quotation marks are always searched as phrases.
+	 *
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 * @param limit
+	 *            maximum number of results for each query, or 0 for every
+	 *            result
+	 * @param mode
+	 *            how queries are matched to words in the index
+	 */
+	public PartialSearchBuilder(QueryCache cache, int limit, SearchMode mode) {
 		queryResults = new LinkedHashMap<String, List<SearchResult>>();
+		this.cache = cache;
+		this.limit = limit;
+		this.mode = mode;
 	}
 
 	/**
@@ -42,7 +98,7 @@ public class PartialSearchBuilder {
 
 	/**
 	 * Helper method to create search results and store them in the
-	 * LinkedHashMap.
+	 * LinkedHashMap. The time taken is recorded in {@link Metrics}.
 	 *
 	 * @param line:
 	 *            query
@@ -50,19 +106,65 @@ public class PartialSearchBuilder {
 	 *            Inverted Index
 	 */
 	public void parseLine(String line, InvertedIndex index) {
-		List<String> cleanQueries = WordParser.split(line);
-		List<SearchResult> searchResults = index.partialSearch(cleanQueries);
+		long start = System.nanoTime();
+		List<SearchResult> searchResults = search(line, index);
 		queryResults.put(line, searchResults);
+		Metrics.recordQuery(System.nanoTime() - start);
 	}
 
 	/**
-	 * Calls writeQueries method in OutputFileWriter to write queries in proper
-	 * format.
+	 * Searches the index for a query line, using the cache if there is one,
+	 * and keeping only the best results if there is a limit. Lines in
+	 * quotation marks are searched as phrases, and other lines with the mode
+	 * of this builder.
+	 *
+	 * @param line
+	 *            query
+	 * @param index
+	 *            Inverted Index
+	 * @return sorted search results
+	 */
+	protected List<SearchResult> search(String line, InvertedIndex index) {
+		List<String> cleanQueries = WordParser.split(line);
+		SearchMode lineMode = WordParser.isPhrase(line) ? SearchMode.PHRASE : mode;
+		if (cache != null) {
+			return cache.search(cleanQueries, index, lineMode, limit);
+		}
+		return index.search(cleanQueries, lineMode, limit);
+	}
+
+	/**
+	 * Calls writeQueries method in OutputFileWriter to write queries as
+	 * pretty-printed JSON that is not compressed.
 	 *
 	 * @param queryFile:
 	 *            input queries
+	 *
+	 * @see #writeQueryFile(Path, OutputFormat, boolean)
 	 */
 	public void writeQueryFile(Path queryFile) {
-		OutputFileWriter.writeQuery(queryFile, queryResults);
+		writeQueryFile(queryFile, OutputFormat.PRETTY, false);
+	}
+
+	/**
+	 * Calls writeQueries method in OutputFileWriter to write queries in the
+	 * given format.
+	 *
+	 * @param queryFile:
+	 *            input queries
+	 * @param format:
+	 *            format of the file
+	 * @param compressed:
+	 *            true to compress the file with gzip
+	 */
+	public void writeQueryFile(Path queryFile, OutputFormat format, boolean compressed) {
+		OutputFileWriter.writeQuery(queryFile, queryResults, format, compressed);
+	}
+
+	/**
+	 * Releases any resources used to build search results. Does nothing for a
+	 * single-threaded builder.
+	 */
+	public void shutdown() {
 	}
 }
@@ -0,0 +1,100 @@
+import java.util.PrimitiveIterator;
+
+/**
+ * Finds the positions where a phrase starts in a single document, given the
+ * positions of each word of the phrase in that document. The shortest list of
+ * positions is used to pick candidate starts, and the other lists are only
+ * moved forward with {@link PostingList.Cursor#advance(int)}, which gallops
+ * through the skip table of long lists, so the positions of common words are
+ * skipped over instead of decoded.
+ *
+ * @author courtniwong
+ *
+ */
+public class PhraseMatcher {
+
+	/** Cursors over the positions of each word of the phrase. */
+	private final PostingList.Cursor[] cursors;
+
+	/** Number of times the phrase was found in the last document. */
+	private int count;
+
+	/** First position of the phrase in the last document. */
+	private int first;
+
+	/**
+	 * Initializes a matcher for phrases of the given number of words.
+	 *
+	 * @param words
+	 *            number of words in the phrase
+	 */
+	public PhraseMatcher(int words) {
+		this.cursors = new PostingList.Cursor[words];
+	}
+
+	/**
+	 * Finds the phrase in a document.
+	 *
+	 * @param lists
+	 *            positions of each word of the phrase in the document, in
+	 *            phrase order
+	 * @return true if the phrase was found at least once
+	 */
+	public boolean match(PostingList[] lists) {
+		int anchor = 0;
+		for (int i = 1; i < lists.length; i++) {
+			if (lists[i].size() < lists[anchor].size()) {
+				anchor = i;
+			}
+		}
+		for (int i = 0; i < lists.length; i++) {
+			cursors[i] = i == anchor ? null : lists[i].cursor();
+		}
+
+		count = 0;
+		first = 0;
+		PrimitiveIterator.OfInt iterator = lists[anchor].iterator();
+		while (iterator.hasNext()) {
+			int start = iterator.nextInt() - anchor;
+			boolean found = true;
+
+			for (int i = 0; i < lists.length && found; i++) {
+				if (i == anchor) {
+					continue;
+				}
+				int position = cursors[i].advance(start + i);
+				if (position < 0) {
+					/* no later start can be found either */
+					return count > 0;
+				}
+				found = position == start + i;
+			}
+
+			if (found) {
+				if (count == 0) {
+					first = start;
+				}
+				count++;
+			}
+		}
+		return count > 0;
+	}
+
+	/**
+	 * Returns the number of times the phrase was found in the last document.
+	 *
+	 * @return number of times found
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Returns the first position of the phrase in the last document.
+	 *
+	 * @return first position of the phrase
+	 */
+	public int first() {
+		return first;
+	}
+}
@@ -0,0 +1,638 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Sorted set of word positions stored as a compressed array of bytes. Each
+ * position is stored as the difference from the previous position using a
+ * variable-byte encoding, so nearby positions take a single byte instead of a
+ * boxed Integer inside a tree node. The size, first, and last positions are
+ * kept separately so they can be returned without decoding.
+ *
+ * <p>
+ * Positions added in increasing order are appended in place. Appends write
+ * the new bytes before publishing the new length and size, so a thread may
+ * read the list while a single other thread appends to it. Any other change
+ * re-encodes the list and is not safe to read concurrently.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class PostingList {
+
+	/** Number of positions between entries of the skip table. */
+	public static final int SKIP_INTERVAL = 64;
+
+	/** Encoded position deltas. */
+	private volatile byte[] data;
+
+	/** Number of bytes of data in use. */
+	private volatile int length;
+
+	/** Number of positions stored. */
+	private volatile int size;
+
+	/** Smallest position stored. */
+	private int first;
+
+	/** Largest position stored. */
+	private int last;
+
+	/**
+	 * Skip table built the first time the list is searched, or null. Holds the
+	 * value and the byte offset after every {@link #SKIP_INTERVAL} positions.
+	 * Appends do not move existing bytes, so the table stays valid for the
+	 * part of the list it covers until the list is re-encoded.
+	 */
+	private volatile int[] skips;
+
+	/**
+	 * Initializes an empty list of positions.
+	 */
+	public PostingList() {
+		data = new byte[4];
+		length = 0;
+		size = 0;
+	}
+
+	/**
+	 * Initializes a list with a copy of the positions in another list.
+	 *
+	 * @param other
+	 *            list of positions to copy
+	 */
+	public PostingList(PostingList other) {
+		int otherLength = other.length;
+		data = Arrays.copyOf(other.data, Math.max(4, otherLength));
+		first = other.first;
+		last = other.last;
+		length = otherLength;
+		size = other.size;
+	}
+
+	/**
+	 * Adds a position to the list if it is not already stored.
+	 *
+	 * @param position
+	 *            position to add
+	 * @return true if the position was added
+	 */
+	public boolean add(int position) {
+		if (size == 0) {
+			first = position;
+			append(position, 0);
+			return true;
+		}
+		if (position > last) {
+			append(position, last);
+			return true;
+		}
+		if (contains(position)) {
+			return false;
+		}
+
+		int[] positions = toArray();
+		int insert = -Arrays.binarySearch(positions, position) - 1;
+		int[] merged = new int[positions.length + 1];
+		System.arraycopy(positions, 0, merged, 0, insert);
+		merged[insert] = position;
+		System.arraycopy(positions, insert, merged, insert + 1, positions.length - insert);
+		encode(merged, merged.length);
+		return true;
+	}
+
+	/**
+	 * Adds all positions from another list that are not already stored.
+	 *
+	 * @param other
+	 *            list of positions to add
+	 */
+	public void addAll(PostingList other) {
+		if (other.isEmpty()) {
+			return;
+		}
+		if (size == 0 || other.first > last) {
+			PrimitiveIterator.OfInt iterator = other.iterator();
+			while (iterator.hasNext()) {
+				add(iterator.nextInt());
+			}
+			return;
+		}
+
+		int[] mine = toArray();
+		int[] theirs = other.toArray();
+		int[] merged = new int[mine.length + theirs.length];
+		int i = 0, j = 0, k = 0;
+		while (i < mine.length || j < theirs.length) {
+			int next;
+			if (j == theirs.length || (i < mine.length && mine[i] <= theirs[j])) {
+				next = mine[i++];
+			} else {
+				next = theirs[j++];
+			}
+			if (k == 0 || merged[k - 1] != next) {
+				merged[k++] = next;
+			}
+		}
+		encode(merged, k);
+	}
+
+	/**
+	 * Returns true if the position is stored in the list.
+	 *
+	 * @param position
+	 *            position to look for
+	 * @return true if the position is stored
+	 */
+	public boolean contains(int position) {
+		if (size == 0 || position < first || position > last) {
+			return false;
+		}
+		PrimitiveIterator.OfInt iterator = iterator();
+		while (iterator.hasNext()) {
+			int next = iterator.nextInt();
+			if (next >= position) {
+				return next == position;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of positions stored.
+	 *
+	 * @return number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if no positions are stored.
+	 *
+	 * @return true if the list is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the smallest position stored.
+	 *
+	 * @return first position
+	 * @throws NoSuchElementException
+	 *             if the list is empty
+	 */
+	public int first() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return first;
+	}
+
+	/**
+	 * Returns the largest position stored.
+	 *
+	 * @return last position
+	 * @throws NoSuchElementException
+	 *             if the list is empty
+	 */
+	public int last() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return last;
+	}
+
+	/**
+	 * Returns the number of bytes used to store the encoded positions.
+	 *
+	 * @return number of encoded bytes
+	 */
+	public int byteSize() {
+		return length;
+	}
+
+	/**
+	 * Returns an iterator over the positions in increasing order.
+	 *
+	 * @return iterator of positions
+	 */
+	public PrimitiveIterator.OfInt iterator() {
+		final int end = length;
+		final byte[] bytes = data;
+
+		return new PrimitiveIterator.OfInt() {
+			private int offset = 0;
+			private int previous = 0;
+
+			@Override
+			public boolean hasNext() {
+				return offset < end;
+			}
+
+			@Override
+			public int nextInt() {
+				if (offset >= end) {
+					throw new NoSuchElementException();
+				}
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = bytes[offset++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				previous += delta;
+				return previous;
+			}
+		};
+	}
+
+	/**
+	 * Returns the positions as a sorted array.
+	 *
+	 * @return array of positions
+	 */
+	public int[] toArray() {
+		int[] positions = new int[size];
+		PrimitiveIterator.OfInt iterator = iterator();
+		for (int i = 0; i < positions.length && iterator.hasNext(); i++) {
+			positions[i] = iterator.nextInt();
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns a cursor that moves forward through the positions, skipping
+	 * ahead with the skip table when the list is long.
+	 *
+	 * @return cursor before the first position
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Returns the skip table, building it if the list is long enough to need
+	 * one.
+	 *
+	 * @return skip table, or null if the list is short
+	 */
+	private int[] skips() {
+		int[] table = skips;
+		if (table != null || size < 2 * SKIP_INTERVAL) {
+			return table;
+		}
+
+		int end = length;
+		byte[] bytes = data;
+		table = new int[2 * (size / SKIP_INTERVAL)];
+		int offset = 0;
+		int value = 0;
+		int count = 0;
+		int entry = 0;
+		while (offset < end && entry < table.length) {
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[offset++];
+				delta |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			value += delta;
+
+			if (++count % SKIP_INTERVAL == 0) {
+				table[entry++] = value;
+				table[entry++] = offset;
+			}
+		}
+		if (entry < table.length) {
+			table = Arrays.copyOf(table, entry);
+		}
+		skips = table;
+		return table;
+	}
+
+	/**
+	 * Moves forward through the positions of the list, as they were when the
+	 * cursor was created.
+	 */
+	public class Cursor {
+
+		/** Encoded position deltas. */
+		private final byte[] bytes;
+
+		/** Number of bytes in use. */
+		private final int end;
+
+		/** Skip table, or null. */
+		private final int[] table;
+
+		/** Offset of the next encoded delta. */
+		private int offset;
+
+		/** Last position decoded. */
+		private int value;
+
+		/** Number of positions decoded or skipped. */
+		private int index;
+
+		/**
+		 * Initializes a cursor before the first position.
+		 */
+		private Cursor() {
+			this.end = length;
+			this.bytes = data;
+			this.table = skips();
+			this.offset = 0;
+			this.value = 0;
+			this.index = 0;
+		}
+
+		/**
+		 * Moves to the first position that is not less than the target, unless
+		 * the cursor is already there. Entries of the skip table are searched
+		 * with a galloping search first, so only part of one interval has to
+		 * be decoded.
+		 *
+		 * @param target
+		 *            position to find
+		 * @return first position not less than the target, or -1 if there is
+		 *         none
+		 */
+		public int advance(int target) {
+			if (index > 0 && value >= target) {
+				return value;
+			}
+
+			int entries = table == null ? 0 : table.length / 2;
+			int k = index / SKIP_INTERVAL;
+			if (k < entries && skippable(k, target)) {
+				int step = 1;
+				while (k + step < entries && skippable(k + step, target)) {
+					k += step;
+					step <<= 1;
+				}
+				int high = Math.min(k + step, entries);
+				while (k + 1 < high) {
+					int middle = (k + high) >>> 1;
+					if (skippable(middle, target)) {
+						k = middle;
+					} else {
+						high = middle;
+					}
+				}
+				value = table[2 * k];
+				offset = table[2 * k + 1];
+				index = (k + 1) * SKIP_INTERVAL;
+			}
+
+			while (offset < end) {
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = bytes[offset++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				value += delta;
+				index++;
+
+				if (value >= target) {
+					return value;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Returns true if the cursor can skip to an entry of the skip table
+		 * without passing the target.
+		 *
+		 * @param k
+		 *            entry of the skip table
+		 * @param target
+		 *            position to find
+		 * @return true if the entry is before the target
+		 */
+		private boolean skippable(int k, int target) {
+			return table[2 * k] < target && table[2 * k + 1] <= end;
+		}
+	}
+
+	/**
+	 * Finds the first value that is not less than the target in part of a
+	 * sorted array. Looks ahead 1, 2, 4, ... values from the start before a
+	 * binary search, so targets close to the start are found quickly.
+	 *
+	 * @param values
+	 *            sorted array
+	 * @param from
+	 *            first index to search
+	 * @param to
+	 *            last index to search, exclusive
+	 * @param target
+	 *            value to find
+	 * @return index of the first value not less than the target, or to if
+	 *         there is none
+	 */
+	public static int gallop(int[] values, int from, int to, int target) {
+		if (from >= to || values[from] >= target) {
+			return from;
+		}
+
+		/* values[low] is always less than the target */
+		int low = from;
+		int step = 1;
+		while (low + step < to && values[low + step] < target) {
+			low += step;
+			step <<= 1;
+		}
+
+		int high = Math.min(low + step, to);
+		while (low + 1 < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < target) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * Encodes a position after the given previous position at the end of the
+	 * data, then publishes the new length and size.
+	 *
+	 * @param position
+	 *            position to append
+	 * @param previous
+	 *            last position stored, or 0 if the list is empty
+	 */
+	private void append(int position, int previous) {
+		int offset = length;
+		byte[] bytes = data;
+		if (offset + 5 > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(offset + 5, bytes.length + (bytes.length >> 1)));
+			data = bytes;
+		}
+
+		last = position;
+		length = write(bytes, offset, position - previous);
+		size = size + 1;
+	}
+
+	/**
+	 * Replaces the data with the encoding of the given sorted positions.
+	 *
+	 * @param positions
+	 *            sorted positions without duplicates
+	 * @param count
+	 *            number of positions to use from the array
+	 */
+	private void encode(int[] positions, int count) {
+		byte[] bytes = new byte[Math.max(4, count * 5)];
+		int offset = 0;
+		int previous = 0;
+		for (int i = 0; i < count; i++) {
+			offset = write(bytes, offset, positions[i] - previous);
+			previous = positions[i];
+		}
+
+		data = Arrays.copyOf(bytes, Math.max(4, offset));
+		first = positions[0];
+		last = positions[count - 1];
+		length = offset;
+		size = count;
+		skips = null;
+	}
+
+	/**
+	 * Writes an unsigned variable-byte value to the array. Every byte except
+	 * the last has its high bit set.
+	 *
+	 * @param bytes
+	 *            array to write to
+	 * @param offset
+	 *            offset to start writing at
+	 * @param value
+	 *            value to write, treated as unsigned
+	 * @return offset after the written value
+	 */
+	private static int write(byte[] bytes, int offset, int value) {
+		while ((value & ~0x7F) != 0) {
+			bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Writes the number of positions, the number of encoded bytes, and the
+	 * encoded bytes to the output.
+	 *
+	 * @param out
+	 *            output to write to
+	 * @throws IOException
+	 *             if unable to write
+	 *
+	 * @see #read(ByteBuffer)
+	 */
+	public void write(DataOutput out) throws IOException {
+		int end = length;
+		writeVarint(out, size);
+		writeVarint(out, end);
+		out.write(data, 0, end);
+	}
+
+	/**
+	 * Reads a list written by {@link #write(DataOutput)} starting at the
+	 * current position of the buffer, and moves the buffer past it.
+	 *
+	 * @param in
+	 *            buffer to read from
+	 * @return list of positions read
+	 */
+	public static PostingList read(ByteBuffer in) {
+		PostingList list = new PostingList();
+		int count = readVarint(in);
+		int bytes = readVarint(in);
+
+		list.data = new byte[Math.max(4, bytes)];
+		in.get(list.data, 0, bytes);
+		list.length = bytes;
+
+		PrimitiveIterator.OfInt iterator = list.iterator();
+		if (iterator.hasNext()) {
+			list.first = iterator.nextInt();
+			list.last = list.first;
+			while (iterator.hasNext()) {
+				list.last = iterator.nextInt();
+			}
+		}
+		list.size = count;
+		return list;
+	}
+
+	/**
+	 * Writes an unsigned variable-byte value to the output.
+	 *
+	 * @param out
+	 *            output to write to
+	 * @param value
+	 *            value to write, treated as unsigned
+	 * @throws IOException
+	 *             if unable to write
+	 */
+	public static void writeVarint(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads an unsigned variable-byte value from the current position of the
+	 * buffer, and moves the buffer past it.
+	 *
+	 * @param in
+	 *            buffer to read from
+	 * @return value read
+	 */
+	public static int readVarint(ByteBuffer in) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		PrimitiveIterator.OfInt iterator = iterator();
+		while (iterator.hasNext()) {
+			builder.append(iterator.nextInt());
+			if (iterator.hasNext()) {
+				builder.append(", ");
+			}
+		}
+		return builder.append("]").toString();
+	}
+}
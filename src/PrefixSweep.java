@@ -0,0 +1,387 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Finds the partial search results of many queries at once with a single pass
+ * over the sorted words of an index. The distinct query words of every query
+ * are sorted, and the frequency and first position of each document are added
+ * up once for each of them. The results of each query are then put together
+ * from the totals of its words, so words shared by many queries are only
+ * looked up once. Words found by more than one query word of the same query
+ * still count once for each of them, just like
+ * {@link InvertedIndex#partialSearch(List, int)}.
+ *
+ * <p>
+ * An index drives the pass as follows, giving words in sorted order:
+ * </p>
+ *
+ * <pre>
+ * String prefix;
+ * while ((prefix = sweep.seek()) != null) {
+ * 	for (each word of the index, from the first one not before prefix) {
+ * 		if (!sweep.enter(word)) {
+ * 			break;
+ * 		}
+ * 		for (each document of the word) {
+ * 			sweep.add(document, frequency, position);
+ * 		}
+ * 	}
+ * 	if (no words were left) {
+ * 		sweep.end();
+ * 	}
+ * }
+ * </pre>
+ *
+ * <p>
+ * Query words that are prefixes of each other are nested, so while a word is
+ * entered the query words that match it form a chain. Documents are only
+ * added to the longest of them, whose totals are added to the next longest
+ * once it is done, so every document of a word is only added once no matter
+ * how many query words match it.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class PrefixSweep {
+
+	/** Cleaned query words of each query. */
+	private final List<List<String>> queries;
+
+	/** Distinct query words, sorted. */
+	private final String[] prefixes;
+
+	/** Documents of each query word, or null until it is done. */
+	private final int[][] documents;
+
+	/** Total frequency in each document, by query word. */
+	private final int[][] frequencies;
+
+	/** Earliest position in each document, by query word. */
+	private final int[][] positions;
+
+	/** Query words matching the current word, from shortest to longest. */
+	private final int[] stack;
+
+	/** Totals of the query words on the stack. */
+	private final List<Totals> levels;
+
+	/** Number of query words on the stack. */
+	private int depth;
+
+	/** Next query word that has not been entered. */
+	private int next;
+
+	/** Document ids of paths, when the index does not number its documents. */
+	private final HashMap<String, Integer> ids;
+
+	/** Paths by document id, when the index does not number its documents. */
+	private final ArrayList<String> paths;
+
+	/**
+	 * Initializes a pass for the given queries.
+	 *
+	 * @param queries
+	 *            cleaned query words of each query
+	 */
+	public PrefixSweep(List<List<String>> queries) {
+		this.queries = queries;
+		TreeSet<String> words = new TreeSet<>();
+		for (List<String> query : queries) {
+			words.addAll(query);
+		}
+		this.prefixes = words.toArray(new String[words.size()]);
+		this.documents = new int[prefixes.length][];
+		this.frequencies = new int[prefixes.length][];
+		this.positions = new int[prefixes.length][];
+		this.stack = new int[prefixes.length];
+		this.levels = new ArrayList<>();
+		this.depth = 0;
+		this.next = 0;
+		this.ids = new HashMap<>();
+		this.paths = new ArrayList<>();
+	}
+
+	/**
+	 * Returns the distinct query words, sorted.
+	 *
+	 * @return sorted query words
+	 */
+	public List<String> prefixes() {
+		return Collections.unmodifiableList(Arrays.asList(prefixes));
+	}
+
+	/**
+	 * Returns the first query word that has not been entered, or null once
+	 * every query word is done. The index should continue from the first word
+	 * that is not before it.
+	 *
+	 * @return query word to continue from, or null if done
+	 */
+	public String seek() {
+		return next < prefixes.length ? prefixes[next] : null;
+	}
+
+	/**
+	 * Enters the next word of the index. Query words that do not match the
+	 * word are done, since words come in sorted order. Returns false if no
+	 * query word matches the word, in which case the index should
+	 * {@link #seek()} again instead of adding its documents.
+	 *
+	 * @param word
+	 *            next word of the index, not before the last one entered
+	 * @return true if the documents of the word should be added
+	 */
+	public boolean enter(String word) {
+		while (depth > 0 && !word.startsWith(prefixes[stack[depth - 1]])) {
+			pop();
+		}
+
+		/* a query word before this word that does not match it can no longer match */
+		while (next < prefixes.length && prefixes[next].compareTo(word) <= 0) {
+			if (word.startsWith(prefixes[next])) {
+				if (levels.size() == depth) {
+					levels.add(new Totals());
+				}
+				stack[depth++] = next;
+			} else {
+				done(next, null);
+			}
+			next++;
+		}
+		return depth > 0;
+	}
+
+	/**
+	 * Adds the frequency and first position of the entered word in a
+	 * document.
+	 *
+	 * @param document
+	 *            document id
+	 * @param frequency
+	 *            number of times the word is found in the document
+	 * @param position
+	 *            first position of the word in the document
+	 */
+	public void add(int document, int frequency, int position) {
+		levels.get(depth - 1).add(document, frequency, position);
+	}
+
+	/**
+	 * Returns the document id of a path, numbering paths in the order they
+	 * are first given. Used by indexes that do not number their documents.
+	 *
+	 * @param path
+	 *            path of the document
+	 * @return document id
+	 * @see #results(int)
+	 */
+	public int document(String path) {
+		Integer id = ids.get(path);
+		if (id == null) {
+			id = paths.size();
+			ids.put(path, id);
+			paths.add(path);
+		}
+		return id;
+	}
+
+	/**
+	 * Ends the pass once the index has no more words. Every query word left
+	 * is done.
+	 */
+	public void end() {
+		while (depth > 0) {
+			pop();
+		}
+		while (next < prefixes.length) {
+			done(next++, null);
+		}
+	}
+
+	/**
+	 * Returns the results of each query, using the paths numbered by
+	 * {@link #document(String)}.
+	 *
+	 * @param limit
+	 *            maximum number of results of each query, or 0 for every
+	 *            result
+	 * @return sorted search results of each query, in the order of the
+	 *         queries
+	 */
+	public List<List<SearchResult>> results(int limit) {
+		/* the accumulator breaks ties by document id, so ids must follow path order */
+		String[] sorted = paths.toArray(new String[paths.size()]);
+		Arrays.sort(sorted);
+		int[] renumber = new int[sorted.length];
+		for (int id = 0; id < sorted.length; id++) {
+			renumber[ids.get(sorted[id])] = id;
+		}
+		for (int[] prefixDocuments : documents) {
+			for (int i = 0; i < prefixDocuments.length; i++) {
+				prefixDocuments[i] = renumber[prefixDocuments[i]];
+			}
+		}
+		ids.clear();
+		paths.clear();
+		return results(sorted, new SearchAccumulator(sorted.length), limit);
+	}
+
+	/**
+	 * Returns the results of each query, using the document ids of the index.
+	 *
+	 * @param documents
+	 *            path of each document id, in sorted order
+	 * @param accumulator
+	 *            empty accumulator for the documents
+	 * @param limit
+	 *            maximum number of results of each query, or 0 for every
+	 *            result
+	 * @return sorted search results of each query, in the order of the
+	 *         queries
+	 */
+	public List<List<SearchResult>> results(String[] documents, SearchAccumulator accumulator, int limit) {
+		List<List<SearchResult>> results = new ArrayList<>(queries.size());
+		for (List<String> query : queries) {
+			for (String word : query) {
+				int prefix = Arrays.binarySearch(prefixes, word);
+				int[] prefixDocuments = this.documents[prefix];
+				int[] prefixFrequencies = frequencies[prefix];
+				int[] prefixPositions = positions[prefix];
+				for (int i = 0; i < prefixDocuments.length; i++) {
+					accumulator.add(prefixDocuments[i], prefixFrequencies[i], prefixPositions[i]);
+				}
+			}
+			results.add(accumulator.results(documents, limit));
+		}
+		return results;
+	}
+
+	/**
+	 * Removes the longest query word from the stack, keeps its totals, and
+	 * adds them to the totals of the next longest query word.
+	 */
+	private void pop() {
+		depth--;
+		Totals totals = levels.get(depth);
+		if (depth > 0) {
+			levels.get(depth - 1).addAll(totals);
+		}
+		done(stack[depth], totals);
+	}
+
+	/**
+	 * Keeps the totals of a query word that is done, and clears them.
+	 *
+	 * @param prefix
+	 *            query word that is done
+	 * @param totals
+	 *            totals of the query word, or null if it matched no words
+	 */
+	private void done(int prefix, Totals totals) {
+		if (totals == null) {
+			documents[prefix] = new int[0];
+			frequencies[prefix] = documents[prefix];
+			positions[prefix] = documents[prefix];
+			return;
+		}
+		documents[prefix] = Arrays.copyOf(totals.documents, totals.count);
+		frequencies[prefix] = Arrays.copyOf(totals.frequencies, totals.count);
+		positions[prefix] = Arrays.copyOf(totals.positions, totals.count);
+		totals.clear();
+	}
+
+	/**
+	 * Frequency and first position of each document found by a query word so
+	 * far, kept in the order the documents were found. A table of slots by
+	 * document id finds a document that was already found.
+	 */
+	private static class Totals {
+
+		/** Slot of each document plus one, or 0 if not found yet. */
+		private int[] slots;
+
+		/** Documents found, by slot. */
+		private int[] documents;
+
+		/** Total frequency, by slot. */
+		private int[] frequencies;
+
+		/** Earliest position, by slot. */
+		private int[] positions;
+
+		/** Number of documents found. */
+		private int count;
+
+		/**
+		 * Initializes empty totals.
+		 */
+		public Totals() {
+			this.slots = new int[16];
+			this.documents = new int[16];
+			this.frequencies = new int[16];
+			this.positions = new int[16];
+			this.count = 0;
+		}
+
+		/**
+		 * Adds the frequency and first position of a word in a document.
+		 *
+		 * @param document
+		 *            document id
+		 * @param frequency
+		 *            number of times the word is found in the document
+		 * @param position
+		 *            first position of the word in the document
+		 */
+		public void add(int document, int frequency, int position) {
+			if (document >= slots.length) {
+				slots = Arrays.copyOf(slots, Math.max(document + 1, slots.length * 2));
+			}
+			int slot = slots[document] - 1;
+			if (slot >= 0) {
+				frequencies[slot] += frequency;
+				if (positions[slot] > position) {
+					positions[slot] = position;
+				}
+				return;
+			}
+
+			if (count == documents.length) {
+				documents = Arrays.copyOf(documents, count * 2);
+				frequencies = Arrays.copyOf(frequencies, count * 2);
+				positions = Arrays.copyOf(positions, count * 2);
+			}
+			documents[count] = document;
+			frequencies[count] = frequency;
+			positions[count] = position;
+			slots[document] = ++count;
+		}
+
+		/**
+		 * Adds all the totals of another query word.
+		 *
+		 * @param other
+		 *            totals to add
+		 */
+		public void addAll(Totals other) {
+			for (int i = 0; i < other.count; i++) {
+				add(other.documents[i], other.frequencies[i], other.positions[i]);
+			}
+		}
+
+		/**
+		 * Clears the documents found so far.
+		 */
+		public void clear() {
+			for (int i = 0; i < count; i++) {
+				slots[documents[i]] = 0;
+			}
+			count = 0;
+		}
+	}
+}
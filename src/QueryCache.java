@@ -0,0 +1,354 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Least recently used cache of partial search results. Queries are keyed by
+ * their cleaned and sorted words, search mode, and result limit, so queries
+ * that only differ in case, punctuation, or word order share the same entry.
+ * The cache is cleared whenever the index it is used with has been modified.
+ *
+ * @author courtniwong
+ *
+ */
+public class QueryCache {
+
+	/** Estimated bytes used by an entry, not counting its key and results. */
+	private static final int ENTRY_BYTES = 96;
+
+	/** Estimated bytes used by a word in a key, not counting its characters. */
+	private static final int WORD_BYTES = 56;
+
+	/** Estimated bytes used by a search result and its reference. */
+	private static final int RESULT_BYTES = 40;
+
+	/** Cached results, ordered from least to most recently used. */
+	private final LinkedHashMap<Key, List<SearchResult>> cache;
+
+	/** Maximum number of cached queries. */
+	private final int maxEntries;
+
+	/** Maximum estimated bytes used by cached queries. */
+	private final long maxBytes;
+
+	/** Estimated bytes used by cached queries. */
+	private long bytes;
+
+	/** Index the cached results were computed from. */
+	private InvertedIndex index;
+
+	/** Version of the index the cached results were computed from. */
+	private long version;
+
+	/** Number of searches answered from the cache. */
+	private long hits;
+
+	/** Number of searches that had to search the index. */
+	private long misses;
+
+	/** Number of queries removed to stay within the cache limits. */
+	private long evictions;
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param maxEntries
+	 *            maximum number of cached queries
+	 * @param maxBytes
+	 *            maximum estimated bytes used by cached queries
+	 */
+	public QueryCache(int maxEntries, long maxBytes) {
+		this.cache = new LinkedHashMap<Key, List<SearchResult>>(16, 0.75f, true);
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the partial search results for the cleaned query words, either
+	 * from the cache or by searching the index. The returned list must not be
+	 * modified.
+	 *
+	 * @param queries
+	 *            cleaned query words
+	 * @param index
+	 *            index to search
+	 * @return sorted search results
+	 * @see InvertedIndex#partialSearch(List)
+	 */
+	public List<SearchResult> partialSearch(List<String> queries, InvertedIndex index) {
+		return partialSearch(queries, index, 0);
+	}
+
+	/**
+	 * Returns the given number of best partial search results for the cleaned
+	 * query words, either from the cache or by searching the index. The
+	 * returned list must not be modified.
+	 *
+	 * @param queries
+	 *            cleaned query words
+	 * @param index
+	 *            index to search
+	 * @param limit
+	 *            maximum number of results, or 0 for every result
+	 * @return sorted search results
+	 * @see InvertedIndex#partialSearch(List, int)
+	 */
+	public List<SearchResult> partialSearch(List<String> queries, InvertedIndex index, int limit) {
+		return search(queries, index, SearchMode.PREFIX, limit);
+	}
+
+	/**
+	 * Returns the given number of best search results for the cleaned query
+	 * words, either from the cache or by searching the index. The returned
+	 * list must not be modified. Word order only matters for phrases.
+	 *
+	 * @param queries
+	 *            cleaned query words
+	 * @param index
+	 *            index to search
+	 * @param mode
+	 *            how queries are matched to words in the index
+	 * @param limit
+	 *            maximum number of results, or 0 for every result
+	 * @return sorted search results
+	 * @see InvertedIndex#search(List, SearchMode, int)
+	 */
+	public List<SearchResult> search(List<String> queries, InvertedIndex index, SearchMode mode, int limit) {
+		long version = index.getVersion();
+		List<SearchResult> results = get(queries, index, mode, limit);
+		if (results == null) {
+			/* search outside the lock so other queries are not held up */
+			results = put(queries, index, mode, limit, version, index.search(queries, mode, limit));
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the cached search results for the cleaned query words, without
+	 * searching the index if they are not cached. The returned list must not
+	 * be modified.
+	 *
+	 * @param queries
+	 *            cleaned query words
+	 * @param index
+	 *            index the results are for
+	 * @param mode
+	 *            how queries are matched to words in the index
+	 * @param limit
+	 *            maximum number of results, or 0 for every result
+	 * @return sorted search results, or null if they are not cached
+	 */
+	public synchronized List<SearchResult> get(List<String> queries, InvertedIndex index, SearchMode mode,
+			int limit) {
+		long current = index.getVersion();
+		if (this.index != index || this.version != current) {
+			clear();
+			this.index = index;
+			this.version = current;
+		}
+
+		List<SearchResult> results = cache.get(key(queries, mode, limit));
+		if (results != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return results;
+	}
+
+	/**
+	 * Caches search results found without the cache, after
+	 * {@link #get(List, InvertedIndex, SearchMode, int)} did not find them.
+	 * The results are only cached if the index did not change since the
+	 * given version was read, before searching.
+	 *
+	 * @param queries
+	 *            cleaned query words
+	 * @param index
+	 *            index that was searched
+	 * @param mode
+	 *            how queries were matched to words in the index
+	 * @param limit
+	 *            maximum number of results, or 0 for every result
+	 * @param version
+	 *            version of the index read before searching
+	 * @param results
+	 *            sorted search results, which must not be modified afterwards
+	 * @return the same results, as a list that cannot be modified
+	 */
+	public List<SearchResult> put(List<String> queries, InvertedIndex index, SearchMode mode, int limit,
+			long version, List<SearchResult> results) {
+		results = Collections.unmodifiableList(results);
+		synchronized (this) {
+			if (this.index == index && this.version == version && index.getVersion() == version) {
+				Key key = key(queries, mode, limit);
+				List<SearchResult> previous = cache.put(key, results);
+				if (previous != null) {
+					bytes -= size(key, previous);
+				}
+				bytes += size(key, results);
+				evict();
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the key of a query. Words are sorted unless they are a phrase,
+	 * since word order does not matter otherwise.
+	 *
+	 * @param queries
+	 *            cleaned query words
+	 * @param mode
+	 *            how queries are matched to words in the index
+	 * @param limit
+	 *            maximum number of results, or 0 for every result
+	 * @return key of the query
+	 */
+	private static Key key(List<String> queries, SearchMode mode, int limit) {
+		List<String> words = new ArrayList<String>(queries);
+		if (mode != SearchMode.PHRASE) {
+			Collections.sort(words);
+		}
+		return new Key(words, mode, Math.max(0, limit));
+	}
+
+	/**
+	 * Removes every cached query.
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the number of cached queries.
+	 *
+	 * @return number of cached queries
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the estimated bytes used by cached queries.
+	 *
+	 * @return estimated bytes used
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of searches answered from the cache.
+	 *
+	 * @return number of cache hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of searches that had to search the index.
+	 *
+	 * @return number of cache misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of queries removed to stay within the cache limits.
+	 *
+	 * @return number of evicted queries
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * Removes the least recently used queries until the cache is within both
+	 * limits.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, List<SearchResult>>> iterator = cache.entrySet().iterator();
+		while (iterator.hasNext() && (cache.size() > maxEntries || bytes > maxBytes)) {
+			Map.Entry<Key, List<SearchResult>> entry = iterator.next();
+			bytes -= size(entry.getKey(), entry.getValue());
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Estimates the bytes used by a cached query.
+	 *
+	 * @param key
+	 *            cleaned and sorted query words and limit
+	 * @param results
+	 *            search results
+	 * @return estimated bytes used
+	 */
+	private static long size(Key key, List<SearchResult> results) {
+		long size = ENTRY_BYTES + (long) RESULT_BYTES * results.size();
+		for (String word : key.words) {
+			size += WORD_BYTES + 2L * word.length();
+		}
+		return size;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", entries=" + cache.size()
+				+ ", bytes=" + bytes;
+	}
+
+	/**
+	 * Cleaned and sorted query words along with the search mode and result
+	 * limit.
+	 */
+	private static class Key {
+
+		/** Cleaned and sorted query words. */
+		private final List<String> words;
+
+		/** How queries are matched to words in the index. */
+		private final SearchMode mode;
+
+		/** Maximum number of results, or 0 for every result. */
+		private final int limit;
+
+		/**
+		 * Initializes a key.
+		 *
+		 * @param words
+		 *            cleaned and sorted query words
+		 * @param mode
+		 *            how queries are matched to words in the index
+		 * @param limit
+		 *            maximum number of results, or 0 for every result
+		 */
+		public Key(List<String> words, SearchMode mode, int limit) {
+			this.words = words;
+			this.mode = mode;
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return mode == key.mode && limit == key.limit && words.equals(key.words);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * words.hashCode() + limit) + mode.hashCode();
+		}
+	}
+}
@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable accumulator of partial search results by document id. The
+ * frequency and first position of each document are kept in primitive arrays
+ * indexed by document id, along with the list of documents found so far, so
+ * no objects are created until the results are returned. Document ids must be
+ * assigned in sorted path order, so that comparing ids compares paths.
+ *
+ * @author courtniwong
+ *
+ */
+public class SearchAccumulator {
+
+	/** Total frequency of each document, or 0 if not found yet. */
+	private int[] frequency;
+
+	/** Earliest position of each document. */
+	private int[] position;
+
+	/** Documents found so far, in the order they were found. */
+	private int[] found;
+
+	/** Scratch space for sorting. */
+	private int[] scratch;
+
+	/** Heap of the best documents, when the results are limited. */
+	private int[] heap;
+
+	/** Number of documents found so far. */
+	private int count;
+
+	/**
+	 * Initializes an accumulator for the given number of documents.
+	 *
+	 * @param documents
+	 *            number of documents
+	 */
+	public SearchAccumulator(int documents) {
+		this.frequency = new int[documents];
+		this.position = new int[documents];
+		this.found = new int[16];
+		this.scratch = new int[16];
+		this.count = 0;
+	}
+
+	/**
+	 * Adds the frequency and first position of a word in a document.
+	 *
+	 * @param document
+	 *            document id
+	 * @param frequency
+	 *            number of times the word is found in the document
+	 * @param position
+	 *            first position of the word in the document
+	 */
+	public void add(int document, int frequency, int position) {
+		if (this.frequency[document] == 0) {
+			if (count == found.length) {
+				found = Arrays.copyOf(found, count * 2);
+			}
+			found[count++] = document;
+			this.frequency[document] = frequency;
+			this.position[document] = position;
+		} else {
+			this.frequency[document] += frequency;
+			if (this.position[document] > position) {
+				this.position[document] = position;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of documents found so far.
+	 *
+	 * @return number of documents found
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Sorts the documents found the same way as
+	 * {@link SearchResult#compareTo(SearchResult)}, creates search results for
+	 * them, and clears the accumulator so it can be used again.
+	 *
+	 * @param documents
+	 *            path of each document id
+	 * @return sorted search results
+	 */
+	public List<SearchResult> results(String[] documents) {
+		return results(documents, 0);
+	}
+
+	/**
+	 * Sorts the given number of best documents found the same way as
+	 * {@link SearchResult#compareTo(SearchResult)}, creates search results for
+	 * them, and clears the accumulator so it can be used again. If there are
+	 * more documents than the limit, the best ones are selected with a bounded
+	 * heap before sorting.
+	 *
+	 * @param documents
+	 *            path of each document id
+	 * @param limit
+	 *            maximum number of results, or 0 for every result
+	 * @return sorted search results
+	 */
+	public List<SearchResult> results(String[] documents, int limit) {
+		int[] best = found;
+		int size = count;
+		if (limit > 0 && count > limit) {
+			best = select(limit);
+			size = limit;
+		}
+		sort(best, 0, size);
+
+		List<SearchResult> results = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			int document = best[i];
+			results.add(new SearchResult(frequency[document], position[document], documents[document]));
+		}
+		clear();
+		return results;
+	}
+
+	/**
+	 * Clears the documents found so far.
+	 */
+	public void clear() {
+		for (int i = 0; i < count; i++) {
+			frequency[found[i]] = 0;
+		}
+		count = 0;
+	}
+
+	/**
+	 * Returns true if the first document comes before the second one: higher
+	 * frequency first, then earlier position, then lower document id.
+	 *
+	 * @param a
+	 *            first document id
+	 * @param b
+	 *            second document id
+	 * @return true if the first document comes first
+	 */
+	private boolean before(int a, int b) {
+		if (frequency[a] != frequency[b]) {
+			return frequency[a] > frequency[b];
+		}
+		if (position[a] != position[b]) {
+			return position[a] < position[b];
+		}
+		return a < b;
+	}
+
+	/**
+	 * Selects the given number of best documents found with a bounded heap.
+	 * The head of the heap is the worst document kept so far, and is replaced
+	 * whenever a better document is found.
+	 *
+	 * @param limit
+	 *            number of documents to select
+	 * @return unsorted best documents
+	 */
+	private int[] select(int limit) {
+		if (heap == null || heap.length < limit) {
+			heap = new int[limit];
+		}
+		for (int i = 0; i < limit; i++) {
+			/* sift up */
+			int child = i;
+			heap[child] = found[i];
+			while (child > 0) {
+				int parent = (child - 1) >>> 1;
+				if (!before(heap[parent], heap[child])) {
+					break;
+				}
+				swap(heap, parent, child);
+				child = parent;
+			}
+		}
+		for (int i = limit; i < count; i++) {
+			if (before(found[i], heap[0])) {
+				/* sift down */
+				heap[0] = found[i];
+				int parent = 0;
+				while (true) {
+					int worst = parent;
+					int left = 2 * parent + 1;
+					int right = left + 1;
+					if (left < limit && before(heap[worst], heap[left])) {
+						worst = left;
+					}
+					if (right < limit && before(heap[worst], heap[right])) {
+						worst = right;
+					}
+					if (worst == parent) {
+						break;
+					}
+					swap(heap, parent, worst);
+					parent = worst;
+				}
+			}
+		}
+		return heap;
+	}
+
+	/**
+	 * Swaps two documents in an array.
+	 *
+	 * @param documents
+	 *            array of document ids
+	 * @param i
+	 *            first index
+	 * @param j
+	 *            second index
+	 */
+	private static void swap(int[] documents, int i, int j) {
+		int document = documents[i];
+		documents[i] = documents[j];
+		documents[j] = document;
+	}
+
+	/**
+	 * Sorts part of an array of documents with a merge sort, using insertion
+	 * sort for short runs.
+	 *
+	 * @param documents
+	 *            array of document ids
+	 * @param start
+	 *            first index to sort
+	 * @param end
+	 *            last index to sort, exclusive
+	 */
+	private void sort(int[] documents, int start, int end) {
+		if (end - start <= 16) {
+			for (int i = start + 1; i < end; i++) {
+				int document = documents[i];
+				int j = i - 1;
+				while (j >= start && before(document, documents[j])) {
+					documents[j + 1] = documents[j];
+					j--;
+				}
+				documents[j + 1] = document;
+			}
+			return;
+		}
+
+		int middle = (start + end) >>> 1;
+		sort(documents, start, middle);
+		sort(documents, middle, end);
+		if (!before(documents[middle], documents[middle - 1])) {
+			return;
+		}
+
+		if (scratch.length < middle - start) {
+			scratch = new int[Math.max(middle - start, scratch.length * 2)];
+		}
+		System.arraycopy(documents, start, scratch, 0, middle - start);
+
+		int i = 0;
+		int j = middle;
+		int k = start;
+		while (i < middle - start && j < end) {
+			documents[k++] = before(documents[j], scratch[i]) ? documents[j++] : scratch[i++];
+		}
+		while (i < middle - start) {
+			documents[k++] = scratch[i++];
+		}
+	}
+}
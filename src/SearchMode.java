@@ -0,0 +1,23 @@
+/**
+ * Ways a query can be matched against the words in an inverted index.
+ *
+ * @author courtniwong
+ *
+ */
+public enum SearchMode {
+
+	/** Every word that starts with a query word matches. */
+	PREFIX,
+
+	/** Only whole words equal to a query word match. */
+	EXACT,
+
+	/** The query words must be found at consecutive positions, in order. */
+	PHRASE,
+
+	/** Every query word must match, as a prefix, a word in the same path. */
+	ALL,
+
+	/** Every query word must match a whole word in the same path. */
+	ALL_EXACT;
+}
@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server that answers search queries from an inverted index.
+ * On Java 21 and later, every request is handled on its own virtual thread.
+ * Older runtimes have no virtual threads, so requests are handled on a pool
+ * of at most {@link VirtualThreads#PLATFORM_THREADS} platform threads
+ * instead, and wait in its queue while every thread is busy. Which one is
+ * used is logged when the server starts. The index is only read, so it may
+ * be shared by every request as long as nothing else modifies it, unless it
+ * is a {@link ThreadSafeInvertedIndex}.
+ *
+ * <ul>
+ * <li>{@code GET /search?q=query} returns the search results as JSON. The
+ * optional {@code mode} parameter (prefix, exact, phrase, all, or all_exact)
+ * and {@code limit} parameter override the defaults of the server. Queries
+ * in quotation marks are searched as phrases.</li>
+ * <li>{@code GET /health} returns a short status as JSON.</li>
+ * <li>{@code GET /metrics} returns the {@link Metrics} report, including the
+ * latencies of search requests answered so far and the memory in use. The
+ * build, its phases, and the query file are only included if the server was
+ * started with {@code -stats}, which measures them.</li>
+ * </ul>
+ *
+ * @author courtniwong
+ *
+ */
+public class SearchServer {
+
+	/** Number of connections that may wait to be accepted. */
+	public static final int BACKLOG = 1024;
+
+	/** Content type of every response. */
+	private static final String JSON_TYPE = "application/json; charset=utf-8";
+
+	static {
+		/*
+		 * the built in server leaves Nagle's algorithm on by default, which
+		 * holds back the body of small responses until the client acknowledges
+		 * the headers, capping keep-alive connections at a few requests a
+		 * second
+		 */
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	/** Index to search. */
+	private final InvertedIndex index;
+
+	/** Cache of search results, or null if results are not cached. */
+	private final QueryCache cache;
+
+	/** Default maximum number of results, or 0 for every result. */
+	private final int limit;
+
+	/** Default way queries are matched to words. */
+	private final SearchMode mode;
+
+	/** Underlying HTTP server. */
+	private final HttpServer server;
+
+	/** Executor that handles requests. */
+	private final ExecutorService executor;
+
+	/**
+	 * Initializes a server on the given port. The server does not accept
+	 * requests until it is started.
+	 *
+	 * @param port
+	 *            port to listen on, or 0 for any free port
+	 * @param index
+	 *            index to search
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 * @param limit
+	 *            default maximum number of results, or 0 for every result
+	 * @param mode
+	 *            default way queries are matched to words
+	 * @throws IOException
+	 *             if the port cannot be opened
+	 */
+	public SearchServer(int port, InvertedIndex index, QueryCache cache, int limit, SearchMode mode)
+			throws IOException {
+		this.index = index;
+		this.cache = cache;
+		this.limit = limit;
+		this.mode = mode;
+		this.executor = VirtualThreads.newPerTaskExecutor("SearchServer");
+		this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		this.server.setExecutor(executor);
+
+		server.createContext("/search", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				long start = System.nanoTime();
+				search(exchange);
+				Metrics.recordRequest(System.nanoTime() - start);
+			}
+		});
+		server.createContext("/health", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				health(exchange);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, Metrics.toJSON());
+			}
+		});
+	}
+
+	/**
+	 * Starts accepting requests, and logs whether requests are handled on
+	 * virtual threads or on the bounded pool of platform threads they fall
+	 * back to.
+	 */
+	public void start() {
+		server.start();
+		if (VirtualThreads.available()) {
+			System.out.println("Handling requests on virtual threads");
+		} else {
+			System.err.println("Virtual threads need Java 21 or later, handling requests on at most "
+					+ VirtualThreads.PLATFORM_THREADS + " platform threads, " + System.getProperty("java.version"));
+		}
+	}
+
+	/**
+	 * Stops accepting requests, waits up to the given number of seconds for
+	 * requests being handled to finish, and stops the server.
+	 *
+	 * @param delay
+	 *            seconds to wait for requests to finish
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the port the server is listening on.
+	 *
+	 * @return port number
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Answers a search request, or responds with an error if the search could
+	 * not be finished.
+	 *
+	 * @param exchange
+	 *            request and response
+	 * @throws IOException
+	 *             if the response cannot be sent
+	 */
+	private void search(HttpExchange exchange) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			respond(exchange, 405, "{\"error\":\"only GET is supported\"}");
+			return;
+		}
+
+		Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+		String line = parameters.get("q");
+		if (line == null) {
+			respond(exchange, 400, "{\"error\":\"missing query parameter q\"}");
+			return;
+		}
+
+		SearchMode queryMode = WordParser.isPhrase(line) ? SearchMode.PHRASE : mode;
+		int queryLimit = limit;
+		try {
+			if (parameters.containsKey("mode")) {
+				queryMode = SearchMode.valueOf(parameters.get("mode").toUpperCase(Locale.ROOT));
+			}
+			if (parameters.containsKey("limit")) {
+				queryLimit = Integer.parseInt(parameters.get("limit"));
+			}
+		} catch (IllegalArgumentException e) {
+			respond(exchange, 400, "{\"error\":\"invalid mode or limit\"}");
+			return;
+		}
+
+		List<String> cleanQueries = WordParser.split(line);
+		List<SearchResult> searchResults;
+		try {
+			if (cache != null) {
+				searchResults = cache.search(cleanQueries, index, queryMode, queryLimit);
+			} else {
+				searchResults = index.search(cleanQueries, queryMode, queryLimit);
+			}
+		} catch (IllegalStateException e) {
+			/* the search did not finish, so there are no results to send */
+			respond(exchange, 503, "{\"error\":\"search failed\"}");
+			return;
+		}
+		respond(exchange, 200, toJSON(line, searchResults));
+	}
+
+	/**
+	 * Answers a health check.
+	 *
+	 * @param exchange
+	 *            request and response
+	 * @throws IOException
+	 *             if the response cannot be sent
+	 */
+	private void health(HttpExchange exchange) throws IOException {
+		respond(exchange, 200, "{\"status\":\"ok\",\"version\":" + index.getVersion() + "}");
+	}
+
+	/**
+	 * Sends a JSON response and closes the exchange.
+	 *
+	 * @param exchange
+	 *            request and response
+	 * @param status
+	 *            HTTP status code
+	 * @param body
+	 *            JSON response
+	 * @throws IOException
+	 *             if the response cannot be sent
+	 */
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Decodes the parameters of a query string. Only the first value of a
+	 * parameter is kept.
+	 *
+	 * @param query
+	 *            raw query string, or null
+	 * @return parameter values by name
+	 */
+	private static Map<String, String> parameters(String query) {
+		Map<String, String> parameters = new HashMap<>();
+		if (query == null) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			try {
+				parameters.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+						URLDecoder.decode(value, StandardCharsets.UTF_8));
+			} catch (IllegalArgumentException e) {
+				/* skip badly encoded parameters */
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Formats search results as compact JSON, using the same field names as
+	 * the results file.
+	 *
+	 * @param query
+	 *            query line
+	 * @param searchResults
+	 *            sorted search results
+	 * @return JSON object with the query and its results
+	 */
+	public static String toJSON(String query, List<SearchResult> searchResults) {
+		StringBuilder builder = new StringBuilder(64 + 96 * searchResults.size());
+		builder.append("{\"query\":");
+		OutputFileWriter.appendQuoted(builder, query);
+		builder.append(",\"results\":");
+		OutputFileWriter.appendResults(builder, searchResults);
+		return builder.append('}').toString();
+	}
+}
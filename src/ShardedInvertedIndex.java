@@ -0,0 +1,629 @@
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Thread-safe inverted index split by path into a number of shards, each of
+ * which is a separate {@link ThreadSafeInvertedIndex} with its own maps and
+ * locks. Every path is stored in the shard picked by the hash of the path, so
+ * shards are built independently, and the results of a path are found in a
+ * single shard.
+ *
+ * <p>
+ * Searches are sent to every shard in parallel, and the sorted results of the
+ * shards are merged. Since no path is split across shards, the merged results
+ * are the same as the results of an index that is not sharded. If the results
+ * are limited, each shard only keeps its own best results, since the best
+ * results overall are among them.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class ShardedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/** Default number of shards. */
+	public static final int SHARDS_DEFAULT = 4;
+
+	/** Shards of the index. */
+	private final ThreadSafeInvertedIndex[] shards;
+
+	/** Executor that searches shards in parallel. */
+	private final ExecutorService executor;
+
+	/**
+	 * Initializes an empty index with the default number of shards.
+	 */
+	public ShardedInvertedIndex() {
+		this(SHARDS_DEFAULT);
+	}
+
+	/**
+	 * Initializes an empty index with the given number of shards.
+	 *
+	 * @param shards
+	 *            number of shards
+	 */
+	public ShardedInvertedIndex(int shards) {
+		super(1);
+		this.shards = new ThreadSafeInvertedIndex[Math.max(1, shards)];
+		for (int i = 0; i < this.shards.length; i++) {
+			this.shards[i] = new ThreadSafeInvertedIndex();
+		}
+		this.executor = VirtualThreads.newPerTaskExecutor("ShardedInvertedIndex");
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return number of shards
+	 */
+	public int shards() {
+		return shards.length;
+	}
+
+	/**
+	 * Stops the threads used to search shards in parallel. Should be called
+	 * once the index is no longer searched; searching more than one shard
+	 * afterwards fails.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the shard a path is stored in.
+	 *
+	 * @param path
+	 *            path to look up
+	 * @return shard of the path
+	 */
+	private ThreadSafeInvertedIndex shard(String path) {
+		return shards[shardNumber(path)];
+	}
+
+	/**
+	 * Returns the number of the shard a path is stored in.
+	 *
+	 * @param path
+	 *            path to look up
+	 * @return number of the shard
+	 */
+	private int shardNumber(String path) {
+		int hash = path.hashCode();
+		return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+	}
+
+	@Override
+	public void add(String word, String path, Integer position) {
+		shard(path).add(word, path, position);
+	}
+
+	/**
+	 * Adds every word of another index. The other index is split by path
+	 * first, so each shard only locks its own stripes once for its part.
+	 */
+	@Override
+	public void addAll(InvertedIndex other) {
+		InvertedIndex[] parts = new InvertedIndex[shards.length];
+		for (Entry<String, NavigableMap<String, PostingList>> word : other.entries()) {
+			for (Entry<String, PostingList> path : word.getValue().entrySet()) {
+				int shard = shardNumber(path.getKey());
+				if (parts[shard] == null) {
+					parts[shard] = new InvertedIndex();
+				}
+
+				NavigableMap<String, PostingList> paths = parts[shard].index.get(word.getKey());
+				if (paths == null) {
+					paths = new TreeMap<String, PostingList>();
+					parts[shard].putWord(word.getKey(), paths);
+				}
+				paths.put(path.getKey(), path.getValue());
+			}
+		}
+
+		for (int i = 0; i < shards.length; i++) {
+			if (parts[i] != null) {
+				shards[i].addAll(parts[i]);
+			}
+		}
+		modified();
+	}
+
+	@Override
+	public boolean remove(String path) {
+		boolean removed = shard(path).remove(path);
+		if (removed) {
+			modified();
+		}
+		return removed;
+	}
+
+	/**
+	 * Replaces the positions of a path in the shard the path is stored in,
+	 * since the other index only has positions of that path.
+	 */
+	@Override
+	public void replace(String path, InvertedIndex other) {
+		shard(path).replace(path, other);
+		modified();
+	}
+
+	@Override
+	public CompactInvertedIndex compact() {
+		TreeMap<String, NavigableMap<String, PostingList>> merged = new TreeMap<>();
+		for (Entry<String, NavigableMap<String, PostingList>> word : entries()) {
+			merged.put(word.getKey(), word.getValue());
+		}
+		return new CompactInvertedIndex(merged);
+	}
+
+	@Override
+	public OffHeapInvertedIndex offHeap() {
+		return new OffHeapInvertedIndex(entries());
+	}
+
+	@Override
+	public void writeJSON(Path file, int threads, OutputFormat format, boolean compressed) {
+		OutputFileWriter.writeInvertedIndex(file, entries(), threads, format, compressed);
+	}
+
+	@Override
+	public void writeBinary(Path file) {
+		BinaryIndexWriter.writeIndex(file, entries());
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		for (ThreadSafeInvertedIndex shard : shards) {
+			if (shard.hasWord(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasPath(String word, String path) {
+		return shard(path).hasPath(word, path);
+	}
+
+	@Override
+	public boolean hasPosition(String word, String path, int position) {
+		return shard(path).hasPosition(word, path, position);
+	}
+
+	@Override
+	public List<SearchResult> partialSearch(List<String> cleanQueries, int limit) {
+		return search(cleanQueries, SearchMode.PREFIX, limit);
+	}
+
+	@Override
+	public List<SearchResult> exactSearch(List<String> cleanQueries, int limit) {
+		return search(cleanQueries, SearchMode.EXACT, limit);
+	}
+
+	@Override
+	public List<SearchResult> phraseSearch(List<String> cleanQueries, int limit) {
+		return search(cleanQueries, SearchMode.PHRASE, limit);
+	}
+
+	@Override
+	public List<SearchResult> conjunctiveSearch(List<String> cleanQueries, boolean exact, int limit) {
+		return search(cleanQueries, exact ? SearchMode.ALL_EXACT : SearchMode.ALL, limit);
+	}
+
+	/**
+	 * Searches every shard in parallel, searching the first shard on the
+	 * calling thread, and merges the sorted results of the shards.
+	 *
+	 * @param cleanQueries:
+	 *            list of normalized queries
+	 * @param mode:
+	 *            how queries are matched to words in the index
+	 * @param limit:
+	 *            maximum number of results, or 0 for every result
+	 * @return List of SearchResult objects
+	 * @throws IllegalStateException
+	 *             if interrupted while waiting for the shards
+	 */
+	@Override
+	public List<SearchResult> search(List<String> cleanQueries, SearchMode mode, int limit) {
+		if (shards.length == 1) {
+			return shards[0].search(cleanQueries, mode, limit);
+		}
+
+		List<Callable<List<SearchResult>>> tasks = new ArrayList<>(shards.length);
+		for (ThreadSafeInvertedIndex shard : shards) {
+			tasks.add(new SearchTask(shard, cleanQueries, mode, limit));
+		}
+		return merge(runAll(tasks), limit);
+	}
+
+	/**
+	 * Searches every shard for many queries at once in parallel, searching
+	 * the first shard on the calling thread, and merges the sorted results of
+	 * the shards for each query.
+	 *
+	 * @param batch:
+	 *            list of normalized queries for each query
+	 * @param limit:
+	 *            maximum number of results of each query, or 0 for every
+	 *            result
+	 * @return List of SearchResult objects for each query, in the same order
+	 * @throws IllegalStateException
+	 *             if interrupted while waiting for the shards
+	 */
+	@Override
+	public List<List<SearchResult>> batchPartialSearch(List<List<String>> batch, int limit) {
+		if (shards.length == 1) {
+			return shards[0].batchPartialSearch(batch, limit);
+		}
+
+		List<Callable<List<List<SearchResult>>>> tasks = new ArrayList<>(shards.length);
+		for (ThreadSafeInvertedIndex shard : shards) {
+			tasks.add(new BatchTask(shard, batch, limit));
+		}
+		List<List<List<SearchResult>>> shardResults = runAll(tasks);
+
+		List<List<SearchResult>> results = new ArrayList<>(batch.size());
+		for (int query = 0; query < batch.size(); query++) {
+			List<List<SearchResult>> lists = new ArrayList<>(shards.length);
+			for (List<List<SearchResult>> shard : shardResults) {
+				lists.add(shard.get(query));
+			}
+			results.add(merge(lists, limit));
+		}
+		return results;
+	}
+
+	/**
+	 * Runs a task for each shard, the first one on the calling thread and the
+	 * others on the executor, and waits for all of them. If any task fails, or
+	 * the calling thread is interrupted while waiting, the tasks still running
+	 * are cancelled and an exception is thrown instead of returning partial
+	 * results, so they are never cached or written as if they were complete.
+	 *
+	 * @param <T>
+	 *            type of the result of each task
+	 * @param tasks
+	 *            task of each shard, in shard order
+	 * @return result of each task, in shard order
+	 * @throws IllegalStateException
+	 *             if interrupted while waiting, or if a task failed with a
+	 *             checked exception
+	 */
+	private <T> List<T> runAll(List<Callable<T>> tasks) {
+		List<Future<T>> futures = new ArrayList<>(tasks.size());
+		FutureTask<T> first = new FutureTask<>(tasks.get(0));
+		futures.add(first);
+		for (int i = 1; i < tasks.size(); i++) {
+			futures.add(executor.submit(tasks.get(i)));
+		}
+		first.run();
+
+		List<T> results = new ArrayList<>(tasks.size());
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching the shards", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Cancels the tasks of the shards that are still running.
+	 *
+	 * @param futures
+	 *            tasks of the shards
+	 */
+	private static void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Merges sorted lists of search results into a single sorted list.
+	 *
+	 * @param lists
+	 *            sorted search results of each shard
+	 * @param limit
+	 *            maximum number of results, or 0 for every result
+	 * @return sorted search results
+	 */
+	public static List<SearchResult> merge(List<List<SearchResult>> lists, int limit) {
+		int total = 0;
+		PriorityQueue<ResultCursor> heads = new PriorityQueue<>(lists.size());
+		for (List<SearchResult> list : lists) {
+			total += list.size();
+			if (!list.isEmpty()) {
+				heads.add(new ResultCursor(list));
+			}
+		}
+		if (limit > 0) {
+			total = Math.min(total, limit);
+		}
+
+		List<SearchResult> merged = new ArrayList<>(total);
+		while (merged.size() < total) {
+			ResultCursor head = heads.poll();
+			merged.add(head.current());
+			if (head.next()) {
+				heads.add(head);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Returns the words of every shard in sorted order, along with their paths
+	 * in all shards.
+	 *
+	 * @return sorted words and their paths
+	 */
+	@Override
+	public Iterable<Entry<String, NavigableMap<String, PostingList>>> entries() {
+		return new Iterable<Entry<String, NavigableMap<String, PostingList>>>() {
+			@Override
+			public Iterator<Entry<String, NavigableMap<String, PostingList>>> iterator() {
+				return new WordIterator();
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("ShardedInvertedIndex [index={");
+		boolean first = true;
+		for (Entry<String, NavigableMap<String, PostingList>> entry : entries()) {
+			if (!first) {
+				builder.append(", ");
+			}
+			first = false;
+			builder.append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return builder.append("}]").toString();
+	}
+
+	/**
+	 * Searches a single shard.
+	 */
+	private static class SearchTask implements Callable<List<SearchResult>> {
+
+		/** Shard to search. */
+		private final InvertedIndex shard;
+
+		/** Cleaned query words. */
+		private final List<String> cleanQueries;
+
+		/** How queries are matched to words. */
+		private final SearchMode mode;
+
+		/** Maximum number of results, or 0 for every result. */
+		private final int limit;
+
+		/**
+		 * Initializes a task to search a shard.
+		 *
+		 * @param shard
+		 *            shard to search
+		 * @param cleanQueries
+		 *            cleaned query words
+		 * @param mode
+		 *            how queries are matched to words
+		 * @param limit
+		 *            maximum number of results, or 0 for every result
+		 */
+		public SearchTask(InvertedIndex shard, List<String> cleanQueries, SearchMode mode, int limit) {
+			this.shard = shard;
+			this.cleanQueries = cleanQueries;
+			this.mode = mode;
+			this.limit = limit;
+		}
+
+		@Override
+		public List<SearchResult> call() {
+			return shard.search(cleanQueries, mode, limit);
+		}
+	}
+
+	/**
+	 * Searches a single shard for many queries at once.
+	 */
+	private static class BatchTask implements Callable<List<List<SearchResult>>> {
+
+		/** Shard to search. */
+		private final InvertedIndex shard;
+
+		/** Cleaned query words of each query. */
+		private final List<List<String>> batch;
+
+		/** Maximum number of results of each query, or 0 for every result. */
+		private final int limit;
+
+		/**
+		 * Initializes a task to search a shard.
+		 *
+		 * @param shard
+		 *            shard to search
+		 * @param batch
+		 *            cleaned query words of each query
+		 * @param limit
+		 *            maximum number of results of each query, or 0 for every
+		 *            result
+		 */
+		public BatchTask(InvertedIndex shard, List<List<String>> batch, int limit) {
+			this.shard = shard;
+			this.batch = batch;
+			this.limit = limit;
+		}
+
+		@Override
+		public List<List<SearchResult>> call() {
+			return shard.batchPartialSearch(batch, limit);
+		}
+	}
+
+	/**
+	 * Current search result of a sorted list, ordered by that result.
+	 */
+	private static class ResultCursor implements Comparable<ResultCursor> {
+
+		/** Sorted search results. */
+		private final List<SearchResult> list;
+
+		/** Index of the current result. */
+		private int index;
+
+		/**
+		 * Initializes a cursor at the first result of a non-empty list.
+		 *
+		 * @param list
+		 *            sorted search results
+		 */
+		public ResultCursor(List<SearchResult> list) {
+			this.list = list;
+			this.index = 0;
+		}
+
+		/**
+		 * Returns the current result.
+		 *
+		 * @return current result
+		 */
+		public SearchResult current() {
+			return list.get(index);
+		}
+
+		/**
+		 * Moves to the next result.
+		 *
+		 * @return true if there is a next result
+		 */
+		public boolean next() {
+			return ++index < list.size();
+		}
+
+		@Override
+		public int compareTo(ResultCursor other) {
+			return current().compareTo(other.current());
+		}
+	}
+
+	/**
+	 * Merges the sorted words of every shard. The paths of a word found in
+	 * more than one shard are combined into a new map; otherwise the map of
+	 * the shard is used as it is.
+	 */
+	private class WordIterator implements Iterator<Entry<String, NavigableMap<String, PostingList>>> {
+
+		/** Next word of each shard that has words left, ordered by word. */
+		private final PriorityQueue<WordCursor> heads;
+
+		/**
+		 * Initializes an iterator before the first word.
+		 */
+		public WordIterator() {
+			heads = new PriorityQueue<>(shards.length);
+			for (ThreadSafeInvertedIndex shard : shards) {
+				Iterator<Entry<String, NavigableMap<String, PostingList>>> words = shard.index.entrySet().iterator();
+				if (words.hasNext()) {
+					heads.add(new WordCursor(words));
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !heads.isEmpty();
+		}
+
+		@Override
+		public Entry<String, NavigableMap<String, PostingList>> next() {
+			if (heads.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+
+			WordCursor head = heads.poll();
+			String word = head.current.getKey();
+			NavigableMap<String, PostingList> paths = head.current.getValue();
+			advance(head);
+
+			if (!heads.isEmpty() && heads.peek().current.getKey().equals(word)) {
+				paths = new TreeMap<String, PostingList>(paths);
+				while (!heads.isEmpty() && heads.peek().current.getKey().equals(word)) {
+					WordCursor other = heads.poll();
+					paths.putAll(other.current.getValue());
+					advance(other);
+				}
+			}
+			return new SimpleImmutableEntry<>(word, Collections.unmodifiableNavigableMap(paths));
+		}
+
+		/**
+		 * Moves a cursor to its next word, putting it back in the queue if it
+		 * has one.
+		 *
+		 * @param cursor
+		 *            cursor to move
+		 */
+		private void advance(WordCursor cursor) {
+			if (cursor.words.hasNext()) {
+				cursor.current = cursor.words.next();
+				heads.add(cursor);
+			}
+		}
+	}
+
+	/**
+	 * Current word of the sorted words of a shard, ordered by that word.
+	 */
+	private static class WordCursor implements Comparable<WordCursor> {
+
+		/** Remaining words of the shard. */
+		private final Iterator<Entry<String, NavigableMap<String, PostingList>>> words;
+
+		/** Current word of the shard. */
+		private Entry<String, NavigableMap<String, PostingList>> current;
+
+		/**
+		 * Initializes a cursor at the first word of a shard that has words.
+		 *
+		 * @param words
+		 *            sorted words of the shard
+		 */
+		public WordCursor(Iterator<Entry<String, NavigableMap<String, PostingList>>> words) {
+			this.words = words;
+			this.current = words.next();
+		}
+
+		@Override
+		public int compareTo(WordCursor other) {
+			return current.getKey().compareTo(other.current.getKey());
+		}
+	}
+}
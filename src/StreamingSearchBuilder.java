@@ -0,0 +1,325 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Searches for queries and writes each query's results to the results file as
+ * soon as they are found, instead of keeping every result until the end.
+ * The file is the same as the one written by
+ * {@link OutputFileWriter#writeQuery(Path, java.util.LinkedHashMap, OutputFormat, boolean)}
+ * in the format and with the compression given to the constructor: queries
+ * appear in the order they are first read, and repeated queries only once.
+ *
+ * <p>
+ * If worker threads are used, a query is searched while the queries read
+ * before it are still being searched, but at most {@link #WINDOW_PER_THREAD}
+ * queries per thread are in flight; reading waits for the oldest one to be
+ * written before going further. Only the query lines themselves are kept
+ * until the end, to skip repeated queries.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class StreamingSearchBuilder extends PartialSearchBuilder {
+
+	/** Number of queries each worker thread may have in flight. */
+	public static final int WINDOW_PER_THREAD = 4;
+
+	/** File to write results to. */
+	private final Path output;
+
+	/** Format of the results file. */
+	private final OutputFormat format;
+
+	/** True if the results file is compressed with gzip. */
+	private final boolean compressed;
+
+	/** Work queue used to search, or null to search on the reading thread. */
+	private final WorkQueue queue;
+
+	/** Maximum number of queries in flight. */
+	private final int window;
+
+	/** Queries in flight, in the order they were read. */
+	private final ArrayDeque<QueryTask> pending;
+
+	/** Query lines read so far. */
+	private final HashSet<String> seen;
+
+	/** Writer of the results file while queries are being read. */
+	private BufferedWriter writer;
+
+	/** Number of queries written to the results file. */
+	private int written;
+
+	/** True if writing the results file failed. */
+	private boolean failed;
+
+	/**
+	 * True once the results file has been written, or deleted because it could
+	 * not be written completely.
+	 */
+	private boolean streamed;
+
+	/**
+	 * Initializes a builder that writes results to the given file in the given
+	 * format, searching for queries on the given number of worker threads,
+	 * through the given cache, keeping the given number of best results for
+	 * each query, and matching queries to words with the given mode. Queries
+	 * in quotation marks are always searched as phrases.
+	 *
+	 * @param output
+	 *            file to write results to
+	 * @param format
+	 *            format of the results file
+	 * @param compressed
+	 *            true to compress the results file with gzip
+	 * @param threads
+	 *            number of worker threads, or 0 to search on the reading
+	 *            thread
+	 * @param cache
+	 *            cache of search results, or null to always search the index
+	 * @param limit
+	 *            maximum number of results for each query, or 0 for every
+	 *            result
+	 * @param mode
+	 *            how queries are matched to words in the index
+	 */
+	public StreamingSearchBuilder(Path output, OutputFormat format, boolean compressed, int threads, QueryCache cache,
+			int limit, SearchMode mode) {
+		super(cache, limit, mode);
+		this.output = output;
+		this.format = format;
+		this.compressed = compressed;
+		this.queue = threads > 0 ? new WorkQueue(threads) : null;
+		this.window = Math.max(1, threads * WINDOW_PER_THREAD);
+		this.pending = new ArrayDeque<QueryTask>();
+		this.seen = new HashSet<String>();
+		this.streamed = false;
+	}
+
+	/**
+	 * Reads in queries, searches for them, and writes their results to the
+	 * results file given to the constructor as they are found. Returns once
+	 * the file has been written. If a query cannot be searched or the file
+	 * cannot be written, the partly written file is deleted. The index must
+	 * not be modified while searching.
+	 *
+	 * @param queryFile:
+	 *            input queries
+	 * @param index
+	 *
+	 * @see #parseLine(String, InvertedIndex)
+	 */
+	@Override
+	public void buildSearchResults(Path queryFile, InvertedIndex index) {
+		boolean complete = false;
+		try (BufferedWriter writer = OutputFileWriter.newWriter(output, compressed)) {
+			OutputFileWriter.startQueries(writer, format);
+			this.writer = writer;
+			this.written = 0;
+			this.failed = false;
+			this.seen.clear();
+
+			try (BufferedReader reader = Files.newBufferedReader(queryFile, Charset.forName("UTF-8"))) {
+				String line = null;
+				while ((line = reader.readLine()) != null && !failed) {
+					parseLine(line, index);
+				}
+			} catch (IOException e) {
+				System.err.println("Error with file, " + queryFile);
+			}
+
+			while (!pending.isEmpty()) {
+				write(pending.poll());
+			}
+
+			if (!failed) {
+				OutputFileWriter.endQueries(writer, format);
+				complete = true;
+			}
+		} catch (IOException e) {
+			failed = true;
+			complete = false;
+		} finally {
+			this.writer = null;
+			streamed = true;
+			if (!complete) {
+				OutputFileWriter.deletePartial(output);
+			}
+		}
+
+		if (failed) {
+			System.err.println("Error writing to output file, " + output);
+		}
+	}
+
+	/**
+	 * Searches for a query unless it was already read, and writes the results
+	 * of the oldest queries in flight once too many are. Outside of
+	 * {@link #buildSearchResults(Path, InvertedIndex)}, the results are kept
+	 * like any other {@link PartialSearchBuilder} does.
+	 *
+	 * @param line:
+	 *            query
+	 * @param index:
+	 *            Inverted Index
+	 */
+	@Override
+	public void parseLine(String line, InvertedIndex index) {
+		if (writer == null) {
+			super.parseLine(line, index);
+			return;
+		}
+		if (!seen.add(line)) {
+			return;
+		}
+
+		QueryTask task = new QueryTask(line, index);
+		if (queue == null) {
+			task.run();
+			write(task);
+			return;
+		}
+
+		if (pending.size() >= window) {
+			write(pending.poll());
+		}
+		pending.add(task);
+		queue.execute(task);
+	}
+
+	/**
+	 * Does nothing if the results were already written, or failed to be
+	 * written, by {@link #buildSearchResults(Path, InvertedIndex)}, which
+	 * always writes them to the file given to the constructor. Otherwise
+	 * writes whatever results are kept, which is none unless
+	 * {@link #parseLine(String, InvertedIndex)} was called directly.
+	 *
+	 * @param queryFile:
+	 *            input queries
+	 * @param format:
+	 *            format of the file
+	 * @param compressed:
+	 *            true to compress the file with gzip
+	 */
+	@Override
+	public void writeQueryFile(Path queryFile, OutputFormat format, boolean compressed) {
+		if (!streamed) {
+			super.writeQueryFile(queryFile, format, compressed);
+		}
+	}
+
+	/**
+	 * Shuts down the work queue, if any. Should be called once all queries
+	 * are done.
+	 */
+	@Override
+	public void shutdown() {
+		if (queue != null) {
+			try {
+				queue.finish();
+			} finally {
+				queue.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Waits for a query to be searched and writes its results. Nothing more is
+	 * written once writing or searching has failed.
+	 *
+	 * @param task
+	 *            query to write
+	 */
+	private void write(QueryTask task) {
+		List<SearchResult> searchResults = task.getResults();
+		if (searchResults == null) {
+			failed = true;
+		}
+		if (failed) {
+			return;
+		}
+		try {
+			OutputFileWriter.writeQueryEntry(task.line, searchResults, writer, format, written == 0);
+			written++;
+		} catch (IOException e) {
+			failed = true;
+		}
+	}
+
+	/**
+	 * Searches the index for a single query and keeps the results until they
+	 * are written.
+	 */
+	private class QueryTask implements Runnable {
+
+		/** Query line to search for. */
+		private final String line;
+
+		/** Index to search. */
+		private final InvertedIndex index;
+
+		/** Results of the query, or null if searching failed. */
+		private List<SearchResult> results;
+
+		/** True once the query has been searched. */
+		private boolean done;
+
+		/**
+		 * Initializes a task to search for a query.
+		 *
+		 * @param line
+		 *            query
+		 * @param index
+		 *            index to search
+		 */
+		public QueryTask(String line, InvertedIndex index) {
+			this.line = line;
+			this.index = index;
+			this.results = null;
+			this.done = false;
+		}
+
+		@Override
+		public void run() {
+			List<SearchResult> searchResults = null;
+			try {
+				long start = System.nanoTime();
+				searchResults = search(line, index);
+				Metrics.recordQuery(System.nanoTime() - start);
+			} finally {
+				synchronized (this) {
+					results = searchResults;
+					done = true;
+					this.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Waits for the query to be searched and returns its results.
+		 *
+		 * @return sorted search results, or null if searching failed or was
+		 *         interrupted
+		 */
+		public synchronized List<SearchResult> getResults() {
+			while (!done) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			return results;
+		}
+	}
+}
@@ -0,0 +1,554 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable, front-coded dictionary of sorted terms. Terms are given ids in
+ * sorted order and stored in blocks of {@link #BLOCK_SIZE} terms. The first
+ * term of each block is stored in full, and every other term only stores the
+ * length of the prefix it shares with the previous term and the rest of its
+ * characters. Characters are stored as 1 to 3 bytes each, so ASCII terms use
+ * a single byte per character that is not shared with the previous term.
+ *
+ * <pre>
+ * block:  length, chars of the first term,
+ *         then for every other term: shared length, suffix length, suffix chars
+ * </pre>
+ *
+ * Terms are ordered the same way as {@link String#compareTo(String)}, so a
+ * prefix always matches a contiguous range of term ids.
+ *
+ * @author courtniwong
+ *
+ */
+public class TermDictionary implements Iterable<String> {
+
+	/** Number of terms in each front-coded block. */
+	public static final int BLOCK_SIZE = 16;
+
+	/** Front-coded terms. */
+	private final byte[] data;
+
+	/** Offset of the first term of each block. */
+	private final int[] blocks;
+
+	/** Number of terms. */
+	private final int size;
+
+	/**
+	 * Initializes a dictionary of terms that are already sorted and unique.
+	 *
+	 * @param terms
+	 *            sorted, unique terms
+	 * @param size
+	 *            number of terms
+	 * @throws IllegalArgumentException
+	 *             if the terms are not sorted and unique
+	 */
+	public TermDictionary(Iterable<String> terms, int size) {
+		byte[] bytes = new byte[Math.max(16, size * 8)];
+		int length = 0;
+		int[] offsets = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		int count = 0;
+		String previous = null;
+
+		for (String term : terms) {
+			if (count == size) {
+				throw new IllegalArgumentException("More terms than expected.");
+			}
+			if (previous != null && previous.compareTo(term) >= 0) {
+				throw new IllegalArgumentException("Terms are not sorted and unique, " + term);
+			}
+
+			/* every term needs at most 3 bytes per char and two varints */
+			int needed = length + term.length() * 3 + 10;
+			if (needed > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length + (bytes.length >> 1)));
+			}
+
+			int shared = 0;
+			if (count % BLOCK_SIZE == 0) {
+				offsets[count / BLOCK_SIZE] = length;
+			} else {
+				int limit = Math.min(previous.length(), term.length());
+				while (shared < limit && previous.charAt(shared) == term.charAt(shared)) {
+					shared++;
+				}
+				length = writeVarint(bytes, length, shared);
+			}
+
+			length = writeVarint(bytes, length, term.length() - shared);
+			for (int i = shared; i < term.length(); i++) {
+				length = writeChar(bytes, length, term.charAt(i));
+			}
+
+			previous = term;
+			count++;
+		}
+
+		if (count != size) {
+			throw new IllegalArgumentException("Fewer terms than expected.");
+		}
+
+		this.data = Arrays.copyOf(bytes, length);
+		this.blocks = offsets;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of terms.
+	 *
+	 * @return number of terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes used to store the terms.
+	 *
+	 * @return number of bytes used
+	 */
+	public long byteSize() {
+		return data.length + 4L * blocks.length;
+	}
+
+	/**
+	 * Returns the term with the given id.
+	 *
+	 * @param id
+	 *            term id
+	 * @return term
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no term with the id
+	 */
+	public String term(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("No term with id " + id);
+		}
+		Cursor cursor = new Cursor(id / BLOCK_SIZE);
+		for (int i = id % BLOCK_SIZE; i >= 0; i--) {
+			cursor.next();
+		}
+		return cursor.toString();
+	}
+
+	/**
+	 * Returns true if the term with the given id is equal to the text. The
+	 * term is compared without creating a string.
+	 *
+	 * @param id
+	 *            term id
+	 * @param text
+	 *            text to compare
+	 * @return true if the term is equal to the text
+	 */
+	public boolean matches(int id, String text) {
+		if (id < 0 || id >= size) {
+			return false;
+		}
+		Cursor cursor = new Cursor(id / BLOCK_SIZE);
+		for (int i = id % BLOCK_SIZE; i >= 0; i--) {
+			cursor.next();
+		}
+		return cursor.equalTo(text);
+	}
+
+	/**
+	 * Returns the id of the term, or -1 if the term is not in the dictionary.
+	 *
+	 * @param term
+	 *            term to find
+	 * @return term id, or -1 if not found
+	 */
+	public int find(String term) {
+		int id = rank(term, false, 0);
+		if (id < size && term(id).equals(term)) {
+			return id;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the id of the first term that starts with the prefix. If no term
+	 * starts with the prefix, this is where such a term would be.
+	 *
+	 * @param prefix
+	 *            prefix to find
+	 * @return first term id of the prefix range
+	 * @see #prefixEnd(String)
+	 */
+	public int prefixStart(String prefix) {
+		return rank(prefix, false, 0);
+	}
+
+	/**
+	 * Returns one more than the id of the last term that starts with the
+	 * prefix. Together with {@link #prefixStart(String)}, this gives the range
+	 * of ids of every term that starts with the prefix.
+	 *
+	 * @param prefix
+	 *            prefix to find
+	 * @return last term id of the prefix range, exclusive
+	 */
+	public int prefixEnd(String prefix) {
+		return rank(prefix, true, 0);
+	}
+
+	/**
+	 * Returns one more than the id of the last term that starts with the
+	 * prefix, searching forward from the first term id of the prefix range.
+	 * Since most prefix ranges are short, this is faster than searching every
+	 * term.
+	 *
+	 * @param prefix
+	 *            prefix to find
+	 * @param start
+	 *            first term id of the prefix range
+	 * @return last term id of the prefix range, exclusive
+	 * @see #prefixStart(String)
+	 */
+	public int prefixEnd(String prefix, int start) {
+		return rank(prefix, true, start);
+	}
+
+	/**
+	 * Returns the terms in id order, starting from the given id.
+	 *
+	 * @param id
+	 *            first term id
+	 * @return iterator of terms
+	 */
+	public Iterator<String> iterator(final int id) {
+		return new Iterator<String>() {
+			private int next = id;
+			private Cursor cursor;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public String next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				if (cursor == null) {
+					cursor = new Cursor(next / BLOCK_SIZE);
+					for (int i = next % BLOCK_SIZE; i > 0; i--) {
+						cursor.next();
+					}
+				} else if (next % BLOCK_SIZE == 0) {
+					cursor.reset(next / BLOCK_SIZE);
+				}
+				cursor.next();
+				next++;
+				return cursor.toString();
+			}
+		};
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return iterator(0);
+	}
+
+	/**
+	 * Counts the terms that come before the key. If prefix is true, terms that
+	 * start with the key also count as before it. Either way, the terms that
+	 * come before the key are exactly the ones with the lowest ids, so the
+	 * block is found by searching the first term of each block, and then the
+	 * block is scanned. If the terms before an id are already known to come
+	 * before the key, the search gallops forward from that id instead.
+	 *
+	 * @param key
+	 *            term or prefix
+	 * @param prefix
+	 *            true if terms that start with the key come before it
+	 * @param from
+	 *            id known to be no more than the result
+	 * @return number of terms before the key
+	 */
+	private int rank(String key, boolean prefix, int from) {
+		if (from >= size) {
+			return size;
+		}
+
+		int low = from / BLOCK_SIZE;
+		Cursor cursor = new Cursor(low);
+		if (!cursor.nextBefore(key, prefix)) {
+			return low * BLOCK_SIZE;
+		}
+
+		/* find the last block whose first term comes before the key */
+		int high = blocks.length - 1;
+		if (from > 0) {
+			for (int step = 1; low + step <= high; step <<= 1) {
+				cursor.reset(low + step);
+				if (!cursor.nextBefore(key, prefix)) {
+					high = low + step - 1;
+					break;
+				}
+				low += step;
+			}
+		}
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			cursor.reset(middle);
+			if (cursor.nextBefore(key, prefix)) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		cursor.reset(low);
+		cursor.nextBefore(key, prefix);
+		int id = low * BLOCK_SIZE + 1;
+		int end = Math.min(size, low * BLOCK_SIZE + BLOCK_SIZE);
+		while (id < end && cursor.nextBefore(key, prefix)) {
+			id++;
+		}
+		return id;
+	}
+
+	/**
+	 * Writes a variable-byte integer, 7 bits per byte.
+	 *
+	 * @param bytes
+	 *            array to write to
+	 * @param offset
+	 *            offset to write at
+	 * @param value
+	 *            non-negative value
+	 * @return offset after the value
+	 */
+	private static int writeVarint(byte[] bytes, int offset, int value) {
+		while ((value & ~0x7F) != 0) {
+			bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Writes a char as 1 byte if it is ASCII, 2 bytes if it fits in 11 bits,
+	 * and 3 bytes otherwise, like UTF-8 but one char at a time.
+	 *
+	 * @param bytes
+	 *            array to write to
+	 * @param offset
+	 *            offset to write at
+	 * @param c
+	 *            char to write
+	 * @return offset after the char
+	 */
+	private static int writeChar(byte[] bytes, int offset, char c) {
+		if (c < 0x80) {
+			bytes[offset++] = (byte) c;
+		} else if (c < 0x800) {
+			bytes[offset++] = (byte) (0xC0 | (c >> 6));
+			bytes[offset++] = (byte) (0x80 | (c & 0x3F));
+		} else {
+			bytes[offset++] = (byte) (0xE0 | (c >> 12));
+			bytes[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			bytes[offset++] = (byte) (0x80 | (c & 0x3F));
+		}
+		return offset;
+	}
+
+	/**
+	 * Decodes the terms of a block one at a time, either into a reusable
+	 * buffer or only as far as needed to compare them to a key.
+	 */
+	private class Cursor {
+
+		/** Offset of the next term. */
+		private int offset;
+
+		/** True until the first term of the block has been read. */
+		private boolean first;
+
+		/** Characters of the current term, if decoded with next(). */
+		private char[] chars;
+
+		/** Length of the current term, if decoded with next(). */
+		private int length;
+
+		/**
+		 * Number of leading characters of the current term equal to the key.
+		 */
+		private int matched;
+
+		/** True if the current term comes before the key. */
+		private boolean before;
+
+		/**
+		 * Initializes a cursor before the first term of a block.
+		 *
+		 * @param block
+		 *            block number
+		 */
+		public Cursor(int block) {
+			reset(block);
+		}
+
+		/**
+		 * Moves the cursor before the first term of a block.
+		 *
+		 * @param block
+		 *            block number
+		 */
+		public void reset(int block) {
+			this.offset = blocks[block];
+			this.first = true;
+			this.length = 0;
+			this.matched = 0;
+		}
+
+		/**
+		 * Decodes the next term of the block.
+		 */
+		public void next() {
+			int shared = first ? 0 : readVarint();
+			int suffix = readVarint();
+			first = false;
+
+			length = shared + suffix;
+			if (chars == null || length > chars.length) {
+				chars = chars == null ? new char[Math.max(32, length)]
+						: Arrays.copyOf(chars, Math.max(length, chars.length * 2));
+			}
+
+			for (int i = shared; i < length; i++) {
+				chars[i] = readChar();
+			}
+		}
+
+		/**
+		 * Returns true if the current term, decoded with next(), is equal to
+		 * the text.
+		 *
+		 * @param text
+		 *            text to compare
+		 * @return true if the current term is equal to the text
+		 */
+		public boolean equalTo(String text) {
+			if (length != text.length()) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (chars[i] != text.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Reads the next term of the block and returns true if it comes before
+		 * the key, or starts with the key if prefix is true. Every call since
+		 * the last reset must use the same key. Since the terms are sorted,
+		 * the characters shared with the previous term are not compared again,
+		 * and the rest are only compared up to the first difference.
+		 *
+		 * @param key
+		 *            term or prefix
+		 * @param prefix
+		 *            true if terms that start with the key come before it
+		 * @return true if the next term comes before the key
+		 */
+		public boolean nextBefore(String key, boolean prefix) {
+			int shared = first ? 0 : readVarint();
+			int suffix = readVarint();
+			first = false;
+
+			if (shared < matched) {
+				/* differs from the previous term where that term matched the key */
+				skip(suffix);
+				matched = shared;
+				before = false;
+				return before;
+			}
+
+			if (shared > matched) {
+				/* same first difference from the key as the previous term */
+				skip(suffix);
+				return before;
+			}
+
+			int i = 0;
+			while (i < suffix && matched < key.length()) {
+				char c = readChar();
+				i++;
+				char k = key.charAt(matched);
+				if (c != k) {
+					skip(suffix - i);
+					before = c < k;
+					return before;
+				}
+				matched++;
+			}
+			skip(suffix - i);
+
+			/* either starts with the key, or is a shorter prefix of the key */
+			before = matched < key.length() || prefix;
+			return before;
+		}
+
+		/**
+		 * Reads a char written by writeChar.
+		 *
+		 * @return char read
+		 */
+		private char readChar() {
+			int b = data[offset++];
+			if (b >= 0) {
+				return (char) b;
+			} else if ((b & 0xE0) == 0xC0) {
+				return (char) (((b & 0x1F) << 6) | (data[offset++] & 0x3F));
+			}
+			int c = ((b & 0x0F) << 12) | ((data[offset++] & 0x3F) << 6);
+			return (char) (c | (data[offset++] & 0x3F));
+		}
+
+		/**
+		 * Skips chars written by writeChar.
+		 *
+		 * @param count
+		 *            number of chars to skip
+		 */
+		private void skip(int count) {
+			for (int i = 0; i < count; i++) {
+				int b = data[offset++];
+				if (b < 0) {
+					offset += (b & 0xE0) == 0xC0 ? 1 : 2;
+				}
+			}
+		}
+
+		/**
+		 * Reads a variable-byte integer.
+		 *
+		 * @return value read
+		 */
+		private int readVarint() {
+			int value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = data[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, 0, length);
+		}
+	}
+}
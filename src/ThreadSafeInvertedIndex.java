@@ -0,0 +1,388 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe version of the inverted index. Words are split into stripes by
+ * hash code, and writers only lock the stripe of the word they are adding, so
+ * threads adding different words rarely wait on each other. Words and paths are
+ * stored in concurrent maps that are filled before they are put in the index,
+ * so reads never lock and never see an empty entry while words are being
+ * added. Position lists are only appended to in place; any other change is made
+ * to a copy of the list that then replaces the original.
+ *
+ * @author courtniwong
+ *
+ */
+public class ThreadSafeInvertedIndex extends InvertedIndex {
+
+	/** Default number of lock stripes. */
+	public static final int STRIPES_DEFAULT = 64;
+
+	/** Locks used by writers, one per stripe of words. */
+	private final ReentrantLock[] stripes;
+
+	/**
+	 * Initializes an empty index with the default number of stripes.
+	 */
+	public ThreadSafeInvertedIndex() {
+		this(STRIPES_DEFAULT);
+	}
+
+	/**
+	 * Initializes an empty index with at least the given number of stripes.
+	 * The number of stripes is rounded up to a power of two.
+	 *
+	 * @param stripes
+	 *            minimum number of lock stripes
+	 */
+	public ThreadSafeInvertedIndex(int stripes) {
+		super(new ConcurrentSkipListMap<String, NavigableMap<String, PostingList>>());
+
+		int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		this.stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+	}
+
+	@Override
+	protected NavigableMap<String, PostingList> newPaths() {
+		return new ConcurrentSkipListMap<String, PostingList>();
+	}
+
+	/**
+	 * Records that a word is now found in a path. Words of different stripes
+	 * may be added to the same path at the same time, so words are added to
+	 * the list of a path while holding its monitor. A list that is no longer
+	 * in the map belongs to a path that was removed, and is dead: a word added
+	 * after that starts a new list, so its positions are removed along with
+	 * the path the next time it is removed.
+	 */
+	@Override
+	protected void addPathWord(String path, String word) {
+		Map<String, List<String>> pathWords = this.pathWords;
+		if (pathWords == null) {
+			return;
+		}
+		while (true) {
+			List<String> words = pathWords.get(path);
+			if (words == null) {
+				words = new ArrayList<String>();
+				List<String> existing = pathWords.putIfAbsent(path, words);
+				if (existing != null) {
+					words = existing;
+				}
+			}
+			synchronized (words) {
+				if (pathWords.get(path) == words) {
+					words.add(word);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the hash table of words while every stripe is locked, so no word
+	 * is put in the sorted index without also being put in the table.
+	 */
+	@Override
+	protected synchronized Map<String, NavigableMap<String, PostingList>> buildLookup() {
+		if (lookup == null) {
+			lockAll();
+			try {
+				lookup = new ConcurrentHashMap<String, NavigableMap<String, PostingList>>(index);
+			} finally {
+				unlockAll();
+			}
+		}
+		return lookup;
+	}
+
+	/**
+	 * Finds the words of each path while every stripe is locked, so no word is
+	 * added to a path without being tracked. Only the words already in the
+	 * sorted index are visited.
+	 */
+	@Override
+	protected synchronized Map<String, List<String>> trackPaths() {
+		if (pathWords == null) {
+			lockAll();
+			try {
+				pathWords = findPathWords(index.entrySet(), new ConcurrentHashMap<String, List<String>>());
+			} finally {
+				unlockAll();
+			}
+		}
+		return pathWords;
+	}
+
+	/**
+	 * Locks every stripe, in order.
+	 */
+	private void lockAll() {
+		for (ReentrantLock lock : stripes) {
+			lock.lock();
+		}
+	}
+
+	/**
+	 * Unlocks every stripe, in reverse order.
+	 */
+	private void unlockAll() {
+		for (int i = stripes.length - 1; i >= 0; i--) {
+			stripes[i].unlock();
+		}
+	}
+
+	/**
+	 * Returns the stripe a word belongs to.
+	 *
+	 * @param word
+	 *            word to find the stripe for
+	 * @return stripe number of the word
+	 */
+	private int stripe(String word) {
+		int hash = word.hashCode();
+		return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+	}
+
+	@Override
+	public void add(String word, String path, Integer position) {
+		ReentrantLock lock = stripes[stripe(word)];
+		lock.lock();
+		try {
+			NavigableMap<String, PostingList> paths = index.get(word);
+			PostingList positions = paths == null ? null : paths.get(path);
+
+			if (positions != null && position <= positions.last()) {
+				if (!positions.contains(position)) {
+					PostingList copy = new PostingList(positions);
+					copy.add(position);
+					paths.put(path, copy);
+				}
+			} else {
+				super.add(word, path, position);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all positions found in a path from the index, locking the stripe
+	 * of one word at a time. Only the words found in the path are visited.
+	 * Reads running at the same time may see the path in some words but not
+	 * in others until every word has been visited.
+	 *
+	 * @param path
+	 *            path to remove
+	 * @return true if the index contained the path
+	 */
+	@Override
+	public boolean remove(String path) {
+		List<String> words = detach(path);
+		if (words == null) {
+			return false;
+		}
+		for (String word : words) {
+			ReentrantLock lock = stripes[stripe(word)];
+			lock.lock();
+			try {
+				removePath(word, path);
+			} finally {
+				lock.unlock();
+			}
+		}
+		modified();
+		return true;
+	}
+
+	/**
+	 * Replaces all positions found in a path with the positions found in that
+	 * path in another index. The stripes of every word found in the path
+	 * before or after are locked at once, in order, so no other writer changes
+	 * those words in between. Searches do not lock, but every word found in
+	 * the path both before and after switches from its old positions to its
+	 * new ones in a single step, so the path never goes missing from it.
+	 *
+	 * @param path
+	 *            path to replace
+	 * @param other
+	 *            index containing only the new positions of the path, which
+	 *            are taken over rather than copied
+	 */
+	@Override
+	public void replace(String path, InvertedIndex other) {
+		Map<String, PostingList> newWords = new HashMap<>();
+		for (Entry<String, NavigableMap<String, PostingList>> word : other.entries()) {
+			PostingList positions = word.getValue().get(path);
+			if (positions != null) {
+				newWords.put(word.getKey(), positions);
+			}
+		}
+
+		List<String> removed = detach(path);
+		List<String> oldWords = removed == null ? Collections.<String>emptyList() : removed;
+
+		boolean[] locked = new boolean[stripes.length];
+		for (String word : oldWords) {
+			locked[stripe(word)] = true;
+		}
+		for (String word : newWords.keySet()) {
+			locked[stripe(word)] = true;
+		}
+
+		for (int i = 0; i < stripes.length; i++) {
+			if (locked[i]) {
+				stripes[i].lock();
+			}
+		}
+		try {
+			for (Entry<String, PostingList> word : newWords.entrySet()) {
+				PostingList positions = word.getValue();
+				NavigableMap<String, PostingList> paths = index.get(word.getKey());
+				if (paths == null) {
+					paths = newPaths();
+					paths.put(path, positions);
+					putWord(word.getKey(), paths);
+				} else {
+					paths.put(path, positions);
+				}
+				addPathWord(path, word.getKey());
+			}
+
+			for (String word : oldWords) {
+				if (!newWords.containsKey(word)) {
+					removePath(word, path);
+				}
+			}
+		} finally {
+			for (int i = stripes.length - 1; i >= 0; i--) {
+				if (locked[i]) {
+					stripes[i].unlock();
+				}
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Removes a path from a single word, and the word itself if it is no
+	 * longer found in any path. The stripe lock of the word must be held.
+	 *
+	 * @param word
+	 *            word to remove the path from
+	 * @param path
+	 *            path to remove
+	 */
+	private void removePath(String word, String path) {
+		NavigableMap<String, PostingList> paths = index.get(word);
+		if (paths != null && paths.remove(path) != null && paths.isEmpty()) {
+			removeWord(word);
+		}
+	}
+
+	/**
+	 * Stops tracking the words of a path and returns a copy of them. The list
+	 * is removed from the map before it is copied while holding its monitor,
+	 * so any word added to it before the copy is in the copy, and any word
+	 * added after goes to a new list.
+	 *
+	 * @param path
+	 *            path to stop tracking
+	 * @return words found in the path, or null if the path was not tracked
+	 */
+	private List<String> detach(String path) {
+		List<String> words = trackPaths().remove(path);
+		if (words == null) {
+			return null;
+		}
+		synchronized (words) {
+			return new ArrayList<String>(words);
+		}
+	}
+
+	/**
+	 * Adds all words, paths, and positions from another index into this index.
+	 * Words are grouped by stripe first, so each stripe is locked at most once
+	 * per call. Position lists of paths missing from this index are taken from
+	 * the other index rather than copied, so the other index should not be
+	 * modified afterwards.
+	 *
+	 * @param other
+	 *            index to merge into this index
+	 */
+	@Override
+	public void addAll(InvertedIndex other) {
+		List<List<Entry<String, NavigableMap<String, PostingList>>>> batches = new ArrayList<>(stripes.length);
+		for (int i = 0; i < stripes.length; i++) {
+			batches.add(new ArrayList<Entry<String, NavigableMap<String, PostingList>>>());
+		}
+		for (Entry<String, NavigableMap<String, PostingList>> word : other.entries()) {
+			batches.get(stripe(word.getKey())).add(word);
+		}
+
+		for (int i = 0; i < stripes.length; i++) {
+			List<Entry<String, NavigableMap<String, PostingList>>> batch = batches.get(i);
+			if (batch.isEmpty()) {
+				continue;
+			}
+
+			stripes[i].lock();
+			try {
+				for (Entry<String, NavigableMap<String, PostingList>> word : batch) {
+					addPaths(word.getKey(), word.getValue());
+				}
+			} finally {
+				stripes[i].unlock();
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Adds the paths and positions of a single word to this index, taking over
+	 * the position lists of paths this index does not have yet. The stripe
+	 * lock of the word must be held.
+	 *
+	 * @param word
+	 *            word to add
+	 * @param otherPaths
+	 *            paths and positions of the word to add
+	 */
+	private void addPaths(String word, NavigableMap<String, PostingList> otherPaths) {
+		NavigableMap<String, PostingList> paths = index.get(word);
+		boolean newWord = paths == null;
+		if (newWord) {
+			paths = newPaths();
+		}
+
+		for (Entry<String, PostingList> entry : otherPaths.entrySet()) {
+			PostingList positions = paths.get(entry.getKey());
+			PostingList otherPositions = entry.getValue();
+			if (positions == null) {
+				paths.put(entry.getKey(), otherPositions);
+				addPathWord(entry.getKey(), word);
+			} else if (otherPositions.isEmpty() || otherPositions.first() > positions.last()) {
+				positions.addAll(otherPositions);
+			} else {
+				PostingList copy = new PostingList(positions);
+				copy.addAll(otherPositions);
+				paths.put(entry.getKey(), copy);
+			}
+		}
+
+		if (newWord) {
+			putWord(word, paths);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors that run every task on a new virtual thread when the Java
+ * runtime has them (Java 21 and later), and on a bounded pool of platform
+ * threads otherwise. Virtual threads are looked up by reflection, so the
+ * project still compiles for and runs on Java 17, the release it targets.
+ * The pool of platform threads never grows past {@link #PLATFORM_THREADS};
+ * tasks wait in its queue once every thread is busy, so a burst of tasks does
+ * not start a thread for each one.
+ *
+ * @author courtniwong
+ *
+ */
+public class VirtualThreads {
+
+	/**
+	 * Maximum number of platform threads used when virtual threads are not
+	 * available.
+	 */
+	public static final int PLATFORM_THREADS = Math.max(16, 8 * Runtime.getRuntime().availableProcessors());
+
+	/** Seconds an idle platform thread is kept before it is stopped. */
+	private static final long KEEP_ALIVE = 60;
+
+	/** Method that creates a virtual thread per task executor, or null. */
+	private static final Method FACTORY = findFactory();
+
+	/**
+	 * Finds the method that creates a virtual thread per task executor, and
+	 * checks that it can be used.
+	 *
+	 * @return method, or null if virtual threads are not available
+	 */
+	private static Method findFactory() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			/* preview releases have the method but refuse to run it */
+			((ExecutorService) factory.invoke(null)).shutdown();
+			return factory;
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns true if tasks are run on virtual threads.
+	 *
+	 * @return true if virtual threads are available
+	 */
+	public static boolean available() {
+		return FACTORY != null;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for every task, or
+	 * a pool of at most {@link #PLATFORM_THREADS} daemon platform threads with
+	 * the given name if virtual threads are not available. Idle platform
+	 * threads are stopped after a while.
+	 *
+	 * @param name
+	 *            name of the platform threads
+	 * @return executor for the tasks
+	 */
+	public static ExecutorService newPerTaskExecutor(String name) {
+		if (FACTORY != null) {
+			try {
+				return (ExecutorService) FACTORY.invoke(null);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				System.err.println("Unable to create virtual threads, " + e.getMessage());
+			}
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(PLATFORM_THREADS, PLATFORM_THREADS, KEEP_ALIVE,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+}
@@ -0,0 +1,476 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds an inverted index from web pages, starting at a seed URL and
+ * following the links of every page it fetches. Pages are fetched
+ * concurrently, each on its own virtual thread when the Java runtime has them
+ * (see {@link VirtualThreads}). The markup of each page is removed with an
+ * {@link HtmlStripper} as the page is read, and its words are added to the
+ * index with the URL of the page as their path.
+ *
+ * <p>
+ * A URL is only crawled once, and no more than the page limit are crawled in
+ * total. At most a fixed number of pages are fetched from the same host at a
+ * time. A URL is handed to the executor right away only if its host is below
+ * that limit; otherwise it waits in a queue of its host, and is handed over
+ * once a page of that host is done. URLs waiting in these queues form the
+ * frontier, which holds at most a fixed number of URLs; links found while the
+ * frontier is full are skipped. No thread is used by a URL until it is
+ * fetched.
+ * </p>
+ *
+ * <p>
+ * A page that is redirected is added to the index under the URL it was
+ * redirected to, which is also the URL its links are resolved against. If
+ * that URL was already crawled or is waiting to be, the page is skipped.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class WebCrawler {
+
+	/** Default number of URLs that may wait to be fetched. */
+	public static final int FRONTIER_DEFAULT = 1000;
+
+	/** Longest time to wait for a page. */
+	public static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+	/** Index to add words to. */
+	private final ThreadSafeInvertedIndex index;
+
+	/** Maximum number of URLs to crawl. */
+	private final int limit;
+
+	/** Maximum number of pages fetched from the same host at a time. */
+	private final int hostLimit;
+
+	/** Maximum number of URLs waiting to be fetched. */
+	private final int frontierSize;
+
+	/** URLs crawled or waiting to be crawled. */
+	private final Set<URI> seen;
+
+	/** Pages being fetched and URLs waiting to be fetched from each host. */
+	private final Map<String, Host> hosts;
+
+	/** Number of URLs crawled or waiting to be crawled. */
+	private int admitted;
+
+	/** Number of URLs waiting to be fetched. */
+	private int waiting;
+
+	/** Client used to fetch pages. */
+	private final HttpClient client;
+
+	/** Executor that fetches pages. */
+	private final ExecutorService executor;
+
+	/** Number of pages added to the index. */
+	private final AtomicInteger pages;
+
+	/** Number of bytes of HTML read. */
+	private final AtomicLong bytes;
+
+	/** Number of URLs that have not finished being crawled. */
+	private int pending;
+
+	/**
+	 * Initializes a crawler with the default frontier size.
+	 *
+	 * @param index
+	 *            index to add words to
+	 * @param limit
+	 *            maximum number of URLs to crawl
+	 * @param hostLimit
+	 *            maximum number of pages fetched from the same host at a time
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex index, int limit, int hostLimit) {
+		this(index, limit, hostLimit, FRONTIER_DEFAULT);
+	}
+
+	/**
+	 * Initializes a crawler.
+	 *
+	 * @param index
+	 *            index to add words to
+	 * @param limit
+	 *            maximum number of URLs to crawl
+	 * @param hostLimit
+	 *            maximum number of pages fetched from the same host at a time
+	 * @param frontierSize
+	 *            maximum number of URLs waiting to be fetched
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex index, int limit, int hostLimit, int frontierSize) {
+		this.index = index;
+		this.limit = limit;
+		this.hostLimit = Math.max(1, hostLimit);
+		this.frontierSize = Math.max(1, frontierSize);
+		this.seen = new HashSet<>();
+		this.hosts = new HashMap<>();
+		this.admitted = 0;
+		this.waiting = 0;
+		this.executor = VirtualThreads.newPerTaskExecutor("WebCrawler");
+		HttpClient.Builder builder = HttpClient.newBuilder();
+		if (VirtualThreads.available()) {
+			/* a bounded pool of platform threads could fill up with fetches waiting on the client's own tasks */
+			builder.executor(executor);
+		}
+		this.client = builder.followRedirects(HttpClient.Redirect.NORMAL).connectTimeout(TIMEOUT).build();
+		this.pages = new AtomicInteger();
+		this.bytes = new AtomicLong();
+		this.pending = 0;
+	}
+
+	/**
+	 * Crawls from a seed URL until no URLs are left or the page limit is
+	 * reached, and waits for every page to be added to the index.
+	 *
+	 * @param seed
+	 *            URL to start from
+	 */
+	public void crawl(String seed) {
+		try {
+			URI uri = normalize(new URI(seed));
+			if (uri == null || !add(uri)) {
+				System.err.println("Unable to crawl seed URL, " + seed);
+			}
+		} catch (URISyntaxException e) {
+			System.err.println("Invalid seed URL, " + seed);
+		}
+		finish();
+	}
+
+	/**
+	 * Stops the threads used to fetch pages. Should be called once crawling
+	 * is done.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the number of pages added to the index.
+	 *
+	 * @return number of pages
+	 */
+	public int getPages() {
+		return pages.get();
+	}
+
+	/**
+	 * Returns the number of bytes of HTML read.
+	 *
+	 * @return number of bytes
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * Adds a URL to be crawled unless it was already seen, the page limit has
+	 * been reached, or it would have to wait while the frontier is full. The
+	 * URL is handed to the executor right away if fewer pages than the limit
+	 * are being fetched from its host, and waits in the queue of its host
+	 * otherwise.
+	 *
+	 * @param uri
+	 *            normalized URL
+	 * @return true if the URL was added
+	 */
+	private synchronized boolean add(URI uri) {
+		if (admitted >= limit || seen.contains(uri)) {
+			return false;
+		}
+
+		Host host = hosts.get(uri.getRawAuthority());
+		if (host == null) {
+			host = new Host();
+			hosts.put(uri.getRawAuthority(), host);
+		}
+		if (host.active >= hostLimit && waiting >= frontierSize) {
+			return false;
+		}
+
+		seen.add(uri);
+		admitted++;
+		pending++;
+		if (host.active < hostLimit) {
+			host.active++;
+			executor.execute(new PageTask(uri, host));
+		} else {
+			host.queue.add(uri);
+			waiting++;
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the URL a page was redirected to as crawled, unless it was already
+	 * seen. The URL does not count against the page limit, since the page was
+	 * already counted under the URL it was requested with.
+	 *
+	 * @param uri
+	 *            normalized URL the page was redirected to
+	 * @return true if the URL had not been seen before
+	 */
+	private synchronized boolean claim(URI uri) {
+		return seen.add(uri);
+	}
+
+	/**
+	 * Finishes crawling a page, and hands the next URL waiting for the same
+	 * host to the executor, if any. Wakes up threads waiting for every URL to
+	 * finish once none are left.
+	 *
+	 * @param host
+	 *            host of the page
+	 */
+	private synchronized void done(Host host) {
+		URI next = host.queue.poll();
+		if (next != null) {
+			waiting--;
+			executor.execute(new PageTask(next, host));
+		} else {
+			host.active--;
+		}
+
+		pending--;
+		if (pending <= 0) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns a URL without its fragment, or null if it is not an HTTP URL.
+	 *
+	 * @param uri
+	 *            absolute URL
+	 * @return normalized URL, or null
+	 */
+	private static URI normalize(URI uri) {
+		String scheme = uri.getScheme();
+		if (scheme == null || uri.getHost() == null) {
+			return null;
+		}
+		scheme = scheme.toLowerCase(Locale.ROOT);
+		if (!scheme.equals("http") && !scheme.equals("https")) {
+			return null;
+		}
+		try {
+			String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+			return new URI(scheme + "://" + uri.getRawAuthority().toLowerCase(Locale.ROOT) + path
+					+ (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()));
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Waits until every URL has finished being crawled.
+	 */
+	private synchronized void finish() {
+		while (pending > 0) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the charset of a response, or UTF-8 if it is missing or not
+	 * supported.
+	 *
+	 * @param contentType
+	 *            content type of the response
+	 * @return charset of the response
+	 */
+	private static Charset charset(String contentType) {
+		int start = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+		if (start >= 0) {
+			String name = contentType.substring(start + 8).split(";")[0].trim().replace("\"", "");
+			try {
+				return Charset.forName(name);
+			} catch (IllegalArgumentException e) {
+				/* fall back to UTF-8 */
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Pages being fetched from a host, and URLs of the host waiting for one of
+	 * them to finish. Only used while holding the lock of the crawler.
+	 */
+	private static class Host {
+
+		/** Number of pages being fetched from the host. */
+		private int active;
+
+		/**
+		 * URLs of the host waiting to be fetched, in the order they were
+		 * found.
+		 */
+		private final ArrayDeque<URI> queue = new ArrayDeque<>();
+	}
+
+	/**
+	 * Fetches a page, adds its words to the index, and adds its links to be
+	 * crawled.
+	 */
+	private class PageTask implements Runnable {
+
+		/** URL of the page. */
+		private final URI uri;
+
+		/** Host of the page. */
+		private final Host host;
+
+		/**
+		 * Initializes a task to crawl a page.
+		 *
+		 * @param uri
+		 *            normalized URL of the page
+		 * @param host
+		 *            host of the page
+		 */
+		public PageTask(URI uri, Host host) {
+			this.uri = uri;
+			this.host = host;
+		}
+
+		@Override
+		public void run() {
+			try {
+				fetch();
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Unable to crawl page, " + uri);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				done(host);
+			}
+		}
+
+		/**
+		 * Fetches the page and streams it through the stripper into a local
+		 * index, which is then merged into the shared index. Only successful
+		 * HTML responses are added, under the URL of the page after any
+		 * redirects.
+		 *
+		 * @throws IOException
+		 *             if the page cannot be read
+		 * @throws InterruptedException
+		 *             if interrupted while waiting for the page
+		 */
+		private void fetch() throws IOException, InterruptedException {
+			HttpRequest request = HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build();
+			HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+			try (InputStream body = response.body()) {
+				String contentType = response.headers().firstValue("Content-Type").orElse("");
+				if (response.statusCode() != 200 || !contentType.toLowerCase(Locale.ROOT).startsWith("text/html")) {
+					return;
+				}
+
+				/* a redirected page is added under the URL it was redirected to */
+				URI base = response.uri();
+				URI target = normalize(base);
+				if (target == null || (!target.equals(uri) && !claim(target))) {
+					return;
+				}
+
+				InvertedIndex local = new InvertedIndex();
+				String path = target.toString();
+				HtmlStripper stripper = new HtmlStripper(
+						new WordTokenizer(new InvertedIndexBuilder.IndexHandler(path, local)));
+				CountingInputStream counted = new CountingInputStream(body);
+				Reader reader = new InputStreamReader(counted, charset(contentType));
+				char[] buffer = new char[InvertedIndexBuilder.DECODE_SIZE];
+				int read;
+				while ((read = reader.read(buffer)) >= 0) {
+					stripper.feed(buffer, 0, read);
+				}
+				stripper.end();
+
+				index.addAll(local);
+				pages.incrementAndGet();
+				bytes.addAndGet(counted.count);
+
+				for (String link : stripper.getLinks()) {
+					try {
+						URI next = normalize(base.resolve(link));
+						if (next != null) {
+							add(next);
+						}
+					} catch (IllegalArgumentException e) {
+						/* skip links that are not valid URLs */
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the bytes read from a stream.
+	 */
+	private static class CountingInputStream extends InputStream {
+
+		/** Stream to read from. */
+		private final InputStream in;
+
+		/** Number of bytes read. */
+		private long count;
+
+		/**
+		 * Initializes a stream that counts the bytes read from another.
+		 *
+		 * @param in
+		 *            stream to read from
+		 */
+		public CountingInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = in.read(buffer, offset, length);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+	}
+}
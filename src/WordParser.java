@@ -36,10 +36,23 @@ public class WordParser {
 	}
 
 	/**
-	 * First cleans text. If the result is non-empty, splits the cleaned text
-	 * into words by whitespace. The result will be an arraylist of words in all
-	 * lowercase without any special characters, or an empty array if the
-	 * cleaned text was empty.
+	 * Returns true if the text is a phrase query, which is surrounded by
+	 * quotation marks.
+	 *
+	 * @param text
+	 *            query text
+	 * @return true if the text is surrounded by quotation marks
+	 */
+	public static boolean isPhrase(String text) {
+		String trimmed = text.trim();
+		return trimmed.length() >= 2 && trimmed.charAt(0) == '"' && trimmed.charAt(trimmed.length() - 1) == '"';
+	}
+
+	/**
+	 * Splits text into an arraylist of words in all lowercase without any
+	 * special characters, or an empty array if the text has no words. Gives
+	 * the same result as cleaning the text and splitting it by whitespace, but
+	 * in a single pass using a {@link WordTokenizer}.
 	 *
 	 * @param text
 	 *            input to clean and split into words
@@ -49,6 +62,30 @@ public class WordParser {
 	 * @see #SPLIT_REGEX
 	 */
 	public static ArrayList<String> split(String text) {
+		final ArrayList<String> words = new ArrayList<>();
+		WordTokenizer tokenizer = new WordTokenizer(new WordTokenizer.WordHandler() {
+			@Override
+			public void word(char[] buffer, int length) {
+				words.add(new String(buffer, 0, length));
+			}
+		});
+		tokenizer.tokenize(text);
+		return words;
+	}
+
+	/**
+	 * First cleans text. If the result is non-empty, splits the cleaned text
+	 * into words by whitespace using regular expressions. Kept as a reference
+	 * for {@link #split(String)}.
+	 *
+	 * @param text
+	 *            input to clean and split into words
+	 * @return arraylist of words (or an empty array if cleaned text is empty)
+	 *
+	 * @see #clean(String)
+	 * @see #SPLIT_REGEX
+	 */
+	public static ArrayList<String> splitRegex(String text) {
 		text = clean(text);
 		String[] list = text.split(SPLIT_REGEX);
 		ArrayList<String> words = new ArrayList<>();
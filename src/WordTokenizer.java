@@ -0,0 +1,284 @@
+import java.util.Locale;
+
+/**
+ * Splits text into cleaned, lowercase words in a single pass without regular
+ * expressions. Gives the same words as {@link WordParser#split(String)}:
+ * alphanumeric characters are kept, whitespace separates words, and every
+ * other character is dropped. Each word is written into a reusable buffer and
+ * passed to a {@link WordHandler}, so no objects are created per line.
+ *
+ * <p>
+ * Text may be given in several pieces using {@link #feed(CharSequence, int,
+ * int)}, and words that cross the end of a piece are joined correctly. Call
+ * {@link #end()} once all text has been given.
+ * </p>
+ *
+ * @author courtniwong
+ *
+ */
+public class WordTokenizer {
+
+	/**
+	 * Receives the words found by a tokenizer.
+	 */
+	public interface WordHandler {
+
+		/**
+		 * Called once for each word found. The buffer is reused for the next
+		 * word, so it must be copied if it needs to be kept.
+		 *
+		 * @param buffer
+		 *            characters of the word
+		 * @param length
+		 *            number of characters in the word
+		 */
+		void word(char[] buffer, int length);
+	}
+
+	/** Handler to pass words to. */
+	private final WordHandler handler;
+
+	/** Characters of the current word. */
+	private char[] buffer;
+
+	/** Number of characters in the current word. */
+	private int length;
+
+	/** True if the current word has a character that is not lowercase ASCII. */
+	private boolean complex;
+
+	/** True if the current word has a supplementary character. */
+	private boolean supplementary;
+
+	/** True if the current word starts its line. */
+	private boolean wordStartsLine;
+
+	/** True if nothing but removed characters has been seen on this line. */
+	private boolean lineStart;
+
+	/** High surrogate left over from the end of the last piece of text. */
+	private char pending;
+
+	/** True if uppercase ASCII letters can be lowercased without the locale. */
+	private boolean asciiLocale;
+
+	/**
+	 * Initializes a tokenizer that passes words to the given handler.
+	 *
+	 * @param handler
+	 *            handler to pass words to
+	 */
+	public WordTokenizer(WordHandler handler) {
+		this.handler = handler;
+		this.buffer = new char[32];
+		this.length = 0;
+		this.complex = false;
+		this.supplementary = false;
+		this.lineStart = true;
+		this.pending = 0;
+		this.asciiLocale = isAsciiLocale();
+	}
+
+	/**
+	 * Finds all words in a single line of text and ends the last word.
+	 *
+	 * @param text
+	 *            line of text to split into words
+	 */
+	public void tokenize(CharSequence text) {
+		lineStart = true;
+		scan(text, 0, text.length(), false);
+		end();
+	}
+
+	/**
+	 * Finds words in part of the text of a file. The last word is not ended,
+	 * since it may continue in the next piece of text. Lines are ended by "\n"
+	 * or "\r" the same way as {@link java.io.BufferedReader#readLine()}.
+	 *
+	 * @param text
+	 *            text to split into words
+	 * @param start
+	 *            index of first character to use
+	 * @param end
+	 *            index after last character to use
+	 */
+	public void feed(CharSequence text, int start, int end) {
+		scan(text, start, end, true);
+	}
+
+	/**
+	 * Finds words in part of the text.
+	 *
+	 * @param text
+	 *            text to split into words
+	 * @param start
+	 *            index of first character to use
+	 * @param end
+	 *            index after last character to use
+	 * @param lines
+	 *            true if line breaks start a new line
+	 */
+	private void scan(CharSequence text, int start, int end, boolean lines) {
+		int i = start;
+
+		if (pending != 0 && i < end) {
+			char low = text.charAt(i);
+			if (Character.isLowSurrogate(low)) {
+				accept(Character.toCodePoint(pending, low));
+				i++;
+			} else {
+				accept(pending);
+			}
+			pending = 0;
+		}
+
+		while (i < end) {
+			char c = text.charAt(i++);
+
+			if (c < 0x80) {
+				if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+					append(c);
+				} else if (c >= 'A' && c <= 'Z') {
+					if (asciiLocale) {
+						append((char) (c + ('a' - 'A')));
+					} else {
+						append(c);
+						complex = true;
+					}
+				} else if (c == ' ' || (c >= 0x09 && c <= 0x0D)) {
+					endWord();
+					lineStart = lines && (c == '\n' || c == '\r');
+				}
+			} else if (Character.isHighSurrogate(c)) {
+				if (i == end) {
+					pending = c;
+				} else if (Character.isLowSurrogate(text.charAt(i))) {
+					accept(Character.toCodePoint(c, text.charAt(i++)));
+				} else {
+					accept(c);
+				}
+			} else {
+				accept(c);
+			}
+		}
+	}
+
+	/**
+	 * Ends the current word, if any. Should be called after the last piece of
+	 * text has been given.
+	 */
+	public void end() {
+		if (pending != 0) {
+			accept(pending);
+			pending = 0;
+		}
+		endWord();
+	}
+
+	/**
+	 * Handles a code point outside the ASCII fast path.
+	 *
+	 * @param codePoint
+	 *            code point to handle
+	 */
+	private void accept(int codePoint) {
+		if (Character.isAlphabetic(codePoint) || Character.isDigit(codePoint)) {
+			if (Character.isBmpCodePoint(codePoint)) {
+				append((char) codePoint);
+			} else {
+				append(Character.highSurrogate(codePoint));
+				append(Character.lowSurrogate(codePoint));
+				supplementary = true;
+			}
+			complex = true;
+		} else if (isSpace(codePoint)) {
+			endWord();
+			lineStart = false;
+		}
+	}
+
+	/**
+	 * Adds a character to the current word.
+	 *
+	 * @param c
+	 *            character to add
+	 */
+	private void append(char c) {
+		if (length == 0) {
+			wordStartsLine = lineStart;
+			lineStart = false;
+		}
+		if (length == buffer.length) {
+			char[] larger = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, larger, 0, length);
+			buffer = larger;
+		}
+		buffer[length++] = c;
+	}
+
+	/**
+	 * Passes the current word to the handler, if there is one. Words with
+	 * characters outside the fast path are lowercased with
+	 * {@link String#toLowerCase()} to match {@link WordParser#clean(String)}.
+	 *
+	 * <p>
+	 * Whether a capital sigma becomes a final sigma depends on word boundaries
+	 * in the whole line, and those boundaries change next to supplementary
+	 * characters when the word does not start the line. A space is added in
+	 * front of such words before lowercasing to get the same result.
+	 * </p>
+	 */
+	private void endWord() {
+		if (length == 0) {
+			return;
+		}
+
+		if (complex) {
+			String lower;
+			if (supplementary && !wordStartsLine) {
+				lower = (" " + new String(buffer, 0, length)).toLowerCase().substring(1);
+			} else {
+				lower = new String(buffer, 0, length).toLowerCase();
+			}
+
+			if (lower.length() > buffer.length) {
+				buffer = new char[lower.length() * 2];
+			}
+			lower.getChars(0, lower.length(), buffer, 0);
+			length = lower.length();
+			complex = false;
+			supplementary = false;
+		}
+
+		handler.word(buffer, length);
+		length = 0;
+	}
+
+	/**
+	 * Tests if a code point is whitespace the same way as {@code \p{Space}}
+	 * does in {@link WordParser#SPLIT_REGEX}.
+	 *
+	 * @param codePoint
+	 *            code point to test
+	 * @return true if the code point is whitespace
+	 */
+	private static boolean isSpace(int codePoint) {
+		int separators = (1 << Character.SPACE_SEPARATOR) | (1 << Character.LINE_SEPARATOR)
+				| (1 << Character.PARAGRAPH_SEPARATOR);
+		return ((separators >> Character.getType(codePoint)) & 1) != 0
+				|| (codePoint >= 0x09 && codePoint <= 0x0D) || codePoint == 0x85;
+	}
+
+	/**
+	 * Tests if the default locale lowercases ASCII letters the usual way.
+	 * Turkish and Azerbaijani lowercase "I" to a dotless "i", so words with
+	 * uppercase letters take the slower path in those locales.
+	 *
+	 * @return true if ASCII letters can be lowercased directly
+	 */
+	private static boolean isAsciiLocale() {
+		String language = Locale.getDefault().getLanguage();
+		return !language.equals("tr") && !language.equals("az");
+	}
+}
@@ -0,0 +1,191 @@
+import java.util.LinkedList;
+
+/**
+ * A simple work queue implementation based on the IBM developerWorks article
+ * by Brian Goetz. Keeps track of pending work so that callers can wait for all
+ * submitted tasks to finish before using the results. If a task throws an
+ * exception, the other tasks still run, and the first exception is thrown by
+ * the next call to {@link #finish()}, so callers never use the results of
+ * work that did not finish.
+ *
+ * @author courtniwong
+ *
+ */
+public class WorkQueue {
+
+	/** Pool of worker threads that will wait in the background. */
+	private final PoolWorker[] workers;
+
+	/** Queue of pending work requests. */
+	private final LinkedList<Runnable> queue;
+
+	/** Number of tasks submitted but not yet finished. */
+	private int pending;
+
+	/** Used to signal the queue should be shutdown. */
+	private volatile boolean shutdown;
+
+	/** First exception thrown by a task since the last finish, or null. */
+	private RuntimeException failure;
+
+	/**
+	 * Starts a work queue with the default number of threads.
+	 *
+	 * @see Driver#THREAD_DEFAULT
+	 */
+	public WorkQueue() {
+		this(Driver.THREAD_DEFAULT);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads.
+	 *
+	 * @param threads
+	 *            number of worker threads; should be greater than 1
+	 */
+	public WorkQueue(int threads) {
+		this.queue = new LinkedList<Runnable>();
+		this.workers = new PoolWorker[threads];
+		this.pending = 0;
+		this.shutdown = false;
+		this.failure = null;
+
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new PoolWorker();
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Adds a work request to the queue. A thread will process this request when
+	 * available.
+	 *
+	 * @param r
+	 *            work request (in the form of a {@link Runnable} object)
+	 */
+	public void execute(Runnable r) {
+		incrementPending();
+		synchronized (queue) {
+			queue.addLast(r);
+			queue.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits for all pending work to be finished, then throws the first
+	 * exception thrown by a task since the last call, if any.
+	 *
+	 * @throws IllegalStateException
+	 *             if a task threw an exception, with that exception as the
+	 *             cause
+	 */
+	public synchronized void finish() {
+		while (pending > 0) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+
+		if (failure != null) {
+			RuntimeException cause = failure;
+			failure = null;
+			throw new IllegalStateException("Work queue task failed.", cause);
+		}
+	}
+
+	/**
+	 * Asks the queue to shutdown. Any unprocessed work will not be finished,
+	 * but threads in-progress will not be interrupted.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		synchronized (queue) {
+			queue.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of worker threads being used by the work queue.
+	 *
+	 * @return number of worker threads
+	 */
+	public int size() {
+		return workers.length;
+	}
+
+	/**
+	 * Increments the number of pending tasks.
+	 */
+	private synchronized void incrementPending() {
+		pending++;
+	}
+
+	/**
+	 * Records an exception thrown by a task, unless an earlier one is already
+	 * waiting to be thrown by {@link #finish()}.
+	 *
+	 * @param ex
+	 *            exception thrown by the task
+	 */
+	private synchronized void fail(RuntimeException ex) {
+		if (failure == null) {
+			failure = ex;
+		}
+	}
+
+	/**
+	 * Decrements the number of pending tasks, and wakes up any threads waiting
+	 * in {@link #finish()} once all work is done.
+	 */
+	private synchronized void decrementPending() {
+		pending--;
+		if (pending <= 0) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until work is available in the work queue. When work is found,
+	 * will remove the work from the queue and run it. If a shutdown is
+	 * detected, will exit instead of grabbing new work from the queue. These
+	 * threads will continue running in the background until a shutdown is
+	 * requested.
+	 */
+	private class PoolWorker extends Thread {
+
+		@Override
+		public void run() {
+			Runnable r = null;
+
+			while (true) {
+				synchronized (queue) {
+					while (queue.isEmpty() && !shutdown) {
+						try {
+							queue.wait();
+						} catch (InterruptedException ex) {
+							System.err.println("Warning: Work queue interrupted while waiting.");
+						}
+					}
+
+					if (shutdown) {
+						break;
+					} else {
+						r = queue.removeFirst();
+					}
+				}
+
+				try {
+					r.run();
+				} catch (RuntimeException ex) {
+					System.err.println("Warning: Work queue encountered an exception while running.");
+					fail(ex);
+				} finally {
+					decrementPending();
+				}
+			}
+		}
+	}
+}